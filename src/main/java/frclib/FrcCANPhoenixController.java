@@ -28,10 +28,12 @@ import com.ctre.phoenix.motorcontrol.FeedbackDevice;
 import com.ctre.phoenix.motorcontrol.LimitSwitchNormal;
 import com.ctre.phoenix.motorcontrol.LimitSwitchSource;
 import com.ctre.phoenix.motorcontrol.NeutralMode;
+import com.ctre.phoenix.motorcontrol.StatusFrameEnhanced;
 import com.ctre.phoenix.motorcontrol.can.BaseTalon;
 import edu.wpi.first.wpilibj.Sendable;
 import edu.wpi.first.wpilibj.smartdashboard.SendableBuilder;
 import edu.wpi.first.wpilibj.smartdashboard.SendableRegistry;
+import trclib.TrcCachedSignal;
 import trclib.TrcDbgTrace;
 import trclib.TrcMotor;
 import trclib.TrcPidController;
@@ -69,6 +71,13 @@ public abstract class FrcCANPhoenixController<T extends BaseTalon> extends TrcMo
     private double softLowerLimit = 0.0;
     private double softUpperLimit = 0.0;
     private FeedbackDevice feedbackDeviceType;
+    //
+    // Sensor signals are read over CAN at most once per pass of the reading thread and shared by all callers in the
+    // pass. The robot loop and the odometry threads each count their own passes.
+    //
+    private final TrcCachedSignal positionSignal;
+    private final TrcCachedSignal velocitySignal;
+    private final TrcCachedSignal powerSignal;
 
     /**
      * The number of non-success error codes reported by the device after sending a command.
@@ -86,6 +95,12 @@ public abstract class FrcCANPhoenixController<T extends BaseTalon> extends TrcMo
     {
         super(instanceName);
         motor = baseTalon;
+        positionSignal = new TrcCachedSignal(
+            instanceName + ".position", this::readPosition);
+        velocitySignal = new TrcCachedSignal(
+            instanceName + ".velocity", this::readVelocity);
+        powerSignal = new TrcCachedSignal(
+            instanceName + ".power", this::readPower);
         resetPosition(true);
     }   //FrcCANPhoenixController
 
@@ -142,6 +157,128 @@ public abstract class FrcCANPhoenixController<T extends BaseTalon> extends TrcMo
         return errorCode;
     }   //recordResponseCode
 
+    /**
+     * This method reads the selected sensor position over CAN.
+     *
+     * @return selected sensor position in raw sensor units.
+     */
+    private double readPosition()
+    {
+        double pos = motor.getSelectedSensorPosition(0);
+        recordResponseCode(motor.getLastError());
+        return pos;
+    }   //readPosition
+
+    /**
+     * This method reads the selected sensor velocity over CAN.
+     *
+     * @return selected sensor velocity in raw sensor units per 100 msec.
+     */
+    private double readVelocity()
+    {
+        double vel = motor.getSelectedSensorVelocity(0);
+        recordResponseCode(motor.getLastError());
+        return vel;
+    }   //readVelocity
+
+    /**
+     * This method reads the motor output percentage over CAN.
+     *
+     * @return motor output percentage.
+     */
+    private double readPower()
+    {
+        double power = motor.getMotorOutputPercent();
+        recordResponseCode(motor.getLastError());
+        return power;
+    }   //readPower
+
+    /**
+     * This method sets the status frame period of the position signal. The position is not read over CAN again
+     * before the period has elapsed. The position and the velocity share a status frame, which is sent at the
+     * shorter of the two periods.
+     *
+     * @param periodMs specifies the status frame period in msec.
+     */
+    public void setPositionStatusPeriod(int periodMs)
+    {
+        final String funcName = "setPositionStatusPeriod";
+
+        if (debugEnabled)
+        {
+            dbgTrace.traceEnter(funcName, TrcDbgTrace.TraceLevel.API, "period=%d", periodMs);
+            dbgTrace.traceExit(funcName, TrcDbgTrace.TraceLevel.API);
+        }
+
+        positionSignal.setPeriod(periodMs / 1000.0);
+        setFeedbackStatusPeriod();
+    }   //setPositionStatusPeriod
+
+    /**
+     * This method sets the status frame period of the velocity signal. The velocity is not read over CAN again
+     * before the period has elapsed. The position and the velocity share a status frame, which is sent at the
+     * shorter of the two periods.
+     *
+     * @param periodMs specifies the status frame period in msec.
+     */
+    public void setVelocityStatusPeriod(int periodMs)
+    {
+        final String funcName = "setVelocityStatusPeriod";
+
+        if (debugEnabled)
+        {
+            dbgTrace.traceEnter(funcName, TrcDbgTrace.TraceLevel.API, "period=%d", periodMs);
+            dbgTrace.traceExit(funcName, TrcDbgTrace.TraceLevel.API);
+        }
+
+        velocitySignal.setPeriod(periodMs / 1000.0);
+        setFeedbackStatusPeriod();
+    }   //setVelocityStatusPeriod
+
+    /**
+     * This method sets the status frame period of the motor output signal. The output is not read over CAN again
+     * before the period has elapsed.
+     *
+     * @param periodMs specifies the status frame period in msec.
+     */
+    public void setPowerStatusPeriod(int periodMs)
+    {
+        final String funcName = "setPowerStatusPeriod";
+
+        if (debugEnabled)
+        {
+            dbgTrace.traceEnter(funcName, TrcDbgTrace.TraceLevel.API, "period=%d", periodMs);
+            dbgTrace.traceExit(funcName, TrcDbgTrace.TraceLevel.API);
+        }
+
+        powerSignal.setPeriod(periodMs / 1000.0);
+        recordResponseCode(motor.setStatusFramePeriod(StatusFrameEnhanced.Status_1_General, periodMs, 10));
+    }   //setPowerStatusPeriod
+
+    /**
+     * This method sets the period of the feedback status frame to the shorter of the position and velocity periods.
+     * A signal that reads once every loop is not considered.
+     */
+    private void setFeedbackStatusPeriod()
+    {
+        final String funcName = "setFeedbackStatusPeriod";
+        double posPeriod = positionSignal.getPeriod();
+        double velPeriod = velocitySignal.getPeriod();
+        double period = posPeriod == 0.0? velPeriod: velPeriod == 0.0? posPeriod: Math.min(posPeriod, velPeriod);
+        int periodMs = (int) Math.round(period*1000.0);
+
+        if (debugEnabled)
+        {
+            dbgTrace.traceEnter(funcName, TrcDbgTrace.TraceLevel.API, "period=%d", periodMs);
+            dbgTrace.traceExit(funcName, TrcDbgTrace.TraceLevel.API);
+        }
+
+        if (periodMs > 0)
+        {
+            recordResponseCode(motor.setStatusFramePeriod(StatusFrameEnhanced.Status_2_Feedback0, periodMs, 10));
+        }
+    }   //setFeedbackStatusPeriod
+
     /**
      * This method sets the motor controller to velocity mode with the specified maximum velocity.
      *
@@ -285,6 +422,8 @@ public abstract class FrcCANPhoenixController<T extends BaseTalon> extends TrcMo
         this.feedbackDeviceType = devType;
         recordResponseCode(motor.configSelectedFeedbackSensor(devType, 0, 10));
         feedbackDeviceIsPot = devType == FeedbackDevice.Analog;
+        positionSignal.invalidate();
+        velocitySignal.invalidate();
     }   //setFeedbackDevice
 
     //
@@ -307,7 +446,7 @@ public abstract class FrcCANPhoenixController<T extends BaseTalon> extends TrcMo
             dbgTrace.traceEnter(funcName, TrcDbgTrace.TraceLevel.API);
         }
 
-        double currPos = motor.getSelectedSensorPosition(0);
+        double currPos = positionSignal.get();
 
         if (debugEnabled)
         {
@@ -333,7 +472,7 @@ public abstract class FrcCANPhoenixController<T extends BaseTalon> extends TrcMo
             dbgTrace.traceEnter(funcName, TrcDbgTrace.TraceLevel.API);
         }
 
-        double currVel = motor.getSelectedSensorVelocity();
+        double currVel = velocitySignal.get();
 
         if (debugEnabled)
         {
@@ -343,6 +482,32 @@ public abstract class FrcCANPhoenixController<T extends BaseTalon> extends TrcMo
         return currVel;
     }   //getMotorVelocity
 
+    /**
+     * This method returns the name of the bus the motor position and velocity are read over.
+     *
+     * @return name of the bus.
+     */
+    @Override
+    public String getOdometryBusName()
+    {
+        //
+        // The roboRIO has a single CAN bus, so all CAN motor controllers are read one after the other.
+        //
+        return "CAN";
+    }   //getOdometryBusName
+
+    /**
+     * This method returns the time the position last returned by getMotorPosition was read over CAN.
+     *
+     * @param callTime specifies the time getMotorPosition was called.
+     * @return time stamp of the position in seconds.
+     */
+    @Override
+    public double getMotorPositionTimestamp(double callTime)
+    {
+        return positionSignal.getTimestamp();
+    }   //getMotorPositionTimestamp
+
     /**
      * This method sets the raw motor power.
      *
@@ -404,10 +569,7 @@ public abstract class FrcCANPhoenixController<T extends BaseTalon> extends TrcMo
     public double getPosition()
     {
         final String funcName = "getPosition";
-        double pos = motor.getSelectedSensorPosition(0);
-        recordResponseCode(motor.getLastError());
-
-        pos -= zeroPosition;
+        double pos = positionSignal.get() - zeroPosition;
 
         if (debugEnabled)
         {
@@ -427,8 +589,7 @@ public abstract class FrcCANPhoenixController<T extends BaseTalon> extends TrcMo
     public double getPower()
     {
         final String funcName = "getPower";
-        double power = motor.getMotorOutputPercent();
-        recordResponseCode(motor.getLastError());
+        double power = powerSignal.get();
 
         if (debugEnabled)
         {
@@ -454,8 +615,7 @@ public abstract class FrcCANPhoenixController<T extends BaseTalon> extends TrcMo
         //
         // The sensor velocity is in the raw sensor unit per 100 msec, adjust it to sensor unit per second.
         //
-        double velocity = motor.getSelectedSensorVelocity(0) / 0.1;
-        recordResponseCode(motor.getLastError());
+        double velocity = velocitySignal.get() / 0.1;
 
         if (debugEnabled)
         {
@@ -543,6 +703,7 @@ public abstract class FrcCANPhoenixController<T extends BaseTalon> extends TrcMo
                 TrcDbgTrace.getGlobalTracer().traceErr(funcName, "resetPosition() on device %d failed with error %s!", motor.getDeviceID(),
                     error.name());
             }
+            positionSignal.invalidate();
             zeroPosition = 0.0;
         }
     }   //resetPosition
@@ -680,6 +841,8 @@ public abstract class FrcCANPhoenixController<T extends BaseTalon> extends TrcMo
 
         motor.setSensorPhase(inverted);
         recordResponseCode(motor.getLastError());
+        positionSignal.invalidate();
+        velocitySignal.invalidate();
     }   //setPositionSensorInverted
 
     /**
@@ -30,6 +30,7 @@ import com.revrobotics.CANPIDController;
 import com.revrobotics.CANSparkMax;
 import com.revrobotics.CANSparkMax.IdleMode;
 import com.revrobotics.CANSparkMaxLowLevel;
+import trclib.TrcCachedSignal;
 import trclib.TrcDbgTrace;
 import trclib.TrcMotor;
 import trclib.TrcPidController;
@@ -47,6 +48,13 @@ public class FrcCANSparkMax extends TrcMotor
     private boolean brushless;
     private CANEncoder encoder;
     private CANDigitalInput fwdLimitSwitch, revLimitSwitch;
+    //
+    // Sensor signals are read over CAN at most once per pass of the reading thread and shared by all callers in the
+    // pass. The robot loop and the odometry threads each count their own passes.
+    //
+    private final TrcCachedSignal positionSignal;
+    private final TrcCachedSignal velocitySignal;
+    private final TrcCachedSignal powerSignal;
     private double maxVelocity = 0.0;
     // private boolean feedbackDeviceIsPot = false;
     private boolean limitSwitchesSwapped = false;
@@ -75,6 +83,12 @@ public class FrcCANSparkMax extends TrcMotor
         encoder = motor.getEncoder();
         fwdLimitSwitch = motor.getForwardLimitSwitch(CANDigitalInput.LimitSwitchPolarity.kNormallyOpen);
         revLimitSwitch = motor.getReverseLimitSwitch(CANDigitalInput.LimitSwitchPolarity.kNormallyOpen);
+        positionSignal = new TrcCachedSignal(
+            instanceName + ".position", () -> encoder.getPosition());
+        velocitySignal = new TrcCachedSignal(
+            instanceName + ".velocity", () -> encoder.getVelocity());
+        powerSignal = new TrcCachedSignal(
+            instanceName + ".power", () -> motor.getAppliedOutput());
         resetPosition(true);
     }   //FrcCANSparkMax
 
@@ -115,6 +129,67 @@ public class FrcCANSparkMax extends TrcMotor
         return brushless;
     }   //isBrushless
 
+    /**
+     * This method sets the status frame period of the position signal. The position is not read over CAN again
+     * before the period has elapsed.
+     *
+     * @param periodMs specifies the status frame period in msec.
+     */
+    public void setPositionStatusPeriod(int periodMs)
+    {
+        setStatusPeriod(positionSignal, CANSparkMaxLowLevel.PeriodicFrame.kStatus2, periodMs);
+    }   //setPositionStatusPeriod
+
+    /**
+     * This method sets the status frame period of the velocity signal. The velocity is not read over CAN again
+     * before the period has elapsed.
+     *
+     * @param periodMs specifies the status frame period in msec.
+     */
+    public void setVelocityStatusPeriod(int periodMs)
+    {
+        setStatusPeriod(velocitySignal, CANSparkMaxLowLevel.PeriodicFrame.kStatus1, periodMs);
+    }   //setVelocityStatusPeriod
+
+    /**
+     * This method sets the status frame period of the applied power signal. The power is not read over CAN again
+     * before the period has elapsed.
+     *
+     * @param periodMs specifies the status frame period in msec.
+     */
+    public void setPowerStatusPeriod(int periodMs)
+    {
+        setStatusPeriod(powerSignal, CANSparkMaxLowLevel.PeriodicFrame.kStatus0, periodMs);
+    }   //setPowerStatusPeriod
+
+    /**
+     * This method sets the period of the status frame carrying a signal on the SparkMax and on the signal cache.
+     *
+     * @param signal specifies the cached signal.
+     * @param frame specifies the status frame carrying the signal.
+     * @param periodMs specifies the status frame period in msec.
+     */
+    private void setStatusPeriod(TrcCachedSignal signal, CANSparkMaxLowLevel.PeriodicFrame frame, int periodMs)
+    {
+        final String funcName = "setStatusPeriod";
+
+        if (debugEnabled)
+        {
+            dbgTrace.traceEnter(funcName, TrcDbgTrace.TraceLevel.API, "signal=%s,frame=%s,period=%d",
+                signal, frame, periodMs);
+            dbgTrace.traceExit(funcName, TrcDbgTrace.TraceLevel.API);
+        }
+
+        CANError error = motor.setPeriodicFramePeriod(frame, periodMs);
+        if (error != CANError.kOk)
+        {
+            TrcDbgTrace.getGlobalTracer().traceErr(
+                funcName, "setPeriodicFramePeriod() on SparkMax %d failed with error %s!", motor.getDeviceId(),
+                error.name());
+        }
+        signal.setPeriod(periodMs / 1000.0);
+    }   //setStatusPeriod
+
     /**
      * This method sets the motor controller to velocity mode with the specified maximum velocity.
      *
@@ -263,7 +338,7 @@ public class FrcCANSparkMax extends TrcMotor
             dbgTrace.traceEnter(funcName, TrcDbgTrace.TraceLevel.API);
         }
 
-        double currPos = encoder.getPosition() * encoderSign;
+        double currPos = positionSignal.get() * encoderSign;
 
         if (debugEnabled)
         {
@@ -289,7 +364,7 @@ public class FrcCANSparkMax extends TrcMotor
             dbgTrace.traceEnter(funcName, TrcDbgTrace.TraceLevel.API);
         }
 
-        double currVel = encoder.getVelocity() * encoderSign / 60.0;
+        double currVel = velocitySignal.get() * encoderSign / 60.0;
 
         if (debugEnabled)
         {
@@ -299,6 +374,32 @@ public class FrcCANSparkMax extends TrcMotor
         return currVel;
     }   //getMotorVelocity
 
+    /**
+     * This method returns the name of the bus the motor position and velocity are read over.
+     *
+     * @return name of the bus.
+     */
+    @Override
+    public String getOdometryBusName()
+    {
+        //
+        // The roboRIO has a single CAN bus, so all CAN motor controllers are read one after the other.
+        //
+        return "CAN";
+    }   //getOdometryBusName
+
+    /**
+     * This method returns the time the position last returned by getMotorPosition was read over CAN.
+     *
+     * @param callTime specifies the time getMotorPosition was called.
+     * @return time stamp of the position in seconds.
+     */
+    @Override
+    public double getMotorPositionTimestamp(double callTime)
+    {
+        return positionSignal.getTimestamp();
+    }   //getMotorPositionTimestamp
+
     /**
      * This method sets the raw motor power.
      *
@@ -380,7 +481,7 @@ public class FrcCANSparkMax extends TrcMotor
     public double getPower()
     {
         final String funcName = "getPower";
-        double power = motor.getAppliedOutput();
+        double power = powerSignal.get();
 
         if (debugEnabled)
         {
@@ -400,7 +501,7 @@ public class FrcCANSparkMax extends TrcMotor
     public double getVelocity()
     {
         final String funcName = "getVelocity";
-        double velocity = encoder.getVelocity() * encoderSign / 60.0;
+        double velocity = velocitySignal.get() * encoderSign / 60.0;
 
         if (debugEnabled)
         {
@@ -476,6 +577,7 @@ public class FrcCANSparkMax extends TrcMotor
                 TrcDbgTrace.getGlobalTracer().traceErr(funcName, "resetPosition() on SparkMax %d failed with error %s!", motor.getDeviceId(),
                     error.name());
             }
+            positionSignal.invalidate();
             zeroPosition = 0.0;
         }
         else
@@ -26,11 +26,15 @@ import org.opencv.core.Mat;
 import org.opencv.core.MatOfRect;
 import org.opencv.core.Rect;
 import org.opencv.core.Scalar;
+import org.opencv.imgproc.Imgproc;
 import org.opencv.objdetect.CascadeClassifier;
 
+import java.util.IdentityHashMap;
+
 import edu.wpi.cscore.CvSink;
 import edu.wpi.cscore.CvSource;
 import trclib.TrcDbgTrace;
+import trclib.TrcVisionTask;
 
 /**
  * This class implements an OpenCV face detector using the provided classifier.
@@ -38,9 +42,8 @@ import trclib.TrcDbgTrace;
 public class FrcFaceDetector extends FrcOpenCVDetector<MatOfRect>
 {
     private static final int NUM_IMAGE_BUFFERS = 2;
-    private static final int NUM_OBJECT_BUFFERS = 2;
 
-    private static volatile MatOfRect[] detectedFacesBuffers = new MatOfRect[NUM_OBJECT_BUFFERS];
+    private final IdentityHashMap<Mat, Mat> grayImages = new IdentityHashMap<>();
     private CascadeClassifier faceDetector;
     private volatile Rect[] faceRects = null;
     private volatile Mat currImage = null;
@@ -53,27 +56,72 @@ public class FrcFaceDetector extends FrcOpenCVDetector<MatOfRect>
      * @param classifierPath specifies the file path for the classifier.
      * @param videoIn specifies the video input stream.
      * @param videoOut specifies the video output stream.
+     * @param pipelined specifies true to run the processing stages on separate threads, false to run them serially.
      */
     public FrcFaceDetector(
-        final String instanceName, final String classifierPath, CvSink videoIn, CvSource videoOut)
+        final String instanceName, final String classifierPath, CvSink videoIn, CvSource videoOut,
+        boolean pipelined)
     {
-        super(instanceName, videoIn, videoOut, NUM_IMAGE_BUFFERS, detectedFacesBuffers);
-
-        //
-        // Preallocate two MatOfRects for ping pong processing.
-        //
-        for (int i = 0; i < detectedFacesBuffers.length; i++)
-        {
-            detectedFacesBuffers[i] = new MatOfRect();
-        }
+        super(instanceName, videoIn, videoOut, getNumImageBuffers(pipelined),
+              allocateFaceBuffers(getNumImageBuffers(pipelined)));
 
         faceDetector = new CascadeClassifier(classifierPath);
         if (faceDetector.empty())
         {
             throw new RuntimeException("Failed to load Cascade Classifier <" + classifierPath + ">");
         }
+
+        if (pipelined)
+        {
+            setPipelined(true);
+        }
     }   //FrcFaceDetector
 
+    /**
+     * Constructor: Create an instance of the object.
+     *
+     * @param instanceName specifies the instance name.
+     * @param classifierPath specifies the file path for the classifier.
+     * @param videoIn specifies the video input stream.
+     * @param videoOut specifies the video output stream.
+     */
+    public FrcFaceDetector(
+        final String instanceName, final String classifierPath, CvSink videoIn, CvSource videoOut)
+    {
+        this(instanceName, classifierPath, videoIn, videoOut, false);
+    }   //FrcFaceDetector
+
+    /**
+     * This method returns the number of image buffers to allocate. Serial processing ping pongs between two buffers,
+     * pipelined processing needs one for every stage and queue slot.
+     *
+     * @param pipelined specifies true for pipelined processing, false for serial.
+     * @return number of image buffers.
+     */
+    private static int getNumImageBuffers(boolean pipelined)
+    {
+        return pipelined? Math.max(NUM_IMAGE_BUFFERS, TrcVisionTask.MIN_PIPELINED_IMAGE_BUFFERS): NUM_IMAGE_BUFFERS;
+    }   //getNumImageBuffers
+
+    /**
+     * This method preallocates the detected faces buffers, one for each image buffer so that the faces travel with
+     * their frame in pipelined mode.
+     *
+     * @param numBuffers specifies the number of buffers.
+     * @return detected faces buffers.
+     */
+    private static MatOfRect[] allocateFaceBuffers(int numBuffers)
+    {
+        MatOfRect[] buffers = new MatOfRect[numBuffers];
+
+        for (int i = 0; i < buffers.length; i++)
+        {
+            buffers[i] = new MatOfRect();
+        }
+
+        return buffers;
+    }   //allocateFaceBuffers
+
     /**
      * This method returns an array of rectangles of last detected faces.
      *
@@ -135,6 +183,31 @@ public class FrcFaceDetector extends FrcOpenCVDetector<MatOfRect>
         videoOutEnabled = enabled;
     }   //setVideoOutEnabled
 
+    /**
+     * This method is called to prepare the acquired image for the face search. The classifier works on gray scale
+     * images, so the color conversion is done here in the preprocess stage instead of inside the detection.
+     *
+     * @param image specifies the acquired image.
+     * @return gray scale image to search.
+     */
+    @Override
+    protected Mat prepareImage(Mat image)
+    {
+        Mat grayImage;
+
+        synchronized (grayImages)
+        {
+            grayImage = grayImages.computeIfAbsent(image, k -> new Mat());
+        }
+
+        synchronized (image)
+        {
+            Imgproc.cvtColor(image, grayImage, Imgproc.COLOR_BGR2GRAY);
+        }
+
+        return grayImage;
+    }   //prepareImage
+
     //
     // Implements the TrcVisionTask.VisionProcesor interface.
     //
@@ -157,24 +230,25 @@ public class FrcFaceDetector extends FrcOpenCVDetector<MatOfRect>
                 image.toString(), detectedObjects.toString());
         }
 
-        faceDetector.detectMultiScale(image, detectedObjects);
+        Mat searchImage = getSearchImage(image);
+        faceDetector.detectMultiScale(searchImage, detectedObjects);
         if (!detectedObjects.empty())
         {
-            faceRects = detectedObjects.toArray();
+            Rect[] rects = detectedObjects.toArray();
+            if (endSearch(image, rects))
+            {
+                // The faces were found in a window, report them in full image coordinates.
+                detectedObjects.fromArray(rects);
+            }
+            faceRects = rects;
         }
         else
         {
+            endSearch(image, null);
             faceRects = null;
             detectedObjects = null;
         }
 
-        if (videoOutEnabled)
-        {
-            putFrame();
-        }
-
-        currImage = image;
-
         if (debugEnabled)
         {
             dbgTrace.traceExit(funcName, TrcDbgTrace.TraceLevel.CALLBK, "=%s",
@@ -184,4 +258,25 @@ public class FrcFaceDetector extends FrcOpenCVDetector<MatOfRect>
         return detectedObjects;
     }   //detectedObjects
 
+    /**
+     * This method is called to publish the detected faces. It renders the image with the detected faces to the video
+     * output if enabled.
+     *
+     * @param image specifies the processed image.
+     * @param detectedObjects specifies the object rectangle array of the detected faces, null if none detected.
+     */
+    @Override
+    public void publishObjects(Mat image, MatOfRect detectedObjects)
+    {
+        currImage = image;
+
+        if (videoOutEnabled)
+        {
+            //
+            // In pipelined mode, faceRects may already belong to a later frame, so draw the faces of this frame.
+            //
+            super.putFrame(image, detectedObjects != null? detectedObjects.toArray(): null, new Scalar(0, 255, 0), 0);
+        }
+    }   //publishObjects
+
 }   //class FrcFaceDetector
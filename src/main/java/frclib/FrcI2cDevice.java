@@ -99,6 +99,34 @@ public class FrcI2cDevice extends TrcSerialBusDevice
         return buffer;
     }   //readData
 
+    /**
+     * This method is called to read data from the device synchronously into the given buffer.
+     *
+     * @param address specifies the I2C register address to read from if any, can be -1 if no address is required.
+     * @param buffer specifies the buffer to receive the data, must be at least length bytes long.
+     * @param length specifies the number of bytes to read.
+     * @return true if the data was read, false otherwise.
+     */
+    @Override
+    public boolean readData(int address, byte[] buffer, int length)
+    {
+        final String funcName = "readData";
+
+        if (debugEnabled)
+        {
+            dbgTrace.traceEnter(funcName, TrcDbgTrace.TraceLevel.CALLBK, "addr=%d,len=%d", address, length);
+        }
+
+        boolean success = !(address == -1 ? device.readOnly(buffer, length) : device.read(address, length, buffer));
+
+        if (debugEnabled)
+        {
+            dbgTrace.traceExit(funcName, TrcDbgTrace.TraceLevel.CALLBK, "=%s", success);
+        }
+
+        return success;
+    }   //readData
+
     /**
      * This method is called to write data to the device with the specified data buffer and length.
      *
@@ -31,6 +31,8 @@ import org.opencv.core.Scalar;
 import org.opencv.imgproc.Imgproc;
 
 import trclib.TrcDbgTrace;
+import trclib.TrcRoiSearch;
+import trclib.TrcRoiTracker;
 import trclib.TrcVisionTask;
 
 /**
@@ -53,6 +55,7 @@ public abstract class FrcOpenCVDetector<O> implements TrcVisionTask.VisionProces
     private CvSink videoIn;
     private CvSource videoOut;
     private TrcVisionTask<Mat, O> visionTask;
+    private final TrcRoiSearch roiSearch;
 
     /**
      * Constructor: Create an instance of the object.
@@ -76,6 +79,7 @@ public abstract class FrcOpenCVDetector<O> implements TrcVisionTask.VisionProces
         this.instanceName = instanceName;
         this.videoIn = videoIn;
         this.videoOut = videoOut;
+        roiSearch = new TrcRoiSearch(instanceName);
         //
         // Pre-allocate the image buffers.
         //
@@ -139,6 +143,106 @@ public abstract class FrcOpenCVDetector<O> implements TrcVisionTask.VisionProces
         }
     }   //setEnabled
 
+    /**
+     * This method selects between serial and pipelined processing of the vision task. In pipelined mode, grabbing,
+     * preprocessing, detection and publishing of different frames run at the same time on separate threads. It can
+     * only be changed while the detector is disabled, and pipelined mode requires the detector to be created with at
+     * least TrcVisionTask.MIN_PIPELINED_IMAGE_BUFFERS image buffers.
+     *
+     * @param pipelined specifies true to run the processing stages on separate threads, false to run them serially.
+     */
+    public void setPipelined(boolean pipelined)
+    {
+        final String funcName = "setPipelined";
+
+        if (debugEnabled)
+        {
+            dbgTrace.traceEnter(funcName, TrcDbgTrace.TraceLevel.API, "pipelined=%s", Boolean.toString(pipelined));
+        }
+
+        visionTask.setPipelined(pipelined);
+
+        if (debugEnabled)
+        {
+            dbgTrace.traceExit(funcName, TrcDbgTrace.TraceLevel.API);
+        }
+    }   //setPipelined
+
+    /**
+     * This method sets the region of interest tracker. With a tracker, subclasses that search the image returned by
+     * getSearchImage only search a window around the objects detected in the previous frames.
+     *
+     * @param roiTracker specifies the region of interest tracker, null to always search the full frame.
+     */
+    public void setRoiTracker(TrcRoiTracker roiTracker)
+    {
+        roiSearch.setRoiTracker(roiTracker);
+    }   //setRoiTracker
+
+    /**
+     * This method returns the region of interest tracker.
+     *
+     * @return region of interest tracker, null if none is set.
+     */
+    public TrcRoiTracker getRoiTracker()
+    {
+        return roiSearch.getRoiTracker();
+    }   //getRoiTracker
+
+    /**
+     * This method is called by preprocessFrame to prepare the acquired image for the search, for example to convert
+     * its color space. The default implementation searches the acquired image as is. A subclass that converts the
+     * image must keep a separate output buffer for each image buffer since frames are prepared while earlier frames
+     * are still being searched in pipelined mode.
+     *
+     * @param image specifies the acquired image.
+     * @return image to search.
+     */
+    protected Mat prepareImage(Mat image)
+    {
+        return image;
+    }   //prepareImage
+
+    /**
+     * This method is called by a subclass in detectObjects to get the part of the image to search for objects,
+     * prepared by preprocessFrame. If a region of interest tracker is set and is tracking objects, it is a
+     * sub-matrix sharing the pixels of the window around the predicted position of the objects, otherwise it is the
+     * full prepared image. The subclass must pass the detected objects to endSearch after searching.
+     *
+     * @param image specifies the acquired image.
+     * @return image to search.
+     */
+    protected Mat getSearchImage(Mat image)
+    {
+        Mat searchImage = roiSearch.getSearchImage(image);
+
+        if (searchImage == null)
+        {
+            //
+            // The frame was not preprocessed, a subclass overriding preprocessFrame did not call it.
+            //
+            preprocessFrame(image);
+            searchImage = roiSearch.getSearchImage(image);
+        }
+
+        return searchImage;
+    }   //getSearchImage
+
+    /**
+     * This method is called by a subclass in detectObjects after searching the image returned by getSearchImage. It
+     * translates the rectangles of the detected objects in place from window to full image coordinates and updates
+     * the region of interest tracker with them.
+     *
+     * @param image specifies the acquired image.
+     * @param objectRects specifies the rectangles of the detected objects in search image coordinates, null if none
+     *                    detected.
+     * @return true if the rectangles were moved because the window is offset in the image, false otherwise.
+     */
+    protected boolean endSearch(Mat image, Rect[] objectRects)
+    {
+        return roiSearch.endSearch(image, objectRects);
+    }   //endSearch
+
     /**
      * This method is called to render an image to the video output and overlay detected objects on top of it.
      *
@@ -193,4 +297,33 @@ public abstract class FrcOpenCVDetector<O> implements TrcVisionTask.VisionProces
         return success;
     }   //grabFrame
 
+    /**
+     * This method is called to prepare the acquired image frame for object detection. It prepares the image with
+     * prepareImage and, if a region of interest tracker is tracking objects, extracts the window around their
+     * predicted position for detectObjects to search. In pipelined mode, the window of a frame is predicted before
+     * the objects in the previous frame have been detected.
+     *
+     * @param image specifies the image to be prepared.
+     * @return true to pass the frame on to detection.
+     */
+    @Override
+    public boolean preprocessFrame(Mat image)
+    {
+        roiSearch.beginSearch(image, prepareImage(image));
+
+        return true;
+    }   //preprocessFrame
+
+    /**
+     * This method is called for a frame that is dropped in pipelined mode. If the frame was prepared for a search
+     * that never ran, it skips the frame in the region of interest tracker and frees the search window.
+     *
+     * @param image specifies the dropped image.
+     */
+    @Override
+    public void discardFrame(Mat image)
+    {
+        roiSearch.discardSearch(image);
+    }   //discardFrame
+
 }   //class FrcOpenCVDetector
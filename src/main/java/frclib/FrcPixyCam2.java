@@ -30,6 +30,7 @@ import edu.wpi.first.wpilibj.SerialPort;
 import trclib.TrcDbgTrace;
 import trclib.TrcSerialBusDevice;
 import trclib.TrcPixyCam2;
+import trclib.TrcUtil;
 
 /**
  * This class implements a platform dependent pixy camera 2 that is either connected to an I2C bus, SPI or a
@@ -45,8 +46,11 @@ public class FrcPixyCam2 extends TrcPixyCam2
     public static final int DEF_DATA_BITS = 8;
     public static final SerialPort.Parity DEF_PARITY = SerialPort.Parity.kNone;
     public static final SerialPort.StopBits DEF_STOP_BITS = SerialPort.StopBits.kOne;
+    public static final double DEF_STREAM_TIMEOUT = 0.1;    // in seconds
 
     private final TrcSerialBusDevice pixyCam;
+    private final boolean streaming;
+    private final byte[] readBuffer = new byte[PIXY2_MAX_PACKET_LENGTH];
 
     /**
      * Constructor: Create an instance of the object.
@@ -64,6 +68,7 @@ public class FrcPixyCam2 extends TrcPixyCam2
         spi.setChipSelectActiveLow();
 
         pixyCam = new FrcSpiDevice(instanceName, spi, false);
+        streaming = false;
     }   //FrcPixyCam2
 
     /**
@@ -83,6 +88,7 @@ public class FrcPixyCam2 extends TrcPixyCam2
         }
 
         pixyCam = new FrcI2cDevice(instanceName, port, devAddress, false);
+        streaming = false;
     }   //FrcPixyCam2
 
     /**
@@ -118,6 +124,10 @@ public class FrcPixyCam2 extends TrcPixyCam2
         }
 
         pixyCam = new FrcSerialPortDevice(instanceName, port, baudRate, dataBits, parity, stopBits, false);
+        //
+        // The serial port is a byte stream, the response is parsed as the bytes arrive.
+        //
+        streaming = true;
     }   //FrcPixyCam2
 
     /**
@@ -184,6 +194,90 @@ public class FrcPixyCam2 extends TrcPixyCam2
         }
     }   //setEnabled
 
+    //
+    // Overrides TrcPixyCam2 methods.
+    //
+
+    /**
+     * This method reads a response packet into the packet receiver without allocating a packet. On I2C and SPI, the
+     * header and then the payload are read into a reused buffer. On the serial port, whatever bytes have been
+     * received are fed to the receiver as they arrive until the packet is complete or DEF_STREAM_TIMEOUT expires.
+     *
+     * @param receiver specifies the packet receiver to feed, it has been reset.
+     * @return true if a complete and valid packet has been received, false otherwise.
+     */
+    @Override
+    protected boolean readResponse(PacketReceiver receiver)
+    {
+        final String funcName = "readResponse";
+
+        if (!pixyCam.isEnabled())
+        {
+            throw new RuntimeException("Device is not enabled, must call setEnabled first.");
+        }
+
+        if (streaming)
+        {
+            double expiredTime = TrcUtil.getCurrentTime() + DEF_STREAM_TIMEOUT;
+
+            while (!receiver.isComplete() && TrcUtil.getCurrentTime() < expiredTime)
+            {
+                byte[] data = pixyCam.readData(-1, 0);
+
+                if (data != null && data.length > 0)
+                {
+                    receiver.feed(data, 0, data.length);
+                }
+                else
+                {
+                    Thread.yield();
+                }
+            }
+        }
+        else if (pixyCam.readData(-1, readBuffer, PIXY2_HEADER_LENGTH))
+        {
+            receiver.feed(readBuffer, 0, PIXY2_HEADER_LENGTH);
+            int payloadLength = receiver.getPayloadLength();
+
+            if (payloadLength > 0 && pixyCam.readData(-1, readBuffer, payloadLength))
+            {
+                receiver.feed(readBuffer, 0, payloadLength);
+            }
+        }
+
+        if (debugEnabled)
+        {
+            dbgTrace.traceInfo(funcName, "complete=%s, dropped=%d, checksumErrors=%d", receiver.isComplete(),
+                receiver.getDroppedByteCount(), receiver.getChecksumErrorCount());
+        }
+
+        return receiver.isComplete();
+    }   //readResponse
+
+    /**
+     * This method writes the request packet from the request buffer, without copying it.
+     *
+     * @param request specifies the buffer holding the request packet.
+     * @param length specifies the length of the request packet.
+     */
+    @Override
+    protected void writeRequest(byte[] request, int length)
+    {
+        final String funcName = "writeRequest";
+
+        if (debugEnabled)
+        {
+            dbgTrace.traceEnter(funcName, TrcDbgTrace.TraceLevel.API, "length=%d", length);
+        }
+
+        pixyCam.syncWrite(-1, request, length);
+
+        if (debugEnabled)
+        {
+            dbgTrace.traceExit(funcName, TrcDbgTrace.TraceLevel.API);
+        }
+    }   //writeRequest
+
     //
     // Implements TrcPixyCam2 abstract methods.
     //
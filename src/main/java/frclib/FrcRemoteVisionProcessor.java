@@ -29,21 +29,27 @@ import edu.wpi.first.networktables.NetworkTableValue;
 import edu.wpi.first.wpilibj.Relay;
 import trclib.TrcDbgTrace;
 import trclib.TrcRobot;
+import trclib.TrcSampleRingBuffer;
 import trclib.TrcTaskMgr;
 import trclib.TrcUtil;
 
-import java.util.LinkedList;
-import java.util.List;
-import java.util.stream.Collectors;
-
 public abstract class FrcRemoteVisionProcessor
 {
+    // Field indices of the frame buffer.
+    private static final int FIELD_X = 0;
+    private static final int FIELD_Y = 1;
+    private static final int FIELD_R = 2;
+    private static final int FIELD_THETA = 3;
+    private static final int FIELD_OBJECT_YAW = 4;
+    private static final int NUM_FIELDS = 5;
+
     private final String instanceName;
 
     private volatile RelativePose relativePose = null;
     protected NetworkTable networkTable;
     private int maxCachedFrames = 10; // the last 10 frames
-    private List<RelativePose> frames = new LinkedList<>();
+    private TrcSampleRingBuffer frames = new TrcSampleRingBuffer(maxCachedFrames, NUM_FIELDS);
+    private final double[] frameSample = new double[NUM_FIELDS];
     private final Object framesLock = new Object();
     private Relay ringLight;
     private double timeout = 0.0;
@@ -140,11 +146,7 @@ public abstract class FrcRemoteVisionProcessor
             this.relativePose = null;
             synchronized (framesLock)
             {
-                // Clear the frames list if it is not empty
-                if (!frames.isEmpty())
-                {
-                    frames.clear();
-                }
+                frames.clear();
             }
         }
         else
@@ -156,12 +158,15 @@ public abstract class FrcRemoteVisionProcessor
             this.relativePose = relativePose;
             synchronized (framesLock)
             {
-                // Add the latest pose
-                frames.add(relativePose);
-                // Trim the list so only the last few are kept
-                while (frames.size() > maxCachedFrames)
+                // Add the latest pose, the ring buffer evicts the oldest frame when it is full.
+                if (maxCachedFrames > 0)
                 {
-                    frames.remove(0);
+                    frameSample[FIELD_X] = relativePose.x;
+                    frameSample[FIELD_Y] = relativePose.y;
+                    frameSample[FIELD_R] = relativePose.r;
+                    frameSample[FIELD_THETA] = relativePose.theta;
+                    frameSample[FIELD_OBJECT_YAW] = relativePose.objectYaw;
+                    frames.add(relativePose.time, frameSample);
                 }
             }
         }
@@ -172,6 +177,32 @@ public abstract class FrcRemoteVisionProcessor
         return pose != null && (timeout == 0.0 || TrcUtil.getCurrentTime() - pose.time <= timeout);
     }
 
+    /**
+     * Get the number of the most recent frames that are fresh, limited to numFrames. If no frame is fresh, all frames
+     * are cleared. Must be called with framesLock held.
+     *
+     * @param numFrames  How many frames to use at most.
+     * @param requireAll If true, require at least numFrames frames.
+     * @return Number of fresh frames to use, 0 if not enough frames or all frames are stale.
+     */
+    private int getFreshWindowSize(int numFrames, boolean requireAll)
+    {
+        int windowSize = 0;
+
+        if (!(requireAll && frames.size() < numFrames) && !frames.isEmpty())
+        {
+            windowSize = frames.getWindowSize(
+                numFrames, timeout == 0.0 ? Double.NaN : TrcUtil.getCurrentTime() - timeout);
+            // If no fresh data, clear all
+            if (windowSize == 0)
+            {
+                frames.clear();
+            }
+        }
+
+        return windowSize;
+    }
+
     public double get(String key)
     {
         return networkTable.getEntry(key).getDouble(0.0);
@@ -212,40 +243,20 @@ public abstract class FrcRemoteVisionProcessor
      */
     public RelativePose getAveragePose(int numFrames, boolean requireAll)
     {
-        RelativePose average = new RelativePose();
+        RelativePose average = null;
         synchronized (framesLock)
         {
-            if ((requireAll && frames.size() < numFrames) || frames.isEmpty())
-            {
-                return null;
-            }
-            int fromIndex = Math.max(0, frames.size() - numFrames);
-            List<RelativePose> poses = frames.subList(fromIndex, frames.size());
-            int numFreshFrames = 0;
-            for (RelativePose pose : poses)
-            {
-                // Only use data if it's fresh
-                if (isFresh(pose))
-                {
-                    average.objectYaw += pose.objectYaw;
-                    average.r += pose.r;
-                    average.theta += pose.theta;
-                    average.x += pose.x;
-                    average.y += pose.y;
-                    numFreshFrames++;
-                }
-            }
-            // If no fresh data, clear all and return null
-            if (numFreshFrames == 0)
+            int windowSize = getFreshWindowSize(numFrames, requireAll);
+            if (windowSize > 0)
             {
-                frames.clear();
-                return null;
+                // Only fresh data is used, the running sums of the frame buffer make each mean O(1).
+                average = new RelativePose();
+                average.x = frames.getMean(FIELD_X, windowSize);
+                average.y = frames.getMean(FIELD_Y, windowSize);
+                average.r = frames.getMean(FIELD_R, windowSize);
+                average.theta = frames.getMean(FIELD_THETA, windowSize);
+                average.objectYaw = frames.getMean(FIELD_OBJECT_YAW, windowSize);
             }
-            average.objectYaw /= (double) numFreshFrames;
-            average.r /= (double) numFreshFrames;
-            average.theta /= (double) numFreshFrames;
-            average.x /= (double) numFreshFrames;
-            average.y /= (double) numFreshFrames;
         }
         return average;
     }
@@ -255,31 +266,24 @@ public abstract class FrcRemoteVisionProcessor
      *
      * @param numFrames  How many frames to calculate with.
      * @param requireAll If true, require at least numFrames frames.
-     * @return Median of last numFrames frames, or null if not enough frames and requireAll is true, or if all data is stale.
+     * @return Median of last numFrames frames, or null if not enough frames and requireAll is true, or if all data is
+     *         stale.
      */
     public RelativePose getMedianPose(int numFrames, boolean requireAll)
     {
-        RelativePose median = new RelativePose();
+        RelativePose median = null;
         synchronized (framesLock)
         {
-            if ((requireAll && frames.size() < numFrames) || frames.isEmpty())
-            {
-                return null;
-            }
-            int fromIndex = Math.max(0, frames.size() - numFrames);
-            List<RelativePose> poses = frames.subList(fromIndex, frames.size());
-            poses = poses.stream().filter(this::isFresh).collect(Collectors.toList());
-            if (poses.isEmpty())
+            int windowSize = getFreshWindowSize(numFrames, requireAll);
+            if (windowSize > 0)
             {
-                frames.clear();
-                return null;
+                median = new RelativePose();
+                median.x = frames.getMedian(FIELD_X, windowSize);
+                median.y = frames.getMedian(FIELD_Y, windowSize);
+                median.r = frames.getMedian(FIELD_R, windowSize);
+                median.theta = frames.getMedian(FIELD_THETA, windowSize);
+                median.objectYaw = frames.getMedian(FIELD_OBJECT_YAW, windowSize);
             }
-
-            median.x = TrcUtil.median(frames.stream().mapToDouble(e -> e.x).toArray());
-            median.y = TrcUtil.median(frames.stream().mapToDouble(e -> e.y).toArray());
-            median.r = TrcUtil.median(frames.stream().mapToDouble(e -> e.r).toArray());
-            median.theta = TrcUtil.median(frames.stream().mapToDouble(e -> e.theta).toArray());
-            median.objectYaw = TrcUtil.median(frames.stream().mapToDouble(e -> e.objectYaw).toArray());
         }
         return median;
     }
@@ -295,7 +299,11 @@ public abstract class FrcRemoteVisionProcessor
         {
             throw new IllegalArgumentException("numFrames must be >= 0!");
         }
-        this.maxCachedFrames = numFrames;
+        synchronized (framesLock)
+        {
+            this.maxCachedFrames = numFrames;
+            frames = new TrcSampleRingBuffer(Math.max(numFrames, 1), NUM_FIELDS);
+        }
     }
 
     /**
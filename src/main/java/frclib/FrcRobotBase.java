@@ -33,6 +33,7 @@ import edu.wpi.first.wpilibj.livewindow.LiveWindow;
 import edu.wpi.first.wpilibj.smartdashboard.SmartDashboard;
 import hallib.HalDashboard;
 import hallib.HalDbgLog;
+import trclib.TrcCachedSignal;
 import trclib.TrcDbgTrace;
 import trclib.TrcRobot;
 import trclib.TrcRobot.*;
@@ -85,7 +86,7 @@ public abstract class FrcRobotBase extends RobotBase
     private HalDashboard dashboard = new HalDashboard();
 
     private static FrcRobotBase instance = null;
-    private static long loopCounter = 0;
+    private static volatile long loopCounter = 0;
 
     private final String progName;
     private RobotMode teleOpMode = null;
@@ -217,6 +218,11 @@ public abstract class FrcRobotBase extends RobotBase
             double timeSliceStart = TrcUtil.getCurrentTime();
             double startTime, elapsedTime;
 
+            //
+            // A new loop invalidates all signals cached by this thread for the previous one.
+            //
+            loopCounter++;
+            TrcCachedSignal.startPass();
             prevMode = currMode;
             //
             // Determine the current run mode.
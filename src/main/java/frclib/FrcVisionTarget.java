@@ -29,6 +29,7 @@ import org.opencv.core.Scalar;
 import edu.wpi.cscore.CvSink;
 import edu.wpi.cscore.CvSource;
 import trclib.TrcDbgTrace;
+import trclib.TrcVisionTask;
 
 /**
  * This class implements a Vision Targeting system that uses OpenCV. It uses a separate vision thread and will take
@@ -38,7 +39,9 @@ import trclib.TrcDbgTrace;
 public abstract class FrcVisionTarget extends FrcOpenCVDetector<Rect[]>
 {
     /**
-     * This method is called to process an image for detecting objects.
+     * This method is called to process an image for detecting objects. If a region of interest tracker is set, the
+     * image may only be a window of the acquired image, the detected object rectangles are translated to full image
+     * coordinates after processing.
      *
      * @param image specifies the image to be processed.
      */
@@ -57,6 +60,30 @@ public abstract class FrcVisionTarget extends FrcOpenCVDetector<Rect[]>
     private volatile Mat currImage = null;
     private boolean videoOutEnabled = false;
 
+    /**
+     * Constructor: Create an instance of the object.
+     *
+     * @param instanceName specifies the instance name.
+     * @param videoIn specifies the video input stream.
+     * @param videoOut specifies the video output stream.
+     * @param pipelined specifies true to run the processing stages on separate threads, false to run them serially.
+     */
+    public FrcVisionTarget(final String instanceName, CvSink videoIn, CvSource videoOut, boolean pipelined)
+    {
+        //
+        // Serial processing ping pongs between two image buffers, pipelined processing needs one for every stage
+        // and queue slot.
+        //
+        super(instanceName, videoIn, videoOut,
+              pipelined? Math.max(NUM_IMAGE_BUFFERS, TrcVisionTask.MIN_PIPELINED_IMAGE_BUFFERS): NUM_IMAGE_BUFFERS,
+              null);
+
+        if (pipelined)
+        {
+            setPipelined(true);
+        }
+    }   //FrcVisionTarget
+
     /**
      * Constructor: Create an instance of the object.
      *
@@ -66,7 +93,7 @@ public abstract class FrcVisionTarget extends FrcOpenCVDetector<Rect[]>
      */
     public FrcVisionTarget(final String instanceName, CvSink videoIn, CvSource videoOut)
     {
-        super(instanceName, videoIn, videoOut, NUM_IMAGE_BUFFERS, null);
+        this(instanceName, videoIn, videoOut, false);
     }   //FrcVisionTarget
 
     /**
@@ -145,9 +172,13 @@ public abstract class FrcVisionTarget extends FrcOpenCVDetector<Rect[]>
     {
         //
         // Process the image to detect the objects we are looking for and put them into detectedObjects.
+        // Only the window around the last detections is processed if a region of interest tracker is set.
         //
-        processImage(image);
-        objectRects = getDetectedObjectRects();
+        Mat searchImage = getSearchImage(image);
+        processImage(searchImage);
+        Rect[] rects = getDetectedObjectRects();
+        endSearch(image, rects);
+        objectRects = rects;
 
         if (videoOutEnabled)
         {
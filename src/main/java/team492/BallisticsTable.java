@@ -0,0 +1,315 @@
+package team492;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.DoubleBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardOpenOption;
+import java.util.Locale;
+import java.util.Random;
+
+import org.apache.commons.math3.linear.RealVector;
+import trclib.TrcDbgTrace;
+import trclib.TrcUtil;
+
+/**
+ * Dense lookup table of the arm shooter ballistics. Each grid point holds the flywheel velocity and pitch returned by
+ * TrajectoryCalculator.calculateWithArmWithDrag for a vertex position relative to the arm pivot. Queries use bilinear
+ * interpolation of the four surrounding grid points, so a lookup costs a few multiplications and never allocates,
+ * unlike the iterative solver whose iteration count depends on the target.
+ *
+ * The table is generated at startup, or memory mapped from a deploy file generated with
+ * "BallisticsTable generate src/main/deploy/ballistics.bin". The file is only used if its grid matches the grid
+ * compiled into this class.
+ */
+public class BallisticsTable
+{
+    private static final long FILE_MAGIC = 0x42414c4c49535431L;    // "BALLIST1"
+    private static final int HEADER_SIZE = Long.BYTES + 2*Integer.BYTES + 4*Double.BYTES;
+    // Grid of the vertex position from the pivot in inches. Y is the horizontal distance, Z is the height.
+    public static final double MIN_Y = 20.0;
+    public static final double Y_STEP = 4.0;
+    public static final int NUM_Y = 136;                            // up to 560 inches
+    public static final double MIN_Z = 40.0;
+    public static final double Z_STEP = 4.0;
+    public static final int NUM_Z = 21;                             // up to 120 inches
+
+    private static BallisticsTable instance = null;
+
+    private final double minY, yStep, minZ, zStep;
+    private final int numY, numZ;
+    // Interleaved velocity and pitch of each grid point, row major by Z. NaN if the solver did not converge.
+    private final DoubleBuffer table;
+
+    /**
+     * Returns the table, generating it if initialize was not called.
+     *
+     * @return Ballistics table.
+     */
+    public static synchronized BallisticsTable getInstance()
+    {
+        if (instance == null)
+        {
+            instance = new BallisticsTable(MIN_Y, Y_STEP, NUM_Y, MIN_Z, Z_STEP, NUM_Z);
+        }
+        return instance;
+    }   //getInstance
+
+    /**
+     * Loads the table from the deploy file, or generates it if the file does not exist or does not match the grid.
+     * This should be called at robot init so the table is never generated in the control loop.
+     *
+     * @param deployFile Path of the table file.
+     */
+    public static synchronized void initialize(Path deployFile)
+    {
+        if (instance == null)
+        {
+            if (Files.exists(deployFile))
+            {
+                try
+                {
+                    instance = load(deployFile);
+                }
+                catch (IOException e)
+                {
+                    TrcDbgTrace.getGlobalTracer().traceWarn(
+                        "initialize", "Failed to load %s (%s), generating table.", deployFile, e.getMessage());
+                }
+            }
+            getInstance();
+        }
+    }   //initialize
+
+    /**
+     * Generates the table with the given grid.
+     *
+     * @param minY Horizontal distance of the first grid column in inches.
+     * @param yStep Grid spacing of the horizontal distance in inches.
+     * @param numY Number of grid columns.
+     * @param minZ Height of the first grid row in inches.
+     * @param zStep Grid spacing of the height in inches.
+     * @param numZ Number of grid rows.
+     */
+    public BallisticsTable(double minY, double yStep, int numY, double minZ, double zStep, int numZ)
+    {
+        this(minY, yStep, numY, minZ, zStep, numZ, DoubleBuffer.allocate(2*numY*numZ));
+
+        for (int iz = 0; iz < numZ; iz++)
+        {
+            for (int iy = 0; iy < numY; iy++)
+            {
+                RealVector traj = TrajectoryCalculator.calculateWithArmWithDrag(
+                    TrcUtil.createVector(minY + iy*yStep, minZ + iz*zStep));
+                int index = 2*(iz*numY + iy);
+                table.put(index, traj != null ? traj.getEntry(0) : Double.NaN);
+                table.put(index + 1, traj != null ? traj.getEntry(1) : Double.NaN);
+            }
+        }
+    }   //BallisticsTable
+
+    private BallisticsTable(
+        double minY, double yStep, int numY, double minZ, double zStep, int numZ, DoubleBuffer table)
+    {
+        if (numY < 2 || numZ < 2)
+        {
+            throw new IllegalArgumentException("Grid must have at least 2x2 points.");
+        }
+        this.minY = minY;
+        this.yStep = yStep;
+        this.numY = numY;
+        this.minZ = minZ;
+        this.zStep = zStep;
+        this.numZ = numZ;
+        this.table = table;
+    }   //BallisticsTable
+
+    /**
+     * Memory maps a table file written by save. The grid must match the compiled in grid.
+     *
+     * @param file Path of the table file.
+     * @return Ballistics table backed by the file.
+     * @throws IOException if the file cannot be read or does not match the grid.
+     */
+    public static BallisticsTable load(Path file) throws IOException
+    {
+        try (FileChannel channel = FileChannel.open(file, StandardOpenOption.READ))
+        {
+            ByteBuffer buffer = channel.map(FileChannel.MapMode.READ_ONLY, 0, channel.size());
+            buffer.order(ByteOrder.LITTLE_ENDIAN);
+            if (buffer.remaining() < HEADER_SIZE || buffer.getLong() != FILE_MAGIC)
+            {
+                throw new IOException("Not a ballistics table file.");
+            }
+
+            int numY = buffer.getInt();
+            int numZ = buffer.getInt();
+            double minY = buffer.getDouble();
+            double yStep = buffer.getDouble();
+            double minZ = buffer.getDouble();
+            double zStep = buffer.getDouble();
+            if (numY != NUM_Y || numZ != NUM_Z || minY != MIN_Y || yStep != Y_STEP || minZ != MIN_Z ||
+                zStep != Z_STEP)
+            {
+                throw new IOException("Ballistics table grid does not match.");
+            }
+            else if (buffer.remaining() != 2*numY*numZ*Double.BYTES)
+            {
+                throw new IOException("Ballistics table file is truncated.");
+            }
+
+            return new BallisticsTable(minY, yStep, numY, minZ, zStep, numZ, buffer.slice()
+                .order(ByteOrder.LITTLE_ENDIAN).asDoubleBuffer());
+        }
+    }   //load
+
+    /**
+     * Writes the table to a file that can be memory mapped by load.
+     *
+     * @param file Path of the table file.
+     * @throws IOException if the file cannot be written.
+     */
+    public void save(Path file) throws IOException
+    {
+        ByteBuffer buffer = ByteBuffer.allocate(HEADER_SIZE + table.capacity()*Double.BYTES);
+        buffer.order(ByteOrder.LITTLE_ENDIAN);
+        buffer.putLong(FILE_MAGIC).putInt(numY).putInt(numZ);
+        buffer.putDouble(minY).putDouble(yStep).putDouble(minZ).putDouble(zStep);
+        for (int i = 0; i < table.capacity(); i++)
+        {
+            buffer.putDouble(table.get(i));
+        }
+        buffer.flip();
+
+        try (FileChannel channel = FileChannel.open(
+            file, StandardOpenOption.CREATE, StandardOpenOption.WRITE, StandardOpenOption.TRUNCATE_EXISTING))
+        {
+            while (buffer.hasRemaining())
+            {
+                channel.write(buffer);
+            }
+        }
+    }   //save
+
+    /**
+     * Looks up the trajectory to place the vertex at the given point.
+     *
+     * @param y The horizontal distance of the vertex from the pivot in inches.
+     * @param z The height of the vertex from the pivot in inches.
+     * @param out Array of at least 2 elements receiving the velocity and the pitch in degrees.
+     * @return true if the point is in the table and the solver converged around it, false otherwise.
+     */
+    public boolean lookup(double y, double z, double[] out)
+    {
+        double fy = (y - minY) / yStep;
+        double fz = (z - minZ) / zStep;
+        boolean found = false;
+
+        if (fy >= 0.0 && fy <= numY - 1 && fz >= 0.0 && fz <= numZ - 1)
+        {
+            int iy = Math.min((int) fy, numY - 2);
+            int iz = Math.min((int) fz, numZ - 2);
+            double wy = fy - iy;
+            double wz = fz - iz;
+            int i00 = 2*(iz*numY + iy);
+            int i10 = i00 + 2;
+            int i01 = i00 + 2*numY;
+            int i11 = i01 + 2;
+
+            for (int i = 0; i < 2; i++)
+            {
+                double low = (1 - wy) * table.get(i00 + i) + wy * table.get(i10 + i);
+                double high = (1 - wy) * table.get(i01 + i) + wy * table.get(i11 + i);
+                out[i] = (1 - wz) * low + wz * high;
+            }
+            // A NaN corner propagates into the result.
+            found = !Double.isNaN(out[0]) && !Double.isNaN(out[1]);
+        }
+
+        return found;
+    }   //lookup
+
+    /**
+     * Generates the table file or benchmarks the table against the solver.
+     *
+     * @param args "generate file" or "benchmark".
+     * @throws IOException if the table file cannot be written.
+     */
+    public static void main(String... args) throws IOException
+    {
+        if (args.length == 2 && args[0].equals("generate"))
+        {
+            getInstance().save(Paths.get(args[1]));
+        }
+        else if (args.length == 1 && args[0].equals("benchmark"))
+        {
+            benchmark();
+        }
+        else
+        {
+            System.err.println("Usage: BallisticsTable generate <file> | benchmark");
+            System.exit(1);
+        }
+    }   //main
+
+    /**
+     * Compares the latency and the accuracy of the table against the solver over random targets in the grid.
+     */
+    private static void benchmark()
+    {
+        final int numQueries = 20000;
+        long startNanos = TrcUtil.getCurrentTimeNanos();
+        BallisticsTable ballistics = getInstance();
+        System.out.printf(Locale.US, "Table generation: %.1f ms\n", (TrcUtil.getCurrentTimeNanos() - startNanos)/1e6);
+
+        Random random = new Random(492);
+        double[] ys = new double[numQueries];
+        double[] zs = new double[numQueries];
+        for (int i = 0; i < numQueries; i++)
+        {
+            ys[i] = MIN_Y + random.nextDouble() * (NUM_Y - 1) * Y_STEP;
+            zs[i] = MIN_Z + random.nextDouble() * (NUM_Z - 1) * Z_STEP;
+        }
+
+        double[] out = new double[2];
+        double maxVelErr = 0.0, maxPitchErr = 0.0;
+        long solverNanos = 0, tableNanos = 0, solverMaxNanos = 0, tableMaxNanos = 0;
+        int compared = 0;
+        // Run twice, the first pass warms up the JIT.
+        for (int pass = 0; pass < 2; pass++)
+        {
+            solverNanos = tableNanos = solverMaxNanos = tableMaxNanos = 0;
+            for (int i = 0; i < numQueries; i++)
+            {
+                long t0 = System.nanoTime();
+                RealVector traj = TrajectoryCalculator.calculateWithArmWithDrag(TrcUtil.createVector(ys[i], zs[i]));
+                long t1 = System.nanoTime();
+                boolean found = ballistics.lookup(ys[i], zs[i], out);
+                long t2 = System.nanoTime();
+
+                solverNanos += t1 - t0;
+                tableNanos += t2 - t1;
+                solverMaxNanos = Math.max(solverMaxNanos, t1 - t0);
+                tableMaxNanos = Math.max(tableMaxNanos, t2 - t1);
+                if (pass == 1 && traj != null && found)
+                {
+                    maxVelErr = Math.max(maxVelErr, Math.abs(traj.getEntry(0) - out[0]));
+                    maxPitchErr = Math.max(maxPitchErr, Math.abs(traj.getEntry(1) - out[1]));
+                    compared++;
+                }
+            }
+        }
+
+        System.out.printf(Locale.US, "Solver: avg=%.0f ns, max=%d ns\n", (double) solverNanos/numQueries,
+            solverMaxNanos);
+        System.out.printf(Locale.US, "Table:  avg=%.0f ns, max=%d ns\n", (double) tableNanos/numQueries,
+            tableMaxNanos);
+        System.out.printf(Locale.US, "Max error over %d targets: velocity=%.2f in/s, pitch=%.3f deg\n", compared,
+            maxVelErr, maxPitchErr);
+    }   //benchmark
+
+}   //class BallisticsTable
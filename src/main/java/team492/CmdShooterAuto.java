@@ -5,11 +5,13 @@ import hallib.HalDashboard;
 import trclib.TrcDbgTrace;
 import trclib.TrcEvent;
 import trclib.TrcPath;
+import trclib.TrcPathData;
 import trclib.TrcPose2D;
 import trclib.TrcRobot;
 import trclib.TrcStateMachine;
 import trclib.TrcTimer;
 import trclib.TrcUtil;
+import trclib.TrcVelocityProfiler;
 import trclib.TrcWaypoint;
 
 import java.util.Arrays;
@@ -66,12 +68,27 @@ public class CmdShooterAuto implements TrcRobot.RobotCommand
             delay, startPosition, afterAction);
     }
 
-    private TrcPath createPath(TrcPose2D... poses)
+    private TrcPathData createPath(TrcPose2D... poses)
     {
         return createPath(RobotInfo.ROBOT_MAX_REQ_SPEED, poses);
     }
 
-    private TrcPath createPath(double maxVel, TrcPose2D... poses)
+    private TrcPathData createPath(double maxVel, TrcPose2D... poses)
+    {
+        return createPath(createProfiler(maxVel), poses);
+    }
+
+    private TrcVelocityProfiler createProfiler(double maxVel)
+    {
+        TrcVelocityProfiler profiler = new TrcVelocityProfiler(
+            instanceName + ".profiler", maxVel, RobotInfo.ROBOT_MAX_ACCEL);
+        profiler.setMaxCentripetalAcceleration(RobotInfo.ROBOT_MAX_CENTRIPETAL_ACCEL);
+        profiler.setSwerveModuleLimits(
+            RobotInfo.ROBOT_TOP_SPEED, RobotInfo.ROBOT_MAX_ACCEL, RobotInfo.ROBOT_DRIVE_MODULE_RADIUS);
+        return profiler;
+    }
+
+    private TrcPathData createPath(TrcVelocityProfiler profiler, TrcPose2D... poses)
     {
         dbgTrace.traceInfo(instanceName + ".createPath", "Absolute path:");
         for (TrcPose2D pose : poses)
@@ -80,16 +97,22 @@ public class CmdShooterAuto implements TrcRobot.RobotCommand
         }
         TrcPath path = new TrcPath(Arrays.stream(poses).map(p -> new TrcWaypoint(p.relativeTo(poses[0], false), null))
             .toArray(TrcWaypoint[]::new));
-        TrcPath ret = path.trapezoidVelocity(maxVel, RobotInfo.ROBOT_MAX_ACCEL);
+        TrcPathData ret = profiler.profile(path.toPathData().resample(RobotInfo.PATH_SAMPLE_DISTANCE));
         dbgTrace.traceInfo(instanceName + ".createPath", "Relative path:");
-        for (TrcWaypoint waypoint : ret.getAllWaypoints())
+        traceWaypoints(instanceName + ".createPath", ret);
+        return ret;
+    }
+
+    private void traceWaypoints(String funcName, TrcPathData path)
+    {
+        TrcWaypoint waypoint = new TrcWaypoint(0.0, 0.0, 0.0, 0.0, 0.0, 0.0, 0.0, 0.0);
+        for (int i = 0; i < path.getSize(); i++)
         {
-            dbgTrace.traceInfo(instanceName + ".createPath", "\t%s", waypoint.toString());
+            dbgTrace.traceInfo(funcName, "\t%s", path.getWaypoint(i, waypoint).toString());
         }
-        return ret;
     }
 
-    public TrcPath createToShootPath(TrcPose2D start)
+    public TrcPathData createToShootPath(TrcPose2D start)
     {
         dbgTrace.traceInfo(instanceName + ".createToShootPath", "[%.3f] Creating to shoot path with start=%s",
             TrcUtil.getModeElapsedTime(), start);
@@ -110,7 +133,7 @@ public class CmdShooterAuto implements TrcRobot.RobotCommand
         }
     }
 
-    public TrcPath createPickupPath(TrcPose2D start)
+    public TrcPathData createPickupPath(TrcPose2D start)
     {
         dbgTrace.traceInfo(instanceName + ".createToPickupPath", "[%.3f] Creating to pickup path with start=%s",
             TrcUtil.getModeElapsedTime(), start);
@@ -125,15 +148,11 @@ public class CmdShooterAuto implements TrcRobot.RobotCommand
             double x = TrcUtil.average(RobotInfo.TRENCH_RUN_X_POS, RobotInfo.TARGET_X_POS);
             TrcPose2D middle1 = new TrcPose2D(x, -50);
             TrcPose2D middle2 = new TrcPose2D(RobotInfo.TRENCH_RUN_X_POS, -50);
-            TrcPath path = createPath(15, start, middle1, middle2, target);
-            TrcWaypoint last = path.getWaypoint(path.getSize() - 1);
-            Arrays.stream(path.getAllWaypoints()).filter(wp -> Math.abs(wp.x - last.x)<12).forEach(wp -> wp.velocity = 40);
-            path.inferTimeSteps();
-            dbgTrace.traceInfo(instanceName + ".createPickupPath", "With edited velocities:");
-            for (TrcWaypoint waypoint : path.getAllWaypoints())
-            {
-                dbgTrace.traceInfo(instanceName + ".createPickupPath", "\t%s", waypoint.toString());
-            }
+            // Drive slowly until lined up with the trench run, then pick up the balls at speed without stopping.
+            TrcVelocityProfiler profiler = createProfiler(40);
+            profiler.addVelocityLimit(0.0, start.distanceTo(middle1) + middle1.distanceTo(middle2), 15);
+            profiler.setEndpointVelocities(0.0, 40);
+            TrcPathData path = createPath(profiler, start, middle1, middle2, target);
             if (robot != null)
             {
                 robot.purePursuit.setMoveOutputLimit(0.4);
@@ -147,7 +166,7 @@ public class CmdShooterAuto implements TrcRobot.RobotCommand
         }
     }
 
-    public TrcPath createToShoot2Path(TrcPose2D start)
+    public TrcPathData createToShoot2Path(TrcPose2D start)
     {
         dbgTrace.traceInfo(instanceName + ".createToShoot2Path", "[%.3f] Creating to shoot 2 path with start=%s",
             TrcUtil.getModeElapsedTime(), start);
@@ -204,7 +223,7 @@ public class CmdShooterAuto implements TrcRobot.RobotCommand
         {
             dbgTrace.traceInfo(instanceName + ".cmdPeriodic", "[%.3f] CurrState=%s", TrcUtil.getModeElapsedTime(),
                 state.name());
-            TrcPath path;
+            TrcPathData path;
             switch (state)
             {
                 case DELAY:
@@ -226,7 +245,7 @@ public class CmdShooterAuto implements TrcRobot.RobotCommand
                     break;
 
                 case MOVE_TO_SHOOT:
-                    path = createToShootPath(robot.driveBase.getFieldPosition());
+                    path = createToShootPath(robot.getFieldPose());
                     robot.shooter.setFlywheelVelocity(RobotInfo.FLYWHEEL_HIGH_SPEED);
                     robot.shooter.setPitch(0);
                     robot.purePursuit.setMoveOutputLimit(startPosition == FrcAuto.StartPosition.RIGHT_WALL ? 0.2 : 0.6);
@@ -262,7 +281,7 @@ public class CmdShooterAuto implements TrcRobot.RobotCommand
                 case PICKUP:
                     robot.shooter.stowShooter();
                     robot.purePursuit.setMoveOutputLimit(0.22);
-                    path = createPickupPath(robot.driveBase.getFieldPosition());
+                    path = createPickupPath(robot.getFieldPose());
                     robot.intake.intakeMultiple(true, 0.8, 0.8);
                     robot.purePursuit.start(path, event, 10);
                     sm.waitForSingleEvent(event,
@@ -273,7 +292,7 @@ public class CmdShooterAuto implements TrcRobot.RobotCommand
                     robot.intake.stopIntake(false);
                     //                    robot.shooter.setPitch(RobotInfo.FLYWHEEL_HIGH_ANGLE);
                     //                    robot.shooter.setFlywheelVelocity(RobotInfo.FLYWHEEL_HIGH_SPEED);
-                    path = createToShoot2Path(robot.driveBase.getFieldPosition());
+                    path = createToShoot2Path(robot.getFieldPose());
                     robot.purePursuit.setMoveOutputLimit(0.8);
                     robot.purePursuit.start(path, event, 4);
                     sm.waitForSingleEvent(event, State.SHOOT_2);
@@ -286,6 +286,7 @@ public class FrcAuto implements TrcRobot.RobotMode
     @Override
     public void runPeriodic(double elapsedTime)
     {
+        robot.updatePoseEstimator();
         if (robot.preferences.doAutoUpdates)
         {
             robot.updateDashboard(RunMode.AUTO_MODE);
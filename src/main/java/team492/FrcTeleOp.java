@@ -100,6 +100,7 @@ public class FrcTeleOp implements TrcRobot.RobotMode
     @Override
     public void runPeriodic(double elapsedTime)
     {
+        robot.updatePoseEstimator();
         robot.updateDashboard(RunMode.TELEOP_MODE);
         if (DriverStation.getInstance().isFMSAttached())
         {
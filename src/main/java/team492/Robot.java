@@ -30,6 +30,7 @@ import edu.wpi.first.wpilibj.AnalogInput;
 import edu.wpi.first.wpilibj.DriverStation;
 import edu.wpi.first.wpilibj.DriverStation.Alliance;
 import edu.wpi.first.wpilibj.DriverStation.MatchType;
+import edu.wpi.first.wpilibj.Filesystem;
 import edu.wpi.first.wpilibj.SPI;
 import frclib.FrcAHRSGyro;
 import frclib.FrcCANSparkMax;
@@ -44,15 +45,19 @@ import frclib.FrcXboxController;
 import hallib.HalDashboard;
 import trclib.TrcEnhancedServo;
 import trclib.TrcHolonomicPurePursuitDrive;
+import trclib.TrcPathCache;
 import trclib.TrcPidController;
 import trclib.TrcPidController.PidCoefficients;
 import trclib.TrcPidDrive;
+import trclib.TrcPose2D;
+import trclib.TrcPoseEstimator;
 import trclib.TrcRobot.RunMode;
 import trclib.TrcRobotBattery;
 import trclib.TrcSwerveDriveBase;
 import trclib.TrcSwerveModule;
 import trclib.TrcUtil;
 
+import java.io.File;
 import java.io.FileNotFoundException;
 import java.io.FileOutputStream;
 import java.io.FileReader;
@@ -141,12 +146,14 @@ public class Robot extends FrcRobotBase
     // Vision subsystem.
     //
     public VisionTargeting vision = null;
+    public TrcPoseEstimator poseEstimator = null;
     //
     // Miscellaneous subsystem.
     //
     public LEDIndicator ledIndicator;
 
     private double nextUpdateTime = TrcUtil.getCurrentTime();
+    private double lastVisionTargetTime = 0.0;
     //
     // FMS provided the following info:
     //  - event name
@@ -391,7 +398,14 @@ public class Robot extends FrcRobotBase
         if (preferences.useVision)
         {
             vision = new VisionTargeting();
-        }
+            // Fuse the vision target with the drive base odometry, see updatePoseEstimator.
+            poseEstimator = new TrcPoseEstimator("poseEstimator");
+            driveBase.setPoseEstimator(poseEstimator);
+        }
+        // Load or generate the shooter ballistics table now so it is never generated in the control loop.
+        BallisticsTable.initialize(new File(Filesystem.getDeployDirectory(), "ballistics.bin").toPath());
+        // Load all deployed paths now so choosing or starting an autonomous routine never reads a path file.
+        TrcPathCache.loadDirectory(Filesystem.getDeployDirectory().toPath());
         //
         // Miscellaneous subsystems.
         //
@@ -648,6 +662,13 @@ public class Robot extends FrcRobotBase
                 HalDashboard.putNumber("DriveBase/xPos", xPos);
                 HalDashboard.putNumber("DriveBase/yPos", yPos);
                 HalDashboard.putData("DriveBase/heading", gyro.getGyroSendable());
+                if (poseEstimator != null)
+                {
+                    TrcPose2D pose = poseEstimator.getPose();
+                    HalDashboard.putNumber("DriveBase/estXPos", pose.x);
+                    HalDashboard.putNumber("DriveBase/estYPos", pose.y);
+                    HalDashboard.putNumber("DriveBase/estHeading", pose.angle);
+                }
 
                 //
                 // DriveBase debug info.
@@ -689,6 +710,36 @@ public class Robot extends FrcRobotBase
         }
     }   //updateDashboard
 
+    /**
+     * Feeds the latest vision target frame to the pose estimator. The target is the high goal, at the same field
+     * position CmdShooterAuto relocalizes against. Each frame is fed only once, with the time it was received so the
+     * estimator can compensate for its latency.
+     */
+    public void updatePoseEstimator()
+    {
+        if (poseEstimator != null)
+        {
+            FrcRemoteVisionProcessor.RelativePose pose = vision.getLastPose();
+            if (pose != null && pose.time > lastVisionTargetTime)
+            {
+                lastVisionTargetTime = pose.time;
+                poseEstimator.addVisionTarget(pose.time, RobotInfo.TARGET_X_POS,
+                    RobotInfo.INITIATION_LINE_TO_ALLIANCE_WALL, pose.x, pose.y, RobotInfo.VISION_TARGET_STD_DEV);
+            }
+        }
+    }
+
+    /**
+     * Returns the field pose of the robot, estimated from odometry and vision if vision is enabled, or from odometry
+     * alone otherwise.
+     *
+     * @return robot field pose.
+     */
+    public TrcPose2D getFieldPose()
+    {
+        return poseEstimator != null ? poseEstimator.getPose() : driveBase.getFieldPosition();
+    }
+
     public int getNumBalls()
     {
         return numBalls;
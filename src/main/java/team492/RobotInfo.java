@@ -136,6 +136,7 @@ public class RobotInfo
     public static final double CAMERA_X_OFFSET = 0;    //Inches from pivot of arm to center of camera, + = right
     public static final double CAMERA_DATA_TIMEOUT              = 0.5;  //500ms
     public static final double CAMERA_CENTERED_THRESHOLD        = 2;    // +- 2 inches in x axis
+    public static final double VISION_TARGET_STD_DEV            = 4;    // in, of the target position relative to robot
 
     //
     // Ultrasonic sensors.
@@ -203,12 +204,17 @@ public class RobotInfo
 
     public static final double ROBOT_MAX_REQ_SPEED = 0.2 * ROBOT_TOP_SPEED;
     public static final double ROBOT_MAX_ACCEL = 200;
+    public static final double ROBOT_MAX_CENTRIPETAL_ACCEL = 200;
+    public static final double ROBOT_DRIVE_MODULE_RADIUS =
+        Math.sqrt(ROBOT_DRIVE_WIDTH * ROBOT_DRIVE_WIDTH + ROBOT_DRIVE_LENGTH * ROBOT_DRIVE_LENGTH) / 2.0;
 
     public static final double PURE_PURSUIT_FOLLOWING_DISTANCE = 10;
     public static final double PURE_PURSUIT_POS_TOLERANCE = 2.0;
     public static final double PURE_PURSUIT_HEADING_TOLERANCE = 2.0;
     public static final double PURE_PURSUIT_KF = 1.0 / ROBOT_TOP_SPEED;
     public static final double PURE_PURSUIT_MOVE_OUTPUT_LIMIT = 0.6;
+    // Half the following distance, so the profiler sees the corners about as round as pure pursuit drives them.
+    public static final double PATH_SAMPLE_DISTANCE = PURE_PURSUIT_FOLLOWING_DISTANCE / 2.0;
 
     public static final double GYRO_TURN_KP_BIG = 0.0055;
     public static final double GYRO_TURN_KD_BIG = 0.0007;
@@ -0,0 +1,33 @@
+package team492;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+import trclib.TrcTraceLogAnalyzer;
+
+/**
+ * Command line tool summarizing the match trace logs (e.g. tracelogs/Glacier Peak). It runs TrcTraceLogAnalyzer with
+ * the robot specific metrics added: shooter cycle time from the conveyor exit trigger and ball pickup cycle time
+ * from the intake advancing a ball.
+ *
+ * Usage: gradlew analyzeTraceLogs [-PlogArgs="-f Qualification068 tracelogs"]
+ */
+public class TraceLogAnalytics
+{
+    private static final String[] ROBOT_METRICS =
+        {
+            "-c", "Shooter=Conveyor.shootTriggerEvent_Info:value=true",
+            "-c", "Intake=Intake.intakeTask_Info:state=ADVANCE"
+        };
+
+    public static void main(String... args) throws IOException, InterruptedException
+    {
+        List<String> analyzerArgs = new ArrayList<>(Arrays.asList(ROBOT_METRICS));
+
+        analyzerArgs.addAll(Arrays.asList(args));
+        TrcTraceLogAnalyzer.main(analyzerArgs.toArray(new String[0]));
+    }   //main
+
+}   //class TraceLogAnalytics
@@ -47,9 +47,11 @@ public class TrajectoryCalculator
                 return TrcUtil.createVector(v, angle);
             }
         }
-        return TrajectoryCalculator.calculateWithArmWithDrag(TrcUtil
-            .createVector((distance + RobotInfo.CAMERA_Y_OFFSET_TO_PIVOT) * 0.84,
-                RobotInfo.HIGH_TARGET_HEIGHT - RobotInfo.PIVOT_HEIGHT + 6));
+        // Beyond the measured distances, use the precomputed solver table instead of running the solver in the loop.
+        double[] traj = new double[2];
+        return BallisticsTable.getInstance()
+            .lookup((distance + RobotInfo.CAMERA_Y_OFFSET_TO_PIVOT) * 0.84,
+                RobotInfo.HIGH_TARGET_HEIGHT - RobotInfo.PIVOT_HEIGHT + 6, traj) ? new ArrayRealVector(traj) : null;
     }
 
     /**
@@ -0,0 +1,670 @@
+/*
+ * Copyright (c) 2020 Titan Robotics Club (http://www.titanrobotics.com)
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+
+package trclib;
+
+import java.io.BufferedInputStream;
+import java.io.DataInputStream;
+import java.io.EOFException;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.PrintWriter;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Locale;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+/**
+ * This class implements a binary trace logger. Instead of formatting a message on the calling thread, the caller
+ * logs a format ID and up to MAX_ARGS numeric arguments into a preallocated off-heap ring buffer. A logger thread
+ * periodically drains the ring buffer into a compact binary log file. The format strings are registered once at
+ * initialization time and written to the log file so that the offline decoder (see main) can regenerate the same
+ * text that TrcTraceLogger would have written. Logging a message does not allocate memory. If the logger thread
+ * falls behind and the ring buffer is full, messages are dropped and counted rather than growing memory.
+ *
+ * All arguments are recorded as doubles. The decoder converts them according to the conversion of their format
+ * specifiers (e.g. %d is printed as an integer, %b as a boolean). Integer values are exact up to 2^53.
+ *
+ * Binary log file format (big endian):
+ *  Header:  8-byte magic "TRCBLOG1".
+ *  Format:  byte REC_FORMAT, short formatId, int length, UTF-8 bytes of the format template.
+ *  Message: byte REC_MESSAGE, short formatId, byte argCount, argCount doubles.
+ *  Dropped: byte REC_DROPPED, int number of messages dropped because the ring buffer was full.
+ */
+public class TrcBinaryTraceLogger
+{
+    private static final String moduleName = "TrcBinaryTraceLogger";
+    private static final boolean debugEnabled = false;
+    private static final boolean tracingEnabled = false;
+    private static final boolean useGlobalTracer = false;
+    private static final TrcDbgTrace.TraceLevel traceLevel = TrcDbgTrace.TraceLevel.API;
+    private static final TrcDbgTrace.MsgLevel msgLevel = TrcDbgTrace.MsgLevel.INFO;
+    private TrcDbgTrace dbgTrace = null;
+
+    public static final int MAX_ARGS = 6;
+    public static final int DEF_BUFFER_SIZE = 256*1024;
+    public static final long DEF_DRAIN_INTERVAL = 50;   // in msec
+
+    private static final byte[] MAGIC = "TRCBLOG1".getBytes(StandardCharsets.US_ASCII);
+    private static final byte REC_FORMAT = 1;
+    private static final byte REC_MESSAGE = 2;
+    private static final byte REC_DROPPED = 3;
+    private static final int MSG_HEADER_SIZE = 4;
+    private static final int DROPPED_RECORD_SIZE = 5;
+    private static final Pattern formatSpecifier = Pattern.compile(
+        "%(\\d+\\$)?([-#+ 0,(<]*)?(\\d+)?(\\.\\d+)?([tT])?([a-zA-Z%])");
+    //
+    // Global format registry shared by all binary loggers so that format IDs can be registered before any log file
+    // is opened. The arrays are replaced, never modified in place, so logging threads can read them without locking.
+    //
+    private static volatile String[] formatTemplates = new String[0];
+    private static volatile TrcDbgTrace.MsgLevel[] formatLevels = new TrcDbgTrace.MsgLevel[0];
+
+    private final String traceLogName;
+    private final ByteBuffer ringBuffer;
+    private final ByteBuffer ringReader;
+    private final byte[] drainBuffer;
+    private int drainLength = 0;
+    private final long drainInterval;
+    private long writeIndex = 0;
+    private long readIndex = 0;
+    private int droppedCount = 0;
+    private long totalDroppedCount = 0;
+
+    private FileOutputStream traceLog = null;
+    private int formatsWritten = 0;
+    private volatile Thread loggerThread = null;
+    private volatile boolean enabled = false;
+
+    /**
+     * Constructor: Create an instance of the binary trace logger.
+     *
+     * @param traceLogName specifies the log file name.
+     * @param bufferSize specifies the ring buffer size in bytes.
+     * @param drainInterval specifies how often the logger thread drains the ring buffer in msec.
+     */
+    public TrcBinaryTraceLogger(String traceLogName, int bufferSize, long drainInterval)
+    {
+        if (debugEnabled)
+        {
+            dbgTrace = useGlobalTracer?
+                    TrcDbgTrace.getGlobalTracer():
+                    new TrcDbgTrace(moduleName + "." + traceLogName, tracingEnabled, traceLevel, msgLevel);
+        }
+
+        if (bufferSize < MSG_HEADER_SIZE + MAX_ARGS*Double.BYTES + DROPPED_RECORD_SIZE)
+        {
+            throw new IllegalArgumentException("bufferSize is too small.");
+        }
+
+        this.traceLogName = traceLogName;
+        this.drainInterval = drainInterval;
+        ringBuffer = ByteBuffer.allocateDirect(bufferSize);
+        ringReader = ringBuffer.duplicate();
+        drainBuffer = new byte[bufferSize];
+    }   //TrcBinaryTraceLogger
+
+    /**
+     * Constructor: Create an instance of the binary trace logger.
+     *
+     * @param traceLogName specifies the log file name.
+     */
+    public TrcBinaryTraceLogger(String traceLogName)
+    {
+        this(traceLogName, DEF_BUFFER_SIZE, DEF_DRAIN_INTERVAL);
+    }   //TrcBinaryTraceLogger
+
+    /**
+     * This method returns the trace log name.
+     *
+     * @return trace log name.
+     */
+    @Override
+    public String toString()
+    {
+        return traceLogName;
+    }   //toString
+
+    /**
+     * This method registers a format template and returns its format ID. The template is the complete text of the
+     * message as TrcTraceLogger would have written it, with format specifiers for the logged arguments. This should
+     * be called at initialization time since it allocates memory.
+     *
+     * @param level specifies the message level of the format.
+     * @param template specifies the format template.
+     * @return format ID.
+     */
+    public static synchronized int registerFormat(TrcDbgTrace.MsgLevel level, String template)
+    {
+        int formatId = formatTemplates.length;
+
+        if (formatId > Short.MAX_VALUE)
+        {
+            throw new IllegalStateException("Too many binary trace formats registered.");
+        }
+
+        String[] newTemplates = Arrays.copyOf(formatTemplates, formatId + 1);
+        TrcDbgTrace.MsgLevel[] newLevels = Arrays.copyOf(formatLevels, formatId + 1);
+        newTemplates[formatId] = template;
+        newLevels[formatId] = level;
+        formatLevels = newLevels;
+        formatTemplates = newTemplates;
+
+        return formatId;
+    }   //registerFormat
+
+    /**
+     * This method returns the message level of the given format.
+     *
+     * @param formatId specifies the format ID.
+     * @return message level of the format.
+     */
+    public static TrcDbgTrace.MsgLevel getFormatLevel(int formatId)
+    {
+        return formatLevels[formatId];
+    }   //getFormatLevel
+
+    /**
+     * This method returns the format template of the given format.
+     *
+     * @param formatId specifies the format ID.
+     * @return format template.
+     */
+    public static String getFormatTemplate(int formatId)
+    {
+        return formatTemplates[formatId];
+    }   //getFormatTemplate
+
+    /**
+     * This method enables/disables the logger thread.
+     *
+     * @param enabled specifies true to enable logger thread, false to disable.
+     */
+    public synchronized void setEnabled(boolean enabled)
+    {
+        if (loggerThread == null && enabled)
+        {
+            //
+            // Binary logger was not enabled, somebody wants to enable it.
+            // Open the log file for append and create the logger thread.
+            //
+            try
+            {
+                //
+                // Use a stream rather than a FileChannel because interrupting the logger thread to terminate it
+                // would close an interruptible channel in the middle of a write.
+                //
+                boolean newFile = new File(traceLogName).length() == 0;
+                traceLog = new FileOutputStream(traceLogName, true);
+                if (newFile)
+                {
+                    traceLog.write(MAGIC);
+                }
+                //
+                // Appending to an existing file, all formats must be written again because format IDs may differ.
+                //
+                formatsWritten = 0;
+            }
+            catch (IOException e)
+            {
+                throw new RuntimeException("Failed to open binary trace log file " + traceLogName);
+            }
+            loggerThread = new Thread(this::loggerTask, traceLogName);
+            loggerThread.start();
+            this.enabled = true;
+        }
+        else if (loggerThread != null && !enabled && this.enabled)
+        {
+            //
+            // Binary logger was enabled, somebody wants to disable it. Signal termination but allow the logger
+            // thread to drain the ring buffer before exiting.
+            //
+            this.enabled = false;
+            loggerThread.interrupt();
+        }
+    }   //setEnabled
+
+    /**
+     * This method checks if the binary trace log is enabled.
+     *
+     * @return true if enabled, false if disabled.
+     */
+    public boolean isEnabled()
+    {
+        return enabled;
+    }   //isEnabled
+
+    /**
+     * This method returns the total number of messages dropped because the ring buffer was full.
+     *
+     * @return number of dropped messages.
+     */
+    public synchronized long getDroppedCount()
+    {
+        return totalDroppedCount;
+    }   //getDroppedCount
+
+    /**
+     * This method logs a message into the ring buffer. It does not allocate memory.
+     *
+     * @param formatId specifies the format ID returned by registerFormat.
+     * @param argCount specifies the number of arguments used.
+     * @param arg0 specifies the first argument.
+     * @param arg1 specifies the second argument.
+     * @param arg2 specifies the third argument.
+     * @param arg3 specifies the fourth argument.
+     * @param arg4 specifies the fifth argument.
+     * @param arg5 specifies the sixth argument.
+     * @return true if the message was logged, false if the logger is disabled or the ring buffer is full.
+     * @throws IllegalArgumentException if formatId is not a registered format or argCount is not between 0 and
+     *         MAX_ARGS.
+     */
+    public synchronized boolean logMessage(
+        int formatId, int argCount, double arg0, double arg1, double arg2, double arg3, double arg4, double arg5)
+    {
+        boolean success = false;
+
+        if (formatId < 0 || formatId >= formatTemplates.length)
+        {
+            throw new IllegalArgumentException("formatId " + formatId + " is not registered.");
+        }
+
+        if (argCount < 0 || argCount > MAX_ARGS)
+        {
+            throw new IllegalArgumentException("argCount must be between 0 and " + MAX_ARGS + ".");
+        }
+
+        if (enabled)
+        {
+            int recordSize = MSG_HEADER_SIZE + argCount*Double.BYTES;
+            int pendingSize = droppedCount > 0? DROPPED_RECORD_SIZE: 0;
+
+            if (ringBuffer.capacity() - (writeIndex - readIndex) >= recordSize + pendingSize)
+            {
+                if (droppedCount > 0)
+                {
+                    putByte(REC_DROPPED);
+                    putInt(droppedCount);
+                    droppedCount = 0;
+                }
+
+                putByte(REC_MESSAGE);
+                putShort((short)formatId);
+                putByte((byte)argCount);
+                if (argCount > 0) putDouble(arg0);
+                if (argCount > 1) putDouble(arg1);
+                if (argCount > 2) putDouble(arg2);
+                if (argCount > 3) putDouble(arg3);
+                if (argCount > 4) putDouble(arg4);
+                if (argCount > 5) putDouble(arg5);
+                success = true;
+            }
+            else
+            {
+                droppedCount++;
+                totalDroppedCount++;
+            }
+        }
+
+        return success;
+    }   //logMessage
+
+    /**
+     * This method writes a byte to the ring buffer at the write index. It must be called with the lock held.
+     *
+     * @param value specifies the value to write.
+     */
+    private void putByte(byte value)
+    {
+        ringBuffer.put((int)(writeIndex % ringBuffer.capacity()), value);
+        writeIndex++;
+    }   //putByte
+
+    /**
+     * This method writes a short to the ring buffer at the write index. It must be called with the lock held.
+     *
+     * @param value specifies the value to write.
+     */
+    private void putShort(short value)
+    {
+        putByte((byte)(value >> 8));
+        putByte((byte)value);
+    }   //putShort
+
+    /**
+     * This method writes an int to the ring buffer at the write index. It must be called with the lock held.
+     *
+     * @param value specifies the value to write.
+     */
+    private void putInt(int value)
+    {
+        putShort((short)(value >> 16));
+        putShort((short)value);
+    }   //putInt
+
+    /**
+     * This method writes a double to the ring buffer at the write index. It must be called with the lock held.
+     *
+     * @param value specifies the value to write.
+     */
+    private void putDouble(double value)
+    {
+        int index = (int)(writeIndex % ringBuffer.capacity());
+
+        if (index + Double.BYTES <= ringBuffer.capacity())
+        {
+            ringBuffer.putDouble(index, value);
+            writeIndex += Double.BYTES;
+        }
+        else
+        {
+            long bits = Double.doubleToRawLongBits(value);
+            putInt((int)(bits >> 32));
+            putInt((int)bits);
+        }
+    }   //putDouble
+
+    /**
+     * This method moves everything in the ring buffer to the drain buffer. The drain buffer is then written to the
+     * log file without holding the lock so logging threads are not blocked by file I/O.
+     */
+    private synchronized void moveToDrainBuffer()
+    {
+        int capacity = ringBuffer.capacity();
+        int start = (int)(readIndex % capacity);
+        int length = (int)(writeIndex - readIndex);
+
+        if (start + length <= capacity)
+        {
+            ringReader.limit(start + length).position(start);
+            ringReader.get(drainBuffer, 0, length);
+        }
+        else
+        {
+            ringReader.limit(capacity).position(start);
+            ringReader.get(drainBuffer, 0, capacity - start);
+            ringReader.limit(start + length - capacity).position(0);
+            ringReader.get(drainBuffer, capacity - start, start + length - capacity);
+        }
+        drainLength = length;
+        readIndex = writeIndex;
+    }   //moveToDrainBuffer
+
+    /**
+     * This method writes newly registered formats and the content of the ring buffer to the log file. Formats are
+     * written first so that every message in the file follows the definition of its format.
+     *
+     * @throws IOException if writing to the file failed.
+     */
+    private void drain() throws IOException
+    {
+        String[] templates = formatTemplates;
+
+        while (formatsWritten < templates.length)
+        {
+            byte[] template = templates[formatsWritten].getBytes(StandardCharsets.UTF_8);
+            ByteBuffer record = ByteBuffer.allocate(1 + Short.BYTES + Integer.BYTES + template.length);
+            record.put(REC_FORMAT).putShort((short)formatsWritten).putInt(template.length).put(template);
+            traceLog.write(record.array());
+            formatsWritten++;
+        }
+
+        moveToDrainBuffer();
+        if (drainLength > 0)
+        {
+            traceLog.write(drainBuffer, 0, drainLength);
+        }
+    }   //drain
+
+    /**
+     * This method is called when the logger thread is started. It periodically drains the ring buffer to the log
+     * file. If this thread is interrupted, it will exit only after the ring buffer is drained.
+     */
+    private void loggerTask()
+    {
+        final String funcName = "loggerTask";
+
+        if (debugEnabled)
+        {
+            dbgTrace.traceInfo(funcName, "Binary Trace Logger %s starting...", traceLogName);
+        }
+
+        try
+        {
+            while (!Thread.currentThread().isInterrupted())
+            {
+                drain();
+                Thread.sleep(drainInterval);
+            }
+        }
+        catch (InterruptedException e)
+        {
+            if (debugEnabled)
+            {
+                dbgTrace.traceInfo(funcName, "Terminating Binary Trace Logger %s", traceLogName);
+            }
+        }
+        catch (IOException e)
+        {
+            TrcDbgTrace.getGlobalTracer().traceErr(funcName, "Failed to write %s: %s", traceLogName, e);
+        }
+
+        try
+        {
+            //
+            // The thread is terminating, drain the ring buffer before closing the log.
+            //
+            drain();
+            traceLog.close();
+        }
+        catch (IOException e)
+        {
+            TrcDbgTrace.getGlobalTracer().traceErr(funcName, "Failed to close %s: %s", traceLogName, e);
+        }
+
+        synchronized (this)
+        {
+            traceLog = null;
+            loggerThread = null;
+        }
+    }   //loggerTask
+
+    /**
+     * This method formats a message the same way TrcDbgTrace would have with the original arguments. Since all
+     * arguments are recorded as doubles, each argument is converted according to the conversion of its format
+     * specifier.
+     *
+     * @param template specifies the format template.
+     * @param args specifies the recorded arguments.
+     * @param argCount specifies the number of recorded arguments.
+     * @return formatted message.
+     */
+    public static String formatMessage(String template, double[] args, int argCount)
+    {
+        Object[] boxedArgs = new Object[argCount];
+        Matcher matcher = formatSpecifier.matcher(template);
+        int argIndex = 0;
+
+        while (matcher.find() && argIndex < argCount)
+        {
+            char conversion = matcher.group(6).charAt(0);
+
+            if (conversion == '%' || conversion == 'n')
+            {
+                continue;
+            }
+
+            double value = args[argIndex];
+            switch (Character.toLowerCase(conversion))
+            {
+                case 'd':
+                case 'o':
+                case 'x':
+                    boxedArgs[argIndex] = (long)value;
+                    break;
+
+                case 'c':
+                    boxedArgs[argIndex] = (char)value;
+                    break;
+
+                case 'b':
+                    boxedArgs[argIndex] = value != 0.0;
+                    break;
+
+                case 's':
+                    //
+                    // We don't know what type the caller had, print whole numbers as integers.
+                    //
+                    if (value == Math.rint(value) && !Double.isInfinite(value))
+                    {
+                        boxedArgs[argIndex] = (long)value;
+                    }
+                    else
+                    {
+                        boxedArgs[argIndex] = value;
+                    }
+                    break;
+
+                default:
+                    boxedArgs[argIndex] = value;
+                    break;
+            }
+            argIndex++;
+        }
+
+        for (; argIndex < argCount; argIndex++)
+        {
+            boxedArgs[argIndex] = args[argIndex];
+        }
+
+        return String.format(Locale.US, template, boxedArgs);
+    }   //formatMessage
+
+    /**
+     * This method decodes a binary trace log and writes the text trace log in the same format as TrcTraceLogger.
+     *
+     * @param input specifies the binary trace log input stream.
+     * @param output specifies the text output.
+     * @throws IOException if the input is not a binary trace log or reading failed.
+     */
+    public static void decode(InputStream input, PrintWriter output) throws IOException
+    {
+        DataInputStream in = new DataInputStream(new BufferedInputStream(input));
+        ArrayList<String> templates = new ArrayList<>();
+        double[] args = new double[MAX_ARGS];
+        byte[] magic = new byte[MAGIC.length];
+
+        in.readFully(magic);
+        if (!Arrays.equals(magic, MAGIC))
+        {
+            throw new IOException("Not a binary trace log.");
+        }
+
+        while (true)
+        {
+            int recordType = in.read();
+
+            if (recordType == -1)
+            {
+                break;
+            }
+
+            try
+            {
+                if (recordType == REC_FORMAT)
+                {
+                    int formatId = in.readShort();
+                    byte[] template = new byte[in.readInt()];
+                    in.readFully(template);
+                    //
+                    // A log file appended to multiple times redefines the formats from ID 0 each time.
+                    //
+                    while (templates.size() <= formatId)
+                    {
+                        templates.add(null);
+                    }
+                    templates.set(formatId, new String(template, StandardCharsets.UTF_8));
+                }
+                else if (recordType == REC_MESSAGE)
+                {
+                    int formatId = in.readShort();
+                    int argCount = in.readByte();
+
+                    for (int i = 0; i < argCount; i++)
+                    {
+                        args[i] = in.readDouble();
+                    }
+
+                    String template = formatId < templates.size()? templates.get(formatId): null;
+                    output.print(
+                        (template != null? formatMessage(template, args, argCount): "<Unknown format " + formatId + ">")
+                        + "\r\n");
+                }
+                else if (recordType == REC_DROPPED)
+                {
+                    output.print(moduleName + "_Warn: " + in.readInt() + " messages dropped.\r\n");
+                }
+                else
+                {
+                    throw new IOException("Invalid record type " + recordType);
+                }
+            }
+            catch (EOFException e)
+            {
+                //
+                // The log was truncated in the middle of a record (e.g. robot powered off), stop here.
+                //
+                break;
+            }
+        }
+        output.flush();
+    }   //decode
+
+    /**
+     * This is the entry point of the offline decoder.
+     *
+     * @param args specifies the binary trace log file name and optionally the output text log file name. If no
+     *             output file is given, the text is written to the standard output.
+     * @throws IOException if decoding failed.
+     */
+    public static void main(String[] args) throws IOException
+    {
+        if (args.length < 1 || args.length > 2)
+        {
+            System.err.println("Usage: TrcBinaryTraceLogger <binaryLogFile> [<textLogFile>]");
+            System.exit(1);
+        }
+
+        try (InputStream input = new FileInputStream(args[0]);
+             PrintWriter output = args.length > 1? new PrintWriter(args[1], "UTF-8"): new PrintWriter(System.out))
+        {
+            decode(input, output);
+        }
+    }   //main
+
+}   //class TrcBinaryTraceLogger
@@ -0,0 +1,264 @@
+/*
+ * Copyright (c) 2020 Titan Robotics Club (http://www.titanrobotics.com)
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+
+package trclib;
+
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * This class implements a cached sensor signal. The signal is read from the hardware at most once per pass of the
+ * reading thread, and all reads by the same thread in the same pass share the cached value. Passes are counted per
+ * thread: the robot loop and every periodic thread call startPass before each run, so a value cached by one thread
+ * is never served to another thread as if it were fresh. A thread that does not count its passes always reads the
+ * hardware. A status frame period can be set so that the signal is not read again before the hardware had a chance
+ * to update it, even across passes and threads. The class counts the hardware reads performed and the reads saved by
+ * the cache, per signal and for all signals combined.
+ */
+public class TrcCachedSignal
+{
+    /**
+     * This interface provides the current cycle number. The cached value is shared by all callers in the same cycle.
+     */
+    public interface CycleSource
+    {
+        /**
+         * This method returns the current cycle number.
+         *
+         * @return current cycle number.
+         */
+        long getCycle();
+
+    }   //interface CycleSource
+
+    /**
+     * This interface reads the signal from the hardware.
+     */
+    public interface Reader
+    {
+        /**
+         * This method reads the signal value from the hardware.
+         *
+         * @return signal value.
+         */
+        double read();
+
+    }   //interface Reader
+
+    /**
+     * This cycle source returns the pass count of the calling thread, see startPass.
+     */
+    public static final CycleSource THREAD_PASS = TrcCachedSignal::getThreadPass;
+
+    private static final ThreadLocal<long[]> threadPass = ThreadLocal.withInitial(() -> new long[1]);
+    private static final AtomicLong totalReadCount = new AtomicLong();
+    private static final AtomicLong totalSavedCount = new AtomicLong();
+
+    private final String instanceName;
+    private final CycleSource cycleSource;
+    private final Reader reader;
+    private double period = 0.0;
+    private boolean valid = false;
+    private long cycle = 0;
+    private Thread cycleThread = null;
+    private double timestamp = 0.0;
+    private double value = 0.0;
+    private long readCount = 0;
+    private long savedCount = 0;
+
+    /**
+     * Constructor: Create an instance of the object.
+     *
+     * @param instanceName specifies the instance name.
+     * @param cycleSource specifies the source of the cycle number, cycle 0 is never cached.
+     * @param reader specifies the method that reads the signal from the hardware.
+     */
+    public TrcCachedSignal(String instanceName, CycleSource cycleSource, Reader reader)
+    {
+        this.instanceName = instanceName;
+        this.cycleSource = cycleSource;
+        this.reader = reader;
+    }   //TrcCachedSignal
+
+    /**
+     * Constructor: Create an instance of the object cached per pass of the reading thread.
+     *
+     * @param instanceName specifies the instance name.
+     * @param reader specifies the method that reads the signal from the hardware.
+     */
+    public TrcCachedSignal(String instanceName, Reader reader)
+    {
+        this(instanceName, THREAD_PASS, reader);
+    }   //TrcCachedSignal
+
+    /**
+     * This method starts a new pass of the calling thread. Values cached by the thread in its previous pass become
+     * stale. It is called by the robot loop and by periodic threads before each run.
+     */
+    public static void startPass()
+    {
+        threadPass.get()[0]++;
+    }   //startPass
+
+    /**
+     * This method returns the pass count of the calling thread.
+     *
+     * @return number of passes started by the calling thread, 0 if it never started one.
+     */
+    public static long getThreadPass()
+    {
+        return threadPass.get()[0];
+    }   //getThreadPass
+
+    /**
+     * This method returns the instance name.
+     *
+     * @return instance name.
+     */
+    @Override
+    public String toString()
+    {
+        return instanceName;
+    }   //toString
+
+    /**
+     * This method sets the status frame period of the signal. The signal is read at most once per cycle, and not
+     * again before the period has elapsed since the last read.
+     *
+     * @param period specifies the status frame period in seconds, 0.0 to read the signal once every cycle.
+     */
+    public synchronized void setPeriod(double period)
+    {
+        if (period < 0.0)
+        {
+            throw new IllegalArgumentException("period must not be negative");
+        }
+
+        this.period = period;
+    }   //setPeriod
+
+    /**
+     * This method returns the status frame period of the signal.
+     *
+     * @return status frame period in seconds.
+     */
+    public synchronized double getPeriod()
+    {
+        return period;
+    }   //getPeriod
+
+    /**
+     * This method returns the signal value. The hardware is read only if the cached value is not from the current
+     * cycle of the calling thread and is older than the status frame period.
+     *
+     * @return signal value.
+     */
+    public synchronized double get()
+    {
+        Thread thread = Thread.currentThread();
+        long currCycle = cycleSource.getCycle();
+        boolean sameCycle = currCycle != 0 && currCycle == cycle && thread == cycleThread;
+
+        if (valid && (sameCycle || period > 0.0 && TrcUtil.getCurrentTime() - timestamp < period))
+        {
+            //
+            // Remember the cycle so all callers in this cycle keep getting the same value even if the period
+            // elapses before the cycle ends.
+            //
+            cycle = currCycle;
+            cycleThread = thread;
+            savedCount++;
+            totalSavedCount.incrementAndGet();
+        }
+        else
+        {
+            value = reader.read();
+            timestamp = TrcUtil.getCurrentTime();
+            cycle = currCycle;
+            cycleThread = thread;
+            valid = true;
+            readCount++;
+            totalReadCount.incrementAndGet();
+        }
+
+        return value;
+    }   //get
+
+    /**
+     * This method returns the time the cached value was read from the hardware.
+     *
+     * @return read time stamp in seconds.
+     */
+    public synchronized double getTimestamp()
+    {
+        return timestamp;
+    }   //getTimestamp
+
+    /**
+     * This method discards the cached value so the next get reads the hardware. It must be called when the signal
+     * changes by other means than the passage of time, for example after resetting an encoder.
+     */
+    public synchronized void invalidate()
+    {
+        valid = false;
+    }   //invalidate
+
+    /**
+     * This method returns the number of hardware reads performed for this signal.
+     *
+     * @return number of hardware reads.
+     */
+    public synchronized long getReadCount()
+    {
+        return readCount;
+    }   //getReadCount
+
+    /**
+     * This method returns the number of hardware reads saved by the cache for this signal.
+     *
+     * @return number of reads served from the cache.
+     */
+    public synchronized long getSavedCount()
+    {
+        return savedCount;
+    }   //getSavedCount
+
+    /**
+     * This method returns the number of hardware reads performed for all signals.
+     *
+     * @return total number of hardware reads.
+     */
+    public static long getTotalReadCount()
+    {
+        return totalReadCount.get();
+    }   //getTotalReadCount
+
+    /**
+     * This method returns the number of hardware reads saved by the cache for all signals.
+     *
+     * @return total number of reads served from the cache.
+     */
+    public static long getTotalSavedCount()
+    {
+        return totalSavedCount.get();
+    }   //getTotalSavedCount
+
+}   //class TrcCachedSignal
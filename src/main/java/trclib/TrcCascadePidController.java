@@ -104,21 +104,24 @@ public class TrcCascadePidController extends TrcPidController
     }   //reset
 
     /**
-     * This method calculates the Cascade PID control output by calling the primary PID controller, feeding its
-     * output to the secondary PID controller and finally returning the output of the secondary PID controller.
-     * @return output of the Cascade PID controller.
+     * This method calculates the primary PID output with the given input and time stamp, sets it as the target of
+     * the secondary controller and returns the secondary output.
+     *
+     * @param input specifies the current input value of the primary controller.
+     * @param currTime specifies the current time in seconds.
+     * @return secondary PID output value.
      */
     @Override
-    public synchronized double getOutput()
+    protected synchronized double calculateOutput(double input, double currTime)
     {
-        final String funcName = "getOutput";
+        final String funcName = "calculateOutput";
 
         if (debugEnabled)
         {
             dbgTrace.traceEnter(funcName, TrcDbgTrace.TraceLevel.API);
         }
 
-        double primaryOutput = super.getOutput();
+        double primaryOutput = super.calculateOutput(input, currTime);
         secondaryCtrl.setTarget(primaryOutput);
         double secondaryOutput = secondaryCtrl.getOutput();
 
@@ -129,6 +132,6 @@ public class TrcCascadePidController extends TrcPidController
         }
 
         return secondaryOutput;
-    }   //getOutput
+    }   //calculateOutput
 
 }   //class TrcCascadePidController
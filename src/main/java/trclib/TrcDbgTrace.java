@@ -94,6 +94,7 @@ public class TrcDbgTrace
     private TraceLevel traceLevel;
     private MsgLevel msgLevel;
     private TrcTraceLogger traceLogger = null;
+    private TrcBinaryTraceLogger binaryLogger = null;
 
     /**
      * Constructor: Create an instance of the object.
@@ -191,7 +192,39 @@ public class TrcDbgTrace
     }   //openTraceLog
 
     /**
-     * This method closes the trace log file.
+     * This method opens a binary log file for writing the messages logged with logBinary and logBinaryEvent. The log
+     * file is written to the specified folder. The file name will be formed by concatenating the date-time stamp with
+     * the specified file name. The binary log can be converted to a text log with the TrcBinaryTraceLogger decoder.
+     *
+     * @param folderPath specifies the folder path.
+     * @param fileName specifies the file name, null if none provided.
+     * @return true if log file is successfully opened, false if it failed.
+     */
+    public boolean openBinaryTraceLog(final String folderPath, final String fileName)
+    {
+        boolean success = false;
+
+        if (binaryLogger == null)
+        {
+            File folder = new File(folderPath);
+            folder.mkdir();
+
+            String logFileName = folderPath + File.separator + TrcUtil.getTimestamp();
+            if (fileName != null)
+            {
+                logFileName += "!" + fileName;
+            }
+            logFileName += ".bin";
+
+            binaryLogger = new TrcBinaryTraceLogger(logFileName);
+            success = true;
+        }
+
+        return success;
+    }   //openBinaryTraceLog
+
+    /**
+     * This method closes the trace log file and the binary trace log file if any.
      */
     public void closeTraceLog()
     {
@@ -200,6 +233,12 @@ public class TrcDbgTrace
             traceLogger.setEnabled(false);
             traceLogger = null;
         }
+
+        if (binaryLogger != null)
+        {
+            binaryLogger.setEnabled(false);
+            binaryLogger = null;
+        }
     }   //closeTraceLog
 
     /**
@@ -209,7 +248,7 @@ public class TrcDbgTrace
      */
     public boolean tracerLogIsOpened()
     {
-        return traceLogger != null;
+        return traceLogger != null || binaryLogger != null;
     }   //tracerLogIsOpened
 
     /**
@@ -233,6 +272,11 @@ public class TrcDbgTrace
         {
             traceLogger.setEnabled(enabled);
         }
+
+        if (binaryLogger != null)
+        {
+            binaryLogger.setEnabled(enabled);
+        }
     }   //setTraceLogEnabled
 
     /**
@@ -280,6 +324,247 @@ public class TrcDbgTrace
         traceMsg(funcName, MsgLevel.INFO, newFormat, args);
     }   //logEvent
 
+    /**
+     * This method registers a message format for logBinary. The message prefix is built the same way as the text
+     * trace messages so the decoded binary log looks the same as the text log. This should be called at
+     * initialization time.
+     *
+     * @param funcName specifies the calling method name.
+     * @param level specifies the message level.
+     * @param format specifies the format string of the message. Only numeric and boolean arguments are supported.
+     * @return format ID to be passed to logBinary.
+     */
+    public int registerBinaryFormat(final String funcName, MsgLevel level, final String format)
+    {
+        return TrcBinaryTraceLogger.registerFormat(level, msgPrefix(funcName, level) + format);
+    }   //registerBinaryFormat
+
+    /**
+     * This method registers an event format for logBinaryEvent. The entry is in the same XML format as logEvent.
+     * This should be called at initialization time.
+     *
+     * @param funcName specifies the calling method name.
+     * @param eventName specifies the name to identify the event.
+     * @param format specifies the format string of the message. Only numeric and boolean arguments are supported.
+     * @return format ID to be passed to logBinaryEvent.
+     */
+    public int registerBinaryEvent(final String funcName, final String eventName, final String format)
+    {
+        return registerBinaryFormat(
+            funcName, MsgLevel.INFO, "<Event name=\"" + eventName + "\" time=\"%.3f\" " + format + " />");
+    }   //registerBinaryEvent
+
+    /**
+     * This method logs a message with a format registered by registerBinaryFormat. If a binary trace log is enabled,
+     * the message is recorded without formatting or allocating memory. Otherwise, it is formatted and traced like
+     * any other message.
+     *
+     * @param formatId specifies the format ID returned by registerBinaryFormat.
+     */
+    public void logBinary(int formatId)
+    {
+        logBinary(formatId, 0, 0.0, 0.0, 0.0, 0.0, 0.0, 0.0);
+    }   //logBinary
+
+    /**
+     * This method logs a message with a format registered by registerBinaryFormat.
+     *
+     * @param formatId specifies the format ID returned by registerBinaryFormat.
+     * @param arg0 specifies the first message argument.
+     */
+    public void logBinary(int formatId, double arg0)
+    {
+        logBinary(formatId, 1, arg0, 0.0, 0.0, 0.0, 0.0, 0.0);
+    }   //logBinary
+
+    /**
+     * This method logs a message with a format registered by registerBinaryFormat.
+     *
+     * @param formatId specifies the format ID returned by registerBinaryFormat.
+     * @param arg0 specifies the first message argument.
+     * @param arg1 specifies the second message argument.
+     */
+    public void logBinary(int formatId, double arg0, double arg1)
+    {
+        logBinary(formatId, 2, arg0, arg1, 0.0, 0.0, 0.0, 0.0);
+    }   //logBinary
+
+    /**
+     * This method logs a message with a format registered by registerBinaryFormat.
+     *
+     * @param formatId specifies the format ID returned by registerBinaryFormat.
+     * @param arg0 specifies the first message argument.
+     * @param arg1 specifies the second message argument.
+     * @param arg2 specifies the third message argument.
+     */
+    public void logBinary(int formatId, double arg0, double arg1, double arg2)
+    {
+        logBinary(formatId, 3, arg0, arg1, arg2, 0.0, 0.0, 0.0);
+    }   //logBinary
+
+    /**
+     * This method logs a message with a format registered by registerBinaryFormat.
+     *
+     * @param formatId specifies the format ID returned by registerBinaryFormat.
+     * @param arg0 specifies the first message argument.
+     * @param arg1 specifies the second message argument.
+     * @param arg2 specifies the third message argument.
+     * @param arg3 specifies the fourth message argument.
+     */
+    public void logBinary(int formatId, double arg0, double arg1, double arg2, double arg3)
+    {
+        logBinary(formatId, 4, arg0, arg1, arg2, arg3, 0.0, 0.0);
+    }   //logBinary
+
+    /**
+     * This method logs a message with a format registered by registerBinaryFormat.
+     *
+     * @param formatId specifies the format ID returned by registerBinaryFormat.
+     * @param arg0 specifies the first message argument.
+     * @param arg1 specifies the second message argument.
+     * @param arg2 specifies the third message argument.
+     * @param arg3 specifies the fourth message argument.
+     * @param arg4 specifies the fifth message argument.
+     */
+    public void logBinary(int formatId, double arg0, double arg1, double arg2, double arg3, double arg4)
+    {
+        logBinary(formatId, 5, arg0, arg1, arg2, arg3, arg4, 0.0);
+    }   //logBinary
+
+    /**
+     * This method logs a message with a format registered by registerBinaryFormat.
+     *
+     * @param formatId specifies the format ID returned by registerBinaryFormat.
+     * @param arg0 specifies the first message argument.
+     * @param arg1 specifies the second message argument.
+     * @param arg2 specifies the third message argument.
+     * @param arg3 specifies the fourth message argument.
+     * @param arg4 specifies the fifth message argument.
+     * @param arg5 specifies the sixth message argument.
+     */
+    public void logBinary(int formatId, double arg0, double arg1, double arg2, double arg3, double arg4, double arg5)
+    {
+        logBinary(formatId, 6, arg0, arg1, arg2, arg3, arg4, arg5);
+    }   //logBinary
+
+    /**
+     * This method logs an event with a format registered by registerBinaryEvent. The event time is the mode elapsed
+     * time.
+     *
+     * @param formatId specifies the format ID returned by registerBinaryEvent.
+     */
+    public void logBinaryEvent(int formatId)
+    {
+        logBinary(formatId, 1, TrcUtil.getModeElapsedTime(), 0.0, 0.0, 0.0, 0.0, 0.0);
+    }   //logBinaryEvent
+
+    /**
+     * This method logs an event with a format registered by registerBinaryEvent.
+     *
+     * @param formatId specifies the format ID returned by registerBinaryEvent.
+     * @param arg0 specifies the first message argument.
+     */
+    public void logBinaryEvent(int formatId, double arg0)
+    {
+        logBinary(formatId, 2, TrcUtil.getModeElapsedTime(), arg0, 0.0, 0.0, 0.0, 0.0);
+    }   //logBinaryEvent
+
+    /**
+     * This method logs an event with a format registered by registerBinaryEvent.
+     *
+     * @param formatId specifies the format ID returned by registerBinaryEvent.
+     * @param arg0 specifies the first message argument.
+     * @param arg1 specifies the second message argument.
+     */
+    public void logBinaryEvent(int formatId, double arg0, double arg1)
+    {
+        logBinary(formatId, 3, TrcUtil.getModeElapsedTime(), arg0, arg1, 0.0, 0.0, 0.0);
+    }   //logBinaryEvent
+
+    /**
+     * This method logs an event with a format registered by registerBinaryEvent.
+     *
+     * @param formatId specifies the format ID returned by registerBinaryEvent.
+     * @param arg0 specifies the first message argument.
+     * @param arg1 specifies the second message argument.
+     * @param arg2 specifies the third message argument.
+     */
+    public void logBinaryEvent(int formatId, double arg0, double arg1, double arg2)
+    {
+        logBinary(formatId, 4, TrcUtil.getModeElapsedTime(), arg0, arg1, arg2, 0.0, 0.0);
+    }   //logBinaryEvent
+
+    /**
+     * This method logs an event with a format registered by registerBinaryEvent.
+     *
+     * @param formatId specifies the format ID returned by registerBinaryEvent.
+     * @param arg0 specifies the first message argument.
+     * @param arg1 specifies the second message argument.
+     * @param arg2 specifies the third message argument.
+     * @param arg3 specifies the fourth message argument.
+     */
+    public void logBinaryEvent(int formatId, double arg0, double arg1, double arg2, double arg3)
+    {
+        logBinary(formatId, 5, TrcUtil.getModeElapsedTime(), arg0, arg1, arg2, arg3, 0.0);
+    }   //logBinaryEvent
+
+    /**
+     * This method logs an event with a format registered by registerBinaryEvent.
+     *
+     * @param formatId specifies the format ID returned by registerBinaryEvent.
+     * @param arg0 specifies the first message argument.
+     * @param arg1 specifies the second message argument.
+     * @param arg2 specifies the third message argument.
+     * @param arg3 specifies the fourth message argument.
+     * @param arg4 specifies the fifth message argument.
+     */
+    public void logBinaryEvent(int formatId, double arg0, double arg1, double arg2, double arg3, double arg4)
+    {
+        logBinary(formatId, 6, TrcUtil.getModeElapsedTime(), arg0, arg1, arg2, arg3, arg4);
+    }   //logBinaryEvent
+
+    /**
+     * This method is the common worker for all the binary log methods.
+     *
+     * @param formatId specifies the format ID.
+     * @param argCount specifies the number of arguments used.
+     * @param arg0 specifies the first argument.
+     * @param arg1 specifies the second argument.
+     * @param arg2 specifies the third argument.
+     * @param arg3 specifies the fourth argument.
+     * @param arg4 specifies the fifth argument.
+     * @param arg5 specifies the sixth argument.
+     */
+    private void logBinary(
+        int formatId, int argCount, double arg0, double arg1, double arg2, double arg3, double arg4, double arg5)
+    {
+        MsgLevel level = TrcBinaryTraceLogger.getFormatLevel(formatId);
+
+        if (level.getValue() <= msgLevel.getValue())
+        {
+            TrcBinaryTraceLogger logger = binaryLogger;
+
+            if (logger != null && logger.isEnabled())
+            {
+                logger.logMessage(formatId, argCount, arg0, arg1, arg2, arg3, arg4, arg5);
+            }
+            else
+            {
+                //
+                // No binary log, fall back to formatting the message as text.
+                //
+                String msg = TrcBinaryTraceLogger.formatMessage(
+                    TrcBinaryTraceLogger.getFormatTemplate(formatId),
+                    new double[] {arg0, arg1, arg2, arg3, arg4, arg5}, argCount);
+                HalDbgLog.msg(level, msg + "\n");
+                if (traceLogger != null)
+                {
+                    traceLogger.logMessage(msg);
+                }
+            }
+        }
+    }   //logBinary
+
     /**
      * This method is typically called at the beginning of a method to trace the entry parameters of the method.
      *
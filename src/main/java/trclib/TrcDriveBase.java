@@ -22,10 +22,6 @@
 
 package trclib;
 
-import org.apache.commons.math3.linear.MatrixUtils;
-import org.apache.commons.math3.linear.RealMatrix;
-import org.apache.commons.math3.linear.RealVector;
-
 import java.util.Arrays;
 import java.util.Locale;
 import java.util.Stack;
@@ -198,6 +194,7 @@ public abstract class TrcDriveBase implements TrcExclusiveSubsystem
     private TrcTaskMgr.TaskObject odometryTaskObj;
     private TrcTaskMgr.TaskObject stopTaskObj;
     private TrcDriveBaseOdometry driveBaseOdometry = null;
+    private TrcPoseEstimator poseEstimator = null;
     protected MotorPowerMapper motorPowerMapper = null;
     private double sensitivity = DEF_SENSITIVITY;
     private double maxOutput = DEF_MAX_OUTPUT;
@@ -207,10 +204,6 @@ public abstract class TrcDriveBase implements TrcExclusiveSubsystem
     private Stack<Odometry> referenceOdometryStack = new Stack<>();
     private Odometry referenceOdometry = null;
     private boolean synchronizeOdometries = true;
-    // Change of basis matrices to convert between coordinate systems
-    private final RealMatrix enuToNwuChangeOfBasis = MatrixUtils
-        .createRealMatrix(new double[][] { { 0, 1 }, { -1, 0 } });
-    private final RealMatrix nwuToEnuChangeOfBasis = enuToNwuChangeOfBasis.transpose();
 
     /**
      * Constructor: Create an instance of the object.
@@ -332,6 +325,22 @@ public abstract class TrcDriveBase implements TrcExclusiveSubsystem
         }
     }   //getFieldPosition
 
+    /**
+     * This method stores the robot position in reference to the field origin in the given pose. This is the
+     * allocation-free version of getFieldPosition for periodic callers.
+     *
+     * @param result specifies the pose to store the robot position in.
+     * @return result pose.
+     */
+    public TrcPose2D getFieldPosition(TrcPose2D result)
+    {
+        synchronized (odometry)
+        {
+            result.setAs(odometry.position);
+            return result;
+        }
+    }   //getFieldPosition
+
     /**
      * This method returns the robot velocity in reference to the field origin. By default, the field origin is the
      * robot's starting position.
@@ -346,6 +355,22 @@ public abstract class TrcDriveBase implements TrcExclusiveSubsystem
         }
     }   //getFieldVelocity
 
+    /**
+     * This method stores the robot velocity in reference to the field origin in the given pose. This is the
+     * allocation-free version of getFieldVelocity for periodic callers.
+     *
+     * @param result specifies the pose to store the robot velocity in.
+     * @return result pose.
+     */
+    public TrcPose2D getFieldVelocity(TrcPose2D result)
+    {
+        synchronized (odometry)
+        {
+            result.setAs(odometry.velocity);
+            return result;
+        }
+    }   //getFieldVelocity
+
     /**
      * This method sets the robot's absolute field position to the given pose. This can be used to set the robot's
      * starting position relative to the field origin.
@@ -357,6 +382,10 @@ public abstract class TrcDriveBase implements TrcExclusiveSubsystem
         synchronized (odometry)
         {
             odometry.setPositionAs(pose);
+            if (poseEstimator != null)
+            {
+                poseEstimator.reset(TrcUtil.getCurrentTime(), pose);
+            }
         }
     }   //setFieldPosition
 
@@ -368,10 +397,24 @@ public abstract class TrcDriveBase implements TrcExclusiveSubsystem
      * @return position transformed into the new reference pose.
      */
     public TrcPose2D getPositionRelativeTo(TrcPose2D posPose, boolean transformAngle)
+    {
+        return getPositionRelativeTo(posPose, transformAngle, new TrcPose2D());
+    }   //getPositionRelativeTo
+
+    /**
+     * This method stores the robot position relative to <code>pose</code> in the given pose. This is the
+     * allocation-free version of getPositionRelativeTo for periodic callers.
+     *
+     * @param posPose specifies the position to be referenced to.
+     * @param transformAngle specifies true to also transform angle, false to leave it alone.
+     * @param result specifies the pose to store the transformed position in.
+     * @return result pose.
+     */
+    public TrcPose2D getPositionRelativeTo(TrcPose2D posPose, boolean transformAngle, TrcPose2D result)
     {
         synchronized (odometry)
         {
-            return odometry.position.relativeTo(posPose, transformAngle);
+            return odometry.position.relativeTo(posPose, transformAngle, result);
         }
     }   //getPositionRelativeTo
 
@@ -395,17 +438,43 @@ public abstract class TrcDriveBase implements TrcExclusiveSubsystem
      */
     public TrcPose2D getVelocityRelativeTo(TrcPose2D velPose, double refAngle)
     {
-        synchronized (odometry)
+        return getVelocityRelativeTo(velPose, refAngle, new TrcPose2D());
+    }   //getVelocityRelativeTo
+
+    /**
+     * This method stores the robot velocity relative to <code>pose</code> in the given pose. This is the
+     * allocation-free version of getVelocityRelativeTo for periodic callers.
+     *
+     * @param velPose specifies the velocity to be referenced to.
+     * @param refAngle specifies the reference angle to be relative to.
+     * @param result specifies the pose to store the transformed velocity in.
+     * @return result pose.
+     */
+    public TrcPose2D getVelocityRelativeTo(TrcPose2D velPose, double refAngle, TrcPose2D result)
+    {
+        TrcPose2D.ScratchPool scratchPool = TrcPose2D.getScratchPool();
+        int mark = scratchPool.mark();
+
+        try
+        {
+            synchronized (odometry)
+            {
+                //
+                // relativeTo will transform the odometry velocity vector to be relative to the angle of pose but the
+                // angle of velPose is really the angular velocity not an angle, so we must copy velPose to a scratch
+                // pose and change the angle member to be the refAngle and let the caller provide that angle.
+                //
+                TrcPose2D pose = scratchPool.acquire();
+                pose.set(velPose.x, velPose.y, refAngle);
+                odometry.velocity.relativeTo(pose, false, result);
+            }
+        }
+        finally
         {
-            //
-            // relativeTo will transform the odometry velocity vector to be relative to the angle of pose but the
-            // angle of velPose is really the angular velocity not an angle, so we must duplicate velPose to a new
-            // pose and change the angle member to be the refAngle and let the caller provide that angle.
-            //
-            TrcPose2D pose = velPose.clone();
-            pose.angle = refAngle;
-            return odometry.velocity.relativeTo(pose, false);
+            scratchPool.release(mark);
         }
+
+        return result;
     }   //getVelocityRelativeTo
 
     /**
@@ -759,6 +828,10 @@ public abstract class TrcDriveBase implements TrcExclusiveSubsystem
 
             odometry.position.x = odometry.position.y = 0.0;
             odometry.velocity.x = odometry.velocity.y = 0.0;
+            if (poseEstimator != null)
+            {
+                poseEstimator.reset(TrcUtil.getCurrentTime(), odometry.position);
+            }
         }
 
         if (debugEnabled)
@@ -801,6 +874,35 @@ public abstract class TrcDriveBase implements TrcExclusiveSubsystem
         }
     }   //setDriveBaseOdometry
 
+    /**
+     * This method sets the pose estimator that is fed with every odometry update of the drive base. The estimator
+     * fuses the odometry with vision observations added by the caller. Its pose is reset to the current field
+     * position.
+     *
+     * @param poseEstimator specifies the pose estimator, null to remove the estimator.
+     */
+    public void setPoseEstimator(TrcPoseEstimator poseEstimator)
+    {
+        synchronized (odometry)
+        {
+            this.poseEstimator = poseEstimator;
+            if (poseEstimator != null)
+            {
+                poseEstimator.reset(TrcUtil.getCurrentTime(), odometry.position);
+            }
+        }
+    }   //setPoseEstimator
+
+    /**
+     * This method returns the pose estimator fed by the drive base.
+     *
+     * @return pose estimator, null if none is set.
+     */
+    public TrcPoseEstimator getPoseEstimator()
+    {
+        return poseEstimator;
+    }   //getPoseEstimator
+
     /**
      * This method sets a motor power mapper. If null, it unsets the previously set mapper.
      *
@@ -1561,6 +1663,10 @@ public abstract class TrcDriveBase implements TrcExclusiveSubsystem
             {
                 odometryDelta = driveBaseOdometry.getOdometryDelta();
                 updateOdometry(odometryDelta, odometry.position.angle);
+                if (poseEstimator != null)
+                {
+                    poseEstimator.addOdometry(TrcUtil.getCurrentTime(), odometryDelta);
+                }
             }
             else
             {
@@ -1614,6 +1720,14 @@ public abstract class TrcDriveBase implements TrcExclusiveSubsystem
                 }
 
                 updateOdometry(odometryDelta, odometry.position.angle);
+                if (poseEstimator != null)
+                {
+                    //
+                    // The angle of the delta comes from the gyro if there is one, so the estimator fuses the gyro
+                    // heading with the wheel travel.
+                    //
+                    poseEstimator.addOdometry(motorsState.currMotorOdometries[0].currTimestamp, odometryDelta);
+                }
 
                 if (debugEnabled)
                 {
@@ -1710,73 +1824,69 @@ public abstract class TrcDriveBase implements TrcExclusiveSubsystem
 
         if (USE_CURVED_PATH)
         {
-            // The math below uses a different coordinate system (NWU) so we have to convert
-            double[] posArr = enuToNwuChangeOfBasis.operate(new double[] { delta.position.x, delta.position.y });
-            double x = posArr[0];
-            double y = posArr[1];
+            // The math below uses a different coordinate system (NWU) so we have to convert. The change of basis
+            // from ENU to NWU is (x, y) -> (y, -x).
+            double x = delta.position.y;
+            double y = -delta.position.x;
             // Convert clockwise degrees to counter-clockwise radians
             double theta = Math.toRadians(-delta.position.angle);
             double headingRad = Math.toRadians(-angle);
 
             // The derivation of the following math is here in section 11.1
             // (https://file.tavsys.net/control/state-space-guide.pdf)
-            // A is a transformation matrix representing a CCW rotation by headingRad radians
-            // This is used to bring the change in pose into the global reference frame
-            RealMatrix A = MatrixUtils.createRealMatrix(
-                new double[][] { { Math.cos(headingRad), -Math.sin(headingRad), 0 },
-                                 { Math.sin(headingRad), Math.cos(headingRad), 0 },
-                                 { 0, 0, 1 } });
+            // The change in global pose is A*B*C, expanded below so that no matrix is allocated.
+            // C is the column vector containing the "raw" change in pose (x, y, theta). This is the immediate output
+            // of the forward odometry multiplied by timestep.
             // B is used to apply a nonzero curvature to the path. When the curvature is zero, B resolves to the
             // identity matrix.
             // The math involved isn't immediately intuitive, but it's basically the integration of the forward odometry
             // matrix equation.
-            RealMatrix B;
+            double sinTerm, cosTerm;
             if (Math.abs(theta) <= 1E-9)
             {
                 // Use the taylor series approximations, since some values are indeterminate
-                B = MatrixUtils.createRealMatrix(new double[][] { { 1 - theta * theta / 6.0, -theta / 2.0, 0 },
-                    { theta / 2.0, 1 - theta * theta / 6.0, 0 }, { 0, 0, 1 } });
+                sinTerm = 1 - theta * theta / 6.0;
+                cosTerm = theta / 2.0;
             }
             else
             {
-                B = MatrixUtils.createRealMatrix(new double[][] { { Math.sin(theta), Math.cos(theta) - 1, 0 },
-                    { 1 - Math.cos(theta), Math.sin(theta), 0 }, { 0, 0, theta } });
-                B = B.scalarMultiply(1.0 / theta);
+                sinTerm = Math.sin(theta) / theta;
+                cosTerm = (1 - Math.cos(theta)) / theta;
             }
-            // C is the column vector containing the "raw" change in pose. This is the immediate output of the forward
-            // odometry multiplied by timestep
-            RealVector C = MatrixUtils.createRealVector(new double[] { x, y, theta });
-            // Get the change in global pose
-            RealVector globalPose = A.multiply(B).operate(C);
-            // Convert back to our (ENU) reference frame
-            RealVector pos = nwuToEnuChangeOfBasis.operate(globalPose.getSubVector(0, 2));
+            double curvedX = sinTerm * x - cosTerm * y;
+            double curvedY = cosTerm * x + sinTerm * y;
+            // A is a transformation matrix representing a CCW rotation by headingRad radians
+            // This is used to bring the change in pose into the global reference frame
+            double cosHeading = Math.cos(headingRad);
+            double sinHeading = Math.sin(headingRad);
+            double globalX = cosHeading * curvedX - sinHeading * curvedY;
+            double globalY = sinHeading * curvedX + cosHeading * curvedY;
+
+            // Convert back to our (ENU) reference frame, the change of basis is (x, y) -> (-y, x).
+            odometry.position.x += -globalY;
+            odometry.position.y += globalX;
             // Convert back to clockwise degrees for angle
-            theta = Math.toDegrees(-globalPose.getEntry(2));
-
-            // Rotate the velocity vector into the global reference frame
-            RealVector vel = MatrixUtils.createRealVector(new double[] { delta.velocity.x, delta.velocity.y });
-            vel = TrcUtil.rotateCW(vel, angle);
-
-            // Update the odometry values
-            odometry.position.x += pos.getEntry(0);
-            odometry.position.y += pos.getEntry(1);
-            odometry.position.angle += theta;
-            odometry.velocity.x = vel.getEntry(0);
-            odometry.velocity.y = vel.getEntry(1);
+            odometry.position.angle += Math.toDegrees(-theta);
+
+            // Rotate the velocity vector clockwise into the global reference frame
+            double angleRad = Math.toRadians(angle);
+            double cosAngle = Math.cos(angleRad);
+            double sinAngle = Math.sin(angleRad);
+            odometry.velocity.x = cosAngle * delta.velocity.x + sinAngle * delta.velocity.y;
+            odometry.velocity.y = -sinAngle * delta.velocity.x + cosAngle * delta.velocity.y;
             odometry.velocity.angle = delta.velocity.angle;
         }
         else
         {
-            RealVector pos = MatrixUtils.createRealVector(new double[] { delta.position.x, delta.position.y });
-            RealVector vel = MatrixUtils.createRealVector(new double[] { delta.velocity.x, delta.velocity.y });
-
-            pos = TrcUtil.rotateCW(pos, odometry.position.angle);
-            vel = TrcUtil.rotateCW(vel, odometry.position.angle);
+            // Rotate the position and velocity vectors clockwise into the global reference frame
+            double angleRad = Math.toRadians(odometry.position.angle);
+            double cosAngle = Math.cos(angleRad);
+            double sinAngle = Math.sin(angleRad);
 
-            odometry.position.x += pos.getEntry(0);
-            odometry.position.y += pos.getEntry(1);
-            odometry.velocity.x = vel.getEntry(0);
-            odometry.velocity.y = vel.getEntry(1);
+            odometry.position.x += cosAngle * delta.position.x + sinAngle * delta.position.y;
+            odometry.position.y += -sinAngle * delta.position.x + cosAngle * delta.position.y;
+            odometry.velocity.x = cosAngle * delta.velocity.x + sinAngle * delta.velocity.y;
+            odometry.velocity.y = -sinAngle * delta.velocity.x + cosAngle * delta.velocity.y;
             odometry.position.angle += delta.position.angle;
             odometry.velocity.angle = delta.velocity.angle;
         }
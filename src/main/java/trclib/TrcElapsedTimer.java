@@ -22,22 +22,45 @@
 
 package trclib;
 
-import java.util.LinkedList;
+import java.util.Arrays;
 import java.util.Locale;
-import java.util.Queue;
 
 /**
  * This class implements an elapsed timer to record elapsed time. It is a performance monitoring tool. It is especially
  * important for PID controlled loops that the loops are executed at a high enough frequency or they will oscillate
- * wildly. This class records the elapsed time of some operations in an averaging window queue. To calculate the
- * average elapsed time, all elapsed time values recorded in the averaging window queue are averaged. It also records
- * the min and max elapsed time values it has seen since the last reset.
+ * wildly. This class records the elapsed time of some operations in an averaging window. To calculate the average
+ * elapsed time, all elapsed time values recorded in the averaging window are averaged. It also records the min and
+ * max elapsed time values it has seen since the last reset.
+ *
+ * The averaging window is a ring buffer of primitive elapsed times with a running sum, so recording never allocates
+ * once the ring has grown to the size of the window and all statistics of the window are O(1) except percentiles.
+ * The min and max of the window are tracked with monotonic deques: each deque holds the ring positions of the values
+ * that can still become the min (or max) when older values leave the window, in increasing (or decreasing) order.
+ * Percentiles are computed on demand from a sorted copy of the window.
+ *
+ * Recording is meant to be done by one thread at a time. Recording and reading are synchronized, which costs an
+ * uncontended lock on the recording path and lets any thread read the statistics.
  */
 public class TrcElapsedTimer
 {
+    private static final int INITIAL_CAPACITY = 64;
+    public static final int MAX_WINDOW_SIZE = 4096;
+
     private final String instanceName;
     private final long averageWindow;
-    private final Queue<Long> elapsedTimeQueue;
+    //
+    // The ring, minDeque and maxDeque have the same power of two capacity. Positions are sequence numbers of the
+    // recorded values which only grow, the slot of a position is the position masked by capacity - 1. The window
+    // holds the values from windowHead up to but not including windowTail.
+    //
+    private long[] elapsedTimes;
+    private long[] minDeque;
+    private long[] maxDeque;
+    private long windowHead;
+    private long windowTail;
+    private long minDequeHead, minDequeTail;
+    private long maxDequeHead, maxDequeTail;
+    private long[] sortedElapsedTimes = null;
     private long minElapsedTime;
     private long maxElapsedTime;
     private long totalElapsedTime;
@@ -53,7 +76,9 @@ public class TrcElapsedTimer
     {
         this.instanceName = instanceName;
         this.averageWindow = (long)(averageWindow * 1000000000);
-        elapsedTimeQueue = new LinkedList<>();
+        elapsedTimes = new long[INITIAL_CAPACITY];
+        minDeque = new long[INITIAL_CAPACITY];
+        maxDeque = new long[INITIAL_CAPACITY];
         reset();
     }   //TrcElapsedTimer
 
@@ -66,7 +91,7 @@ public class TrcElapsedTimer
     public String toString()
     {
         return String.format(Locale.US, "%s: avgElapsed=%.6f, minElapsed=%.6f, maxElapsed=%.6f",
-                instanceName, getAverageElapsedTime(), getMaxElapsedTime(), getMaxElapsedTime());
+                instanceName, getAverageElapsedTime(), getMinElapsedTime(), getMaxElapsedTime());
     }   //toString
 
     /**
@@ -74,7 +99,9 @@ public class TrcElapsedTimer
      */
     public synchronized void reset()
     {
-        elapsedTimeQueue.clear();
+        windowHead = windowTail = 0;
+        minDequeHead = minDequeTail = 0;
+        maxDequeHead = maxDequeTail = 0;
         minElapsedTime = Long.MAX_VALUE;
         maxElapsedTime = 0L;
         totalElapsedTime = 0L;
@@ -90,7 +117,7 @@ public class TrcElapsedTimer
     }   //recordStartTime
 
     /**
-     * This method is called to record the elapsed time since the last start time into the elapsed time queue. It also
+     * This method is called to record the elapsed time since the last start time into the averaging window. It also
      * checks if the elapsed time is the minimum or maximum it has seen since last reset.
      */
     public synchronized void recordEndTime()
@@ -101,29 +128,13 @@ public class TrcElapsedTimer
         //
         if (startTime != 0L)
         {
-            long elapsedTime = TrcUtil.getCurrentTimeNanos() - startTime;
-
-            if (elapsedTime < minElapsedTime)
-            {
-                minElapsedTime = elapsedTime;
-            } else if (elapsedTime > maxElapsedTime)
-            {
-                maxElapsedTime = elapsedTime;
-            }
-
-            elapsedTimeQueue.add(elapsedTime);
-            totalElapsedTime += elapsedTime;
-
-            while (totalElapsedTime > averageWindow)
-            {
-                totalElapsedTime -= elapsedTimeQueue.remove();
-            }
+            recordElapsedTime(TrcUtil.getCurrentTimeNanos() - startTime);
         }
     }   //recordEndTime
 
     /**
-     * This method is called in a loop to have its period time measured. It records a number of loop periods in a
-     * queue for a given time window.
+     * This method is called in a loop to have its period time measured. It records a number of loop periods in the
+     * averaging window for a given time window.
      */
     public synchronized void recordPeriodTime()
     {
@@ -138,6 +149,123 @@ public class TrcElapsedTimer
         }
     }   //recordPeriodTime
 
+    /**
+     * This method adds an elapsed time measured by the caller to the averaging window and evicts the oldest values
+     * until the window is back within the averaging time window. It also checks if the elapsed time is the minimum
+     * or maximum it has seen since last reset.
+     *
+     * @param elapsedTime specifies the elapsed time in nanoseconds.
+     */
+    public synchronized void recordElapsedTime(long elapsedTime)
+    {
+        if (elapsedTime < minElapsedTime)
+        {
+            minElapsedTime = elapsedTime;
+        }
+
+        if (elapsedTime > maxElapsedTime)
+        {
+            maxElapsedTime = elapsedTime;
+        }
+
+        if (windowTail - windowHead == elapsedTimes.length)
+        {
+            if (elapsedTimes.length < MAX_WINDOW_SIZE)
+            {
+                grow();
+            }
+            else
+            {
+                evictOldest();
+            }
+        }
+
+        int mask = elapsedTimes.length - 1;
+        long position = windowTail++;
+
+        elapsedTimes[(int)(position & mask)] = elapsedTime;
+        totalElapsedTime += elapsedTime;
+        //
+        // Values in the deques that can never be the min (or max) again are dropped from the back before the new
+        // value is added.
+        //
+        while (minDequeTail > minDequeHead &&
+               elapsedTimes[(int)(minDeque[(int)((minDequeTail - 1) & mask)] & mask)] >= elapsedTime)
+        {
+            minDequeTail--;
+        }
+        minDeque[(int)(minDequeTail++ & mask)] = position;
+
+        while (maxDequeTail > maxDequeHead &&
+               elapsedTimes[(int)(maxDeque[(int)((maxDequeTail - 1) & mask)] & mask)] <= elapsedTime)
+        {
+            maxDequeTail--;
+        }
+        maxDeque[(int)(maxDequeTail++ & mask)] = position;
+
+        while (totalElapsedTime > averageWindow && windowTail > windowHead)
+        {
+            evictOldest();
+        }
+    }   //recordElapsedTime
+
+    /**
+     * This method removes the oldest value from the averaging window. It must be called with the timer locked and
+     * the window not empty.
+     */
+    private void evictOldest()
+    {
+        int mask = elapsedTimes.length - 1;
+        long position = windowHead++;
+
+        totalElapsedTime -= elapsedTimes[(int)(position & mask)];
+        if (minDeque[(int)(minDequeHead & mask)] == position)
+        {
+            minDequeHead++;
+        }
+
+        if (maxDeque[(int)(maxDequeHead & mask)] == position)
+        {
+            maxDequeHead++;
+        }
+    }   //evictOldest
+
+    /**
+     * This method doubles the capacity of the ring and the deques, keeping their contents at the slots of their
+     * positions in the new capacity. It must be called with the timer locked.
+     */
+    private void grow()
+    {
+        int newCapacity = elapsedTimes.length*2;
+
+        elapsedTimes = regrow(elapsedTimes, windowHead, windowTail, newCapacity);
+        minDeque = regrow(minDeque, minDequeHead, minDequeTail, newCapacity);
+        maxDeque = regrow(maxDeque, maxDequeHead, maxDequeTail, newCapacity);
+    }   //grow
+
+    /**
+     * This method copies the used part of a ring into a new ring of the given capacity.
+     *
+     * @param ring specifies the ring to copy.
+     * @param head specifies the position of the first used slot.
+     * @param tail specifies the position after the last used slot.
+     * @param newCapacity specifies the capacity of the new ring, a power of two.
+     * @return new ring.
+     */
+    private static long[] regrow(long[] ring, long head, long tail, int newCapacity)
+    {
+        long[] newRing = new long[newCapacity];
+        int mask = ring.length - 1;
+        int newMask = newCapacity - 1;
+
+        for (long position = head; position < tail; position++)
+        {
+            newRing[(int)(position & newMask)] = ring[(int)(position & mask)];
+        }
+
+        return newRing;
+    }   //regrow
+
     /**
      * This method returns the last recorded elapsed time in seconds.
      *
@@ -147,14 +275,24 @@ public class TrcElapsedTimer
     {
         double elapsedTime = 0.0;
 
-        if (!elapsedTimeQueue.isEmpty())
+        if (windowTail > windowHead)
         {
-            elapsedTime = (long)((LinkedList)elapsedTimeQueue).getLast() / 1000000000.0;
+            elapsedTime = elapsedTimes[(int)((windowTail - 1) & (elapsedTimes.length - 1))] / 1000000000.0;
         }
 
         return elapsedTime;
     }   //getLastElapsedTime
 
+    /**
+     * This method returns the number of elapsed times in the averaging window.
+     *
+     * @return number of elapsed times in the window.
+     */
+    public synchronized int getWindowSize()
+    {
+        return (int)(windowTail - windowHead);
+    }   //getWindowSize
+
     /**
      * This method calculates the average elapsed time within the given time window.
      *
@@ -162,7 +300,7 @@ public class TrcElapsedTimer
      */
     public synchronized double getAverageElapsedTime()
     {
-        return elapsedTimeQueue.isEmpty()? 0.0: totalElapsedTime/elapsedTimeQueue.size()/1000000000.0;
+        return windowTail == windowHead? 0.0: totalElapsedTime/(windowTail - windowHead)/1000000000.0;
     }   //getAverageElapsedTime
 
     /**
@@ -185,6 +323,68 @@ public class TrcElapsedTimer
         return maxElapsedTime/1000000000.0;
     }   //getMaxElapsedTime
 
+    /**
+     * This method returns the minimum elapsed time within the averaging window.
+     *
+     * @return minimum elapsed time in the window in seconds, 0.0 if the window is empty.
+     */
+    public synchronized double getWindowMinElapsedTime()
+    {
+        int mask = elapsedTimes.length - 1;
+
+        return minDequeTail == minDequeHead?
+            0.0: elapsedTimes[(int)(minDeque[(int)(minDequeHead & mask)] & mask)]/1000000000.0;
+    }   //getWindowMinElapsedTime
+
+    /**
+     * This method returns the maximum elapsed time within the averaging window.
+     *
+     * @return maximum elapsed time in the window in seconds, 0.0 if the window is empty.
+     */
+    public synchronized double getWindowMaxElapsedTime()
+    {
+        int mask = elapsedTimes.length - 1;
+
+        return maxDequeTail == maxDequeHead?
+            0.0: elapsedTimes[(int)(maxDeque[(int)(maxDequeHead & mask)] & mask)]/1000000000.0;
+    }   //getWindowMaxElapsedTime
+
+    /**
+     * This method returns the elapsed time at the given percentile of the averaging window, i.e. the smallest
+     * elapsed time that is greater than or equal to the given percentage of the elapsed times in the window. It
+     * sorts a copy of the window, so it is meant for reporting and not for the recording path.
+     *
+     * @param percentile specifies the percentile between 0.0 and 100.0.
+     * @return elapsed time at the percentile in seconds, 0.0 if the window is empty.
+     */
+    public synchronized double getPercentileElapsedTime(double percentile)
+    {
+        int size = (int)(windowTail - windowHead);
+        double elapsedTime = 0.0;
+
+        if (size > 0)
+        {
+            int mask = elapsedTimes.length - 1;
+
+            if (sortedElapsedTimes == null || sortedElapsedTimes.length < elapsedTimes.length)
+            {
+                sortedElapsedTimes = new long[elapsedTimes.length];
+            }
+
+            for (int i = 0; i < size; i++)
+            {
+                sortedElapsedTimes[i] = elapsedTimes[(int)((windowHead + i) & mask)];
+            }
+            Arrays.sort(sortedElapsedTimes, 0, size);
+
+            double fraction = TrcUtil.clipRange(percentile, 0.0, 100.0)/100.0;
+            int index = Math.max((int)Math.ceil(fraction*size) - 1, 0);
+            elapsedTime = sortedElapsedTimes[index]/1000000000.0;
+        }
+
+        return elapsedTime;
+    }   //getPercentileElapsedTime
+
     /**
      * This method prints the elapsed time info using the given tracer.
      *
@@ -22,9 +22,6 @@
 
 package trclib;
 
-import org.apache.commons.math3.linear.ArrayRealVector;
-import org.apache.commons.math3.linear.RealVector;
-
 /**
  * This class implements a platform independent Pure Pursuit drive for holonomic robots.
  * Essentially, a pure pursuit drive navigates the robot to chase a point along the path. The point to chase
@@ -75,22 +72,29 @@ public class TrcHolonomicPurePursuitDrive
     private final TrcDriveBase driveBase;
     private final TrcTaskMgr.TaskObject driveTaskObj;
     private final TrcPidController posPidCtrl, turnPidCtrl, velPidCtrl;
+    private final TrcPidController[] pidCtrls;
+    private final double[] pidOutputs;
     private TrcDbgTrace msgTracer = null;
+    private TrcDbgTrace robotPoseEventTracer = null;
+    private int robotPoseEventId = -1;
     private TrcRobotBattery battery = null;
     private boolean logRobotPoseEvents = false;
     private boolean tracePidInfo = false;
     private volatile double posTolerance; // Volatile so it can be changed at runtime
     private volatile double followingDistance; // Volatile so it can be changed at runtime
-    private TrcPath path;
+    private TrcPathData pathData;
+    private TrcPathSegmentIndex segmentIndex;
+    private final TrcWaypoint followingPoint = new TrcWaypoint(0.0, 0.0, 0.0, 0.0, 0.0, 0.0, 0.0, 0.0);
     private int pathIndex = 1;
     private double positionInput;
     private TrcEvent onFinishedEvent;
     private double timedOutTime;
-    private TrcWarpSpace warpSpace;
     private InterpolationType interpolationType = InterpolationType.LINEAR;
     private volatile boolean maintainHeading = false;
     private double startHeading;
     private TrcPose2D referencePose;
+    private final TrcPose2D robotPose = new TrcPose2D();
+    private final TrcPose2D fieldPose = new TrcPose2D();
     private double moveOutputLimit = Double.POSITIVE_INFINITY;
     private double rotOutputLimit = Double.POSITIVE_INFINITY;
 
@@ -109,13 +113,14 @@ public class TrcHolonomicPurePursuitDrive
         }
 
         this.instanceName = instanceName;
-        warpSpace = new TrcWarpSpace(instanceName + ".warpSpace", 0.0, 360.0);
         setPositionToleranceAndFollowingDistance(posTolerance, followingDistance);
 
         this.posPidCtrl = new TrcPidController(instanceName + ".posPid", posPidCoeff, 0.0, this::getPositionInput);
         this.turnPidCtrl = new TrcPidController(instanceName + ".turnPid", turnPidCoeff, turnTolerance,
             driveBase::getHeading);
         this.velPidCtrl = new TrcPidController(instanceName + ".velPid", velPidCoeff, 0.0, this::getVelocityInput);
+        this.pidCtrls = new TrcPidController[] { posPidCtrl, turnPidCtrl, velPidCtrl };
+        this.pidOutputs = new double[pidCtrls.length];
 
         posPidCtrl.setAbsoluteSetPoint(true);
         turnPidCtrl.setAbsoluteSetPoint(true);
@@ -160,6 +165,16 @@ public class TrcHolonomicPurePursuitDrive
         this.logRobotPoseEvents = logRobotPoseEvents;
         this.tracePidInfo = tracePidInfo;
         this.battery = battery;
+        //
+        // Robot pose events are logged every loop, register a binary format for them once per tracer so they
+        // don't generate garbage when the tracer has a binary log.
+        //
+        if (tracer != null && logRobotPoseEvents && tracer != robotPoseEventTracer)
+        {
+            robotPoseEventId = tracer.registerBinaryEvent(
+                instanceName, "RobotPose", "pose=\"(x=%.1f,y=%.1f,angle=%.1f)\"");
+            robotPoseEventTracer = tracer;
+        }
     }   //setMsgTracer
 
     /**
@@ -318,6 +333,25 @@ public class TrcHolonomicPurePursuitDrive
             throw new IllegalArgumentException("Path cannot be null or empty!");
         }
 
+        start(path.toPathData(), onFinishedEvent, timeout);
+    }   //start
+
+    /**
+     * Start following the supplied path data using a pure pursuit controller. The velocity must always be positive,
+     * and the path must start at (0,0). Heading is absolute and position is relative in the starting robot reference
+     * frame.
+     *
+     * @param pathData        The path data to follow. Must start at (0,0).
+     * @param onFinishedEvent When finished, signal this event.
+     * @param timeout         Number of seconds after which to cancel this operation. 0.0 for no timeout.
+     */
+    public synchronized void start(TrcPathData pathData, TrcEvent onFinishedEvent, double timeout)
+    {
+        if (pathData == null)
+        {
+            throw new IllegalArgumentException("Path cannot be null or empty!");
+        }
+
         cancel();
 
         if (onFinishedEvent != null)
@@ -326,7 +360,8 @@ public class TrcHolonomicPurePursuitDrive
         }
         this.onFinishedEvent = onFinishedEvent;
 
-        this.path = path;
+        this.pathData = pathData;
+        segmentIndex = new TrcPathSegmentIndex(pathData);
         timedOutTime = timeout == 0.0 ? Double.POSITIVE_INFINITY : TrcUtil.getCurrentTime() + timeout;
         pathIndex = 1;
         positionInput = 0;
@@ -369,6 +404,17 @@ public class TrcHolonomicPurePursuitDrive
         }
     }   //cancel
 
+    /**
+     * This method returns the index of the path segment the robot is following, the following point is between
+     * waypoint pathIndex - 1 and waypoint pathIndex.
+     *
+     * @return index of the path segment being followed.
+     */
+    synchronized int getPathIndex()
+    {
+        return pathIndex;
+    }   //getPathIndex
+
     private double getPositionInput()
     {
         return positionInput;
@@ -387,7 +433,7 @@ public class TrcHolonomicPurePursuitDrive
 
     private synchronized void driveTask(TrcTaskMgr.TaskType taskType, TrcRobot.RunMode runMode)
     {
-        TrcPose2D pose = driveBase.getPositionRelativeTo(referencePose, false);
+        TrcPose2D pose = driveBase.getPositionRelativeTo(referencePose, false, robotPose);
         double robotX = pose.x;
         double robotY = pose.y;
         TrcWaypoint point = getFollowingPoint(robotX, robotY);
@@ -401,9 +447,10 @@ public class TrcHolonomicPurePursuitDrive
             turnPidCtrl.setTarget(point.heading);
         }
 
-        double posPower = posPidCtrl.getOutput();
-        double turnPower = turnPidCtrl.getOutput();
-        double velPower = velPidCtrl.getOutput();
+        TrcPidController.getOutputs(pidCtrls, pidOutputs);
+        double posPower = pidOutputs[0];
+        double turnPower = pidOutputs[1];
+        double velPower = pidOutputs[2];
         turnPower = TrcUtil.clipRange(turnPower, -rotOutputLimit, rotOutputLimit);
 
         double r = posPower + velPower;
@@ -424,7 +471,7 @@ public class TrcHolonomicPurePursuitDrive
         boolean timedOut = TrcUtil.getCurrentTime() >= timedOutTime;
         boolean posOnTarget = dist <= posTolerance;
         boolean headingOnTarget = maintainHeading || (!maintainHeading && turnPidCtrl.isOnTarget());
-        if (timedOut || (pathIndex == path.getSize() - 1 && posOnTarget && headingOnTarget))
+        if (timedOut || (pathIndex == pathData.getSize() - 1 && posOnTarget && headingOnTarget))
         {
             if (onFinishedEvent != null)
             {
@@ -441,8 +488,8 @@ public class TrcHolonomicPurePursuitDrive
         {
             if (logRobotPoseEvents)
             {
-                msgTracer.logEvent(instanceName, "RobotPose", "pose=\"%s\"", driveBase.getFieldPosition());
-
+                driveBase.getFieldPosition(fieldPose);
+                msgTracer.logBinaryEvent(robotPoseEventId, fieldPose.x, fieldPose.y, fieldPose.angle);
             }
 
             if (tracePidInfo)
@@ -454,21 +501,13 @@ public class TrcHolonomicPurePursuitDrive
         }
     }   //driveTask
 
-    private TrcWaypoint interpolate(TrcWaypoint point1, TrcWaypoint point2, double weight)
-    {
-        double timestep = interpolate(point1.timeStep, point2.timeStep, weight);
-        double x = interpolate(point1.x, point2.x, weight);
-        double y = interpolate(point1.y, point2.y, weight);
-        double position = interpolate(point1.encoderPosition, point2.encoderPosition, weight);
-        double velocity = interpolate(point1.velocity, point2.velocity, weight);
-        double acceleration = interpolate(point1.acceleration, point2.acceleration, weight);
-        double jerk = interpolate(point1.jerk, point2.jerk, weight);
-        double heading = interpolate(point1.heading, warpSpace.getOptimizedTarget(point2.heading, point1.heading),
-            weight);
-        return new TrcWaypoint(timestep, x, y, position, velocity, acceleration, jerk, heading);
-    }   //interpolate
-
-    private double interpolate(double start, double end, double weight)
+    /**
+     * This method applies the interpolation type to the position within a segment.
+     *
+     * @param weight specifies the position within the segment between 0.0 and 1.0.
+     * @return interpolation weight of the segment end.
+     */
+    private double getInterpolationWeight(double weight)
     {
         if (!TrcUtil.inRange(weight, 0.0, 1.0))
         {
@@ -489,81 +528,76 @@ public class TrcHolonomicPurePursuitDrive
                 weight = Math.pow(weight, 1.0 / interpolationType.getValue());
                 break;
         }
-        return (1.0 - weight) * start + weight * end;
-    }   //interpolate
+        return weight;
+    }   //getInterpolationWeight
 
-    private TrcWaypoint interpolatePoints(TrcWaypoint prev, TrcWaypoint point, double robotX, double robotY)
+    /**
+     * This method returns the point on the path to follow. It is the farthest intersection of the path with the
+     * circle of radius followingDistance around the robot, searched from the current segment forward to the end of
+     * the path. A waypoint at distance d from the robot is at least d - s from the robot s arc length further along
+     * the path, so the search skips the stretch of path that cannot reach the circle with a binary search on the arc
+     * lengths. This holds for any path shape, and the search usually tests only a few segments around the robot.
+     * The returned waypoint is reused every loop, it must not be kept.
+     *
+     * @param robotX specifies the robot x position.
+     * @param robotY specifies the robot y position.
+     * @return waypoint to follow.
+     */
+    synchronized TrcWaypoint getFollowingPoint(double robotX, double robotY)
     {
-        // Find intersection of path segment with circle with radius followingDistance and center at robot
-        RealVector start = new ArrayRealVector(new double[] { prev.x, prev.y });
-        RealVector end = new ArrayRealVector(new double[] { point.x, point.y });
-        RealVector robot = new ArrayRealVector(new double[] { robotX, robotY });
-
-        RealVector startToEnd = end.subtract(start);
-        RealVector robotToStart = start.subtract(robot);
-        // Solve quadratic formula
-        double a = startToEnd.dotProduct(startToEnd);
-        double b = 2 * robotToStart.dotProduct(startToEnd);
-        double c = robotToStart.dotProduct(robotToStart) - followingDistance * followingDistance;
-
-        double discriminant = b * b - 4 * a * c;
-        if (discriminant < 0)
+        // TODO: 99% sure this is correct. verify on actual robot, not simulation
+        int lastIndex = segmentIndex.getSize() - 1;
+        if (segmentIndex.distanceTo(lastIndex, robotX, robotY) < followingDistance)
         {
-            // No valid intersection.
-            return null;
+            pathIndex = lastIndex;
+            return pathData.getWaypoint(lastIndex, followingPoint);
         }
-        else
+
+        int i = Math.max(pathIndex, 1);
+        while (i <= lastIndex)
         {
-            // line is a parametric equation, where t=0 is start, t=1 is end.
-            discriminant = Math.sqrt(discriminant);
-            double t1 = (-b - discriminant) / (2 * a);
-            double t2 = (-b + discriminant) / (2 * a);
-            double t = Math.max(t1, t2); // We want the furthest intersection
-            // If the intersection is not on the line segment, it's invalid.
-            if (!TrcUtil.inRange(t, 0.0, 1.0))
+            // Segments ending within distance - followingDistance of arc length can't reach the circle, skip them.
+            double distance = segmentIndex.distanceTo(i - 1, robotX, robotY);
+            if (distance > followingDistance)
             {
-                return null;
+                int nextIndex = segmentIndex.findWindowEnd(i - 1, distance - followingDistance);
+                if (nextIndex > i)
+                {
+                    i = nextIndex;
+                    continue;
+                }
             }
-            return interpolate(prev, point, t);
-        }
-    }   //interpolatePoints
 
-    private TrcWaypoint getFollowingPoint(double robotX, double robotY)
-    {
-        // TODO: 99% sure this is correct. verify on actual robot, not simulation
-        TrcWaypoint last = path.getWaypoint(path.getSize() - 1);
-        if (TrcUtil.magnitude(robotX - last.x, robotY - last.y) < followingDistance)
-        {
-            int index = path.getSize() - 1;
-            pathIndex = index;
-            return path.getWaypoint(index);
-        }
-
-        for (int i = Math.max(pathIndex, 1); i < path.getSize(); i++)
-        {
             // If there is a valid intersection, return it.
-            TrcWaypoint interpolated = interpolatePoints(path.getWaypoint(i - 1), path.getWaypoint(i), robotX, robotY);
-            if (interpolated != null)
+            double t = segmentIndex.intersect(i, robotX, robotY, followingDistance);
+            if (!Double.isNaN(t))
             {
                 pathIndex = i;
-                return interpolated;
+                return pathData.interpolate(i - 1, getInterpolationWeight(t), followingPoint);
             }
+            i++;
         }
 
         // There are no points where the distance to any point is followingDistance.
-        // Choose the one closest to followingDistance.
-        TrcWaypoint closestPoint = path.getWaypoint(pathIndex);
-        for (int i = pathIndex; i < path.getSize(); i++)
+        // Choose the one closest to followingDistance, later waypoints win ties.
+        int closestIndex = pathIndex;
+        double closestError = Math.abs(segmentIndex.distanceTo(closestIndex, robotX, robotY) - followingDistance);
+        i = pathIndex + 1;
+        while (i <= lastIndex)
         {
-            TrcWaypoint point = path.getWaypoint(i);
-            if (Math.abs(TrcUtil.magnitude(robotX - closestPoint.x, robotY - closestPoint.y) - followingDistance)
-                >= Math.abs(TrcUtil.magnitude(robotX - point.x, robotY - point.y) - followingDistance))
+            // Only waypoints with a distance within closestError of followingDistance can match the closest one.
+            double distance = segmentIndex.distanceTo(i, robotX, robotY);
+            double error = Math.abs(distance - followingDistance);
+            if (closestError >= error)
             {
-                closestPoint = point;
-                pathIndex = i;
+                closestIndex = i;
+                closestError = error;
             }
+            int nextIndex = error > closestError ? segmentIndex.findWindowEnd(i, error - closestError) : i;
+            i = Math.max(nextIndex, i + 1);
         }
-        return closestPoint;
+        pathIndex = closestIndex;
+        return pathData.getWaypoint(closestIndex, followingPoint);
     }   //getFollowingPoint
 
 }   //class TrcPurePursuitDrive
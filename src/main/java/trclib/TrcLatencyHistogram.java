@@ -0,0 +1,404 @@
+/*
+ * Copyright (c) 2020 Titan Robotics Club (http://www.titanrobotics.com)
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+
+package trclib;
+
+import java.util.Locale;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+
+/**
+ * This class implements a fixed memory latency histogram. Latencies are recorded in nanoseconds into logarithmic
+ * buckets: each power of two range is split into a fixed number of linear sub-buckets so the relative error of any
+ * reported value is bounded by the sub-bucket resolution (e.g. 16 sub-buckets gives about 6%). Recording is lock-free
+ * and allocation-free so it can be called from multiple threads in the middle of a control loop. Statistics such as
+ * percentiles are computed from a Snapshot which is a point in time copy of the histogram.
+ */
+public class TrcLatencyHistogram
+{
+    public static final int DEF_SUB_BUCKET_BITS = 4;
+    public static final int DEF_MAX_VALUE_BITS = 36;    // about 68 seconds in nanoseconds.
+
+    /**
+     * This class contains a point in time copy of the histogram. It is not thread safe and is meant to be used by
+     * the thread that took the snapshot.
+     */
+    public static class Snapshot
+    {
+        private final int subBucketBits;
+        private final long[] counts;
+        private long totalCount;
+        private long totalValue;
+        private long minValue;
+        private long maxValue;
+
+        /**
+         * Constructor: Create an instance of the object.
+         *
+         * @param subBucketBits specifies the number of sub-bucket bits of the histogram.
+         * @param numBuckets specifies the number of buckets of the histogram.
+         */
+        private Snapshot(int subBucketBits, int numBuckets)
+        {
+            this.subBucketBits = subBucketBits;
+            this.counts = new long[numBuckets];
+        }   //Snapshot
+
+        /**
+         * This method returns the snapshot info in string form.
+         *
+         * @return snapshot info in string form.
+         */
+        @Override
+        public String toString()
+        {
+            return String.format(
+                Locale.US, "count=%d, avg=%.6f, min=%.6f, p50=%.6f, p90=%.6f, p99=%.6f, max=%.6f",
+                totalCount, getMean()/1000000000.0, minValue/1000000000.0, getPercentile(50.0)/1000000000.0,
+                getPercentile(90.0)/1000000000.0, getPercentile(99.0)/1000000000.0, maxValue/1000000000.0);
+        }   //toString
+
+        /**
+         * This method returns the number of recorded values.
+         *
+         * @return number of recorded values.
+         */
+        public long getCount()
+        {
+            return totalCount;
+        }   //getCount
+
+        /**
+         * This method returns the mean of the recorded values.
+         *
+         * @return mean value in nanoseconds, zero if nothing was recorded.
+         */
+        public double getMean()
+        {
+            return totalCount == 0? 0.0: (double)totalValue/totalCount;
+        }   //getMean
+
+        /**
+         * This method returns the minimum recorded value.
+         *
+         * @return minimum value in nanoseconds, zero if nothing was recorded.
+         */
+        public long getMin()
+        {
+            return minValue;
+        }   //getMin
+
+        /**
+         * This method returns the maximum recorded value. Unlike percentiles, this value is exact.
+         *
+         * @return maximum value in nanoseconds, zero if nothing was recorded.
+         */
+        public long getMax()
+        {
+            return maxValue;
+        }   //getMax
+
+        /**
+         * This method returns the value at the given percentile. The returned value is the highest value that falls
+         * into the same bucket as the percentile, clamped to the maximum recorded value.
+         *
+         * @param percentile specifies the percentile between 0.0 and 100.0.
+         * @return value at the percentile in nanoseconds, zero if nothing was recorded.
+         */
+        public long getPercentile(double percentile)
+        {
+            long value = 0;
+
+            if (totalCount > 0)
+            {
+                double fraction = TrcUtil.clipRange(percentile, 0.0, 100.0)/100.0;
+                long targetCount = Math.max(1, (long)Math.ceil(fraction*totalCount));
+                long count = 0;
+
+                for (int i = 0; i < counts.length; i++)
+                {
+                    count += counts[i];
+                    if (count >= targetCount)
+                    {
+                        value = Math.min(bucketHighValue(subBucketBits, i), maxValue);
+                        break;
+                    }
+                }
+            }
+
+            return value;
+        }   //getPercentile
+
+        /**
+         * This method returns the number of recorded values in the given bucket.
+         *
+         * @param index specifies the bucket index.
+         * @return number of values in the bucket.
+         */
+        public long getBucketCount(int index)
+        {
+            return counts[index];
+        }   //getBucketCount
+
+        /**
+         * This method returns the lowest value of the given bucket.
+         *
+         * @param index specifies the bucket index.
+         * @return lowest value of the bucket in nanoseconds.
+         */
+        public long getBucketLowValue(int index)
+        {
+            return bucketLowValue(subBucketBits, index);
+        }   //getBucketLowValue
+
+        /**
+         * This method returns the number of buckets.
+         *
+         * @return number of buckets.
+         */
+        public int getNumBuckets()
+        {
+            return counts.length;
+        }   //getNumBuckets
+
+    }   //class Snapshot
+
+    private final String instanceName;
+    private final int subBucketBits;
+    private final long maxTrackableValue;
+    private final AtomicLongArray counts;
+    private final AtomicLong totalCount = new AtomicLong();
+    private final AtomicLong totalValue = new AtomicLong();
+    private final AtomicLong minValue = new AtomicLong(Long.MAX_VALUE);
+    private final AtomicLong maxValue = new AtomicLong(0);
+
+    /**
+     * Constructor: Create an instance of the object.
+     *
+     * @param instanceName specifies the instance name.
+     * @param subBucketBits specifies the number of bits of linear sub-buckets in each power of two range.
+     * @param maxValueBits specifies the number of bits of the largest value tracked by buckets. Larger values are
+     *                     counted in the last bucket but are still reflected in the exact maximum.
+     */
+    public TrcLatencyHistogram(String instanceName, int subBucketBits, int maxValueBits)
+    {
+        if (subBucketBits < 1 || maxValueBits <= subBucketBits || maxValueBits > 62)
+        {
+            throw new IllegalArgumentException("Invalid histogram bucket configuration.");
+        }
+
+        this.instanceName = instanceName;
+        this.subBucketBits = subBucketBits;
+        this.maxTrackableValue = (1L << maxValueBits) - 1;
+        this.counts = new AtomicLongArray(bucketIndex(subBucketBits, maxTrackableValue) + 1);
+    }   //TrcLatencyHistogram
+
+    /**
+     * Constructor: Create an instance of the object.
+     *
+     * @param instanceName specifies the instance name.
+     */
+    public TrcLatencyHistogram(String instanceName)
+    {
+        this(instanceName, DEF_SUB_BUCKET_BITS, DEF_MAX_VALUE_BITS);
+    }   //TrcLatencyHistogram
+
+    /**
+     * This method returns the histogram statistics in string form.
+     *
+     * @return histogram statistics in string form.
+     */
+    @Override
+    public String toString()
+    {
+        return instanceName + ": " + getSnapshot();
+    }   //toString
+
+    /**
+     * This method records a value. It is lock-free and can be called from any thread.
+     *
+     * @param value specifies the value in nanoseconds, negative values are recorded as zero.
+     */
+    public void recordValue(long value)
+    {
+        if (value < 0)
+        {
+            value = 0;
+        }
+
+        counts.incrementAndGet(bucketIndex(subBucketBits, Math.min(value, maxTrackableValue)));
+        totalValue.addAndGet(value);
+        totalCount.incrementAndGet();
+
+        long currMin = minValue.get();
+        while (value < currMin && !minValue.compareAndSet(currMin, value))
+        {
+            currMin = minValue.get();
+        }
+
+        long currMax = maxValue.get();
+        while (value > currMax && !maxValue.compareAndSet(currMax, value))
+        {
+            currMax = maxValue.get();
+        }
+    }   //recordValue
+
+    /**
+     * This method returns the number of recorded values.
+     *
+     * @return number of recorded values.
+     */
+    public long getCount()
+    {
+        return totalCount.get();
+    }   //getCount
+
+    /**
+     * This method returns the mean of the recorded values without taking a snapshot.
+     *
+     * @return mean value in nanoseconds, zero if nothing was recorded.
+     */
+    public double getMean()
+    {
+        long count = totalCount.get();
+
+        return count == 0? 0.0: (double)totalValue.get()/count;
+    }   //getMean
+
+    /**
+     * This method returns the maximum recorded value without taking a snapshot.
+     *
+     * @return maximum value in nanoseconds.
+     */
+    public long getMax()
+    {
+        return maxValue.get();
+    }   //getMax
+
+    /**
+     * This method takes a point in time copy of the histogram. Values recorded concurrently with the copy may or may
+     * not be included.
+     *
+     * @return histogram snapshot.
+     */
+    public Snapshot getSnapshot()
+    {
+        Snapshot snapshot = new Snapshot(subBucketBits, counts.length());
+        long count = 0;
+
+        for (int i = 0; i < snapshot.counts.length; i++)
+        {
+            snapshot.counts[i] = counts.get(i);
+            count += snapshot.counts[i];
+        }
+        //
+        // Use the bucket counts as the total count so percentiles are consistent with the buckets copied.
+        //
+        snapshot.totalCount = count;
+        snapshot.totalValue = totalValue.get();
+        snapshot.maxValue = maxValue.get();
+        snapshot.minValue = count == 0? 0: minValue.get();
+
+        return snapshot;
+    }   //getSnapshot
+
+    /**
+     * This method clears all recorded values. Values recorded concurrently with the reset may be partially lost.
+     */
+    public void reset()
+    {
+        for (int i = 0; i < counts.length(); i++)
+        {
+            counts.set(i, 0);
+        }
+        totalCount.set(0);
+        totalValue.set(0);
+        minValue.set(Long.MAX_VALUE);
+        maxValue.set(0);
+    }   //reset
+
+    /**
+     * This method returns the bucket index of the given value. Values below the sub-bucket count map linearly to
+     * their own buckets. Larger values map to the sub-bucket of their power of two range.
+     *
+     * @param subBucketBits specifies the number of sub-bucket bits.
+     * @param value specifies the value, must not be negative.
+     * @return bucket index.
+     */
+    private static int bucketIndex(int subBucketBits, long value)
+    {
+        int index;
+
+        if (value < (1L << subBucketBits))
+        {
+            index = (int)value;
+        }
+        else
+        {
+            int shift = (63 - Long.numberOfLeadingZeros(value)) - subBucketBits;
+            int subBucket = (int)(value >>> shift) - (1 << subBucketBits);
+            index = ((shift + 1) << subBucketBits) + subBucket;
+        }
+
+        return index;
+    }   //bucketIndex
+
+    /**
+     * This method returns the lowest value that maps to the given bucket.
+     *
+     * @param subBucketBits specifies the number of sub-bucket bits.
+     * @param index specifies the bucket index.
+     * @return lowest value of the bucket.
+     */
+    private static long bucketLowValue(int subBucketBits, int index)
+    {
+        long value;
+
+        if (index < (1 << subBucketBits))
+        {
+            value = index;
+        }
+        else
+        {
+            int shift = (index >>> subBucketBits) - 1;
+            int subBucket = index & ((1 << subBucketBits) - 1);
+            value = ((long)((1 << subBucketBits) + subBucket)) << shift;
+        }
+
+        return value;
+    }   //bucketLowValue
+
+    /**
+     * This method returns the highest value that maps to the given bucket.
+     *
+     * @param subBucketBits specifies the number of sub-bucket bits.
+     * @param index specifies the bucket index.
+     * @return highest value of the bucket.
+     */
+    private static long bucketHighValue(int subBucketBits, int index)
+    {
+        int shift = index < (1 << subBucketBits)? 0: (index >>> subBucketBits) - 1;
+
+        return bucketLowValue(subBucketBits, index) + (1L << shift) - 1;
+    }   //bucketHighValue
+
+}   //class TrcLatencyHistogram
@@ -174,6 +174,10 @@ public class TrcLidarLite
         }
 
         this.device = device;
+        //
+        // The completion handler consumes the read data before it returns, so the read buffers can be recycled.
+        //
+        device.setBufferPoolEnabled(true);
     }   //TrcLidarLite
 
     /**
@@ -578,6 +582,16 @@ public class TrcLidarLite
 //        }
 //    }   //processData
 
+    /**
+     * This method reads the device status to check if the distance measurement is ready. The status is polled in
+     * the low priority lane so the busy polling does not hold up other requests sharing the bus.
+     */
+    private void pollStatus()
+    {
+        device.asyncRead(
+            RequestId.READ_DISTANCE, REG_STATUS, 1, false, TrcRequestQueue.Priority.LOW, 0.0, null, this::notify);
+    }   //pollStatus
+
     /**
      * This method is called when the read request is completed.
      *
@@ -603,11 +617,17 @@ public class TrcLidarLite
                         if ((request.buffer[0] & 0x1) == 0x1)
                         {
                             // Not ready yet, read status again.
-                            device.asyncRead(request.requestId, REG_STATUS, 1, null, this::notify);
+                            pollStatus();
                         }
                         else
                         {
-                            device.asyncRead(RequestId.GET_DISTANCE, REG_FULL_DELAY_HIGH, 2, null, this::notify);
+                            //
+                            // The measurement is ready, read it ahead of other requests on the bus so the
+                            // timestamp is close to when it was taken.
+                            //
+                            device.asyncRead(
+                                RequestId.GET_DISTANCE, REG_FULL_DELAY_HIGH, 2, false, TrcRequestQueue.Priority.HIGH,
+                                0.0, null, this::notify);
                         }
                         break;
 
@@ -626,7 +646,7 @@ public class TrcLidarLite
             switch ((RequestId)request.requestId)
             {
                 case READ_DISTANCE:
-                    device.asyncRead(request.requestId, REG_STATUS, 1, null, this::notify);
+                    pollStatus();
                     break;
 
                 default:
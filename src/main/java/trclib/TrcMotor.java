@@ -22,8 +22,6 @@
 
 package trclib;
 
-import java.util.ArrayList;
-
 import trclib.TrcTaskMgr.TaskType;
 
 /**
@@ -78,6 +76,43 @@ public abstract class TrcMotor implements TrcMotorController
      */
     public abstract double getMotorVelocity();
 
+    /**
+     * This method declares if the platform dependent motor hardware supports velocity info. The odometry task only
+     * calls getMotorVelocity if it does, otherwise it calculates the velocity from the position samples. A subclass
+     * that throws UnsupportedOperationException in getMotorVelocity should override this method to return false.
+     *
+     * @return true if getMotorVelocity is supported, false otherwise.
+     */
+    public boolean isMotorVelocitySupported()
+    {
+        return true;
+    }   //isMotorVelocitySupported
+
+    /**
+     * This method returns the name of the bus the motor position and velocity are read over. The odometry task reads
+     * the motors on different buses concurrently. Motors whose position is not read over a bus (e.g. it is derived
+     * from other sensors) return null and are read by the odometry task thread.
+     *
+     * @return name of the bus, null if reading the motor does not involve a bus transaction.
+     */
+    public String getOdometryBusName()
+    {
+        return null;
+    }   //getOdometryBusName
+
+    /**
+     * This method returns the time the position last returned by getMotorPosition was read from the hardware. A
+     * subclass that caches the position across passes should override it, so that the odometry is stamped with the
+     * time of the reading and a reused reading is not taken for a new sample.
+     *
+     * @param callTime specifies the time getMotorPosition was called.
+     * @return time stamp of the position in seconds.
+     */
+    public double getMotorPositionTimestamp(double callTime)
+    {
+        return callTime;
+    }   //getMotorPositionTimestamp
+
     /**
      * This method sets the raw motor power. It is called by the Velocity Control task. If the subclass is
      * implementing its own native velocity control, it does not really need to do anything for this method.
@@ -87,7 +122,7 @@ public abstract class TrcMotor implements TrcMotorController
      */
     public abstract void setMotorPower(double value);
 
-    private static final ArrayList<TrcMotor> odometryMotors = new ArrayList<>();
+    private static final TrcMotorOdometrySampler odometrySampler = new TrcMotorOdometrySampler();
     private static TrcTaskMgr.TaskObject odometryTaskObj = null;
     private static TrcTaskMgr.TaskObject cleanupTaskObj = null;
     protected static TrcElapsedTimer motorGetPosElapsedTimer = null;
@@ -98,6 +133,9 @@ public abstract class TrcMotor implements TrcMotorController
     private final TrcTaskMgr.TaskObject velocityCtrlTaskObj;
     private TrcDigitalInputTrigger digitalTrigger = null;
     private boolean odometryEnabled = false;
+    // Incremented on every odometry reset so that a sample read before the reset is not published after it.
+    private int odometryResetCount = 0;
+    private volatile boolean velocityUnsupported = false;
     protected double maxMotorVelocity = 0.0;
     private TrcPidController velocityPidCtrl = null;
     private DigitalTriggerHandler digitalTriggerHandler = null;
@@ -161,7 +199,7 @@ public abstract class TrcMotor implements TrcMotorController
                 motorGetPosElapsedTimer = new TrcElapsedTimer("TrcMotor.getPos", 2.0);
             }
 
-            if (motorSetElapsedTimer != null)
+            if (motorSetElapsedTimer == null)
             {
                 motorSetElapsedTimer = new TrcElapsedTimer("TrcMotor.set", 2.0);
             }
@@ -198,16 +236,21 @@ public abstract class TrcMotor implements TrcMotorController
      */
     public static int getNumOdometryMotors()
     {
-        int numMotors;
-
-        synchronized (odometryMotors)
-        {
-            numMotors = odometryMotors.size();
-        }
-
-        return numMotors;
+        return odometrySampler.size();
     }   //getNumOdometryMotors
 
+    /**
+     * This method returns the odometry of all motors registered for odometry monitoring at the end of the last
+     * odometry task run. A snapshot taken before the motor list changed still holds the old list until the next run,
+     * so use Snapshot.indexOf to find a motor in it.
+     *
+     * @return odometry snapshot of all motors, null if the odometry task has not run yet.
+     */
+    public static TrcMotorOdometrySampler.Snapshot getOdometrySnapshot()
+    {
+        return odometrySampler.getSnapshot();
+    }   //getOdometrySnapshot
+
     /**
      * This method clears the list of motors that register for odometry monitoring. This method should only be called
      * by the task scheduler.
@@ -217,11 +260,11 @@ public abstract class TrcMotor implements TrcMotorController
      */
     public static void clearOdometryMotorsList(boolean removeOdometryTask)
     {
-        synchronized (odometryMotors)
+        synchronized (odometrySampler)
         {
-            if (odometryMotors.size() > 0)
+            if (odometrySampler.size() > 0)
             {
-                odometryMotors.clear();
+                odometrySampler.clear();
                 odometryTaskObj.unregisterTask(TaskType.INPUT_TASK);
             }
             //
@@ -253,30 +296,25 @@ public abstract class TrcMotor implements TrcMotorController
         if (enabled)
         {
             resetOdometry(false);
-            synchronized (odometryMotors)
+            synchronized (odometrySampler)
             {
                 //
-                // Add only if this motor is not already on the list.
+                // The sampler adds only if this motor is not already on the list.
                 //
-                if (!odometryMotors.contains(this))
+                if (odometrySampler.add(this) && odometrySampler.size() == 1)
                 {
-                    odometryMotors.add(this);
-                    if (odometryMotors.size() == 1)
-                    {
-                        //
-                        // We are the first one on the list, start the task.
-                        //
-                        odometryTaskObj.registerTask(TaskType.INPUT_TASK);
-                    }
+                    //
+                    // We are the first one on the list, start the task.
+                    //
+                    odometryTaskObj.registerTask(TaskType.INPUT_TASK);
                 }
             }
         }
         else
         {
-            synchronized (odometryMotors)
+            synchronized (odometrySampler)
             {
-                odometryMotors.remove(this);
-                if (odometryMotors.isEmpty())
+                if (odometrySampler.remove(this) && odometrySampler.size() == 0)
                 {
                     //
                     // We were the only one on the list, stop the task.
@@ -323,75 +361,146 @@ public abstract class TrcMotor implements TrcMotorController
             globalTracer.traceEnter(funcName, TrcDbgTrace.TraceLevel.TASK, "taskType=%s,runMode=%s", taskType, runMode);
         }
 
-        synchronized (odometryMotors)
+        if (motorGetPosElapsedTimer != null)
+            motorGetPosElapsedTimer.recordStartTime();
+        //
+        // The sampler reads the motors without holding a global lock, reading motors on different buses concurrently.
+        //
+        odometrySampler.sample();
+        if (motorGetPosElapsedTimer != null)
+            motorGetPosElapsedTimer.recordEndTime();
+
+        if (debugEnabled)
+        {
+            globalTracer.traceExit(funcName, TrcDbgTrace.TraceLevel.TASK);
+        }
+    }   //odometryTask
+
+    /**
+     * This method reads the motor position and velocity and updates the odometry. It is called by the odometry
+     * sampler, possibly on a bus reader thread. The hardware is read without holding the odometry lock.
+     */
+    void sampleOdometry()
+    {
+        final String funcName = "TrcMotor.sampleOdometry";
+        final int resetCount;
+
+        synchronized (odometry)
+        {
+            resetCount = odometryResetCount;
+        }
+
+        double callTime = TrcUtil.getCurrentTime();
+        double pos = getMotorPosition();
+        double timestamp = getMotorPositionTimestamp(callTime);
+        double vel = 0.0;
+        boolean hasVelocity = !velocityUnsupported && isMotorVelocitySupported();
+
+        if (hasVelocity)
+        {
+            try
+            {
+                vel = getMotorVelocity();
+            }
+            catch (UnsupportedOperationException e)
+            {
+                //
+                // The subclass did not declare that it doesn't support velocity, remember it so the exception is
+                // only thrown once.
+                //
+                velocityUnsupported = true;
+                hasVelocity = false;
+            }
+        }
+
+        synchronized (odometry)
         {
-            for (TrcMotor motor : odometryMotors)
+            if (resetCount != odometryResetCount)
+            {
+                //
+                // The odometry was reset while we were reading the hardware, the sample is stale.
+                //
+                return;
+            }
+
+            if (timestamp <= odometry.currTimestamp)
+            {
+                //
+                // The position is a cached reading we already have, there is no new sample.
+                //
+                return;
+            }
+
+            odometry.prevTimestamp = odometry.currTimestamp;
+            odometry.prevPos = odometry.currPos;
+            odometry.currTimestamp = timestamp;
+            odometry.currPos = pos;
+
+            double low = Math.abs(odometry.prevPos);
+            double high = Math.abs(odometry.currPos);
+
+            if (low > high)
             {
-                synchronized (motor.odometry)
+                double temp = high;
+                high = low;
+                low = temp;
+            }
+
+            // To be spurious, motor must jump 10000+ units, and change by 8+ orders of magnitude
+            // log10(high)-log10(low) gives change in order of magnitude
+            // use log rules, equal to log10(high/low) >= 8
+            // change of base, log2(high/low)/log2(10) >= 8
+            // log2(high/low) >= 26.6ish
+            // Math.getExponent() is equal to floor(log2())
+            if (high - low > 10000)
+            {
+                low = Math.max(low, 1);
+                if (Math.getExponent(high / low) >= 27)
                 {
-                    motor.odometry.prevTimestamp = motor.odometry.currTimestamp;
-                    motor.odometry.prevPos = motor.odometry.currPos;
-                    motor.odometry.currTimestamp = TrcUtil.getCurrentTime();
-                    if (motorGetPosElapsedTimer != null)
-                        motorGetPosElapsedTimer.recordStartTime();
-                    motor.odometry.currPos = motor.getMotorPosition();
-                    if (motorGetPosElapsedTimer != null)
-                        motorGetPosElapsedTimer.recordEndTime();
-
-                    double low = Math.abs(motor.odometry.prevPos);
-                    double high = Math.abs(motor.odometry.currPos);
-
-                    if (low > high)
-                    {
-                        double temp = high;
-                        high = low;
-                        low = temp;
-                    }
-
-                    // To be spurious, motor must jump 10000+ units, and change by 8+ orders of magnitude
-                    // log10(high)-log10(low) gives change in order of magnitude
-                    // use log rules, equal to log10(high/low) >= 8
-                    // change of base, log2(high/low)/log2(10) >= 8
-                    // log2(high/low) >= 26.6ish
-                    // Math.getExponent() is equal to floor(log2())
-                    if (high - low > 10000)
-                    {
-                        low = Math.max(low, 1);
-                        if (Math.getExponent(high / low) >= 27)
-                        {
-                            TrcDbgTrace.getGlobalTracer()
-                                .traceWarn(funcName, "WARNING: Spurious encoder detected on motor %s! odometry=%s", motor, motor.odometry);
-                            motor.odometry.currPos = motor.odometry.prevPos;
-                        }
-                    }
-
-                    try
-                    {
-                        motor.odometry.velocity = motor.getMotorVelocity();
-                    }
-                    catch (UnsupportedOperationException e)
-                    {
-                        //
-                        // It doesn't support velocity data so calculate it ourselves.
-                        //
-                        double timeDelta = motor.odometry.currTimestamp - motor.odometry.prevTimestamp;
-                        motor.odometry.velocity =
-                            timeDelta == 0.0 ? 0.0 : (motor.odometry.currPos - motor.odometry.prevPos) / timeDelta;
-                    }
-
-                    if (debugEnabled)
-                    {
-                        globalTracer.traceInfo(funcName, "Odometry: %s=(%s)", motor, motor.odometry);
-                    }
+                    TrcDbgTrace.getGlobalTracer().traceWarn(
+                        funcName, "WARNING: Spurious encoder detected on motor %s! odometry=%s", this, odometry);
+                    odometry.currPos = odometry.prevPos;
                 }
             }
+
+            if (hasVelocity)
+            {
+                odometry.velocity = vel;
+            }
+            else
+            {
+                //
+                // It doesn't support velocity data so calculate it ourselves.
+                //
+                double timeDelta = odometry.currTimestamp - odometry.prevTimestamp;
+                odometry.velocity = timeDelta == 0.0 ? 0.0 : (odometry.currPos - odometry.prevPos) / timeDelta;
+            }
+
+            if (debugEnabled)
+            {
+                globalTracer.traceInfo(funcName, "Odometry: %s=(%s)", this, odometry);
+            }
         }
+    }   //sampleOdometry
 
-        if (debugEnabled)
+    /**
+     * This method copies the current odometry sample into the given arrays. It is called by the odometry sampler to
+     * build its snapshot.
+     *
+     * @param index specifies the array index to store the sample at.
+     * @param timestamps specifies the array of sample time stamps.
+     * @param positions specifies the array of positions.
+     * @param velocities specifies the array of velocities.
+     */
+    void getOdometrySample(int index, double[] timestamps, double[] positions, double[] velocities)
+    {
+        synchronized (odometry)
         {
-            globalTracer.traceExit(funcName, TrcDbgTrace.TraceLevel.TASK);
+            timestamps[index] = odometry.currTimestamp;
+            positions[index] = odometry.currPos;
+            velocities[index] = odometry.velocity;
         }
-    }   //odometryTask
+    }   //getOdometrySample
 
     /**
      * This method is called before the runMode is about to stop so we can disable odometry.
@@ -774,6 +883,7 @@ public abstract class TrcMotor implements TrcMotorController
     {
         synchronized (odometry)
         {
+            odometryResetCount++;
             resetPosition(resetHardware);
             odometry.prevTimestamp = odometry.currTimestamp = TrcUtil.getCurrentTime();
             odometry.prevPos = odometry.currPos = getMotorPosition();
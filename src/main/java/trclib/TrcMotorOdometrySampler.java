@@ -0,0 +1,437 @@
+/*
+ * Copyright (c) 2020 Titan Robotics Club (http://www.titanrobotics.com)
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+
+package trclib;
+
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+/**
+ * This class implements the sampler that updates the odometry of all motors that have odometry enabled. Motors are
+ * grouped by the bus they are read over (see TrcMotor.getOdometryBusName). The motors of one bus are read one after
+ * the other since their bus transactions are serialized anyway, but different buses are read concurrently: the first
+ * bus and the motors that are not read over a bus are read by the calling thread, the other buses by pool threads.
+ *
+ * The list of motors is published as an immutable array so sampling does not hold any lock shared with other motors
+ * or with callers enabling and disabling odometry. After each sampling pass, the odometry of all motors is published
+ * as an immutable Snapshot so that consumers can see a consistent set of samples.
+ */
+public class TrcMotorOdometrySampler
+{
+    private static final String moduleName = "TrcMotorOdometrySampler";
+
+    /**
+     * This class contains the odometry of all sampled motors at the end of one sampling pass. It is immutable.
+     */
+    public static class Snapshot
+    {
+        private final long sequence;
+        private final double timestamp;
+        private final TrcMotor[] motors;
+        private final double[] timestamps;
+        private final double[] positions;
+        private final double[] velocities;
+
+        /**
+         * Constructor: Create an instance of the object.
+         *
+         * @param sequence specifies the sequence number of the sampling pass.
+         * @param timestamp specifies the time the sampling pass completed.
+         * @param motors specifies the sampled motors.
+         */
+        private Snapshot(long sequence, double timestamp, TrcMotor[] motors)
+        {
+            this.sequence = sequence;
+            this.timestamp = timestamp;
+            this.motors = motors;
+            timestamps = new double[motors.length];
+            positions = new double[motors.length];
+            velocities = new double[motors.length];
+        }   //Snapshot
+
+        /**
+         * This method returns the sequence number of the sampling pass, incremented on every pass.
+         *
+         * @return sequence number.
+         */
+        public long getSequence()
+        {
+            return sequence;
+        }   //getSequence
+
+        /**
+         * This method returns the time the sampling pass completed.
+         *
+         * @return snapshot time stamp in seconds.
+         */
+        public double getTimestamp()
+        {
+            return timestamp;
+        }   //getTimestamp
+
+        /**
+         * This method returns the number of motors in the snapshot.
+         *
+         * @return number of motors.
+         */
+        public int size()
+        {
+            return motors.length;
+        }   //size
+
+        /**
+         * This method returns the index of the given motor in the snapshot.
+         *
+         * @param motor specifies the motor.
+         * @return index of the motor, -1 if the motor is not in the snapshot.
+         */
+        public int indexOf(TrcMotor motor)
+        {
+            int index = -1;
+
+            for (int i = 0; i < motors.length; i++)
+            {
+                if (motors[i] == motor)
+                {
+                    index = i;
+                    break;
+                }
+            }
+
+            return index;
+        }   //indexOf
+
+        /**
+         * This method returns the motor at the given index.
+         *
+         * @param index specifies the motor index.
+         * @return motor.
+         */
+        public TrcMotor getMotor(int index)
+        {
+            return motors[index];
+        }   //getMotor
+
+        /**
+         * This method returns the time the motor at the given index was read.
+         *
+         * @param index specifies the motor index.
+         * @return sample time stamp in seconds.
+         */
+        public double getTimestamp(int index)
+        {
+            return timestamps[index];
+        }   //getTimestamp
+
+        /**
+         * This method returns the position of the motor at the given index.
+         *
+         * @param index specifies the motor index.
+         * @return motor position.
+         */
+        public double getPosition(int index)
+        {
+            return positions[index];
+        }   //getPosition
+
+        /**
+         * This method returns the velocity of the motor at the given index.
+         *
+         * @param index specifies the motor index.
+         * @return motor velocity.
+         */
+        public double getVelocity(int index)
+        {
+            return velocities[index];
+        }   //getVelocity
+
+    }   //class Snapshot
+
+    /**
+     * This class contains the motors read over the same bus.
+     */
+    private static class BusGroup implements Runnable
+    {
+        final String busName;
+        final TrcMotor[] motors;
+
+        BusGroup(String busName, TrcMotor[] motors)
+        {
+            this.busName = busName;
+            this.motors = motors;
+        }   //BusGroup
+
+        @Override
+        public void run()
+        {
+            for (TrcMotor motor: motors)
+            {
+                motor.sampleOdometry();
+            }
+        }   //run
+
+    }   //class BusGroup
+
+    /**
+     * This class contains the sampled motors and their bus groups, it is replaced as a whole when motors are added or
+     * removed.
+     */
+    private static class MotorSet
+    {
+        final TrcMotor[] motors;
+        // The group of motors not read over a bus is always last if there is one.
+        final BusGroup[] busGroups;
+
+        MotorSet(TrcMotor[] motors, BusGroup[] busGroups)
+        {
+            this.motors = motors;
+            this.busGroups = busGroups;
+        }   //MotorSet
+
+    }   //class MotorSet
+
+    private static final BusGroup[] NO_GROUPS = new BusGroup[0];
+    private static final TrcMotor[] NO_MOTORS = new TrcMotor[0];
+
+    private final ArrayList<TrcMotor> motorList = new ArrayList<>();
+    private volatile MotorSet motorSet = new MotorSet(NO_MOTORS, NO_GROUPS);
+    private volatile Snapshot snapshot = null;
+    // The following are only accessed by the sampling thread.
+    private ExecutorService busPool = null;
+    private Future<?>[] busFutures = new Future<?>[0];
+    private long sequence = 0;
+
+    /**
+     * This method adds a motor to the sampler.
+     *
+     * @param motor specifies the motor to add.
+     * @return true if the motor is added, false if it was already added.
+     */
+    public boolean add(TrcMotor motor)
+    {
+        synchronized (motorList)
+        {
+            boolean added = !motorList.contains(motor);
+
+            if (added)
+            {
+                motorList.add(motor);
+                publishMotors();
+            }
+
+            return added;
+        }
+    }   //add
+
+    /**
+     * This method removes a motor from the sampler.
+     *
+     * @param motor specifies the motor to remove.
+     * @return true if the motor is removed, false if it was not added.
+     */
+    public boolean remove(TrcMotor motor)
+    {
+        synchronized (motorList)
+        {
+            boolean removed = motorList.remove(motor);
+
+            if (removed)
+            {
+                publishMotors();
+            }
+
+            return removed;
+        }
+    }   //remove
+
+    /**
+     * This method removes all motors from the sampler.
+     */
+    public void clear()
+    {
+        synchronized (motorList)
+        {
+            motorList.clear();
+            publishMotors();
+        }
+    }   //clear
+
+    /**
+     * This method returns the number of motors in the sampler.
+     *
+     * @return number of motors.
+     */
+    public int size()
+    {
+        return motorSet.motors.length;
+    }   //size
+
+    /**
+     * This method returns the snapshot of the last sampling pass.
+     *
+     * @return last snapshot, null if no sampling pass has completed.
+     */
+    public Snapshot getSnapshot()
+    {
+        return snapshot;
+    }   //getSnapshot
+
+    /**
+     * This method reads all motors and updates their odometry, then publishes a new snapshot. It must be called by
+     * one thread only, typically the odometry task. If the thread is interrupted while waiting for the other buses,
+     * it still waits for them to finish but does not publish a snapshot, and the interrupt is preserved.
+     */
+    public void sample()
+    {
+        final String funcName = "sample";
+        MotorSet motorSet = this.motorSet;
+        TrcMotor[] motors = motorSet.motors;
+        BusGroup[] groups = motorSet.busGroups;
+        int numConcurrent = 0;
+
+        if (groups.length > 1)
+        {
+            //
+            // Dispatch the other buses first so they are read while this thread reads the first bus and the motors
+            // that are not on a bus.
+            //
+            if (busPool == null)
+            {
+                busPool = Executors.newCachedThreadPool(
+                    runnable ->
+                    {
+                        Thread thread = new Thread(runnable, moduleName + ".busReader");
+                        thread.setDaemon(true);
+                        return thread;
+                    });
+            }
+
+            if (busFutures.length < groups.length)
+            {
+                busFutures = new Future<?>[groups.length];
+            }
+
+            for (int i = 1; i < groups.length; i++)
+            {
+                if (groups[i].busName != null)
+                {
+                    busFutures[numConcurrent++] = busPool.submit(groups[i]);
+                }
+            }
+        }
+
+        for (int i = 0; i < groups.length; i++)
+        {
+            if (i == 0 || groups[i].busName == null)
+            {
+                groups[i].run();
+            }
+        }
+
+        boolean interrupted = false;
+        for (int i = 0; i < numConcurrent; i++)
+        {
+            while (busFutures[i] != null)
+            {
+                try
+                {
+                    busFutures[i].get();
+                    busFutures[i] = null;
+                }
+                catch (InterruptedException e)
+                {
+                    //
+                    // Keep waiting, the bus readers must be done with the motors before another pass can start.
+                    //
+                    interrupted = true;
+                }
+                catch (ExecutionException e)
+                {
+                    TrcDbgTrace.getGlobalTracer().traceWarn(
+                        funcName, "Failed to read odometry on a bus: %s", e.getCause());
+                    busFutures[i] = null;
+                }
+            }
+        }
+
+        if (interrupted)
+        {
+            //
+            // The sampling thread is being stopped, don't publish a pass it was told to abandon.
+            //
+            Thread.currentThread().interrupt();
+        }
+        else
+        {
+            Snapshot newSnapshot = new Snapshot(++sequence, TrcUtil.getCurrentTime(), motors);
+            for (int i = 0; i < motors.length; i++)
+            {
+                motors[i].getOdometrySample(
+                    i, newSnapshot.timestamps, newSnapshot.positions, newSnapshot.velocities);
+            }
+            snapshot = newSnapshot;
+        }
+    }   //sample
+
+    /**
+     * This method rebuilds and publishes the motor array and the bus groups. It must be called with the motor list
+     * locked.
+     */
+    private void publishMotors()
+    {
+        Map<String, ArrayList<TrcMotor>> groupMap = new LinkedHashMap<>();
+        ArrayList<TrcMotor> noBusMotors = new ArrayList<>();
+
+        for (TrcMotor motor: motorList)
+        {
+            String busName = motor.getOdometryBusName();
+
+            if (busName == null)
+            {
+                noBusMotors.add(motor);
+            }
+            else
+            {
+                groupMap.computeIfAbsent(busName, k -> new ArrayList<>()).add(motor);
+            }
+        }
+
+        ArrayList<BusGroup> groups = new ArrayList<>();
+        for (Map.Entry<String, ArrayList<TrcMotor>> entry: groupMap.entrySet())
+        {
+            groups.add(new BusGroup(entry.getKey(), entry.getValue().toArray(NO_MOTORS)));
+        }
+
+        if (!noBusMotors.isEmpty())
+        {
+            groups.add(new BusGroup(null, noBusMotors.toArray(NO_MOTORS)));
+        }
+
+        motorSet = new MotorSet(motorList.toArray(NO_MOTORS), groups.toArray(NO_GROUPS));
+    }   //publishMotors
+
+}   //class TrcMotorOdometrySampler
@@ -22,16 +22,24 @@
 
 package trclib;
 
-import java.util.concurrent.ExecutorService;
-import java.util.concurrent.Executors;
-import java.util.concurrent.TimeUnit;
+import java.util.concurrent.RejectedExecutionException;
 
 /**
  * This class implements a global Notifier object. There should only be one global instance of TrcNotifier. Once
- * instantiated, it creates a thread pool with a fixed number of threads. If a component running on a time critical
- * thread wants to make a callback to another component and worries about the callback may take too long to return,
- * it can use one of the threads in TrcNotifier to do the callback thus freeing itself from waiting for the callback
- * to return.
+ * instantiated, it creates a fixed number of dispatcher threads. If a component running on a time critical thread
+ * wants to make a callback to another component and worries about the callback may take too long to return, it can
+ * use one of the threads in TrcNotifier to do the callback thus freeing itself from waiting for the callback to
+ * return.
+ *
+ * Each dispatcher thread owns a preallocated ring of notification slots, so sending a notification does not
+ * allocate. A dispatcher takes all the notifications pending in its ring as one batch and frees the slots once the
+ * batch is delivered. Senders never wait: if the ring is full, it grows, so a receiver can send notifications to
+ * itself even while its own batch is holding the ring. A receiver object is always served by the same dispatcher,
+ * so notifications sent to the same receiver object are delivered one at a time in the order they were sent.
+ * Receivers are told apart by identity: a method reference or lambda such as this::onNotify evaluates to a new
+ * object each time, so a component that needs its notifications in order must create its receiver once, e.g. in a
+ * field, and pass that same object every time. A receiver that returns quickly can instead be notified directly on
+ * the calling thread.
  */
 public class TrcNotifier
 {
@@ -65,39 +73,213 @@ public class TrcNotifier
     }   //interface Receiver
 
     /**
-     * This class implements a notification handler that will be executed by a pool thread doing the the notification
-     * callback.
+     * This class implements a dispatcher thread with its ring of notification slots. Slots between head and tail are
+     * pending notifications owned by the dispatcher thread, the others are free for senders to fill. The slots between
+     * head and batchEnd are being delivered by the dispatcher thread without holding the lock.
      */
-    private class Handler implements Runnable
+    private class Dispatcher implements Runnable
     {
-        private Receiver receiver;
-        private final Object context;
+        private final String name;
+        // The following are guarded by the dispatcher.
+        private Receiver[] receivers;
+        private Object[] contexts;
+        private int mask;
+        private long head = 0;
+        private long batchEnd = 0;
+        private long tail = 0;
+        private Thread thread = null;
+        private boolean shuttingDown = false;
+        private volatile boolean stopNow = false;
 
         /**
-         * Constructor: Create an instance of the handler.
+         * Constructor: Create an instance of the object.
          *
-         * @param receiver specifies the notification receiver.
-         * @param context specifies the context object to be passed back to the receiver.
+         * @param name specifies the name of the dispatcher thread.
+         * @param ringSize specifies the number of notification slots, must be a power of 2.
          */
-        public Handler(Receiver receiver, Object context)
+        Dispatcher(String name, int ringSize)
         {
-            this.receiver = receiver;
-            this.context = context;
-        }   //Handler
+            this.name = name;
+            receivers = new Receiver[ringSize];
+            contexts = new Object[ringSize];
+            mask = ringSize - 1;
+        }   //Dispatcher
 
         /**
-         * This method is run by the pool thread to do the notification callback.
+         * This method puts a notification in the next free slot, growing the ring if it is full. It starts the
+         * dispatcher thread on the first notification.
+         *
+         * @param receiver specifies the notification callback recipient.
+         * @param context specifies the context object to be passed back to the callback recipient.
          */
+        synchronized void post(Receiver receiver, Object context)
+        {
+            if (shuttingDown)
+            {
+                throw new RejectedExecutionException(moduleName + " is shut down.");
+            }
+
+            if (tail - head == receivers.length)
+            {
+                growRing();
+            }
+
+            int index = (int) (tail & mask);
+            receivers[index] = receiver;
+            contexts[index] = context;
+            tail++;
+
+            if (thread == null)
+            {
+                thread = new Thread(this, name);
+                thread.start();
+            }
+            notifyAll();
+        }   //post
+
+        /**
+         * This method doubles the size of the ring. The pending notifications that are not in the batch being
+         * delivered are copied to the new ring. The batch stays in the old ring where the dispatcher thread is
+         * delivering it, its slots in the new ring are free once the batch is done. It must be called with the
+         * dispatcher locked.
+         */
+        private void growRing()
+        {
+            Receiver[] newReceivers = new Receiver[receivers.length*2];
+            Object[] newContexts = new Object[contexts.length*2];
+            int newMask = newReceivers.length - 1;
+
+            for (long seq = Math.max(head, batchEnd); seq < tail; seq++)
+            {
+                newReceivers[(int) (seq & newMask)] = receivers[(int) (seq & mask)];
+                newContexts[(int) (seq & newMask)] = contexts[(int) (seq & mask)];
+            }
+
+            receivers = newReceivers;
+            contexts = newContexts;
+            mask = newMask;
+        }   //growRing
+
+        /**
+         * This method is run by the dispatcher thread. It delivers the pending notifications in batches until the
+         * dispatcher is shut down and its ring is empty, or until it is stopped.
+         */
+        @Override
         public void run()
         {
-            receiver.notify(context);
+            final String funcName = "run";
+
+            while (true)
+            {
+                long batchStart, batchEnd;
+                Receiver[] batchReceivers;
+                Object[] batchContexts;
+                int batchMask;
+
+                synchronized (this)
+                {
+                    while (head == tail && !shuttingDown)
+                    {
+                        try
+                        {
+                            wait();
+                        }
+                        catch (InterruptedException e)
+                        {
+                            // Only shutdownNow interrupts the dispatcher, and it sets stopNow first.
+                            break;
+                        }
+                    }
+
+                    if (stopNow || head == tail)
+                    {
+                        break;
+                    }
+                    batchStart = head;
+                    batchEnd = this.batchEnd = tail;
+                    // The ring may grow while the batch is delivered, the batch stays in these arrays.
+                    batchReceivers = receivers;
+                    batchContexts = contexts;
+                    batchMask = mask;
+                }
+
+                for (long seq = batchStart; seq < batchEnd && !stopNow; seq++)
+                {
+                    int index = (int) (seq & batchMask);
+                    Receiver receiver = batchReceivers[index];
+                    Object context = batchContexts[index];
+
+                    batchReceivers[index] = null;
+                    batchContexts[index] = null;
+                    try
+                    {
+                        receiver.notify(context);
+                    }
+                    catch (RuntimeException e)
+                    {
+                        TrcDbgTrace.getGlobalTracer().traceErr(
+                            funcName, "Notification to %s failed: %s", receiver, e);
+                    }
+                }
+
+                synchronized (this)
+                {
+                    head = batchEnd;
+                    notifyAll();
+                }
+            }
+
+            synchronized (this)
+            {
+                thread = null;
+                notifyAll();
+            }
         }   //run
 
-    }   //class Handler
+        /**
+         * This method shuts down the dispatcher. An orderly shut down delivers the pending notifications first.
+         *
+         * @param now specifies true to drop the pending notifications and stop as soon as possible.
+         */
+        synchronized void shutdown(boolean now)
+        {
+            shuttingDown = true;
+            if (now)
+            {
+                stopNow = true;
+                if (thread != null)
+                {
+                    thread.interrupt();
+                }
+            }
+            notifyAll();
+        }   //shutdown
+
+        /**
+         * This method waits for the dispatcher thread to terminate.
+         *
+         * @param deadline specifies the time in msec, as returned by System.currentTimeMillis, to stop waiting.
+         * @return true if the dispatcher thread terminated, false if the deadline passed first.
+         * @throws InterruptedException if the calling thread is interrupted while waiting.
+         */
+        synchronized boolean awaitTermination(long deadline) throws InterruptedException
+        {
+            long remaining;
+
+            while (thread != null && (remaining = deadline - System.currentTimeMillis()) > 0)
+            {
+                wait(remaining);
+            }
+
+            return thread == null;
+        }   //awaitTermination
+
+    }   //class Dispatcher
 
     private static final int DEF_POOL_SIZE = 5;
+    static final int DEF_RING_SIZE = 256;
     private static TrcNotifier instance = null;
-    private ExecutorService threadPool;
+    private final Dispatcher[] dispatchers;
 
     /**
      * Constructor: Create an instance of the object. There is only one global instance of TrcNotifier, so the
@@ -112,7 +294,11 @@ public class TrcNotifier
                     TrcDbgTrace.getGlobalTracer(): new TrcDbgTrace(moduleName, tracingEnabled, traceLevel, msgLevel);
         }
 
-        threadPool = Executors.newFixedThreadPool(DEF_POOL_SIZE);
+        dispatchers = new Dispatcher[DEF_POOL_SIZE];
+        for (int i = 0; i < dispatchers.length; i++)
+        {
+            dispatchers[i] = new Dispatcher(moduleName + ".dispatcher" + i, DEF_RING_SIZE);
+        }
     }   //TrcNotifier
 
     /**
@@ -120,7 +306,7 @@ public class TrcNotifier
      *
      * @return global instance of TrcNotifier.
      */
-    public static TrcNotifier getInstance()
+    public static synchronized TrcNotifier getInstance()
     {
         if (instance == null)
         {
@@ -132,33 +318,93 @@ public class TrcNotifier
 
     /**
      * This method is called by a component that needs to do a notification callback using a pool thread.
+     * Notifications are only kept in order for the same receiver object, see the class description.
      *
      * @param receiver specifies the notification callback recipient.
      * @param context specifies the context object to be passed back to the callback recipient.
      */
     public void sendNotification(Receiver receiver, Object context)
+    {
+        sendNotification(receiver, context, false);
+    }   //sendNotification
+
+    /**
+     * This method is called by a component that needs to do a notification callback, either on a pool thread or
+     * directly on the calling thread. Direct delivery saves the hand off to the pool thread but is only appropriate
+     * for receivers that return quickly. It is not ordered with notifications to the same receiver that are still
+     * pending on the pool thread.
+     *
+     * @param receiver specifies the notification callback recipient.
+     * @param context specifies the context object to be passed back to the callback recipient.
+     * @param inline specifies true to call the receiver on the calling thread, false to use a pool thread.
+     */
+    public void sendNotification(Receiver receiver, Object context, boolean inline)
     {
         final String funcName = "sendNotification";
 
         if (debugEnabled)
         {
-            dbgTrace.traceEnter(funcName, TrcDbgTrace.TraceLevel.API, "receiver=%s,context=%s",
-                    receiver, context);
+            dbgTrace.traceEnter(funcName, TrcDbgTrace.TraceLevel.API, "receiver=%s,context=%s,inline=%s",
+                    receiver, context, inline);
             dbgTrace.traceExit(funcName, TrcDbgTrace.TraceLevel.API);
         }
 
-        threadPool.execute(new Handler(receiver, context));
-    }
+        if (inline)
+        {
+            receiver.notify(context);
+        }
+        else
+        {
+            //
+            // The same receiver object always goes to the same dispatcher to keep its notifications in order.
+            //
+            int index = (System.identityHashCode(receiver) & Integer.MAX_VALUE) % dispatchers.length;
+            dispatchers[index].post(receiver, context);
+        }
+    }   //sendNotification
+
+    /**
+     * This method shuts down all dispatchers of this instance.
+     *
+     * @param now specifies true to drop the pending notifications, false to deliver them first.
+     */
+    private void shutdownDispatchers(boolean now)
+    {
+        for (Dispatcher dispatcher: dispatchers)
+        {
+            dispatcher.shutdown(now);
+        }
+    }   //shutdownDispatchers
+
+    /**
+     * This method waits for all dispatcher threads of this instance to terminate.
+     *
+     * @param timeout specifies the maximum time to wait in seconds.
+     * @return true if all dispatcher threads terminated, false if the timeout expired first.
+     * @throws InterruptedException if the calling thread is interrupted while waiting.
+     */
+    private boolean awaitTermination(double timeout) throws InterruptedException
+    {
+        long deadline = System.currentTimeMillis() + (long) (timeout*1000.0);
+        boolean terminated = true;
+
+        for (Dispatcher dispatcher: dispatchers)
+        {
+            terminated &= dispatcher.awaitTermination(deadline);
+        }
+
+        return terminated;
+    }   //awaitTermination
 
     /**
      * This method initiates an orderly shutdown of the TrcNotifier in which previously submitted notification
      * callbacks are executed, but no new notification will be accepted.
      */
-    public static void shutdown()
+    public static synchronized void shutdown()
     {
         if (instance != null)
         {
-            instance.threadPool.shutdown();
+            instance.shutdownDispatchers(false);
         }
 
         instance = null;
@@ -167,12 +413,11 @@ public class TrcNotifier
     /**
      * This method attempts to stop all active notification callbacks and halts the processing of waiting callbacks.
      */
-    public static void shutdownNow()
+    public static synchronized void shutdownNow()
     {
         if (instance != null)
         {
-            instance.threadPool.shutdownNow();
-            instance.threadPool = null;
+            instance.shutdownDispatchers(true);
             instance = null;
         }
     }   //shutdownNow
@@ -183,28 +428,37 @@ public class TrcNotifier
     public static void shutdownAndAwaitTermination()
     {
         final String funcName = "shutdownAndAwaitTermination";
+        TrcNotifier notifier;
+        //
+        // Don't hold the lock while waiting, so receivers still running can get the instance without blocking.
+        //
+        synchronized (TrcNotifier.class)
+        {
+            notifier = instance;
+            instance = null;
+        }
 
-        if (instance != null)
+        if (notifier != null)
         {
             //
             // Disable new tasks from being submitted.
             //
-            instance.threadPool.shutdown();
+            notifier.shutdownDispatchers(false);
             try
             {
                 //
                 // Wait a while for existing tasks to terminate.
                 //
-                if (!instance.threadPool.awaitTermination(60, TimeUnit.SECONDS))
+                if (!notifier.awaitTermination(60.0))
                 {
                     //
                     // Cancel currently executing tasks.
                     //
-                    instance.threadPool.shutdownNow();
+                    notifier.shutdownDispatchers(true);
                     //
                     // Wait a while for tasks to respond to being cancelled.
                     //
-                    if (!instance.threadPool.awaitTermination(60, TimeUnit.SECONDS))
+                    if (!notifier.awaitTermination(60.0))
                     {
                         TrcDbgTrace.getGlobalTracer().traceErr(funcName, "Thread pool failed to terminate.");
                     }
@@ -215,17 +469,12 @@ public class TrcNotifier
                 //
                 // (Re-)Cancel if current thread also interrupted.
                 //
-                instance.threadPool.shutdownNow();
+                notifier.shutdownDispatchers(true);
                 //
                 // Preserve interrupt status.
                 //
                 Thread.currentThread().interrupt();
             }
-            finally
-            {
-                instance.threadPool = null;
-                instance = null;
-            }
         }
     }   //shutdownAndAwaitTermination
 
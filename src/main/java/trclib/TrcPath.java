@@ -45,6 +45,18 @@ public class TrcPath
         return new TrcPath(inDegrees, TrcWaypoint.loadPointsFromCsv(path, loadFromResources));
     }   //loadPathFromCsv
 
+    /**
+     * This method loads waypoints from a binary path file and create a path with them.
+     *
+     * @param inDegrees specifies true if the heading values are in degrees, false if they are radians.
+     * @param path      specifies the file path where we load the waypoints.
+     * @return created path with the loaded waypoints.
+     */
+    public static TrcPath loadPathFromBinary(boolean inDegrees, String path)
+    {
+        return new TrcPath(inDegrees, TrcWaypoint.loadPointsFromBinary(path));
+    }   //loadPathFromBinary
+
     private TrcWaypoint[] waypoints;
     private boolean inDegrees;
 
@@ -228,6 +240,20 @@ public class TrcPath
         return path;
     }
 
+    /**
+     * Set the velocities, accelerations and timesteps of the path to the time optimal profile of the given profiler.
+     * Unlike trapezoidVelocity, the profile honors curvature, velocity limits on ranges of the path and swerve module
+     * limits. The path is resampled so the profiler can see the curvature, see TrcVelocityProfiler.
+     *
+     * @param profiler       The velocity profiler with the limits of the robot.
+     * @param sampleDistance The distance between the waypoints of the profiled path.
+     * @return A new {@link TrcPath} object, with the waypoints resampled and the velocities matching the profile.
+     */
+    public TrcPath profileVelocity(TrcVelocityProfiler profiler, double sampleDistance)
+    {
+        return profiler.profile(toPathData().resample(sampleDistance)).toPath();
+    }   //profileVelocity
+
     private TrcWaypoint interpolate(TrcWaypoint point1, TrcWaypoint point2, double weight)
     {
         double timestep = interpolate(point1.timeStep, point2.timeStep, weight);
@@ -267,6 +293,17 @@ public class TrcPath
         return waypoints[index];
     }   //getWaypoint
 
+    /**
+     * This method creates the struct-of-arrays form of this path. The path data is a copy, modifying this path does
+     * not affect it.
+     *
+     * @return path data of this path.
+     */
+    public TrcPathData toPathData()
+    {
+        return new TrcPathData(inDegrees, waypoints);
+    }   //toPathData
+
     /**
      * Check if this path defines heading using degrees.
      *
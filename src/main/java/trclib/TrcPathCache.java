@@ -0,0 +1,183 @@
+/*
+ * Copyright (c) 2019 Titan Robotics Club (http://www.titanrobotics.com)
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+
+package trclib;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.stream.Collectors;
+import java.util.stream.Stream;
+
+/**
+ * This class implements a cache of path files. It is typically loaded once at robot init with all the paths in the
+ * deploy directory so that choosing an autonomous routine or starting it does not read or parse any file. Binary
+ * path files are memory mapped, CSV files without a binary counterpart are parsed once and kept in memory. Paths are
+ * looked up by file name without the extension.
+ */
+public class TrcPathCache
+{
+    private static final Map<String, TrcPathFile> cache = new ConcurrentHashMap<>();
+
+    /**
+     * This method loads all path files in the given directory and its sub-directories into the cache. Files that
+     * cannot be loaded are skipped with a warning.
+     *
+     * @param directory specifies the directory to load the paths from.
+     * @return number of paths loaded.
+     */
+    public static int loadDirectory(Path directory)
+    {
+        final String funcName = "loadDirectory";
+        int numLoaded = 0;
+        List<Path> files;
+
+        try (Stream<Path> stream = Files.walk(directory))
+        {
+            files = stream.filter(Files::isRegularFile).collect(Collectors.toList());
+        }
+        catch (IOException e)
+        {
+            TrcDbgTrace.getGlobalTracer().traceWarn(funcName, "Failed to list %s: %s", directory, e.getMessage());
+            return 0;
+        }
+
+        for (Path file: files)
+        {
+            String fileName = file.getFileName().toString();
+            boolean isBinary = fileName.endsWith(TrcPathFile.FILE_EXTENSION);
+            //
+            // A CSV file is only parsed if it was not converted.
+            //
+            if (isBinary ||
+                fileName.endsWith(".csv") &&
+                !Files.exists(file.resolveSibling(TrcPathFile.getPathName(file) + TrcPathFile.FILE_EXTENSION)))
+            {
+                try
+                {
+                    TrcPathFile pathFile = isBinary?
+                        TrcPathFile.load(file):
+                        TrcPathFile.fromWaypoints(
+                            TrcPathFile.getPathName(file), TrcWaypoint.loadPointsFromCsv(file.toString(), false));
+
+                    cache.put(pathFile.getName(), pathFile);
+                    numLoaded++;
+                }
+                catch (IOException | RuntimeException e)
+                {
+                    TrcDbgTrace.getGlobalTracer().traceWarn(
+                        funcName, "Failed to load path %s: %s", file, e.getMessage());
+                }
+            }
+        }
+
+        return numLoaded;
+    }   //loadDirectory
+
+    /**
+     * This method adds a path file to the cache.
+     *
+     * @param pathFile specifies the path file.
+     */
+    public static void add(TrcPathFile pathFile)
+    {
+        cache.put(pathFile.getName(), pathFile);
+    }   //add
+
+    /**
+     * This method returns a cached path file.
+     *
+     * @param name specifies the path name.
+     * @return path file, null if not in the cache.
+     */
+    public static TrcPathFile get(String name)
+    {
+        return cache.get(name);
+    }   //get
+
+    /**
+     * This method creates a path from a cached path file.
+     *
+     * @param name specifies the path name.
+     * @param inDegrees specifies true if the heading values are in degrees, false if they are radians.
+     * @return created path.
+     * @throws IllegalArgumentException if the path is not in the cache.
+     */
+    public static TrcPath getPath(String name, boolean inDegrees)
+    {
+        return getPathFile(name).toPath(inDegrees);
+    }   //getPath
+
+    /**
+     * This method creates a tank drive motion profile from the cached paths of the left and right wheels.
+     *
+     * @param leftName specifies the path name of the left wheels.
+     * @param rightName specifies the path name of the right wheels.
+     * @return created motion profile.
+     * @throws IllegalArgumentException if a path is not in the cache.
+     */
+    public static TrcTankMotionProfile getTankProfile(String leftName, String rightName)
+    {
+        return new TrcTankMotionProfile(getPathFile(leftName).getWaypoints(), getPathFile(rightName).getWaypoints());
+    }   //getTankProfile
+
+    /**
+     * This method returns the number of cached paths.
+     *
+     * @return number of cached paths.
+     */
+    public static int size()
+    {
+        return cache.size();
+    }   //size
+
+    /**
+     * This method removes all paths from the cache.
+     */
+    public static void clear()
+    {
+        cache.clear();
+    }   //clear
+
+    /**
+     * This method returns a cached path file.
+     *
+     * @param name specifies the path name.
+     * @return path file.
+     * @throws IllegalArgumentException if the path is not in the cache.
+     */
+    private static TrcPathFile getPathFile(String name)
+    {
+        TrcPathFile pathFile = cache.get(name);
+
+        if (pathFile == null)
+        {
+            throw new IllegalArgumentException("Path " + name + " is not in the path cache.");
+        }
+
+        return pathFile;
+    }   //getPathFile
+
+}   //class TrcPathCache
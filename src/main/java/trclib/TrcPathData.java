@@ -0,0 +1,585 @@
+/*
+ * Copyright (c) 2019 Titan Robotics Club (http://www.titanrobotics.com)
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+
+package trclib;
+
+/**
+ * This class implements the struct-of-arrays form of a path. Each waypoint field is stored in its own array, so a
+ * path follower reading positions or velocities walks contiguous memory instead of chasing one object per waypoint.
+ * The cumulative arc length and the cumulative time of the waypoints are computed when the path data is created, so
+ * the length and duration of the path are known without scanning it, and the path can be sampled by distance or by
+ * time with a binary search. Sampling interpolates into a caller supplied waypoint and does not allocate.
+ *
+ * The time step of waypoint i is the time it takes to go from waypoint i to waypoint i + 1, as in TrcPath. The
+ * time step of the last waypoint does not count towards the path duration.
+ */
+public class TrcPathData
+{
+    private final boolean inDegrees;
+    private final double[] timeSteps;
+    private final double[] xs;
+    private final double[] ys;
+    private final double[] encoderPositions;
+    private final double[] velocities;
+    private final double[] accelerations;
+    private final double[] jerks;
+    private final double[] headings;
+    private final double[] arcLengths;
+    private final double[] times;
+
+    /**
+     * Constructor: Create an instance of the object with all fields zero.
+     *
+     * @param inDegrees specifies true if the heading values are in degrees, false if they are radians.
+     * @param size specifies the number of waypoints, must be at least 2.
+     */
+    private TrcPathData(boolean inDegrees, int size)
+    {
+        if (size <= 1)
+        {
+            throw new IllegalArgumentException("Path data cannot have less than 2 waypoints!");
+        }
+
+        this.inDegrees = inDegrees;
+        timeSteps = new double[size];
+        xs = new double[size];
+        ys = new double[size];
+        encoderPositions = new double[size];
+        velocities = new double[size];
+        accelerations = new double[size];
+        jerks = new double[size];
+        headings = new double[size];
+        arcLengths = new double[size];
+        times = new double[size];
+    }   //TrcPathData
+
+    /**
+     * Constructor: Create an instance of the object from the given waypoints. The waypoints are copied.
+     *
+     * @param inDegrees specifies true if the heading values are in degrees, false if they are radians.
+     * @param waypoints specifies the waypoints of the path, must have at least 2 waypoints.
+     */
+    public TrcPathData(boolean inDegrees, TrcWaypoint... waypoints)
+    {
+        this(inDegrees, waypoints == null? 0: waypoints.length);
+
+        for (int i = 0; i < waypoints.length; i++)
+        {
+            TrcWaypoint waypoint = waypoints[i];
+
+            timeSteps[i] = waypoint.timeStep;
+            xs[i] = waypoint.x;
+            ys[i] = waypoint.y;
+            encoderPositions[i] = waypoint.encoderPosition;
+            velocities[i] = waypoint.velocity;
+            accelerations[i] = waypoint.acceleration;
+            jerks[i] = waypoint.jerk;
+            headings[i] = waypoint.heading;
+        }
+
+        updateArcLengths();
+        updateTimes();
+    }   //TrcPathData
+
+    /**
+     * This method creates the path data of a path file. The fields are copied out of the file in one pass.
+     *
+     * @param pathFile specifies the path file.
+     * @param inDegrees specifies true if the heading values are in degrees, false if they are radians.
+     * @return created path data.
+     */
+    public static TrcPathData fromPathFile(TrcPathFile pathFile, boolean inDegrees)
+    {
+        TrcPathData pathData = new TrcPathData(inDegrees, pathFile.getNumPoints());
+
+        for (int i = 0; i < pathData.xs.length; i++)
+        {
+            pathData.timeSteps[i] = pathFile.get(i, TrcPathFile.TIMESTEP);
+            pathData.xs[i] = pathFile.get(i, TrcPathFile.X);
+            pathData.ys[i] = pathFile.get(i, TrcPathFile.Y);
+            pathData.encoderPositions[i] = pathFile.get(i, TrcPathFile.ENCODER_POSITION);
+            pathData.velocities[i] = pathFile.get(i, TrcPathFile.VELOCITY);
+            pathData.accelerations[i] = pathFile.get(i, TrcPathFile.ACCELERATION);
+            pathData.jerks[i] = pathFile.get(i, TrcPathFile.JERK);
+            pathData.headings[i] = pathFile.get(i, TrcPathFile.HEADING);
+        }
+
+        pathData.updateArcLengths();
+        pathData.updateTimes();
+
+        return pathData;
+    }   //fromPathFile
+
+    /**
+     * This method creates new path data with the waypoints evenly spaced along the path. The fields are interpolated
+     * linearly by arc length and the cumulative times are interpolated the same way, so the duration of the path is
+     * preserved. The last waypoint is kept, so the last segment may be shorter than the spacing.
+     *
+     * @param spacing specifies the arc length between the new waypoints.
+     * @return resampled path data.
+     */
+    public TrcPathData resample(double spacing)
+    {
+        if (spacing <= 0.0)
+        {
+            throw new IllegalArgumentException("spacing must be positive.");
+        }
+
+        double length = getArcLength();
+        // Don't create a sliver of a last segment from rounding errors.
+        int numSegments = Math.max((int) Math.ceil(length/spacing - 1e-9), 1);
+        TrcPathData pathData = new TrcPathData(inDegrees, numSegments + 1);
+        TrcWaypoint sample = new TrcWaypoint(0.0, 0.0, 0.0, 0.0, 0.0, 0.0, 0.0, 0.0);
+        int segment = 0;
+
+        for (int i = 0; i <= numSegments; i++)
+        {
+            double distance = i == numSegments? length: i*spacing;
+
+            // The samples are in order, so the segment only ever moves forward.
+            while (segment < xs.length - 2 && arcLengths[segment + 1] <= distance)
+            {
+                segment++;
+            }
+
+            double weight = getWeight(arcLengths, segment, distance);
+            interpolate(segment, weight, sample);
+            pathData.xs[i] = sample.x;
+            pathData.ys[i] = sample.y;
+            pathData.encoderPositions[i] = sample.encoderPosition;
+            pathData.velocities[i] = sample.velocity;
+            pathData.accelerations[i] = sample.acceleration;
+            pathData.jerks[i] = sample.jerk;
+            pathData.headings[i] = sample.heading;
+            pathData.times[i] = interpolate(times[segment], times[segment + 1], weight);
+        }
+
+        for (int i = 0; i < numSegments; i++)
+        {
+            pathData.timeSteps[i] = pathData.times[i + 1] - pathData.times[i];
+        }
+        pathData.timeSteps[numSegments] = pathData.timeSteps[numSegments - 1];
+        pathData.updateArcLengths();
+
+        return pathData;
+    }   //resample
+
+    /**
+     * This method creates a path with new waypoint objects for all waypoints.
+     *
+     * @return created path.
+     */
+    public TrcPath toPath()
+    {
+        TrcWaypoint[] waypoints = new TrcWaypoint[xs.length];
+
+        for (int i = 0; i < waypoints.length; i++)
+        {
+            waypoints[i] = getWaypoint(i, new TrcWaypoint(0.0, 0.0, 0.0, 0.0, 0.0, 0.0, 0.0, 0.0));
+        }
+
+        return new TrcPath(inDegrees, waypoints);
+    }   //toPath
+
+    /**
+     * This method checks if the heading values are in degrees.
+     *
+     * @return true if the heading values are in degrees, false if they are radians.
+     */
+    public boolean isInDegrees()
+    {
+        return inDegrees;
+    }   //isInDegrees
+
+    /**
+     * This method returns the number of waypoints.
+     *
+     * @return number of waypoints.
+     */
+    public int getSize()
+    {
+        return xs.length;
+    }   //getSize
+
+    /**
+     * This method returns the time step of a waypoint.
+     *
+     * @param index specifies the waypoint index.
+     * @return time to go from the waypoint to the next one.
+     */
+    public double getTimeStep(int index)
+    {
+        return timeSteps[index];
+    }   //getTimeStep
+
+    /**
+     * This method returns the x coordinate of a waypoint.
+     *
+     * @param index specifies the waypoint index.
+     * @return x coordinate.
+     */
+    public double getX(int index)
+    {
+        return xs[index];
+    }   //getX
+
+    /**
+     * This method returns the y coordinate of a waypoint.
+     *
+     * @param index specifies the waypoint index.
+     * @return y coordinate.
+     */
+    public double getY(int index)
+    {
+        return ys[index];
+    }   //getY
+
+    /**
+     * This method returns the encoder position of a waypoint.
+     *
+     * @param index specifies the waypoint index.
+     * @return encoder position.
+     */
+    public double getEncoderPosition(int index)
+    {
+        return encoderPositions[index];
+    }   //getEncoderPosition
+
+    /**
+     * This method returns the velocity of a waypoint.
+     *
+     * @param index specifies the waypoint index.
+     * @return velocity.
+     */
+    public double getVelocity(int index)
+    {
+        return velocities[index];
+    }   //getVelocity
+
+    /**
+     * This method returns the acceleration of a waypoint.
+     *
+     * @param index specifies the waypoint index.
+     * @return acceleration.
+     */
+    public double getAcceleration(int index)
+    {
+        return accelerations[index];
+    }   //getAcceleration
+
+    /**
+     * This method returns the jerk of a waypoint.
+     *
+     * @param index specifies the waypoint index.
+     * @return jerk.
+     */
+    public double getJerk(int index)
+    {
+        return jerks[index];
+    }   //getJerk
+
+    /**
+     * This method returns the heading of a waypoint.
+     *
+     * @param index specifies the waypoint index.
+     * @return heading in degrees or radians, see isInDegrees.
+     */
+    public double getHeading(int index)
+    {
+        return headings[index];
+    }   //getHeading
+
+    /**
+     * This method returns the arc length of the path from the first waypoint to the given waypoint.
+     *
+     * @param index specifies the waypoint index.
+     * @return cumulative arc length at the waypoint.
+     */
+    public double getArcLength(int index)
+    {
+        return arcLengths[index];
+    }   //getArcLength
+
+    /**
+     * This method returns the time it takes to go from the first waypoint to the given waypoint.
+     *
+     * @param index specifies the waypoint index.
+     * @return cumulative time at the waypoint.
+     */
+    public double getTime(int index)
+    {
+        return times[index];
+    }   //getTime
+
+    /**
+     * This method returns the arc length of the whole path.
+     *
+     * @return arc length of the path.
+     */
+    public double getArcLength()
+    {
+        return arcLengths[arcLengths.length - 1];
+    }   //getArcLength
+
+    /**
+     * This method returns the time it takes to go from the first waypoint to the last waypoint.
+     *
+     * @return duration of the path.
+     */
+    public double getDuration()
+    {
+        return times[times.length - 1];
+    }   //getDuration
+
+    /**
+     * This method copies a waypoint into the given waypoint object.
+     *
+     * @param index specifies the waypoint index.
+     * @param result specifies the waypoint to store the fields in.
+     * @return result waypoint.
+     */
+    public TrcWaypoint getWaypoint(int index, TrcWaypoint result)
+    {
+        result.timeStep = timeSteps[index];
+        result.x = xs[index];
+        result.y = ys[index];
+        result.encoderPosition = encoderPositions[index];
+        result.velocity = velocities[index];
+        result.acceleration = accelerations[index];
+        result.jerk = jerks[index];
+        result.heading = headings[index];
+
+        return result;
+    }   //getWaypoint
+
+    /**
+     * This method sets the velocity of a waypoint. The time steps are not updated, call inferTimeSteps after setting
+     * the velocities.
+     *
+     * @param index specifies the waypoint index.
+     * @param velocity specifies the new velocity.
+     */
+    public void setVelocity(int index, double velocity)
+    {
+        velocities[index] = velocity;
+    }   //setVelocity
+
+    /**
+     * This method sets the acceleration of a waypoint.
+     *
+     * @param index specifies the waypoint index.
+     * @param acceleration specifies the new acceleration.
+     */
+    public void setAcceleration(int index, double acceleration)
+    {
+        accelerations[index] = acceleration;
+    }   //setAcceleration
+
+    /**
+     * This method uses the velocities and the segment lengths to infer the time steps of the waypoints and updates
+     * the cumulative times. Like TrcPath.inferTimeSteps, the last waypoint gets the same time step as the second to
+     * last.
+     */
+    public void inferTimeSteps()
+    {
+        int last = xs.length - 1;
+
+        for (int i = 0; i < last; i++)
+        {
+            // Area of trapezoid: (v1+v2)/2 * t = d
+            timeSteps[i] = (arcLengths[i + 1] - arcLengths[i])/TrcUtil.average(velocities[i], velocities[i + 1]);
+        }
+        timeSteps[last] = timeSteps[last - 1];
+
+        updateTimes();
+    }   //inferTimeSteps
+
+    /**
+     * This method returns the segment containing the given arc length. Segment i goes from waypoint i to waypoint
+     * i + 1. It uses binary search on the cumulative arc lengths.
+     *
+     * @param distance specifies the arc length from the first waypoint.
+     * @return index of the first waypoint of the segment, between 0 and getSize() - 2.
+     */
+    public int findSegmentByDistance(double distance)
+    {
+        return findSegment(arcLengths, distance);
+    }   //findSegmentByDistance
+
+    /**
+     * This method returns the segment containing the given time. Segment i goes from waypoint i to waypoint i + 1.
+     * It uses binary search on the cumulative times.
+     *
+     * @param time specifies the time from the first waypoint.
+     * @return index of the first waypoint of the segment, between 0 and getSize() - 2.
+     */
+    public int findSegmentByTime(double time)
+    {
+        return findSegment(times, time);
+    }   //findSegmentByTime
+
+    /**
+     * This method samples the path at the given arc length. Distances outside of the path are clamped to the first
+     * or the last waypoint.
+     *
+     * @param distance specifies the arc length from the first waypoint.
+     * @param result specifies the waypoint to store the sample in.
+     * @return result waypoint.
+     */
+    public TrcWaypoint sampleByDistance(double distance, TrcWaypoint result)
+    {
+        int segment = findSegment(arcLengths, distance);
+
+        return interpolate(segment, getWeight(arcLengths, segment, distance), result);
+    }   //sampleByDistance
+
+    /**
+     * This method samples the path at the given time. Times outside of the path are clamped to the first or the last
+     * waypoint.
+     *
+     * @param time specifies the time from the first waypoint.
+     * @param result specifies the waypoint to store the sample in.
+     * @return result waypoint.
+     */
+    public TrcWaypoint sampleByTime(double time, TrcWaypoint result)
+    {
+        int segment = findSegment(times, time);
+
+        return interpolate(segment, getWeight(times, segment, time), result);
+    }   //sampleByTime
+
+    /**
+     * This method interpolates all fields between a waypoint and the next one. The heading is interpolated the short
+     * way around the circle.
+     *
+     * @param index specifies the index of the first waypoint, between 0 and getSize() - 2.
+     * @param weight specifies the weight of the next waypoint, between 0.0 and 1.0.
+     * @param result specifies the waypoint to store the interpolated fields in.
+     * @return result waypoint.
+     */
+    public TrcWaypoint interpolate(int index, double weight, TrcWaypoint result)
+    {
+        int next = index + 1;
+
+        if (!TrcUtil.inRange(weight, 0.0, 1.0))
+        {
+            throw new IllegalArgumentException("Weight must be in range [0,1]!");
+        }
+
+        result.timeStep = interpolate(timeSteps[index], timeSteps[next], weight);
+        result.x = interpolate(xs[index], xs[next], weight);
+        result.y = interpolate(ys[index], ys[next], weight);
+        result.encoderPosition = interpolate(encoderPositions[index], encoderPositions[next], weight);
+        result.velocity = interpolate(velocities[index], velocities[next], weight);
+        result.acceleration = interpolate(accelerations[index], accelerations[next], weight);
+        result.jerk = interpolate(jerks[index], jerks[next], weight);
+        result.heading = interpolate(
+            headings[index],
+            TrcWarpSpace.getOptimizedTarget(headings[next], headings[index], inDegrees? 360.0: 2.0*Math.PI), weight);
+
+        return result;
+    }   //interpolate
+
+    /**
+     * This method interpolates between two values.
+     *
+     * @param start specifies the start value.
+     * @param end specifies the end value.
+     * @param weight specifies the weight of the end value.
+     * @return interpolated value.
+     */
+    private static double interpolate(double start, double end, double weight)
+    {
+        return (1.0 - weight)*start + weight*end;
+    }   //interpolate
+
+    /**
+     * This method returns the index of the last element of the cumulative values that is not greater than the given
+     * value, limited to the first waypoint of the last segment.
+     *
+     * @param cumulative specifies the cumulative values, arc lengths or times.
+     * @param value specifies the value to look up.
+     * @return index of the first waypoint of the segment containing the value.
+     */
+    private static int findSegment(double[] cumulative, double value)
+    {
+        int low = 0;
+        int high = cumulative.length - 2;
+
+        while (low < high)
+        {
+            int mid = (low + high + 1) >>> 1;
+
+            if (cumulative[mid] <= value)
+            {
+                low = mid;
+            }
+            else
+            {
+                high = mid - 1;
+            }
+        }
+
+        return low;
+    }   //findSegment
+
+    /**
+     * This method returns the position of a value within a segment.
+     *
+     * @param cumulative specifies the cumulative values, arc lengths or times.
+     * @param segment specifies the index of the first waypoint of the segment.
+     * @param value specifies the value.
+     * @return weight of the segment end between 0.0 and 1.0, 0.0 for a segment of zero length.
+     */
+    private static double getWeight(double[] cumulative, int segment, double value)
+    {
+        double length = cumulative[segment + 1] - cumulative[segment];
+
+        return length > 0.0? TrcUtil.clipRange((value - cumulative[segment])/length, 0.0, 1.0): 0.0;
+    }   //getWeight
+
+    /**
+     * This method computes the cumulative arc lengths from the coordinates.
+     */
+    private void updateArcLengths()
+    {
+        arcLengths[0] = 0.0;
+        for (int i = 1; i < xs.length; i++)
+        {
+            arcLengths[i] = arcLengths[i - 1] + Math.sqrt(
+                (xs[i] - xs[i - 1])*(xs[i] - xs[i - 1]) + (ys[i] - ys[i - 1])*(ys[i] - ys[i - 1]));
+        }
+    }   //updateArcLengths
+
+    /**
+     * This method computes the cumulative times from the time steps.
+     */
+    private void updateTimes()
+    {
+        times[0] = 0.0;
+        for (int i = 1; i < times.length; i++)
+        {
+            times[i] = times[i - 1] + timeSteps[i - 1];
+        }
+    }   //updateTimes
+
+}   //class TrcPathData
@@ -0,0 +1,303 @@
+/*
+ * Copyright (c) 2019 Titan Robotics Club (http://www.titanrobotics.com)
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+
+package trclib;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.DoubleBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardOpenOption;
+
+/**
+ * This class implements the binary path file format. A path file has a header followed by the waypoints as packed
+ * little endian doubles, one row of 8 fields per waypoint in the same order as the columns of the waypoint CSV
+ * files: time step, x, y, encoder position, velocity, acceleration, jerk and heading. A path file is memory mapped
+ * when loaded, so the waypoint fields are read straight from the file without any parsing.
+ *
+ * Existing CSV files are converted with "TrcPathFile path1.csv path2.csv ..." which writes the binary files next to
+ * the CSV files with the .trcpath extension.
+ */
+public class TrcPathFile
+{
+    public static final String FILE_EXTENSION = ".trcpath";
+    public static final int NUM_FIELDS = 8;
+    public static final int TIMESTEP = 0;
+    public static final int X = 1;
+    public static final int Y = 2;
+    public static final int ENCODER_POSITION = 3;
+    public static final int VELOCITY = 4;
+    public static final int ACCELERATION = 5;
+    public static final int JERK = 6;
+    public static final int HEADING = 7;
+
+    private static final long FILE_MAGIC = 0x5452435041544831L;    // "TRCPATH1"
+    private static final int HEADER_SIZE = Long.BYTES + 2*Integer.BYTES;
+
+    private final String name;
+    private final int numPoints;
+    private final DoubleBuffer data;
+
+    /**
+     * Constructor: Create an instance of the object.
+     *
+     * @param name specifies the path name.
+     * @param numPoints specifies the number of waypoints.
+     * @param data specifies the waypoint fields, NUM_FIELDS per waypoint.
+     */
+    private TrcPathFile(String name, int numPoints, DoubleBuffer data)
+    {
+        this.name = name;
+        this.numPoints = numPoints;
+        this.data = data;
+    }   //TrcPathFile
+
+    /**
+     * This method returns the path name.
+     *
+     * @return path name.
+     */
+    @Override
+    public String toString()
+    {
+        return name;
+    }   //toString
+
+    /**
+     * This method creates a path file in memory from the given waypoints.
+     *
+     * @param name specifies the path name.
+     * @param waypoints specifies the waypoints.
+     * @return path file holding a copy of the waypoints.
+     */
+    public static TrcPathFile fromWaypoints(String name, TrcWaypoint[] waypoints)
+    {
+        DoubleBuffer data = DoubleBuffer.allocate(waypoints.length*NUM_FIELDS);
+
+        for (TrcWaypoint point: waypoints)
+        {
+            data.put(point.timeStep).put(point.x).put(point.y).put(point.encoderPosition).put(point.velocity)
+                .put(point.acceleration).put(point.jerk).put(point.heading);
+        }
+
+        return new TrcPathFile(name, waypoints.length, data);
+    }   //fromWaypoints
+
+    /**
+     * This method memory maps a path file written by save.
+     *
+     * @param file specifies the path file.
+     * @return path file backed by the mapped file.
+     * @throws IOException if the file cannot be read or is not a valid path file.
+     */
+    public static TrcPathFile load(Path file) throws IOException
+    {
+        try (FileChannel channel = FileChannel.open(file, StandardOpenOption.READ))
+        {
+            ByteBuffer buffer = channel.map(FileChannel.MapMode.READ_ONLY, 0, channel.size());
+            buffer.order(ByteOrder.LITTLE_ENDIAN);
+            if (buffer.remaining() < HEADER_SIZE || buffer.getLong() != FILE_MAGIC)
+            {
+                throw new IOException(file + " is not a path file.");
+            }
+
+            int numPoints = buffer.getInt();
+            int numFields = buffer.getInt();
+            if (numFields != NUM_FIELDS || numPoints < 0)
+            {
+                throw new IOException(file + " has an unsupported waypoint layout.");
+            }
+            else if (buffer.remaining() != numPoints*NUM_FIELDS*Double.BYTES)
+            {
+                throw new IOException(file + " is truncated.");
+            }
+
+            return new TrcPathFile(
+                getPathName(file), numPoints, buffer.slice().order(ByteOrder.LITTLE_ENDIAN).asDoubleBuffer());
+        }
+    }   //load
+
+    /**
+     * This method writes the waypoints to a path file that can be memory mapped by load.
+     *
+     * @param file specifies the path file.
+     * @throws IOException if the file cannot be written.
+     */
+    public void save(Path file) throws IOException
+    {
+        ByteBuffer buffer = ByteBuffer.allocate(HEADER_SIZE + numPoints*NUM_FIELDS*Double.BYTES);
+
+        buffer.order(ByteOrder.LITTLE_ENDIAN);
+        buffer.putLong(FILE_MAGIC).putInt(numPoints).putInt(NUM_FIELDS);
+        for (int i = 0; i < numPoints*NUM_FIELDS; i++)
+        {
+            buffer.putDouble(data.get(i));
+        }
+        buffer.flip();
+
+        try (FileChannel channel = FileChannel.open(
+            file, StandardOpenOption.CREATE, StandardOpenOption.WRITE, StandardOpenOption.TRUNCATE_EXISTING))
+        {
+            while (buffer.hasRemaining())
+            {
+                channel.write(buffer);
+            }
+        }
+    }   //save
+
+    /**
+     * This method converts a waypoint CSV file to a path file.
+     *
+     * @param csvFile specifies the CSV file.
+     * @param file specifies the path file to write.
+     * @return converted path file.
+     * @throws IOException if the path file cannot be written.
+     */
+    public static TrcPathFile convertCsv(Path csvFile, Path file) throws IOException
+    {
+        TrcPathFile pathFile = fromWaypoints(
+            getPathName(csvFile), TrcWaypoint.loadPointsFromCsv(csvFile.toString(), false));
+
+        pathFile.save(file);
+        return pathFile;
+    }   //convertCsv
+
+    /**
+     * This method returns the path name of a file, which is the file name without the extension.
+     *
+     * @param file specifies the file.
+     * @return path name.
+     */
+    public static String getPathName(Path file)
+    {
+        String fileName = file.getFileName().toString();
+        int dotIndex = fileName.lastIndexOf('.');
+
+        return dotIndex > 0? fileName.substring(0, dotIndex): fileName;
+    }   //getPathName
+
+    /**
+     * This method returns the path name.
+     *
+     * @return path name.
+     */
+    public String getName()
+    {
+        return name;
+    }   //getName
+
+    /**
+     * This method returns the number of waypoints.
+     *
+     * @return number of waypoints.
+     */
+    public int getNumPoints()
+    {
+        return numPoints;
+    }   //getNumPoints
+
+    /**
+     * This method returns a field of a waypoint.
+     *
+     * @param index specifies the waypoint index.
+     * @param field specifies the field index, e.g. X or VELOCITY.
+     * @return field value.
+     */
+    public double get(int index, int field)
+    {
+        return data.get(index*NUM_FIELDS + field);
+    }   //get
+
+    /**
+     * This method copies a waypoint into the given waypoint object.
+     *
+     * @param index specifies the waypoint index.
+     * @param result specifies the waypoint to store the fields in.
+     * @return result waypoint.
+     */
+    public TrcWaypoint getWaypoint(int index, TrcWaypoint result)
+    {
+        int offset = index*NUM_FIELDS;
+
+        result.timeStep = data.get(offset + TIMESTEP);
+        result.x = data.get(offset + X);
+        result.y = data.get(offset + Y);
+        result.encoderPosition = data.get(offset + ENCODER_POSITION);
+        result.velocity = data.get(offset + VELOCITY);
+        result.acceleration = data.get(offset + ACCELERATION);
+        result.jerk = data.get(offset + JERK);
+        result.heading = data.get(offset + HEADING);
+
+        return result;
+    }   //getWaypoint
+
+    /**
+     * This method creates new waypoint objects for all waypoints. The waypoints can be modified without affecting
+     * the path file.
+     *
+     * @return array of waypoints.
+     */
+    public TrcWaypoint[] getWaypoints()
+    {
+        TrcWaypoint[] waypoints = new TrcWaypoint[numPoints];
+
+        for (int i = 0; i < numPoints; i++)
+        {
+            waypoints[i] = getWaypoint(i, new TrcWaypoint(0.0, 0.0, 0.0, 0.0, 0.0, 0.0, 0.0, 0.0));
+        }
+
+        return waypoints;
+    }   //getWaypoints
+
+    /**
+     * This method creates a path with the waypoints.
+     *
+     * @param inDegrees specifies true if the heading values are in degrees, false if they are radians.
+     * @return created path.
+     */
+    public TrcPath toPath(boolean inDegrees)
+    {
+        return new TrcPath(inDegrees, getWaypoints());
+    }   //toPath
+
+    /**
+     * This method converts the given CSV files to path files with the same name and the .trcpath extension.
+     *
+     * @param args specifies the CSV files to convert.
+     * @throws IOException if a path file cannot be written.
+     */
+    public static void main(String... args) throws IOException
+    {
+        for (String arg: args)
+        {
+            Path csvFile = Paths.get(arg);
+            Path file = csvFile.resolveSibling(getPathName(csvFile) + FILE_EXTENSION);
+            TrcPathFile pathFile = convertCsv(csvFile, file);
+
+            System.out.printf("%s: %d waypoints -> %s\n", csvFile, pathFile.getNumPoints(), file);
+        }
+    }   //main
+
+}   //class TrcPathFile
@@ -0,0 +1,195 @@
+/*
+ * Copyright (c) 2020 Titan Robotics Club (http://www.titanrobotics.com)
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+
+package trclib;
+
+/**
+ * This class implements a segment index of a path for lookahead queries such as pure pursuit. Segment i goes from
+ * waypoint i - 1 to waypoint i. The segment geometry and the cumulative arc length of the waypoints are computed once
+ * so that per loop queries are allocation-free. Searches are windowed by arc length: the end of a window is found
+ * by binary search, so the cost of a query depends on the window size and not on the length of the path.
+ *
+ * The index is a snapshot of the path when it was created. If the path is modified, a new index must be created. The
+ * cumulative arc lengths are shared with the path data the index is built from.
+ */
+public class TrcPathSegmentIndex
+{
+    private final TrcPathData pathData;
+    private final double[] xs;
+    private final double[] ys;
+    private final double[] segDx;
+    private final double[] segDy;
+    private final double[] segLengthSquared;
+
+    /**
+     * Constructor: Create an instance of the object.
+     *
+     * @param path specifies the path to be indexed.
+     */
+    public TrcPathSegmentIndex(TrcPath path)
+    {
+        this(path.toPathData());
+    }   //TrcPathSegmentIndex
+
+    /**
+     * Constructor: Create an instance of the object. The cumulative arc lengths are taken from the path data.
+     *
+     * @param pathData specifies the path data to be indexed.
+     */
+    public TrcPathSegmentIndex(TrcPathData pathData)
+    {
+        int size = pathData.getSize();
+
+        this.pathData = pathData;
+        xs = new double[size];
+        ys = new double[size];
+        segDx = new double[size];
+        segDy = new double[size];
+        segLengthSquared = new double[size];
+
+        for (int i = 0; i < size; i++)
+        {
+            xs[i] = pathData.getX(i);
+            ys[i] = pathData.getY(i);
+            if (i > 0)
+            {
+                segDx[i] = xs[i] - xs[i - 1];
+                segDy[i] = ys[i] - ys[i - 1];
+                segLengthSquared[i] = segDx[i]*segDx[i] + segDy[i]*segDy[i];
+            }
+        }
+    }   //TrcPathSegmentIndex
+
+    /**
+     * This method returns the indexed path data.
+     *
+     * @return indexed path data.
+     */
+    public TrcPathData getPathData()
+    {
+        return pathData;
+    }   //getPathData
+
+    /**
+     * This method returns the number of waypoints of the path.
+     *
+     * @return number of waypoints.
+     */
+    public int getSize()
+    {
+        return xs.length;
+    }   //getSize
+
+    /**
+     * This method returns the arc length of the path from the first waypoint to the given waypoint.
+     *
+     * @param index specifies the waypoint index.
+     * @return cumulative arc length at the waypoint.
+     */
+    public double getArcLength(int index)
+    {
+        return pathData.getArcLength(index);
+    }   //getArcLength
+
+    /**
+     * This method returns the distance from the given point to a waypoint.
+     *
+     * @param index specifies the waypoint index.
+     * @param x specifies the x coordinate of the point.
+     * @param y specifies the y coordinate of the point.
+     * @return distance to the waypoint.
+     */
+    public double distanceTo(int index, double x, double y)
+    {
+        return TrcUtil.magnitude(xs[index] - x, ys[index] - y);
+    }   //distanceTo
+
+    /**
+     * This method returns the index of the last waypoint whose arc length is within the given distance of the
+     * arc length of the start waypoint. It uses binary search on the cumulative arc lengths.
+     *
+     * @param startIndex specifies the waypoint index the window starts at.
+     * @param window specifies the arc length of the window.
+     * @return index of the last waypoint in the window, at least startIndex.
+     */
+    public int findWindowEnd(int startIndex, double window)
+    {
+        double limit = pathData.getArcLength(startIndex) + window;
+        int low = startIndex;
+        int high = xs.length - 1;
+
+        while (low < high)
+        {
+            int mid = (low + high + 1) >>> 1;
+
+            if (pathData.getArcLength(mid) <= limit)
+            {
+                low = mid;
+            }
+            else
+            {
+                high = mid - 1;
+            }
+        }
+
+        return low;
+    }   //findWindowEnd
+
+    /**
+     * This method intersects a segment with a circle and returns the farthest intersection along the segment.
+     *
+     * @param segment specifies the segment index, from waypoint segment - 1 to waypoint segment.
+     * @param centerX specifies the x coordinate of the circle center.
+     * @param centerY specifies the y coordinate of the circle center.
+     * @param radius specifies the circle radius.
+     * @return segment parameter of the intersection between 0.0 (segment start) and 1.0 (segment end), NaN if the
+     *         farthest intersection is not on the segment.
+     */
+    public double intersect(int segment, double centerX, double centerY, double radius)
+    {
+        double t = Double.NaN;
+        double a = segLengthSquared[segment];
+
+        if (a > 0.0)
+        {
+            double startX = xs[segment - 1] - centerX;
+            double startY = ys[segment - 1] - centerY;
+            double b = 2.0*(startX*segDx[segment] + startY*segDy[segment]);
+            double c = startX*startX + startY*startY - radius*radius;
+            double discriminant = b*b - 4.0*a*c;
+
+            if (discriminant >= 0.0)
+            {
+                // The larger root is the farthest intersection.
+                double root = (-b + Math.sqrt(discriminant))/(2.0*a);
+
+                if (root >= 0.0 && root <= 1.0)
+                {
+                    t = root;
+                }
+            }
+        }
+
+        return t;
+    }   //intersect
+
+}   //class TrcPathSegmentIndex
@@ -22,6 +22,12 @@
 
 package trclib;
 
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.ScheduledThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
 /**
  * This class implements a platform independent periodic task by using a separate thread. When enabled, the thread
  * periodically calls the runPeriodic method. Generally, this class is used by TrcTaskMgr to create a standalone
@@ -31,6 +37,8 @@ package trclib;
  * data but arguably, one could just call TrcTaskMgr to create a STANDALONE_TASK instead. In other words, this
  * class is mainly used by TrcTaskMgr, there is really no reason for others to use this class. One should always
  * use TrcTaskMgr to create a STANDALONE_TASK.
+ * A periodic task can also run in SHARED_SCHEDULER mode instead of on its own thread. In this mode, all such tasks
+ * share a few carrier threads and are run at a fixed rate by a scheduled executor.
  *
  * @param <T> specifies the data type that the periodic task will be acquiring/processing.
  */
@@ -49,6 +57,44 @@ public class TrcPeriodicThread<T>
         void runPeriodic(Object context);
     }   //interface PeriodicTask
 
+    /**
+     * This enum specifies how the periodic task is executed.
+     */
+    public enum ExecutionMode
+    {
+        /**
+         * The task runs on its own dedicated thread.
+         */
+        DEDICATED_THREAD,
+        /**
+         * The task runs on the small pool of carrier threads shared by all tasks in this mode, at a fixed rate.
+         */
+        SHARED_SCHEDULER
+    }   //enum ExecutionMode
+
+    /**
+     * This enum specifies what a fixed rate task does when a run finishes after the next run was due.
+     */
+    public enum OverrunPolicy
+    {
+        /**
+         * The missed runs are skipped, the next run is at the next time on the original schedule. This keeps the
+         * task in phase with its schedule.
+         */
+        SKIP,
+        /**
+         * The missed runs are run back to back until the task is back on schedule, up to MAX_CATCH_UP_PERIODS runs.
+         * Any runs missed beyond that are skipped.
+         */
+        CATCH_UP,
+        /**
+         * The next run is right away and the schedule restarts from there.
+         */
+        RESTART
+    }   //enum OverrunPolicy
+
+    public static final int MAX_CATCH_UP_PERIODS = 5;
+
     /**
      * This class keeps track of the state of the periodic task. It also provides thread synchronization control to
      * make sure the integrity of the task state.
@@ -56,16 +102,30 @@ public class TrcPeriodicThread<T>
     private class TaskState
     {
         private final Thread periodicThread;
+        private ScheduledFuture<?> scheduledRun = null;
+        private boolean running = false;
+        private boolean terminated = false;
         private boolean taskEnabled;
         private T data;
 
         /**
          * Constructor: Create an instance of the object.
+         *
+         * @param instanceName specifies the instance name.
+         * @param runnable specifies the thread body, null if the task runs on the shared scheduler.
+         * @param taskPriority specifies the thread priority, ignored on the shared scheduler.
          */
         public TaskState(String instanceName, Runnable runnable, int taskPriority)
         {
-            periodicThread = new Thread(runnable, instanceName);
-            periodicThread.setPriority(taskPriority);
+            if (runnable != null)
+            {
+                periodicThread = new Thread(runnable, instanceName);
+                periodicThread.setPriority(taskPriority);
+            }
+            else
+            {
+                periodicThread = null;
+            }
             taskEnabled = false;
             data = null;
         }   //TaskState
@@ -75,25 +135,62 @@ public class TrcPeriodicThread<T>
          */
         public void start()
         {
-            periodicThread.start();
+            if (periodicThread != null)
+            {
+                periodicThread.start();
+            }
         }   //start
 
+        /**
+         * This method checks if the task is still alive, i.e. it has not been terminated. It must be called with
+         * the task state locked.
+         *
+         * @return true if the task is alive, false otherwise.
+         */
+        private boolean isAlive()
+        {
+            return periodicThread != null? periodicThread.isAlive(): !terminated;
+        }   //isAlive
+
         /**
          * This method checks if the periodic task has been terminated.
          *
          * @return true if task has been terminated, false otherwise.
          */
-        public boolean isTaskTerminated()
+        public synchronized boolean isTaskTerminated()
         {
-            return !periodicThread.isAlive();
+            return periodicThread != null? !periodicThread.isAlive(): terminated && scheduledRun == null && !running;
         }   //isTaskTerminated
 
         /**
          * This method is called to terminate the periodic task.
+         *
+         * @return true if the task is terminated by this call, false if it was already terminated.
          */
-        public void terminateTask()
+        public synchronized boolean terminateTask()
         {
-            periodicThread.interrupt();
+            boolean terminating = !terminated;
+
+            terminated = true;
+            if (periodicThread != null)
+            {
+                periodicThread.interrupt();
+            }
+            else
+            {
+                taskEnabled = false;
+                //
+                // Canceling a run that is already in progress does not stop it, so the task is not reported as
+                // terminated until the running flag is cleared at the end of the run.
+                //
+                if (scheduledRun != null)
+                {
+                    scheduledRun.cancel(false);
+                    scheduledRun = null;
+                }
+            }
+
+            return terminating;
         }   //terminateTask
 
         /**
@@ -103,20 +200,28 @@ public class TrcPeriodicThread<T>
          */
         public synchronized boolean isTaskEnabled()
         {
-            return taskEnabled && periodicThread.isAlive();
+            return taskEnabled && isAlive();
         }   //isTaskEnabled
 
         /**
          * This method enables/disables the periodic task. If this is called to disable the task, the task will be
-         * set to a paused state. The operation will be resumed when this is called to enable it again.
+         * set to a paused state. The operation will be resumed when this is called to enable it again. On the shared
+         * scheduler, a disabled task is not scheduled at all and enabling it schedules it to run right away.
          *
          * @param enabled specifies true to enable periodic task, false to disable.
          */
         public synchronized void setTaskEnabled(boolean enabled)
         {
-            if (periodicThread.isAlive())
+            if (isAlive())
             {
                 taskEnabled = enabled;
+                if (enabled && periodicThread == null && (scheduledRun == null || scheduledRun.isDone()))
+                {
+                    nextRunNanoTime = TrcUtil.getCurrentTimeNanos();
+                    prevStartNanoTime = 0;
+                    scheduledRun = getSharedScheduler().schedule(TrcPeriodicThread.this::runScheduled, 0,
+                        TimeUnit.NANOSECONDS);
+                }
             }
             else
             {
@@ -127,6 +232,40 @@ public class TrcPeriodicThread<T>
             }
         }   //setTaskEnabled
 
+        /**
+         * This method is called by a scheduled run before running the task to mark the run in progress. A run that
+         * starts after the task has been terminated does nothing.
+         *
+         * @return true if the task should be run, false otherwise.
+         */
+        public synchronized boolean startRun()
+        {
+            running = !terminated;
+            return running && taskEnabled;
+        }   //startRun
+
+        /**
+         * This method is called by a scheduled run after running the task to clear the run in progress and schedule
+         * the next run at the given time. The task is not rescheduled if it has been disabled or terminated in the
+         * meantime, the scheduled run is cleared instead.
+         *
+         * @param runNanoTime specifies the time of the next run in nanoseconds.
+         */
+        public synchronized void scheduleNextRun(long runNanoTime)
+        {
+            running = false;
+            if (taskEnabled && !terminated)
+            {
+                scheduledRun = getSharedScheduler().schedule(
+                    TrcPeriodicThread.this::runScheduled, runNanoTime - TrcUtil.getCurrentTimeNanos(),
+                    TimeUnit.NANOSECONDS);
+            }
+            else
+            {
+                scheduledRun = null;
+            }
+        }   //scheduleNextRun
+
         /**
          * This method returns the last data object associated with the task. If there is no new data since the last
          * call, it will return null. This method, along with setData(), provides a thread-safe way to access the data
@@ -138,7 +277,7 @@ public class TrcPeriodicThread<T>
         {
             T newData = null;
 
-            if (periodicThread.isAlive())
+            if (isAlive())
             {
                 //
                 // Consume the data by transferring it out.
@@ -158,7 +297,7 @@ public class TrcPeriodicThread<T>
          */
         public synchronized void setData(T data)
         {
-            if (periodicThread.isAlive())
+            if (isAlive())
             {
                 this.data = data;
             }
@@ -166,12 +305,30 @@ public class TrcPeriodicThread<T>
 
     }   //class TaskState
 
+    private static final AtomicInteger numSharedTasks = new AtomicInteger();
+    private static volatile ExecutionMode defaultExecutionMode = ExecutionMode.DEDICATED_THREAD;
+    private static ScheduledThreadPoolExecutor sharedScheduler = null;
     private static volatile int numActiveThreads = 0;
     private final String instanceName;
     private final PeriodicTask task;
     private final Object context;
     private final TaskState taskState;
+    private final ExecutionMode executionMode;
+    private final TrcLatencyHistogram startJitters;
+    private final TrcLatencyHistogram periods;
+    private final AtomicLong overrunCount = new AtomicLong();
+    private final AtomicLong skippedPeriodCount = new AtomicLong();
     private volatile long processingInterval = 0;   // in msec
+    private volatile boolean fixedRate;
+    private volatile OverrunPolicy overrunPolicy = OverrunPolicy.SKIP;
+    //
+    // The following are only accessed by the thread running the task. On the shared scheduler, the runs of a task
+    // never overlap and each one is scheduled by the previous one.
+    //
+    private long nextRunNanoTime = 0;
+    private long prevStartNanoTime = 0;
+    private long totalRunNanoTime = 0;
+    private int runCount = 0;
 
     /**
      * Constructor: Create an instance of the object.
@@ -179,9 +336,11 @@ public class TrcPeriodicThread<T>
      * @param instanceName specifies the instance name.
      * @param task specifies the periodic task the thread is to execute.
      * @param context specifies the task context to be passed to the periodic thread.
-     * @param taskPriority specifies the periodic thread priority.
+     * @param taskPriority specifies the periodic thread priority, ignored on the shared scheduler.
+     * @param executionMode specifies whether the task runs on its own thread or on the shared scheduler.
      */
-    public TrcPeriodicThread(final String instanceName, PeriodicTask task, Object context, int taskPriority)
+    public TrcPeriodicThread(
+        final String instanceName, PeriodicTask task, Object context, int taskPriority, ExecutionMode executionMode)
     {
         if (debugEnabled)
         {
@@ -193,12 +352,37 @@ public class TrcPeriodicThread<T>
         this.instanceName = instanceName;
         this.task = task;
         this.context = context;
-        taskState = new TaskState(instanceName, this::run, taskPriority);
-        taskState.start();
+        this.executionMode = executionMode;
+        startJitters = new TrcLatencyHistogram(instanceName + ".startJitter");
+        periods = new TrcLatencyHistogram(instanceName + ".period");
+        fixedRate = executionMode == ExecutionMode.SHARED_SCHEDULER;
+        if (executionMode == ExecutionMode.SHARED_SCHEDULER)
+        {
+            numSharedTasks.incrementAndGet();
+            taskState = new TaskState(instanceName, null, taskPriority);
+        }
+        else
+        {
+            taskState = new TaskState(instanceName, this::run, taskPriority);
+            taskState.start();
+        }
     }   //TrcPeriodicThread
 
     /**
-     * Constructor: Create an instance of the object.
+     * Constructor: Create an instance of the object that runs in the default execution mode.
+     *
+     * @param instanceName specifies the instance name.
+     * @param task specifies the periodic task the thread is to execute.
+     * @param context specifies the task context to be passed to the periodic thread.
+     * @param taskPriority specifies the periodic thread priority, ignored on the shared scheduler.
+     */
+    public TrcPeriodicThread(final String instanceName, PeriodicTask task, Object context, int taskPriority)
+    {
+        this(instanceName, task, context, taskPriority, defaultExecutionMode);
+    }   //TrcPeriodicThread
+
+    /**
+     * Constructor: Create an instance of the object that runs in the default execution mode.
      *
      * @param instanceName specifies the instance name.
      * @param task specifies the periodic task the thread is to execute.
@@ -230,13 +414,85 @@ public class TrcPeriodicThread<T>
         return numActiveThreads;
     }   //getNumActiveThreads
 
+    /**
+     * This method returns the number of tasks that run on the shared scheduler and have not been terminated.
+     *
+     * @return number of shared scheduler tasks.
+     */
+    public static int getNumSharedTasks()
+    {
+        return numSharedTasks.get();
+    }   //getNumSharedTasks
+
+    /**
+     * This method sets the execution mode used by the constructors that don't specify one. It only affects
+     * periodic threads created afterwards.
+     *
+     * @param mode specifies the default execution mode.
+     */
+    public static void setDefaultExecutionMode(ExecutionMode mode)
+    {
+        defaultExecutionMode = mode;
+    }   //setDefaultExecutionMode
+
+    /**
+     * This method returns the execution mode used by the constructors that don't specify one.
+     *
+     * @return default execution mode.
+     */
+    public static ExecutionMode getDefaultExecutionMode()
+    {
+        return defaultExecutionMode;
+    }   //getDefaultExecutionMode
+
+    /**
+     * This method returns the execution mode of the periodic task.
+     *
+     * @return execution mode.
+     */
+    public ExecutionMode getExecutionMode()
+    {
+        return executionMode;
+    }   //getExecutionMode
+
+    /**
+     * This method returns the scheduler shared by all tasks in SHARED_SCHEDULER mode, creating it on first use.
+     * It has one carrier thread per processor so tasks that are due at the same time can run in parallel, but a task
+     * that blocks for long holds on to its carrier thread and delays the other tasks. Such a task should rather run
+     * on a dedicated thread.
+     *
+     * @return shared scheduler.
+     */
+    private static synchronized ScheduledThreadPoolExecutor getSharedScheduler()
+    {
+        if (sharedScheduler == null)
+        {
+            final AtomicInteger carrierCount = new AtomicInteger();
+
+            sharedScheduler = new ScheduledThreadPoolExecutor(
+                Runtime.getRuntime().availableProcessors(),
+                runnable ->
+                {
+                    Thread thread = new Thread(runnable, moduleName + ".carrier" + carrierCount.getAndIncrement());
+                    thread.setDaemon(true);
+                    return thread;
+                });
+            sharedScheduler.setRemoveOnCancelPolicy(true);
+        }
+
+        return sharedScheduler;
+    }   //getSharedScheduler
+
     /**
      * This method is called to terminate the periodic task. Once this is called, no other method in this class
      * should be called except for isTaskTerminated().
      */
     public void terminateTask()
     {
-        taskState.terminateTask();
+        if (taskState.terminateTask() && executionMode == ExecutionMode.SHARED_SCHEDULER)
+        {
+            numSharedTasks.decrementAndGet();
+        }
     }   //terminateTask
 
     /**
@@ -327,6 +583,105 @@ public class TrcPeriodicThread<T>
         return processingInterval;
     }   //getProcessingInterval
 
+    /**
+     * This method selects the timing of the periodic task. At a fixed rate, runs are due at fixed times from the
+     * time the task was started, so the processing interval does not drift with the processing time or with the
+     * scheduling latency of the thread. Otherwise, each run is due a processing interval after the previous one
+     * started, so any lateness accumulates. Tasks on the shared scheduler run at a fixed rate by default, tasks on
+     * a dedicated thread don't.
+     *
+     * @param fixedRate specifies true to run at a fixed rate, false otherwise.
+     * @param overrunPolicy specifies what to do when a run finishes after the next run was due, only applicable at
+     *        a fixed rate.
+     */
+    public void setFixedRate(boolean fixedRate, OverrunPolicy overrunPolicy)
+    {
+        final String funcName = "setFixedRate";
+
+        if (debugEnabled)
+        {
+            dbgTrace.traceEnter(funcName, TrcDbgTrace.TraceLevel.API, "fixedRate=%s,policy=%s", fixedRate,
+                overrunPolicy);
+            dbgTrace.traceExit(funcName, TrcDbgTrace.TraceLevel.API);
+        }
+
+        this.overrunPolicy = overrunPolicy;
+        this.fixedRate = fixedRate;
+    }   //setFixedRate
+
+    /**
+     * This method checks if the periodic task runs at a fixed rate.
+     *
+     * @return true if the task runs at a fixed rate, false otherwise.
+     */
+    public boolean isFixedRate()
+    {
+        return fixedRate;
+    }   //isFixedRate
+
+    /**
+     * This method returns what the periodic task does when a run finishes after the next run was due.
+     *
+     * @return overrun policy.
+     */
+    public OverrunPolicy getOverrunPolicy()
+    {
+        return overrunPolicy;
+    }   //getOverrunPolicy
+
+    /**
+     * This method returns a snapshot of the start jitter histogram. The start jitter of a run is how late it
+     * started compared to when it was due. It is only recorded for runs with a processing interval.
+     *
+     * @return start jitter histogram snapshot in nanoseconds.
+     */
+    public TrcLatencyHistogram.Snapshot getStartJitterSnapshot()
+    {
+        return startJitters.getSnapshot();
+    }   //getStartJitterSnapshot
+
+    /**
+     * This method returns a snapshot of the period histogram. The period of a run is the time since the previous
+     * run started. It is only recorded for consecutive runs with a processing interval.
+     *
+     * @return period histogram snapshot in nanoseconds.
+     */
+    public TrcLatencyHistogram.Snapshot getPeriodSnapshot()
+    {
+        return periods.getSnapshot();
+    }   //getPeriodSnapshot
+
+    /**
+     * This method returns the number of runs that finished after the next run was due.
+     *
+     * @return number of overruns.
+     */
+    public long getOverrunCount()
+    {
+        return overrunCount.get();
+    }   //getOverrunCount
+
+    /**
+     * This method returns the number of runs skipped because of overruns at a fixed rate.
+     *
+     * @return number of skipped runs.
+     */
+    public long getSkippedPeriodCount()
+    {
+        return skippedPeriodCount.get();
+    }   //getSkippedPeriodCount
+
+    /**
+     * This method clears the start jitter and period histograms and the overrun and skipped run counts.
+     */
+    public void resetTimingStats()
+    {
+        startJitters.reset();
+        periods.reset();
+        overrunCount.set(0);
+        skippedPeriodCount.set(0);
+    }   //resetTimingStats
+
     /**
      * This method is called to set new data after new data have been acquired/processed.
      *
@@ -377,13 +732,17 @@ public class TrcPeriodicThread<T>
                     numActiveThreads, instanceName, thread.getId(), thread.getPriority(), thread.getThreadGroup());
         }
 
+        nextRunNanoTime = TrcUtil.getCurrentTimeNanos();
         while (!Thread.interrupted())
         {
             long startNanoTime = TrcUtil.getCurrentTimeNanos();
             long elapsedNanoTime;
+            boolean enabled = taskState.isTaskEnabled();
 
-            if (taskState.isTaskEnabled())
+            if (enabled)
             {
+                recordRunStart(startNanoTime);
+                TrcCachedSignal.startPass();
                 task.runPeriodic(context);
                 elapsedNanoTime = TrcUtil.getCurrentTimeNanos() - startNanoTime;
                 totalThreadNanoTime += elapsedNanoTime;
@@ -396,18 +755,18 @@ public class TrcPeriodicThread<T>
                 }
             }
 
+            long currNanoTime = TrcUtil.getCurrentTimeNanos();
+            long sleepNanoTime = advanceSchedule(startNanoTime, currNanoTime, enabled) - currNanoTime;
             if (processingInterval > 0)
             {
-                long sleepTime = processingInterval - (TrcUtil.getCurrentTimeNanos() - startNanoTime)/1000000;
                 //
-                // If the processing time does not use up the processingInterval time, make the thread sleep the
-                // remaining time left.
+                // If the next run is not due yet, make the thread sleep until it is.
                 //
-                if (sleepTime > 0)
+                if (sleepNanoTime > 0)
                 {
                     try
                     {
-                        Thread.sleep(sleepTime);
+                        TimeUnit.NANOSECONDS.sleep(sleepNanoTime);
                     }
                     catch (InterruptedException e)
                     {
@@ -435,4 +794,132 @@ public class TrcPeriodicThread<T>
         numActiveThreads--;
     }   //run
 
+    /**
+     * This method runs the periodic processing task once on the shared scheduler and schedules the next run when it
+     * is due.
+     */
+    private void runScheduled()
+    {
+        final String funcName = "runScheduled";
+        long startNanoTime = TrcUtil.getCurrentTimeNanos();
+        boolean enabled = taskState.startRun();
+        boolean completed = false;
+
+        try
+        {
+            if (enabled)
+            {
+                recordRunStart(startNanoTime);
+                TrcCachedSignal.startPass();
+                task.runPeriodic(context);
+                long elapsedNanoTime = TrcUtil.getCurrentTimeNanos() - startNanoTime;
+                totalRunNanoTime += elapsedNanoTime;
+                runCount++;
+
+                if (debugEnabled)
+                {
+                    dbgTrace.traceVerbose(funcName, "%s: start=%.6f, elapsed=%.6f (AvgRunTime=%.6f)",
+                            instanceName, startNanoTime/1000000000.0, elapsedNanoTime/1000000000.0,
+                            totalRunNanoTime/1000000000.0/runCount);
+                }
+            }
+            completed = true;
+        }
+        catch (RuntimeException | Error e)
+        {
+            //
+            // The scheduler would swallow the exception, so trace it and hand it to the uncaught exception handler
+            // the same as an exception escaping a dedicated thread.
+            //
+            TrcDbgTrace.getGlobalTracer().traceErr(funcName, "%s: task threw %s", instanceName, e);
+            Thread thread = Thread.currentThread();
+            thread.getUncaughtExceptionHandler().uncaughtException(thread, e);
+        }
+        finally
+        {
+            if (completed)
+            {
+                taskState.scheduleNextRun(advanceSchedule(startNanoTime, TrcUtil.getCurrentTimeNanos(), enabled));
+            }
+            else
+            {
+                //
+                // The task threw an exception, it terminates just like a dedicated thread would.
+                //
+                terminateTask();
+                taskState.scheduleNextRun(0);
+            }
+        }
+    }   //runScheduled
+
+    /**
+     * This method records the start jitter and the period of a run that is starting.
+     *
+     * @param startNanoTime specifies the start time of the run in nanoseconds.
+     */
+    private void recordRunStart(long startNanoTime)
+    {
+        if (processingInterval > 0)
+        {
+            startJitters.recordValue(Math.max(startNanoTime - nextRunNanoTime, 0));
+            if (prevStartNanoTime != 0)
+            {
+                periods.recordValue(startNanoTime - prevStartNanoTime);
+            }
+        }
+        prevStartNanoTime = startNanoTime;
+    }   //recordRunStart
+
+    /**
+     * This method is called after each run, or each time a disabled task would have run, to determine when the
+     * next run is due. It detects overruns and applies the overrun policy.
+     *
+     * @param startNanoTime specifies the start time of the run in nanoseconds.
+     * @param currNanoTime specifies the current time in nanoseconds.
+     * @param ran specifies true if the task did run, false if it is disabled.
+     * @return time the next run is due in nanoseconds.
+     */
+    private long advanceSchedule(long startNanoTime, long currNanoTime, boolean ran)
+    {
+        long intervalNanoTime = processingInterval*1000000;
+
+        if (!ran)
+        {
+            prevStartNanoTime = 0;
+        }
+
+        if (intervalNanoTime <= 0)
+        {
+            nextRunNanoTime = currNanoTime;
+        }
+        else
+        {
+            nextRunNanoTime = fixedRate? nextRunNanoTime + intervalNanoTime: startNanoTime + intervalNanoTime;
+            if (nextRunNanoTime < currNanoTime)
+            {
+                if (ran)
+                {
+                    overrunCount.incrementAndGet();
+                }
+
+                if (!ran || !fixedRate || overrunPolicy == OverrunPolicy.RESTART)
+                {
+                    nextRunNanoTime = currNanoTime;
+                }
+                else
+                {
+                    long missedPeriods = (currNanoTime - nextRunNanoTime)/intervalNanoTime + 1;
+                    long skippedPeriods =
+                        overrunPolicy == OverrunPolicy.SKIP? missedPeriods:
+                        Math.max(missedPeriods - MAX_CATCH_UP_PERIODS, 0);
+
+                    nextRunNanoTime += skippedPeriods*intervalNanoTime;
+                    skippedPeriodCount.addAndGet(skippedPeriods);
+                }
+            }
+        }
+
+        return nextRunNanoTime;
+    }   //advanceSchedule
+
 }   //class TrcPeriodicThread
@@ -24,13 +24,13 @@ package trclib;
 
 import hallib.HalDashboard;
 
-import java.util.EmptyStackException;
 import java.util.Locale;
-import java.util.Stack;
 
 /**
  * This class implements a PID controller. A PID controller takes a target set point and an input from a feedback
- * device to calculate the output power of an effector usually a motor or a set of motors.
+ * device to calculate the output power of an effector usually a motor or a set of motors. The PID equation itself is
+ * calculated by a TrcPidCore which keeps the numerical state in primitive fields; this class adds thread safety, the
+ * input provider, relative and absolute set points and on target detection.
  */
 public class TrcPidController
 {
@@ -158,37 +158,20 @@ public class TrcPidController
 
     private HalDashboard dashboard;
     private String instanceName;
-    private PidCoefficients pidCoefficients;
+    private final TrcPidCore pidCore;
     private double tolerance;
     private double settlingTime;
     private PidInput pidInput;
 
-    private boolean inverted = false;
     private boolean absSetPoint = false;
     private boolean noOscillation = false;
     private double minTarget = 0.0;
     private double maxTarget = 0.0;
-    private double minOutput = -1.0;
-    private double maxOutput = 1.0;
-    private double outputLimit = 1.0;
-    private Double rampRate = null;
-    private Stack<Double> outputLimitStack = new Stack<>();
-
-    private double prevTime = 0.0;
-    private double currError = 0.0;
-    private double totalError = 0.0;
+
     private double settlingStartTime = 0.0;
-    private double setPoint = 0.0;
     private double setPointSign = 1.0;
-    private double currInput = 0.0;
-    private double output = 0.0;
-    private double prevOutputTime = 0.0; // time that getOutput() was called last. Used for ramp rates.
 
     private TrcDbgTrace debugTracer = null;
-    private double pTerm;
-    private double iTerm;
-    private double dTerm;
-    private double fTerm;
 
     /**
      * Constructor: Create an instance of the object.
@@ -211,7 +194,7 @@ public class TrcPidController
 
         dashboard = HalDashboard.getInstance();
         this.instanceName = instanceName;
-        this.pidCoefficients = pidCoefficients;
+        this.pidCore = new TrcPidCore(pidCoefficients);
         this.tolerance = Math.abs(tolerance);
         this.settlingTime = Math.abs(settlingTime);
         this.pidInput = pidInput;
@@ -254,9 +237,11 @@ public class TrcPidController
     public synchronized void displayPidInfo(int lineNum)
     {
         dashboard.displayPrintf(
-                lineNum, "%s:Target=%.1f,Input=%.1f,Error=%.1f", instanceName, setPoint, currInput, currError);
+                lineNum, "%s:Target=%.1f,Input=%.1f,Error=%.1f", instanceName, pidCore.getSetPoint(),
+                pidCore.getInput(), pidCore.getError());
         dashboard.displayPrintf(
-                lineNum + 1, "minOutput=%.1f,Output=%.1f,maxOutput=%.1f", minOutput, output, maxOutput);
+                lineNum + 1, "minOutput=%.1f,Output=%.1f,maxOutput=%.1f", pidCore.getMinOutput(),
+                pidCore.getOutput(), pidCore.getMaxOutput());
     }   //displayPidInfo
 
     /**
@@ -282,13 +267,14 @@ public class TrcPidController
 
             msg.append(String.format(
                     Locale.US, "[%.3f] %s: Target=%6.1f, Input=%6.1f, Error=%6.1f, Output=%6.3f(%6.3f/%5.3f)",
-                    TrcUtil.getModeElapsedTime(), instanceName, setPoint, currInput, currError, output, minOutput,
-                    maxOutput));
+                    TrcUtil.getModeElapsedTime(), instanceName, pidCore.getSetPoint(), pidCore.getInput(),
+                    pidCore.getError(), pidCore.getOutput(), pidCore.getMinOutput(), pidCore.getMaxOutput()));
 
             if (verbose)
             {
                 msg.append(String.format(
-                        Locale.US, ", PIDTerms=%6.3f/%6.3f/%6.3f/%6.3f", pTerm, iTerm, dTerm, fTerm));
+                        Locale.US, ", PIDTerms=%6.3f/%6.3f/%6.3f/%6.3f", pidCore.getPTerm(), pidCore.getITerm(),
+                        pidCore.getDTerm(), pidCore.getFTerm()));
             }
 
             if (battery != null)
@@ -362,7 +348,7 @@ public class TrcPidController
             dbgTrace.traceExit(funcName, TrcDbgTrace.TraceLevel.API);
         }
 
-        this.inverted = inverted;
+        pidCore.setInverted(inverted);
     }   //setInverted
 
     /**
@@ -438,11 +424,12 @@ public class TrcPidController
         if (debugEnabled)
         {
             dbgTrace.traceEnter(funcName, TrcDbgTrace.TraceLevel.API);
+            PidCoefficients pidCoefficients = pidCore.getPidCoefficients();
             dbgTrace.traceExit(funcName, TrcDbgTrace.TraceLevel.API, "=(%f,%f,%f,%f)", pidCoefficients.kP,
                 pidCoefficients.kI, pidCoefficients.kD, pidCoefficients.kF);
         }
 
-        return pidCoefficients;
+        return pidCore.getPidCoefficients();
     }   //getPidCoefficients
 
     /**
@@ -461,7 +448,7 @@ public class TrcPidController
             dbgTrace.traceExit(funcName, TrcDbgTrace.TraceLevel.API);
         }
 
-        this.pidCoefficients = pidCoefficients;
+        pidCore.setPidCoefficients(pidCoefficients);
     }   //setPidCoefficients
 
     /**
@@ -469,11 +456,11 @@ public class TrcPidController
      * of the output of the PID controller. For example, the strafing PID controller on a mecanum drive base may
      * benefit from a lower acceleration to minimize wheel slipperage.
      *
-     * @param rampRate specifies the ramp rate in percent power per second.
+     * @param rampRate specifies the ramp rate in percent power per second, null to disable ramping.
      */
     public synchronized void setRampRate(Double rampRate)
     {
-        this.rampRate = rampRate;
+        pidCore.setRampRate(rampRate != null ? rampRate : Double.NaN);
     }   //setRampRate
 
     /**
@@ -524,18 +511,7 @@ public class TrcPidController
             dbgTrace.traceExit(funcName, TrcDbgTrace.TraceLevel.API);
         }
 
-        if (maxOutput <= minOutput)
-        {
-            throw new IllegalArgumentException("maxOutput must be greater than minOutput");
-        }
-
-        if (Math.abs(minOutput) == Math.abs(maxOutput))
-        {
-            outputLimit = maxOutput;
-        }
-
-        this.minOutput = minOutput;
-        this.maxOutput = maxOutput;
+        pidCore.setOutputRange(minOutput, maxOutput);
     }   //setOutputRange
 
     /**
@@ -564,10 +540,10 @@ public class TrcPidController
         if (debugEnabled)
         {
             dbgTrace.traceEnter(funcName, TrcDbgTrace.TraceLevel.API);
-            dbgTrace.traceExit(funcName, TrcDbgTrace.TraceLevel.API, "=%f", outputLimit);
+            dbgTrace.traceExit(funcName, TrcDbgTrace.TraceLevel.API, "=%f", pidCore.getOutputLimit());
         }
 
-        return outputLimit;
+        return pidCore.getOutputLimit();
     }   //getOutputLimit
 
     /**
@@ -584,15 +560,13 @@ public class TrcPidController
     public synchronized double saveAndSetOutputLimit(double limit)
     {
         final String funcName = "saveAndSetOutputLimit";
-        double prevLimit = outputLimit;
 
         if (debugEnabled)
         {
             dbgTrace.traceEnter(funcName, TrcDbgTrace.TraceLevel.API, "limit=%f", limit);
         }
 
-        outputLimitStack.push(outputLimit);
-        setOutputLimit(limit);
+        double prevLimit = pidCore.saveAndSetOutputLimit(limit);
 
         if (debugEnabled)
         {
@@ -618,19 +592,11 @@ public class TrcPidController
             dbgTrace.traceEnter(funcName, TrcDbgTrace.TraceLevel.API);
         }
 
-        try
-        {
-            limit = outputLimitStack.pop();
-            setOutputRange(-limit, limit);
-        }
-        catch (EmptyStackException e)
-        {
-            //
-            // There was no previous saveAndSetOutputLimit call, don't do anything and just return the current
-            // output limit.
-            //
-            limit = outputLimit;
-        }
+        //
+        // If there was no previous saveAndSetOutputLimit call, the core doesn't do anything and just returns the
+        // current output limit.
+        //
+        limit = pidCore.restoreOutputLimit();
 
         if (debugEnabled)
         {
@@ -652,10 +618,10 @@ public class TrcPidController
         if (debugEnabled)
         {
             dbgTrace.traceEnter(funcName, TrcDbgTrace.TraceLevel.API);
-            dbgTrace.traceExit(funcName, TrcDbgTrace.TraceLevel.API, "=%f", setPoint);
+            dbgTrace.traceExit(funcName, TrcDbgTrace.TraceLevel.API, "=%f", pidCore.getSetPoint());
         }
 
-        return setPoint;
+        return pidCore.getSetPoint();
     }   //getTarget
 
     /**
@@ -680,6 +646,9 @@ public class TrcPidController
 
         synchronized (this)
         {
+            double setPoint;
+            double currError;
+
             if (!absSetPoint)
             {
                 //
@@ -701,7 +670,7 @@ public class TrcPidController
                 currError = setPoint - input;
             }
 
-            if (inverted)
+            if (pidCore.isInverted())
             {
                 currError = -currError;
             }
@@ -722,16 +691,8 @@ public class TrcPidController
                 }
             }
 
-            totalError = 0.0;
-            prevTime = settlingStartTime = TrcUtil.getCurrentTime();
-            //
-            // Only init the prevOutputTime if this setTarget is called after a reset()
-            // If it's called mid-operation, we don't want to reset the prevOutputTime clock
-            //
-            if (prevOutputTime == 0.0)
-            {
-                prevOutputTime = prevTime;
-            }
+            settlingStartTime = TrcUtil.getCurrentTime();
+            pidCore.setTarget(setPoint, currError, settlingStartTime);
         }
 
         if (debugEnabled)
@@ -762,10 +723,10 @@ public class TrcPidController
         if (debugEnabled)
         {
             dbgTrace.traceEnter(funcName, TrcDbgTrace.TraceLevel.API);
-            dbgTrace.traceExit(funcName, TrcDbgTrace.TraceLevel.API, "=%f", currError);
+            dbgTrace.traceExit(funcName, TrcDbgTrace.TraceLevel.API, "=%f", pidCore.getError());
         }
 
-        return currError;
+        return pidCore.getError();
     }   //getError
 
     /**
@@ -781,13 +742,8 @@ public class TrcPidController
             dbgTrace.traceExit(funcName, TrcDbgTrace.TraceLevel.API);
         }
 
-        currError = 0.0;
-        prevTime = 0.0;
-        prevOutputTime = 0.0;
-        totalError = 0.0;
-        setPoint = 0.0;
+        pidCore.reset();
         setPointSign = 1.0;
-        output = 0.0;
     }   //reset
 
     /**
@@ -807,6 +763,7 @@ public class TrcPidController
         }
 
         boolean onTarget = false;
+        double currError = pidCore.getError();
 
         if (noOscillation)
         {
@@ -863,80 +820,65 @@ public class TrcPidController
         //
         final double currentInputValue = pidInput.get();
 
-        synchronized (this)
-        {
-            final String funcName = "getOutput";
-            double prevError = currError;
-            double currTime = TrcUtil.getCurrentTime();
-            double deltaTime = currTime - prevTime;
-
-            if (debugEnabled)
-            {
-                dbgTrace.traceEnter(funcName, TrcDbgTrace.TraceLevel.API);
-            }
-
-            prevTime = currTime;
-            currInput = currentInputValue;
-            currError = setPoint - currInput;
-            if (inverted)
-            {
-                currError = -currError;
-            }
+        return calculateOutput(currentInputValue, TrcUtil.getCurrentTime());
+    }   //getOutput
 
-            if (pidCoefficients.kI != 0.0)
-            {
-                //
-                // Make sure the total error doesn't get wound up too much exceeding maxOutput.
-                //
-                double potentialGain = (totalError + currError * deltaTime) * pidCoefficients.kI;
-                if (potentialGain >= maxOutput)
-                {
-                    totalError = maxOutput / pidCoefficients.kI;
-                }
-                else if (potentialGain > minOutput)
-                {
-                    totalError += currError * deltaTime;
-                }
-                else
-                {
-                    totalError = minOutput / pidCoefficients.kI;
-                }
-            }
+    /**
+     * This method calculates the PID outputs of an array of controllers in one pass. The inputs of all controllers
+     * are read first without holding any lock, then all outputs are calculated with a common time stamp so that
+     * controllers working together (e.g. the x, y and turn controllers of a drive base) see a consistent time base.
+     *
+     * @param controllers specifies the controllers to calculate.
+     * @param outputs specifies the array to receive the output of each controller, at least as long as controllers.
+     */
+    public static void getOutputs(TrcPidController[] controllers, double[] outputs)
+    {
+        //
+        // The outputs array holds the inputs until they are replaced by the outputs so this does not allocate.
+        //
+        for (int i = 0; i < controllers.length; i++)
+        {
+            outputs[i] = controllers[i].pidInput.get();
+        }
 
-            pTerm = pidCoefficients.kP * currError;
-            iTerm = pidCoefficients.kI * totalError;
-            dTerm = deltaTime > 0.0 ? pidCoefficients.kD * (currError - prevError) / deltaTime : 0.0;
-            fTerm = pidCoefficients.kF * setPoint;
-            double lastOutput = output;
-            output = pTerm + iTerm + dTerm + fTerm;
+        double currTime = TrcUtil.getCurrentTime();
+        for (int i = 0; i < controllers.length; i++)
+        {
+            outputs[i] = controllers[i].calculateOutput(outputs[i], currTime);
+        }
+    }   //getOutputs
 
-            output = TrcUtil.clipRange(output, minOutput, maxOutput);
+    /**
+     * This method calculates the PID output with the given input value and time stamp. Subclasses that extend the
+     * output calculation (e.g. Cascade PID Controller) override this method so that both getOutput and getOutputs
+     * use it.
+     *
+     * @param input specifies the current input value.
+     * @param currTime specifies the current time in seconds.
+     * @return PID output value.
+     */
+    protected synchronized double calculateOutput(double input, double currTime)
+    {
+        final String funcName = "calculateOutput";
 
-            if (rampRate != null)
-            {
-                if (prevOutputTime != 0.0)
-                {
-                    double dt = currTime - prevOutputTime;
-                    double maxChange = rampRate * dt;
-                    double change = output - lastOutput;
-                    change = TrcUtil.clipRange(change, -maxChange, maxChange);
-                    output = lastOutput + change;
-                }
-                prevOutputTime = currTime;
-            }
+        if (debugEnabled)
+        {
+            dbgTrace.traceEnter(funcName, TrcDbgTrace.TraceLevel.API, "input=%f,time=%.3f", input, currTime);
+        }
 
-            if (debugTracer != null)
-            {
-                printPidInfo(debugTracer);
-            }
+        double output = pidCore.calculate(input, currTime);
 
-            if (debugEnabled)
-            {
-                dbgTrace.traceExit(funcName, TrcDbgTrace.TraceLevel.API, "=%f", output);
-            }
+        if (debugTracer != null)
+        {
+            printPidInfo(debugTracer);
+        }
 
-            return output;
+        if (debugEnabled)
+        {
+            dbgTrace.traceExit(funcName, TrcDbgTrace.TraceLevel.API, "=%f", output);
         }
-    }   //getOutput
+
+        return output;
+    }   //calculateOutput
 
 }   //class TrcPidController
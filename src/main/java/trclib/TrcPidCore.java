@@ -0,0 +1,412 @@
+/*
+ * Copyright (c) 2020 Titan Robotics Club (http://www.titanrobotics.com)
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+
+package trclib;
+
+import java.util.Arrays;
+
+/**
+ * This class implements the numerical core of a PID controller. It keeps all of its state in primitive fields, takes
+ * the input value and the time stamp as parameters instead of calling an input provider, and does no locking. It is
+ * meant to be owned by a single thread: all methods must be called by the same thread or the caller must provide
+ * synchronization. TrcPidController wraps a core with thread safety, input providers and on target detection.
+ * Periodic code that owns several controllers can evaluate them all in one pass with the batch calculate method.
+ */
+public class TrcPidCore
+{
+    private static final int INITIAL_STACK_SIZE = 4;
+
+    private TrcPidController.PidCoefficients pidCoefficients;
+    private boolean inverted = false;
+    private double minOutput = -1.0;
+    private double maxOutput = 1.0;
+    private double outputLimit = 1.0;
+    private double[] outputLimitStack = new double[INITIAL_STACK_SIZE];
+    private int outputLimitStackSize = 0;
+    // Ramp rate in percent power per second, NaN if there is no ramp rate.
+    private double rampRate = Double.NaN;
+
+    private double setPoint = 0.0;
+    private double currInput = 0.0;
+    private double currError = 0.0;
+    private double totalError = 0.0;
+    private double prevTime = 0.0;
+    private double prevOutputTime = 0.0;    // time the output was calculated last. Used for ramp rates.
+    private double output = 0.0;
+    private double pTerm;
+    private double iTerm;
+    private double dTerm;
+    private double fTerm;
+
+    /**
+     * Constructor: Create an instance of the object.
+     *
+     * @param pidCoefficients specifies the PID constants. The coefficients are read on every calculation so changes
+     *                        to the object take effect immediately.
+     */
+    public TrcPidCore(TrcPidController.PidCoefficients pidCoefficients)
+    {
+        this.pidCoefficients = pidCoefficients;
+    }   //TrcPidCore
+
+    /**
+     * This method returns the current PID coefficients.
+     *
+     * @return current PID coefficients.
+     */
+    public TrcPidController.PidCoefficients getPidCoefficients()
+    {
+        return pidCoefficients;
+    }   //getPidCoefficients
+
+    /**
+     * This method sets new PID coefficients.
+     *
+     * @param pidCoefficients specifies new PID coefficients.
+     */
+    public void setPidCoefficients(TrcPidController.PidCoefficients pidCoefficients)
+    {
+        this.pidCoefficients = pidCoefficients;
+    }   //setPidCoefficients
+
+    /**
+     * This method inverts the sign of the calculated error.
+     *
+     * @param inverted specifies true to invert the sign of the calculated error, false otherwise.
+     */
+    public void setInverted(boolean inverted)
+    {
+        this.inverted = inverted;
+    }   //setInverted
+
+    /**
+     * This method checks if the sign of the calculated error is inverted.
+     *
+     * @return true if the error sign is inverted, false otherwise.
+     */
+    public boolean isInverted()
+    {
+        return inverted;
+    }   //isInverted
+
+    /**
+     * This method sets the ramp rate of the output.
+     *
+     * @param rampRate specifies the ramp rate in percent power per second, NaN to disable ramping.
+     */
+    public void setRampRate(double rampRate)
+    {
+        this.rampRate = rampRate;
+    }   //setRampRate
+
+    /**
+     * This method sets a range limit on the calculated output.
+     *
+     * @param minOutput specifies the output lower range limit.
+     * @param maxOutput specifies the output higher range limit.
+     */
+    public void setOutputRange(double minOutput, double maxOutput)
+    {
+        if (maxOutput <= minOutput)
+        {
+            throw new IllegalArgumentException("maxOutput must be greater than minOutput");
+        }
+
+        if (Math.abs(minOutput) == Math.abs(maxOutput))
+        {
+            outputLimit = maxOutput;
+        }
+
+        this.minOutput = minOutput;
+        this.maxOutput = maxOutput;
+    }   //setOutputRange
+
+    /**
+     * This method returns the output lower range limit.
+     *
+     * @return output lower range limit.
+     */
+    public double getMinOutput()
+    {
+        return minOutput;
+    }   //getMinOutput
+
+    /**
+     * This method returns the output higher range limit.
+     *
+     * @return output higher range limit.
+     */
+    public double getMaxOutput()
+    {
+        return maxOutput;
+    }   //getMaxOutput
+
+    /**
+     * This method returns the last set symmetric output limit.
+     *
+     * @return last set output limit.
+     */
+    public double getOutputLimit()
+    {
+        return outputLimit;
+    }   //getOutputLimit
+
+    /**
+     * This method saves the current output limit and sets the output range to the given limit. The saved limits are
+     * kept in a primitive stack so saving and restoring does not box the values.
+     *
+     * @param limit specifies the new output limit.
+     * @return previous output limit.
+     */
+    public double saveAndSetOutputLimit(double limit)
+    {
+        double prevLimit = outputLimit;
+
+        if (outputLimitStackSize == outputLimitStack.length)
+        {
+            outputLimitStack = Arrays.copyOf(outputLimitStack, outputLimitStack.length*2);
+        }
+        outputLimitStack[outputLimitStackSize++] = outputLimit;
+        limit = Math.abs(limit);
+        setOutputRange(-limit, limit);
+
+        return prevLimit;
+    }   //saveAndSetOutputLimit
+
+    /**
+     * This method restores the last saved output limit. If there is no saved limit, the output limit is not changed.
+     *
+     * @return restored output limit, or the current output limit if there is no saved limit.
+     */
+    public double restoreOutputLimit()
+    {
+        double limit = outputLimit;
+
+        if (outputLimitStackSize > 0)
+        {
+            limit = outputLimitStack[--outputLimitStackSize];
+            setOutputRange(-limit, limit);
+        }
+
+        return limit;
+    }   //restoreOutputLimit
+
+    /**
+     * This method sets a new absolute set point. It clears the accumulated error and starts a new time base for the
+     * derivative term.
+     *
+     * @param setPoint specifies the absolute set point.
+     * @param error specifies the initial error.
+     * @param currTime specifies the current time in seconds.
+     */
+    public void setTarget(double setPoint, double error, double currTime)
+    {
+        this.setPoint = setPoint;
+        currError = error;
+        totalError = 0.0;
+        prevTime = currTime;
+        //
+        // Only init the prevOutputTime if this setTarget is called after a reset()
+        // If it's called mid-operation, we don't want to reset the prevOutputTime clock
+        //
+        if (prevOutputTime == 0.0)
+        {
+            prevOutputTime = currTime;
+        }
+    }   //setTarget
+
+    /**
+     * This method returns the current set point.
+     *
+     * @return current set point.
+     */
+    public double getSetPoint()
+    {
+        return setPoint;
+    }   //getSetPoint
+
+    /**
+     * This method returns the input of the last calculation.
+     *
+     * @return last input value.
+     */
+    public double getInput()
+    {
+        return currInput;
+    }   //getInput
+
+    /**
+     * This method returns the error of the last calculation.
+     *
+     * @return last error.
+     */
+    public double getError()
+    {
+        return currError;
+    }   //getError
+
+    /**
+     * This method returns the output of the last calculation.
+     *
+     * @return last output value.
+     */
+    public double getOutput()
+    {
+        return output;
+    }   //getOutput
+
+    /**
+     * This method returns the proportional term of the last calculation.
+     *
+     * @return last proportional term.
+     */
+    public double getPTerm()
+    {
+        return pTerm;
+    }   //getPTerm
+
+    /**
+     * This method returns the integral term of the last calculation.
+     *
+     * @return last integral term.
+     */
+    public double getITerm()
+    {
+        return iTerm;
+    }   //getITerm
+
+    /**
+     * This method returns the derivative term of the last calculation.
+     *
+     * @return last derivative term.
+     */
+    public double getDTerm()
+    {
+        return dTerm;
+    }   //getDTerm
+
+    /**
+     * This method returns the feed forward term of the last calculation.
+     *
+     * @return last feed forward term.
+     */
+    public double getFTerm()
+    {
+        return fTerm;
+    }   //getFTerm
+
+    /**
+     * This method resets the core clearing the set point, error, total error and output.
+     */
+    public void reset()
+    {
+        currError = 0.0;
+        prevTime = 0.0;
+        prevOutputTime = 0.0;
+        totalError = 0.0;
+        setPoint = 0.0;
+        output = 0.0;
+    }   //reset
+
+    /**
+     * This method calculates the output applying the PID equation to the set point and the given input value.
+     *
+     * @param input specifies the current input value.
+     * @param currTime specifies the current time in seconds.
+     * @return output value.
+     */
+    public double calculate(double input, double currTime)
+    {
+        TrcPidController.PidCoefficients coeffs = pidCoefficients;
+        double prevError = currError;
+        double deltaTime = currTime - prevTime;
+
+        prevTime = currTime;
+        currInput = input;
+        currError = setPoint - currInput;
+        if (inverted)
+        {
+            currError = -currError;
+        }
+
+        if (coeffs.kI != 0.0)
+        {
+            //
+            // Make sure the total error doesn't get wound up too much exceeding maxOutput.
+            //
+            double potentialGain = (totalError + currError * deltaTime) * coeffs.kI;
+            if (potentialGain >= maxOutput)
+            {
+                totalError = maxOutput / coeffs.kI;
+            }
+            else if (potentialGain > minOutput)
+            {
+                totalError += currError * deltaTime;
+            }
+            else
+            {
+                totalError = minOutput / coeffs.kI;
+            }
+        }
+
+        pTerm = coeffs.kP * currError;
+        iTerm = coeffs.kI * totalError;
+        dTerm = deltaTime > 0.0 ? coeffs.kD * (currError - prevError) / deltaTime : 0.0;
+        fTerm = coeffs.kF * setPoint;
+        double lastOutput = output;
+        output = pTerm + iTerm + dTerm + fTerm;
+
+        output = TrcUtil.clipRange(output, minOutput, maxOutput);
+
+        if (!Double.isNaN(rampRate))
+        {
+            if (prevOutputTime != 0.0)
+            {
+                double dt = currTime - prevOutputTime;
+                double maxChange = rampRate * dt;
+                double change = output - lastOutput;
+                change = TrcUtil.clipRange(change, -maxChange, maxChange);
+                output = lastOutput + change;
+            }
+            prevOutputTime = currTime;
+        }
+
+        return output;
+    }   //calculate
+
+    /**
+     * This method calculates the outputs of an array of cores in one pass with a common time stamp.
+     *
+     * @param cores specifies the cores to calculate.
+     * @param inputs specifies the input value of each core.
+     * @param currTime specifies the current time in seconds.
+     * @param outputs specifies the array to receive the output of each core.
+     */
+    public static void calculate(TrcPidCore[] cores, double[] inputs, double currTime, double[] outputs)
+    {
+        for (int i = 0; i < cores.length; i++)
+        {
+            outputs[i] = cores[i].calculate(inputs[i], currTime);
+        }
+    }   //calculate
+
+}   //class TrcPidCore
@@ -44,6 +44,12 @@ public class TrcPidMotorToMotorAdapter extends TrcMotor
         throw new UnsupportedOperationException("PidMotor does not support getVelocity.");
     }
 
+    @Override
+    public boolean isMotorVelocitySupported()
+    {
+        return false;
+    }
+
     @Override
     public void setMotorPower(double power)
     {
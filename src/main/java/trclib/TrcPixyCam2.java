@@ -22,6 +22,8 @@
 
 package trclib;
 
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
 import java.util.ArrayList;
 import java.util.Arrays;
 import java.util.Locale;
@@ -98,6 +100,16 @@ public abstract class TrcPixyCam2
 
     public static final byte PIXY2_SAT_FLAG_SATURATE            = (byte)0x01;
 
+    public static final int PIXY2_HEADER_LENGTH                 = 6;
+    public static final int PIXY2_MAX_PACKET_LENGTH             = PIXY2_HEADER_LENGTH + 255;
+    private static final int PIXY2_REQUEST_HEADER_LENGTH        = 4;
+    private static final int PIXY2_MAX_REQUEST_LENGTH           = PIXY2_REQUEST_HEADER_LENGTH + 255;
+    private static final int PIXY2_BLOCK_LENGTH                 = 14;
+    private static final int PIXY2_VECTOR_LENGTH                = 6;
+    private static final int PIXY2_INTERSECTION_MAX_LINES       = 6;
+    private static final int PIXY2_INTERSECTION_LENGTH          = 4 + PIXY2_INTERSECTION_MAX_LINES*4;
+    private static final int PIXY2_BARCODE_LENGTH               = 4;
+
     /**
      * This method writes the request data to the device synchronously.
      *
@@ -110,6 +122,19 @@ public abstract class TrcPixyCam2
      */
     public abstract byte[] syncReadResponse();
 
+    /**
+     * This method writes a request packet to the device synchronously. The default implementation passes a copy of
+     * the packet to syncWriteRequest. Platform dependent classes that can write part of a buffer should override it
+     * so that requests don't allocate memory.
+     *
+     * @param request specifies the buffer holding the request packet, it is reused by the next request.
+     * @param length specifies the length of the request packet.
+     */
+    protected void writeRequest(byte[] request, int length)
+    {
+        syncWriteRequest(Arrays.copyOf(request, length));
+    }   //writeRequest
+
     /**
      * This class implements the detected object block.
      */
@@ -131,8 +156,9 @@ public abstract class TrcPixyCam2
             centerY = TrcUtil.bytesToInt(data[startIndex + 4], data[startIndex + 5]);
             width = TrcUtil.bytesToInt(data[startIndex + 6], data[startIndex + 7]);
             height = TrcUtil.bytesToInt(data[startIndex + 8], data[startIndex + 9]);
-            trackingIndex = data[startIndex + 10];
-            age = data[startIndex + 11];
+            angle = TrcUtil.bytesToShort(data[startIndex + 10], data[startIndex + 11]);
+            trackingIndex = data[startIndex + 12];
+            age = data[startIndex + 13];
         }   //Block
 
         /**
@@ -213,6 +239,7 @@ public abstract class TrcPixyCam2
             y = data[startIndex + 1];
             n = data[startIndex + 2];
             reserved = data[startIndex + 3];
+            intersectionLines = new IntersectionLine[n];
             for (int i = 0; i < n; i++)
             {
                 intersectionLines[i] = new IntersectionLine(data, startIndex + 4 + i*4);
@@ -274,14 +301,14 @@ public abstract class TrcPixyCam2
         {
             super(data[startIndex]);
             final String funcName = "FeatureVectors";
-            vectors = new Vector[data[startIndex + 1]/6];
+            vectors = new Vector[(data[startIndex + 1] & 0xff)/PIXY2_VECTOR_LENGTH];
 
             if (debugEnabled)
             {
                 dbgTrace.traceInfo(funcName, "data=%s, startIndex=%d", Arrays.toString(data), startIndex);
             }
 
-            for (int i = 0, index = startIndex + 2; i < vectors.length; i++, index += 6)
+            for (int i = 0, index = startIndex + 2; i < vectors.length; i++, index += PIXY2_VECTOR_LENGTH)
             {
                 vectors[i] = new Vector(data, index);
                 if (debugEnabled)
@@ -313,17 +340,14 @@ public abstract class TrcPixyCam2
         public FeatureIntersections(byte[] data, int startIndex)
         {
             super(data[startIndex]);
-            ArrayList<Intersection> list = new ArrayList<>();
-            int endIndex = startIndex + 2 + data[startIndex + 1];
-
-            for (int index = startIndex + 2; index < endIndex;)
+            intersections = new Intersection[(data[startIndex + 1] & 0xff)/PIXY2_INTERSECTION_LENGTH];
+            //
+            // Each intersection has room for the maximum number of lines, n of them are valid.
+            //
+            for (int i = 0, index = startIndex + 2; i < intersections.length; i++, index += PIXY2_INTERSECTION_LENGTH)
             {
-                Intersection intersection = new Intersection(data, index);
-                list.add(intersection);
-                index += 4 + intersection.n*4;
+                intersections[i] = new Intersection(data, index);
             }
-
-            intersections = list.toArray(intersections);
         }   //FeatureIntersections
 
         @Override
@@ -348,8 +372,8 @@ public abstract class TrcPixyCam2
         public FeatureBarcodes(byte[] data, int startIndex)
         {
             super(data[startIndex]);
-            barcodes = new Barcode[data[startIndex + 1]/4];
-            for (int i = 0, index = startIndex + 2; i < barcodes.length; i++, index += 4)
+            barcodes = new Barcode[(data[startIndex + 1] & 0xff)/PIXY2_BARCODE_LENGTH];
+            for (int i = 0, index = startIndex + 2; i < barcodes.length; i++, index += PIXY2_BARCODE_LENGTH)
             {
                 barcodes[i] = new Barcode(data, index);
             }
@@ -370,7 +394,616 @@ public abstract class TrcPixyCam2
 
     }   //class FeatureBarcodes
 
+    /**
+     * This class assembles response packets from the bytes received from the device. Bytes can be fed in chunks of
+     * any size as they arrive, so a packet can be parsed directly off a byte stream such as a serial port. Bytes
+     * that don't start with the response sync word are dropped to resynchronize with the stream. The packet is
+     * assembled in a reusable buffer and its checksum is validated when complete.
+     */
+    public static class PacketReceiver
+    {
+        private final ByteBuffer packet = ByteBuffer.allocate(PIXY2_MAX_PACKET_LENGTH).order(ByteOrder.LITTLE_ENDIAN);
+        private final byte[] bytes = packet.array();
+        private int received = 0;
+        private boolean complete = false;
+        private long droppedByteCount = 0;
+        private long checksumErrorCount = 0;
+
+        /**
+         * This method discards any partially received packet and starts looking for a new one.
+         */
+        public void reset()
+        {
+            received = 0;
+            complete = false;
+        }   //reset
+
+        /**
+         * This method feeds received bytes to the receiver. It consumes bytes until the end of the data or the end
+         * of a valid packet, whichever comes first. Feeding more bytes after a complete packet starts a new one.
+         *
+         * @param data specifies the received bytes.
+         * @param offset specifies the offset of the first byte to feed.
+         * @param length specifies the number of bytes to feed.
+         * @return number of bytes consumed.
+         */
+        public int feed(byte[] data, int offset, int length)
+        {
+            int consumed = 0;
+
+            if (complete)
+            {
+                reset();
+            }
+
+            while (consumed < length && !complete)
+            {
+                if (received < PIXY2_HEADER_LENGTH)
+                {
+                    byte b = data[offset + consumed++];
+
+                    bytes[received++] = b;
+                    if (received == 1 && b != (byte)(PIXY2_RECV_SYNC & 0xff))
+                    {
+                        received = 0;
+                        droppedByteCount++;
+                    }
+                    else if (received == 2 && b != (byte)((PIXY2_RECV_SYNC >> 8) & 0xff))
+                    {
+                        //
+                        // The first byte was not the start of a packet, but this one may be.
+                        //
+                        droppedByteCount++;
+                        received = 0;
+                        if (b == (byte)(PIXY2_RECV_SYNC & 0xff))
+                        {
+                            bytes[received++] = b;
+                        }
+                        else
+                        {
+                            droppedByteCount++;
+                        }
+                    }
+                }
+                else
+                {
+                    int n = Math.min(PIXY2_HEADER_LENGTH + getPayloadLength() - received, length - consumed);
+
+                    System.arraycopy(data, offset + consumed, bytes, received, n);
+                    received += n;
+                    consumed += n;
+                }
+
+                if (received >= PIXY2_HEADER_LENGTH && received == PIXY2_HEADER_LENGTH + getPayloadLength())
+                {
+                    int checksum = 0;
+
+                    for (int i = PIXY2_HEADER_LENGTH; i < received; i++)
+                    {
+                        checksum += bytes[i] & 0xff;
+                    }
+
+                    if (checksum == (packet.getShort(4) & 0xffff))
+                    {
+                        complete = true;
+                    }
+                    else
+                    {
+                        checksumErrorCount++;
+                        received = 0;
+                    }
+                }
+            }
+
+            return consumed;
+        }   //feed
+
+        /**
+         * This method checks if a complete and valid packet has been received.
+         *
+         * @return true if a packet is complete, false otherwise.
+         */
+        public boolean isComplete()
+        {
+            return complete;
+        }   //isComplete
+
+        /**
+         * This method returns the type of the received packet.
+         *
+         * @return packet type.
+         */
+        public byte getPacketType()
+        {
+            return bytes[2];
+        }   //getPacketType
+
+        /**
+         * This method returns the payload length of the received packet, it is only valid once the header has been
+         * received.
+         *
+         * @return payload length in bytes.
+         */
+        public int getPayloadLength()
+        {
+            return bytes[3] & 0xff;
+        }   //getPayloadLength
+
+        /**
+         * This method returns the buffer holding the received packet, starting with the header. The buffer is reused
+         * for the next packet.
+         *
+         * @return packet buffer in little endian byte order.
+         */
+        public ByteBuffer getPacket()
+        {
+            return packet;
+        }   //getPacket
+
+        /**
+         * This method returns the number of bytes dropped while looking for the start of a packet.
+         *
+         * @return number of dropped bytes.
+         */
+        public long getDroppedByteCount()
+        {
+            return droppedByteCount;
+        }   //getDroppedByteCount
+
+        /**
+         * This method returns the number of packets dropped because of a checksum error.
+         *
+         * @return number of checksum errors.
+         */
+        public long getChecksumErrorCount()
+        {
+            return checksumErrorCount;
+        }   //getChecksumErrorCount
+
+    }   //class PacketReceiver
+
+    /**
+     * This class is a cursor over the blocks of a GET_BLOCKS response. It reads the fields of the current block
+     * directly from the response packet, so iterating the blocks does not allocate anything. The cursor is reused by
+     * the camera and is only valid until the next request.
+     */
+    public static class BlockCursor
+    {
+        private ByteBuffer packet = null;
+        private int numBlocks = 0;
+        private int index = -1;
+        private int offset = 0;
+
+        /**
+         * This method points the cursor to the blocks of a response packet and rewinds it.
+         *
+         * @param packet specifies the response packet.
+         * @param numBlocks specifies the number of blocks in the packet.
+         */
+        private void set(ByteBuffer packet, int numBlocks)
+        {
+            this.packet = packet;
+            this.numBlocks = numBlocks;
+            rewind();
+        }   //set
+
+        /**
+         * This method returns the number of blocks.
+         *
+         * @return number of blocks.
+         */
+        public int getNumBlocks()
+        {
+            return numBlocks;
+        }   //getNumBlocks
+
+        /**
+         * This method moves the cursor before the first block.
+         */
+        public void rewind()
+        {
+            index = -1;
+        }   //rewind
+
+        /**
+         * This method moves the cursor to the next block.
+         *
+         * @return true if the cursor is on the next block, false if there are no more blocks.
+         */
+        public boolean next()
+        {
+            return moveTo(index + 1);
+        }   //next
+
+        /**
+         * This method moves the cursor to the block at the given index.
+         *
+         * @param index specifies the block index.
+         * @return true if the cursor is on the block, false if the index is out of range.
+         */
+        public boolean moveTo(int index)
+        {
+            boolean valid = index >= 0 && index < numBlocks;
+
+            if (valid)
+            {
+                this.index = index;
+                offset = PIXY2_HEADER_LENGTH + index*PIXY2_BLOCK_LENGTH;
+            }
+
+            return valid;
+        }   //moveTo
+
+        /**
+         * This method returns the signature of the current block, or the color code number of a color code block.
+         *
+         * @return signature number.
+         */
+        public int getSignature()
+        {
+            return packet.getShort(offset) & 0xffff;
+        }   //getSignature
+
+        /**
+         * This method returns the x coordinate of the center of the current block.
+         *
+         * @return center x in pixels.
+         */
+        public int getCenterX()
+        {
+            return packet.getShort(offset + 2) & 0xffff;
+        }   //getCenterX
+
+        /**
+         * This method returns the y coordinate of the center of the current block.
+         *
+         * @return center y in pixels.
+         */
+        public int getCenterY()
+        {
+            return packet.getShort(offset + 4) & 0xffff;
+        }   //getCenterY
+
+        /**
+         * This method returns the width of the current block.
+         *
+         * @return block width in pixels.
+         */
+        public int getWidth()
+        {
+            return packet.getShort(offset + 6) & 0xffff;
+        }   //getWidth
+
+        /**
+         * This method returns the height of the current block.
+         *
+         * @return block height in pixels.
+         */
+        public int getHeight()
+        {
+            return packet.getShort(offset + 8) & 0xffff;
+        }   //getHeight
+
+        /**
+         * This method returns the angle of a color code block.
+         *
+         * @return angle in degrees between -180 and 180, 0 for a normal signature block.
+         */
+        public int getAngle()
+        {
+            return packet.getShort(offset + 10);
+        }   //getAngle
+
+        /**
+         * This method returns the tracking index of the current block, which identifies the object from frame to frame.
+         *
+         * @return tracking index (0-255).
+         */
+        public int getTrackingIndex()
+        {
+            return packet.get(offset + 12) & 0xff;
+        }   //getTrackingIndex
+
+        /**
+         * This method returns the number of frames the current block has been tracked for.
+         *
+         * @return age in frames, stops at 255.
+         */
+        public int getAge()
+        {
+            return packet.get(offset + 13) & 0xff;
+        }   //getAge
+
+    }   //class BlockCursor
+
+    /**
+     * This class is a cursor over the features of a GET_MAIN_FEATURES response. Each feature holds the vectors,
+     * intersections or barcodes of one type which are indexed within the feature and read directly from the response
+     * packet, so iterating the features does not allocate anything. The cursor is reused by the camera and is only
+     * valid until the next request.
+     */
+    public static class FeatureCursor
+    {
+        private ByteBuffer packet = null;
+        private int endOffset = 0;
+        private int offset = -1;
+        private int nextOffset = 0;
+
+        /**
+         * This method points the cursor to the features of a response packet and rewinds it.
+         *
+         * @param packet specifies the response packet.
+         * @param endOffset specifies the end of the packet.
+         */
+        private void set(ByteBuffer packet, int endOffset)
+        {
+            this.packet = packet;
+            this.endOffset = endOffset;
+            rewind();
+        }   //set
+
+        /**
+         * This method moves the cursor before the first feature.
+         */
+        public void rewind()
+        {
+            offset = -1;
+            nextOffset = PIXY2_HEADER_LENGTH;
+        }   //rewind
+
+        /**
+         * This method moves the cursor to the next feature.
+         *
+         * @return true if the cursor is on the next feature, false if there are no more features.
+         */
+        public boolean next()
+        {
+            offset = -1;
+            if (nextOffset + 2 <= endOffset && nextOffset + 2 + (packet.get(nextOffset + 1) & 0xff) <= endOffset)
+            {
+                offset = nextOffset;
+                nextOffset += 2 + getDataLength();
+            }
+
+            return offset != -1;
+        }   //next
+
+        /**
+         * This method returns the type of the current feature.
+         *
+         * @return feature type (PIXY2_FEATURES_VECTOR, PIXY2_FEATURES_INTERSECTION or PIXY2_FEATURES_BARCODE).
+         */
+        public byte getType()
+        {
+            return packet.get(offset);
+        }   //getType
+
+        /**
+         * This method returns the number of records of the current feature that are of the given type.
+         *
+         * @param type specifies the feature type.
+         * @param recordLength specifies the length of a record of that type.
+         * @return number of records, 0 if the feature is of another type.
+         */
+        private int getNumRecords(byte type, int recordLength)
+        {
+            return getType() == type? getDataLength()/recordLength: 0;
+        }   //getNumRecords
+
+        private int getDataLength()
+        {
+            return packet.get(offset + 1) & 0xff;
+        }   //getDataLength
+
+        private int getByte(int recordOffset, int field)
+        {
+            return packet.get(offset + 2 + recordOffset + field) & 0xff;
+        }   //getByte
+
+        /**
+         * This method returns the number of vectors of the current feature.
+         *
+         * @return number of vectors, 0 if the feature is not a vector feature.
+         */
+        public int getNumVectors()
+        {
+            return getNumRecords(PIXY2_FEATURES_VECTOR, PIXY2_VECTOR_LENGTH);
+        }   //getNumVectors
+
+        /**
+         * This method returns the x coordinate of the tail of a vector of the current feature.
+         *
+         * @param index specifies the vector index.
+         * @return tail x.
+         */
+        public int getVectorX0(int index)
+        {
+            return getByte(index*PIXY2_VECTOR_LENGTH, 0);
+        }   //getVectorX0
+
+        /**
+         * This method returns the y coordinate of the tail of a vector of the current feature.
+         *
+         * @param index specifies the vector index.
+         * @return tail y.
+         */
+        public int getVectorY0(int index)
+        {
+            return getByte(index*PIXY2_VECTOR_LENGTH, 1);
+        }   //getVectorY0
+
+        /**
+         * This method returns the x coordinate of the head of a vector of the current feature.
+         *
+         * @param index specifies the vector index.
+         * @return head x.
+         */
+        public int getVectorX1(int index)
+        {
+            return getByte(index*PIXY2_VECTOR_LENGTH, 2);
+        }   //getVectorX1
+
+        /**
+         * This method returns the y coordinate of the head of a vector of the current feature.
+         *
+         * @param index specifies the vector index.
+         * @return head y.
+         */
+        public int getVectorY1(int index)
+        {
+            return getByte(index*PIXY2_VECTOR_LENGTH, 3);
+        }   //getVectorY1
+
+        /**
+         * This method returns the tracking index of a vector of the current feature.
+         *
+         * @param index specifies the vector index.
+         * @return vector tracking index.
+         */
+        public int getVectorIndex(int index)
+        {
+            return getByte(index*PIXY2_VECTOR_LENGTH, 4);
+        }   //getVectorIndex
+
+        /**
+         * This method returns the flags of a vector of the current feature.
+         *
+         * @param index specifies the vector index.
+         * @return vector flags (e.g. PIXY2_LINE_FLAG_INVALID).
+         */
+        public int getVectorFlags(int index)
+        {
+            return getByte(index*PIXY2_VECTOR_LENGTH, 5);
+        }   //getVectorFlags
+
+        /**
+         * This method returns the number of intersections of the current feature.
+         *
+         * @return number of intersections, 0 if the feature is not an intersection feature.
+         */
+        public int getNumIntersections()
+        {
+            return getNumRecords(PIXY2_FEATURES_INTERSECTION, PIXY2_INTERSECTION_LENGTH);
+        }   //getNumIntersections
+
+        /**
+         * This method returns the x coordinate of an intersection of the current feature.
+         *
+         * @param index specifies the intersection index.
+         * @return intersection x.
+         */
+        public int getIntersectionX(int index)
+        {
+            return getByte(index*PIXY2_INTERSECTION_LENGTH, 0);
+        }   //getIntersectionX
+
+        /**
+         * This method returns the y coordinate of an intersection of the current feature.
+         *
+         * @param index specifies the intersection index.
+         * @return intersection y.
+         */
+        public int getIntersectionY(int index)
+        {
+            return getByte(index*PIXY2_INTERSECTION_LENGTH, 1);
+        }   //getIntersectionY
+
+        /**
+         * This method returns the number of lines of an intersection of the current feature.
+         *
+         * @param index specifies the intersection index.
+         * @return number of lines, at most 6.
+         */
+        public int getNumIntersectionLines(int index)
+        {
+            return Math.min(getByte(index*PIXY2_INTERSECTION_LENGTH, 2), PIXY2_INTERSECTION_MAX_LINES);
+        }   //getNumIntersectionLines
+
+        /**
+         * This method returns the tracking index of a line of an intersection of the current feature.
+         *
+         * @param index specifies the intersection index.
+         * @param line specifies the line index within the intersection.
+         * @return line tracking index.
+         */
+        public int getIntersectionLineIndex(int index, int line)
+        {
+            return getByte(index*PIXY2_INTERSECTION_LENGTH, 4 + line*4);
+        }   //getIntersectionLineIndex
+
+        /**
+         * This method returns the angle of a line of an intersection.
+         *
+         * @param index specifies the intersection index.
+         * @param line specifies the line index within the intersection.
+         * @return line angle in degrees.
+         */
+        public int getIntersectionLineAngle(int index, int line)
+        {
+            return packet.getShort(offset + 2 + index*PIXY2_INTERSECTION_LENGTH + 6 + line*4);
+        }   //getIntersectionLineAngle
+
+        /**
+         * This method returns the number of barcodes of the current feature.
+         *
+         * @return number of barcodes, 0 if the feature is not a barcode feature.
+         */
+        public int getNumBarcodes()
+        {
+            return getNumRecords(PIXY2_FEATURES_BARCODE, PIXY2_BARCODE_LENGTH);
+        }   //getNumBarcodes
+
+        /**
+         * This method returns the x coordinate of a barcode of the current feature.
+         *
+         * @param index specifies the barcode index.
+         * @return barcode x.
+         */
+        public int getBarcodeX(int index)
+        {
+            return getByte(index*PIXY2_BARCODE_LENGTH, 0);
+        }   //getBarcodeX
+
+        /**
+         * This method returns the y coordinate of a barcode of the current feature.
+         *
+         * @param index specifies the barcode index.
+         * @return barcode y.
+         */
+        public int getBarcodeY(int index)
+        {
+            return getByte(index*PIXY2_BARCODE_LENGTH, 1);
+        }   //getBarcodeY
+
+        /**
+         * This method returns the flags of a barcode of the current feature.
+         *
+         * @param index specifies the barcode index.
+         * @return barcode flags.
+         */
+        public int getBarcodeFlags(int index)
+        {
+            return getByte(index*PIXY2_BARCODE_LENGTH, 2);
+        }   //getBarcodeFlags
+
+        /**
+         * This method returns the code of a barcode of the current feature.
+         *
+         * @param index specifies the barcode index.
+         * @return barcode code (0-15).
+         */
+        public int getBarcodeCode(int index)
+        {
+            return getByte(index*PIXY2_BARCODE_LENGTH, 3);
+        }   //getBarcodeCode
+
+    }   //class FeatureCursor
+
     private final String instanceName;
+    private final PacketReceiver receiver = new PacketReceiver();
+    private final byte[] request = new byte[PIXY2_MAX_REQUEST_LENGTH];
+    private final BlockCursor blockCursor = new BlockCursor();
+    private final FeatureCursor featureCursor = new FeatureCursor();
     private int hardwareVersion = 0;
     private int firmwareVersion = 0;
     private byte firmwareType = 0;
@@ -406,68 +1039,89 @@ public abstract class TrcPixyCam2
     }   //toString
 
     /**
-     * This method checks if the checksum of the response packet is correct.
+     * This method reads a response packet into the packet receiver. The default implementation feeds the packet
+     * returned by syncReadResponse. Platform dependent classes that can read the device into a reused buffer, or
+     * that receive the response as a byte stream, should override it and feed the receiver as bytes arrive.
      *
-     * @param data specifies the response packet.
-     * @return true if the checksum is correct, false otherwise.
+     * @param receiver specifies the packet receiver to feed, it has been reset.
+     * @return true if a complete and valid packet has been received, false otherwise.
      */
-    private boolean validateChecksum(byte[] data)
+    protected boolean readResponse(PacketReceiver receiver)
     {
-        boolean validChecksum = true;
+        byte[] response = syncReadResponse();
 
-        if (data != null)
+        if (response != null)
         {
-            int checksum = 0;
-
-            for (int i = 6; i < data.length; i++)
-            {
-                checksum += ((int) data[i]) & 0xff ;
-            }
-            validChecksum = TrcUtil.bytesToInt(data[4], data[5]) == checksum;
+            receiver.feed(response, 0, response.length);
         }
 
-        return validChecksum;
-    }   //validateChecksum
+        return receiver.isComplete();
+    }   //readResponse
+
+    /**
+     * This method returns the packet receiver, for example to check its error counts.
+     *
+     * @return packet receiver.
+     */
+    public PacketReceiver getPacketReceiver()
+    {
+        return receiver;
+    }   //getPacketReceiver
 
     /**
-     * This method builds the request packet, writes it to the device, reads the response packet,
-     * check the checksum and returns the response packet if it's valid.
+     * This method builds the request packet around the request data already written to the request buffer after
+     * the request header, writes it to the device, reads the response packet into the packet receiver and checks
+     * that it's valid and of the expected type. It must be called with the lock held, from the time the request data
+     * is written.
      *
      * @param requestType specifies the request type.
-     * @param data specifies the request data if any, null if none.
+     * @param dataLen specifies the length of the request data in the request buffer.
      * @param expectedResponseType specifies the expected response type.
-     * @return response packet if it's valid, null if invalid.
+     * @return response packet if it's valid, null if invalid. The packet is reused by the next request.
      */
-    private byte[] sendRequest(byte requestType, byte[] data, byte expectedResponseType)
+    private ByteBuffer sendRequest(byte requestType, int dataLen, byte expectedResponseType)
     {
         final String funcName = "SendRequest";
-        int dataLen = data == null ? 0 : data.length;
-        byte[] request = new byte[4 + dataLen];
+        int requestLen = PIXY2_REQUEST_HEADER_LENGTH + dataLen;
 
         request[0] = (byte)(PIXY2_SEND_SYNC & 0xff);
         request[1] = (byte)((PIXY2_SEND_SYNC >> 8) & 0xff);
         request[2] = requestType;
         request[3] = (byte)dataLen;
-
-        System.arraycopy(data, 0, request, 4, dataLen);
-        syncWriteRequest(request);
-        byte[] response = syncReadResponse();
+        writeRequest(request, requestLen);
+        receiver.reset();
+        boolean valid = readResponse(receiver) && receiver.getPacketType() == expectedResponseType;
 
         if (debugEnabled)
         {
-            dbgTrace.traceInfo(funcName, "Request%s => Response%s",
-                Arrays.toString(request), Arrays.toString(response));
+            dbgTrace.traceInfo(funcName, "Request%s => Response%s (valid=%s)",
+                Arrays.toString(Arrays.copyOf(request, requestLen)),
+                Arrays.toString(Arrays.copyOf(receiver.getPacket().array(), PIXY2_HEADER_LENGTH +
+                                              receiver.getPayloadLength())), valid);
         }
 
-        if ((short) TrcUtil.bytesToInt(response[0], response[1]) == PIXY2_RECV_SYNC &&
-            response[2] == expectedResponseType && validateChecksum(response))
-        {
-            return response;
-        }
-        else
+        return valid? receiver.getPacket(): null;
+    }   //sendRequest
+
+    /**
+     * This method copies the request data into the request buffer, then writes the request packet to the device,
+     * reads the response packet into the packet receiver and checks that it's valid and of the expected type.
+     *
+     * @param requestType specifies the request type.
+     * @param data specifies the request data if any, null if none.
+     * @param expectedResponseType specifies the expected response type.
+     * @return response packet if it's valid, null if invalid. The packet is reused by the next request.
+     */
+    private synchronized ByteBuffer sendRequest(byte requestType, byte[] data, byte expectedResponseType)
+    {
+        int dataLen = data == null ? 0 : data.length;
+
+        if (data != null)
         {
-            return null;
+            System.arraycopy(data, 0, request, PIXY2_REQUEST_HEADER_LENGTH, dataLen);
         }
+
+        return sendRequest(requestType, dataLen, expectedResponseType);
     }   //sendRequest
 
     /**
@@ -478,31 +1132,27 @@ public abstract class TrcPixyCam2
      * @param data specifies the request data if any, null if none.
      * @return result code from the response packet.
      */
-    private int sendDataRequest(byte requestType, byte[] data)
+    private synchronized int sendDataRequest(byte requestType, byte[] data)
     {
-        int result = -1;
-        byte[] response = sendRequest(requestType, data, PIXY2_RES_RESULT);
-
-        if (response != null)
-        {
-            result = TrcUtil.bytesToInt(response[6], response[7], response[8], response[9]);
-        }
+        ByteBuffer response = sendRequest(requestType, data, PIXY2_RES_RESULT);
 
-        return result;
+        return response != null? response.getInt(PIXY2_HEADER_LENGTH): -1;
     }   //sendDataRequest
 
     /**
      * This method sends a GET_VERSION request to the device if it hasn't already. It updates the device
      * version info.
      */
-    private void getVersion()
+    private synchronized void getVersion()
     {
         if (hardwareVersion == 0)
         {
-            byte[] response = sendRequest(PIXY2_REQ_GET_VERSION, null, PIXY2_RES_VERSION);
+            ByteBuffer packet = sendRequest(PIXY2_REQ_GET_VERSION, null, PIXY2_RES_VERSION);
 
-            if (response != null)
+            if (packet != null)
             {
+                byte[] response = packet.array();
+
                 hardwareVersion = TrcUtil.bytesToInt(response[6], response[7]);
                 firmwareVersion = TrcUtil.bytesToInt(response[10], response[11], response[9], response[8]);
                 firmwareType = response[12];
@@ -547,15 +1197,17 @@ public abstract class TrcPixyCam2
      * This method sends a GET_RESOLUTION request if it hasn't already. It updates the device
      * resolution info.
      */
-    private void getResolution()
+    private synchronized void getResolution()
     {
         if (resolutionWidth == 0)
         {
             byte[] data = {0};
-            byte[] response = sendRequest(PIXY2_REQ_GET_RESOLUTION, data, PIXY2_RES_RESOLUTION);
+            ByteBuffer packet = sendRequest(PIXY2_REQ_GET_RESOLUTION, data, PIXY2_RES_RESOLUTION);
 
-            if (response != null)
+            if (packet != null)
             {
+                byte[] response = packet.array();
+
                 resolutionWidth = TrcUtil.bytesToInt(response[6], response[7]);
                 resolutionHeight = TrcUtil.bytesToInt(response[8], response[9]);
             }
@@ -659,6 +1311,31 @@ public abstract class TrcPixyCam2
         return sendDataRequest(PIXY2_REQ_GET_FPS, null);
     }   //getFPS
 
+    /**
+     * This method sends a request to get the detected object blocks and returns a cursor over the blocks in the
+     * response. Unlike getBlocks, it does not allocate anything. The cursor is reused, it must be consumed before
+     * the next request to the camera.
+     *
+     * @param sigMap specifies the bitmap of the signatures (i.e. bit 1 set for signature 1, bit 2 set for signature 2 etc).
+     * @param maxBlocks specifies the maximum number of blocks to retrieve.
+     * @return cursor over the detected blocks, null if the request failed.
+     */
+    public synchronized BlockCursor readBlocks(byte sigMap, byte maxBlocks)
+    {
+        BlockCursor cursor = null;
+        request[PIXY2_REQUEST_HEADER_LENGTH] = sigMap;
+        request[PIXY2_REQUEST_HEADER_LENGTH + 1] = maxBlocks;
+        ByteBuffer response = sendRequest(PIXY2_REQ_GET_BLOCKS, 2, PIXY2_RES_BLOCKS);
+
+        if (response != null)
+        {
+            blockCursor.set(response, receiver.getPayloadLength()/PIXY2_BLOCK_LENGTH);
+            cursor = blockCursor;
+        }
+
+        return cursor;
+    }   //readBlocks
+
     /**
      * This method sends a request to get the detected object blocks.
      *
@@ -666,26 +1343,50 @@ public abstract class TrcPixyCam2
      * @param maxBlocks specifies the maximum number of blocks to retrieve.
      * @return an array of detected blocks.
      */
-    public Block[] getBlocks(byte sigMap, byte maxBlocks)
+    public synchronized Block[] getBlocks(byte sigMap, byte maxBlocks)
     {
         Block[] blocks = null;
-        byte[] data = {sigMap, maxBlocks};
-        byte[] response = sendRequest(PIXY2_REQ_GET_BLOCKS, data, PIXY2_RES_BLOCKS);
+        BlockCursor cursor = readBlocks(sigMap, maxBlocks);
 
-        if (response != null)
+        if (cursor != null)
         {
-            int numBlocks = (response.length - 6)/14;
+            byte[] response = receiver.getPacket().array();
 
-            blocks = new Block[numBlocks];
-            for (int i = 0; i < numBlocks; i++)
+            blocks = new Block[cursor.getNumBlocks()];
+            for (int i = 0; i < blocks.length; i++)
             {
-                blocks[i] = new Block(response, 6 + i*14);
+                blocks[i] = new Block(response, PIXY2_HEADER_LENGTH + i*PIXY2_BLOCK_LENGTH);
             }
         }
 
         return blocks;
     }   //getBlocks
 
+    /**
+     * This method sends a request to get the detected features and returns a cursor over the features in the
+     * response. Unlike getFeatures, it does not allocate anything. The cursor is reused, it must be consumed before
+     * the next request to the camera.
+     *
+     * @param requestType specifies 0 for the main features and 1 for all features.
+     * @param featuresMap specifies the features bitmap (i.e. 1 for vectors, 2 for intersections and 4 for barcodes).
+     * @return cursor over the detected features, null if the request failed.
+     */
+    public synchronized FeatureCursor readFeatures(byte requestType, byte featuresMap)
+    {
+        FeatureCursor cursor = null;
+        request[PIXY2_REQUEST_HEADER_LENGTH] = requestType;
+        request[PIXY2_REQUEST_HEADER_LENGTH + 1] = featuresMap;
+        ByteBuffer response = sendRequest(PIXY2_REQ_GET_MAIN_FEATURES, 2, PIXY2_RES_MAIN_FEATURES);
+
+        if (response != null)
+        {
+            featureCursor.set(response, PIXY2_HEADER_LENGTH + receiver.getPayloadLength());
+            cursor = featureCursor;
+        }
+
+        return cursor;
+    }   //readFeatures
+
     /**
      * This method sends a request to get the detected features.
      *
@@ -693,43 +1394,39 @@ public abstract class TrcPixyCam2
      * @param featuresMap specifies the features bitmap (i.e. 1 for vectors, 2 for intersections and 4 for barcodes).
      * @return an array of detected features.
      */
-    public Feature[] getFeatures(byte requestType, byte featuresMap)
+    public synchronized Feature[] getFeatures(byte requestType, byte featuresMap)
     {
         Feature[] features = null;
-        byte[] data = {requestType, featuresMap};
-        byte[] response = sendRequest(PIXY2_REQ_GET_MAIN_FEATURES, data, PIXY2_RES_MAIN_FEATURES);
+        FeatureCursor cursor = readFeatures(requestType, featuresMap);
 
-        if (response != null)
+        if (cursor != null)
         {
+            byte[] response = receiver.getPacket().array();
             ArrayList<Feature> list = new ArrayList<>();
 
-            for (int i = 6; i < response.length;)
+            while (cursor.next())
             {
-                if (i + 1 < response.length && i + 2 + response[i + 1] <= response.length)
-                {
-                    Feature feature = null;
+                Feature feature = null;
 
-                    switch (response[i])
-                    {
-                        case PIXY2_FEATURES_VECTOR:
-                            feature = new FeatureVectors(response, i);
-                            break;
+                switch (cursor.getType())
+                {
+                    case PIXY2_FEATURES_VECTOR:
+                        feature = new FeatureVectors(response, cursor.offset);
+                        break;
 
-                        case PIXY2_FEATURES_INTERSECTION:
-                            feature = new FeatureIntersections(response, i);
-                            break;
+                    case PIXY2_FEATURES_INTERSECTION:
+                        feature = new FeatureIntersections(response, cursor.offset);
+                        break;
 
-                        case PIXY2_FEATURES_BARCODE:
-                            feature = new FeatureBarcodes(response, i);
-                            break;
-                    }
+                    case PIXY2_FEATURES_BARCODE:
+                        feature = new FeatureBarcodes(response, cursor.offset);
+                        break;
+                }
 
-                    if (feature != null)
-                    {
-                        list.add(feature);
-                    }
+                if (feature != null)
+                {
+                    list.add(feature);
                 }
-                i += 2 + response[i + 1];
             }
 
             if (list.size() > 0)
@@ -22,17 +22,81 @@
 
 package trclib;
 
-import org.apache.commons.math3.linear.MatrixUtils;
 import org.apache.commons.math3.linear.RealVector;
 
+import java.util.Arrays;
 import java.util.Locale;
 import java.util.Objects;
 
 /**
- * This class implements a 2D pose object that represents the positional state of an object.
+ * This class implements a 2D pose object that represents the positional state of an object. The transform methods
+ * have variants that write the result into a caller provided pose so that periodic code such as odometry does not
+ * allocate a new pose on every loop.
  */
 public class TrcPose2D
 {
+    /**
+     * This class implements a small pool of scratch poses owned by one thread. Scratch poses hold temporary results
+     * in periodic code: they are acquired in stack order and released together by going back to a mark, so the same
+     * poses are reused every loop. The content of an acquired pose is undefined until it is set. A pool must only be
+     * used by the thread that got it from getScratchPool and a scratch pose must not be used after it is released.
+     */
+    public static class ScratchPool
+    {
+        private static final int INITIAL_SIZE = 8;
+        private TrcPose2D[] poses = new TrcPose2D[INITIAL_SIZE];
+        private int top = 0;
+
+        /**
+         * This method returns a mark of the poses currently acquired, to be passed to release.
+         *
+         * @return pool mark.
+         */
+        public int mark()
+        {
+            return top;
+        }   //mark
+
+        /**
+         * This method acquires a scratch pose from the pool. The pool grows if all poses are acquired, but a balanced
+         * caller only allocates on its first loops.
+         *
+         * @return scratch pose.
+         */
+        public TrcPose2D acquire()
+        {
+            if (top == poses.length)
+            {
+                poses = Arrays.copyOf(poses, poses.length*2);
+            }
+
+            if (poses[top] == null)
+            {
+                poses[top] = new TrcPose2D();
+            }
+
+            return poses[top++];
+        }   //acquire
+
+        /**
+         * This method releases all poses acquired after the given mark.
+         *
+         * @param mark specifies the mark returned by the mark method.
+         */
+        public void release(int mark)
+        {
+            if (mark < 0 || mark > top)
+            {
+                throw new IllegalStateException("Invalid scratch pool mark " + mark + " (top=" + top + ")");
+            }
+
+            top = mark;
+        }   //release
+
+    }   //class ScratchPool
+
+    private static final ThreadLocal<ScratchPool> scratchPools = ThreadLocal.withInitial(ScratchPool::new);
+
     private static final String moduleName = "TrcPose2D";
     private static final boolean debugEnabled = false;
     private static final boolean tracingEnabled = false;
@@ -129,10 +193,41 @@ public class TrcPose2D
         return TrcUtil.createVector(x, y);
     }
 
+    /**
+     * This method returns the scratch pose pool of the calling thread.
+     *
+     * @return scratch pool of the calling thread.
+     */
+    public static ScratchPool getScratchPool()
+    {
+        return scratchPools.get();
+    }   //getScratchPool
+
+    /**
+     * This method calculates the distance between the position of this pose and the given position.
+     *
+     * @param x specifies the x coordinate of the position.
+     * @param y specifies the y coordinate of the position.
+     * @return distance to the position.
+     */
+    public double distanceTo(double x, double y)
+    {
+        double deltaX = x - this.x;
+        double deltaY = y - this.y;
+
+        return Math.sqrt(deltaX*deltaX + deltaY*deltaY);
+    }   //distanceTo
+
+    /**
+     * This method calculates the distance between the positions of this pose and the given pose.
+     *
+     * @param pose specifies the other pose.
+     * @return distance to the other pose.
+     */
     public double distanceTo(TrcPose2D pose)
     {
-        return toPosVector().getDistance(pose.toPosVector());
-    }
+        return distanceTo(pose.x, pose.y);
+    }   //distanceTo
 
     /**
      * This method sets this pose to be the same as the given pose.
@@ -146,6 +241,23 @@ public class TrcPose2D
         this.angle = pose.angle;
     }   //setAs
 
+    /**
+     * This method sets the components of this pose.
+     *
+     * @param x     specifies the x component of the position.
+     * @param y     specifies the y component of the position.
+     * @param angle specifies the angle.
+     * @return this pose.
+     */
+    public TrcPose2D set(double x, double y, double angle)
+    {
+        this.x = x;
+        this.y = y;
+        this.angle = angle;
+
+        return this;
+    }   //set
+
     /**
      * This method returns a transformed pose relative to the given pose.
      *
@@ -154,13 +266,31 @@ public class TrcPose2D
      * @return pose relative to the given pose.
      */
     public TrcPose2D relativeTo(TrcPose2D pose, boolean transformAngle)
+    {
+        return relativeTo(pose, transformAngle, new TrcPose2D());
+    }   //relativeTo
+
+    /**
+     * This method transforms this pose relative to the given pose and stores the result in the given pose. The
+     * result pose may be this pose or the reference pose.
+     *
+     * @param pose           specifies the reference pose.
+     * @param transformAngle specifies true to also transform angle, false to leave it alone.
+     * @param result         specifies the pose to store the result in.
+     * @return result pose.
+     */
+    public TrcPose2D relativeTo(TrcPose2D pose, boolean transformAngle, TrcPose2D result)
     {
         double deltaX = x - pose.x;
         double deltaY = y - pose.y;
-        RealVector newPos = TrcUtil
-            .rotateCCW(MatrixUtils.createRealVector(new double[] { deltaX, deltaY }), pose.angle);
-
-        return new TrcPose2D(newPos.getEntry(0), newPos.getEntry(1), transformAngle ? angle - pose.angle : angle);
+        double angleRadians = Math.toRadians(pose.angle);
+        double cosAngle = Math.cos(angleRadians);
+        double sinAngle = Math.sin(angleRadians);
+        //
+        // Rotate the delta position counter-clockwise by the reference angle.
+        //
+        return result.set(cosAngle*deltaX - sinAngle*deltaY, sinAngle*deltaX + cosAngle*deltaY,
+            transformAngle ? angle - pose.angle : angle);
     }   //relativeTo
 
     /**
@@ -182,23 +312,33 @@ public class TrcPose2D
      * @return translated pose.
      */
     public TrcPose2D translatePose(double xOffset, double yOffset)
+    {
+        return translatePose(xOffset, yOffset, new TrcPose2D());
+    }   //translatePose
+
+    /**
+     * This method translates this pose with the x and y offset in reference to the angle of the pose and stores the
+     * result in the given pose. The result pose may be this pose.
+     *
+     * @param xOffset specifies the x offset in reference to the angle of the pose.
+     * @param yOffset specifies the y offset in reference to the angle of the pose.
+     * @param result  specifies the pose to store the result in.
+     * @return result pose.
+     */
+    public TrcPose2D translatePose(double xOffset, double yOffset, TrcPose2D result)
     {
         final String funcName = "translatePose";
-        TrcPose2D newPose = clone();
-        double angleRadians = Math.toRadians(newPose.angle);
+        double angleRadians = Math.toRadians(angle);
         double cosAngle = Math.cos(angleRadians);
         double sinAngle = Math.sin(angleRadians);
 
-        newPose.x += xOffset * cosAngle + yOffset * sinAngle;
-        newPose.y += -xOffset * sinAngle + yOffset * cosAngle;
-
         if (debugEnabled)
         {
-            dbgTrace.traceInfo(funcName, "xOffset=%.1f, yOffset=%.1f, Pose:%s, newPose:%s", xOffset, yOffset, this,
-                newPose);
+            dbgTrace.traceInfo(funcName, "xOffset=%.1f, yOffset=%.1f, Pose:%s", xOffset, yOffset, this);
         }
 
-        return newPose;
+        return result.set(x + xOffset * cosAngle + yOffset * sinAngle, y - xOffset * sinAngle + yOffset * cosAngle,
+            angle);
     }   //translatePose
 
 }   //class TrcPose2D
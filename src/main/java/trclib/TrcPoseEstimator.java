@@ -0,0 +1,896 @@
+/*
+ * Copyright (c) 2019 Titan Robotics Club (http://www.titanrobotics.com)
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+
+package trclib;
+
+/**
+ * This class implements a latency compensated pose estimator. It is an extended Kalman filter with the field pose
+ * (x, y, heading) as its state. Drive base odometry deltas predict the state forward, and absolute heading readings
+ * (e.g. from a gyro) and vision observations correct it. Vision results arrive late because of camera exposure,
+ * processing and network latency, so every update is recorded in a history ring together with its inputs. A
+ * measurement older than the latest update rewinds the filter to the history entry at the measurement time, applies
+ * the measurement there and replays all the later odometry and measurements on top of it.
+ *
+ * All matrices and the history are preallocated in the constructor so that updates do not generate garbage in the
+ * input thread. Positions are in the units of the drive base odometry and headings are in degrees, clockwise
+ * positive, the same as TrcPose2D.
+ */
+public class TrcPoseEstimator
+{
+    private static final String moduleName = "TrcPoseEstimator";
+    private static final boolean debugEnabled = false;
+    private static final boolean tracingEnabled = false;
+    private static final TrcDbgTrace.TraceLevel traceLevel = TrcDbgTrace.TraceLevel.API;
+    private static final TrcDbgTrace.MsgLevel msgLevel = TrcDbgTrace.MsgLevel.INFO;
+    private TrcDbgTrace dbgTrace = null;
+
+    public static final int DEF_HISTORY_SIZE = 64;
+    private static final double DEF_TRANSLATION_STDDEV_PER_UNIT = 0.05;
+    private static final double DEF_HEADING_STDDEV_PER_DEGREE = 0.02;
+    private static final double DEF_INITIAL_POSITION_STDDEV = 1.0;
+    private static final double DEF_INITIAL_HEADING_STDDEV = 1.0;
+    private static final double DEG_TO_RAD = Math.PI/180.0;
+
+    private static final int N = 3;
+    private static final int NN = N*N;
+    private static final int MEAS_NONE = 0;
+    private static final int MEAS_POSE = 1;
+    private static final int MEAS_TARGET = 2;
+
+    private final String instanceName;
+    //
+    // Filter state: pose and its covariance, row major.
+    //
+    private final double[] state = new double[N];
+    private final double[] cov = new double[NN];
+    //
+    // History ring, one entry per odometry update. Each entry has the inputs of the update and the posterior state
+    // after the update, so the filter can restart from any entry and replay the rest.
+    //
+    private final int historySize;
+    private final double[] histTimes;
+    private final double[] histOdometry;
+    private final double[] histStates;
+    private final double[] histCovs;
+    private final double[] histHeadings;
+    private final double[] histHeadingVars;
+    private final int[] histMeasTypes;
+    private final double[] histMeasValues;
+    private final double[] histMeasVars;
+    private final double[] histMeasTargets;
+    private int histHead = 0;
+    private int histCount = 0;
+    //
+    // Preallocated scratch matrices for the measurement update, sized for up to 3 measurement dimensions.
+    //
+    private final double[] hMat = new double[NN];
+    private final double[] rMat = new double[NN];
+    private final double[] residual = new double[N];
+    private final double[] sMat = new double[NN];
+    private final double[] sInv = new double[NN];
+    private final double[] phtMat = new double[NN];
+    private final double[] kMat = new double[NN];
+    private final double[] ikhMat = new double[NN];
+    private final double[] tmpMat = new double[NN];
+    private final double[] tmpMat2 = new double[NN];
+    private final double[] measValues = new double[N];
+    private final double[] measVars = new double[N];
+
+    private double translationStdDevPerUnit = DEF_TRANSLATION_STDDEV_PER_UNIT;
+    private double headingStdDevPerDegree = DEF_HEADING_STDDEV_PER_DEGREE;
+    private double visionGate = Double.POSITIVE_INFINITY;
+    private long replayCount = 0;
+    private long rejectedCount = 0;
+
+    /**
+     * Constructor: Create an instance of the object.
+     *
+     * @param instanceName specifies the instance name.
+     * @param historySize specifies the number of odometry updates kept in history, it limits how late a measurement
+     *                    may arrive and still be applied.
+     */
+    public TrcPoseEstimator(String instanceName, int historySize)
+    {
+        if (debugEnabled)
+        {
+            dbgTrace = new TrcDbgTrace(moduleName + "." + instanceName, tracingEnabled, traceLevel, msgLevel);
+        }
+
+        if (historySize < 1)
+        {
+            throw new IllegalArgumentException("historySize must be positive");
+        }
+
+        this.instanceName = instanceName;
+        this.historySize = historySize;
+        histTimes = new double[historySize];
+        histOdometry = new double[historySize*N];
+        histStates = new double[historySize*N];
+        histCovs = new double[historySize*NN];
+        histHeadings = new double[historySize];
+        histHeadingVars = new double[historySize];
+        histMeasTypes = new int[historySize];
+        histMeasValues = new double[historySize*N];
+        histMeasVars = new double[historySize*N];
+        histMeasTargets = new double[historySize*2];
+        reset(0.0, new TrcPose2D(), DEF_INITIAL_POSITION_STDDEV, DEF_INITIAL_HEADING_STDDEV);
+    }   //TrcPoseEstimator
+
+    /**
+     * Constructor: Create an instance of the object.
+     *
+     * @param instanceName specifies the instance name.
+     */
+    public TrcPoseEstimator(String instanceName)
+    {
+        this(instanceName, DEF_HISTORY_SIZE);
+    }   //TrcPoseEstimator
+
+    /**
+     * This method returns the instance name.
+     *
+     * @return instance name.
+     */
+    @Override
+    public String toString()
+    {
+        return instanceName;
+    }   //toString
+
+    /**
+     * This method sets the odometry noise model. The translation and heading variances added on every odometry
+     * update grow with the square of the distance traveled and the angle turned.
+     *
+     * @param translationStdDevPerUnit specifies the standard deviation of the translation error per unit traveled.
+     * @param headingStdDevPerDegree specifies the standard deviation of the heading error per degree turned.
+     */
+    public synchronized void setOdometryNoise(double translationStdDevPerUnit, double headingStdDevPerDegree)
+    {
+        this.translationStdDevPerUnit = translationStdDevPerUnit;
+        this.headingStdDevPerDegree = headingStdDevPerDegree;
+    }   //setOdometryNoise
+
+    /**
+     * This method sets the outlier gate for vision measurements. A vision measurement whose squared Mahalanobis
+     * distance from the predicted measurement exceeds the gate is rejected.
+     *
+     * @param gate specifies the chi-square gate, Double.POSITIVE_INFINITY to accept all measurements.
+     */
+    public synchronized void setVisionGate(double gate)
+    {
+        this.visionGate = gate;
+    }   //setVisionGate
+
+    /**
+     * This method resets the estimator to the given pose and clears the history.
+     *
+     * @param timestamp specifies the time of the pose in seconds.
+     * @param pose specifies the field pose.
+     * @param positionStdDev specifies the standard deviation of the x and y position.
+     * @param headingStdDev specifies the standard deviation of the heading in degrees.
+     */
+    public synchronized void reset(double timestamp, TrcPose2D pose, double positionStdDev, double headingStdDev)
+    {
+        state[0] = pose.x;
+        state[1] = pose.y;
+        state[2] = pose.angle;
+        for (int i = 0; i < NN; i++)
+        {
+            cov[i] = 0.0;
+        }
+        cov[0] = cov[4] = positionStdDev*positionStdDev;
+        cov[8] = headingStdDev*headingStdDev;
+
+        histCount = 0;
+        histHead = 0;
+        pushHistory(timestamp, 0.0, 0.0, 0.0);
+    }   //reset
+
+    /**
+     * This method resets the estimator to the given pose with the default uncertainty and clears the history.
+     *
+     * @param timestamp specifies the time of the pose in seconds.
+     * @param pose specifies the field pose.
+     */
+    public void reset(double timestamp, TrcPose2D pose)
+    {
+        reset(timestamp, pose, DEF_INITIAL_POSITION_STDDEV, DEF_INITIAL_HEADING_STDDEV);
+    }   //reset
+
+    /**
+     * This method returns the estimated field pose.
+     *
+     * @param result specifies the pose to store the result in.
+     * @return result pose.
+     */
+    public synchronized TrcPose2D getPose(TrcPose2D result)
+    {
+        return result.set(state[0], state[1], state[2]);
+    }   //getPose
+
+    /**
+     * This method returns the estimated field pose.
+     *
+     * @return estimated field pose.
+     */
+    public TrcPose2D getPose()
+    {
+        return getPose(new TrcPose2D());
+    }   //getPose
+
+    /**
+     * This method copies the state covariance matrix into the given array in row major order of x, y and heading.
+     *
+     * @param result specifies the array of at least 9 elements to store the covariance in.
+     * @return result array.
+     */
+    public synchronized double[] getCovariance(double[] result)
+    {
+        System.arraycopy(cov, 0, result, 0, NN);
+        return result;
+    }   //getCovariance
+
+    /**
+     * This method returns the time stamp of the latest odometry update.
+     *
+     * @return latest update time in seconds.
+     */
+    public synchronized double getTimestamp()
+    {
+        return histTimes[histHead];
+    }   //getTimestamp
+
+    /**
+     * This method returns the number of late measurements that were applied by replaying the history.
+     *
+     * @return number of replays.
+     */
+    public synchronized long getReplayCount()
+    {
+        return replayCount;
+    }   //getReplayCount
+
+    /**
+     * This method returns the number of measurements rejected, either because they were older than the history or
+     * because they failed the vision gate.
+     *
+     * @return number of rejected measurements.
+     */
+    public synchronized long getRejectedCount()
+    {
+        return rejectedCount;
+    }   //getRejectedCount
+
+    /**
+     * This method predicts the state forward with an odometry delta. The delta is relative to the robot at the
+     * previous update, the same as the position of the delta computed by TrcDriveBase.
+     *
+     * @param timestamp specifies the time of the odometry reading in seconds.
+     * @param deltaX specifies the distance traveled sideways, right positive.
+     * @param deltaY specifies the distance traveled forward.
+     * @param deltaHeading specifies the heading change in degrees, clockwise positive.
+     */
+    public synchronized void addOdometry(double timestamp, double deltaX, double deltaY, double deltaHeading)
+    {
+        predict(deltaX, deltaY, deltaHeading);
+        // Keep the history monotonic so it can be binary searched.
+        pushHistory(Math.max(timestamp, histTimes[histHead]), deltaX, deltaY, deltaHeading);
+    }   //addOdometry
+
+    /**
+     * This method predicts the state forward with the position delta of a drive base odometry.
+     *
+     * @param timestamp specifies the time of the odometry reading in seconds.
+     * @param delta specifies the odometry delta since the previous update.
+     */
+    public void addOdometry(double timestamp, TrcDriveBase.Odometry delta)
+    {
+        addOdometry(timestamp, delta.position.x, delta.position.y, delta.position.angle);
+    }   //addOdometry
+
+    /**
+     * This method corrects the state with an absolute heading reading, for example from a gyro whose heading is
+     * aligned with the field.
+     *
+     * @param timestamp specifies the time of the reading in seconds.
+     * @param heading specifies the field heading in degrees.
+     * @param stdDev specifies the standard deviation of the reading in degrees.
+     * @return true if the reading is applied, false if it is older than the history.
+     */
+    public synchronized boolean addHeading(double timestamp, double heading, double stdDev)
+    {
+        int index = findEntry(timestamp);
+        boolean applied = index >= 0;
+
+        if (applied)
+        {
+            double variance = stdDev*stdDev;
+
+            restoreEntry(index);
+            updateHeading(heading, variance);
+            histHeadings[index] = heading;
+            histHeadingVars[index] = variance;
+            saveEntry(index);
+            replayAfter(index);
+        }
+        else
+        {
+            rejectedCount++;
+        }
+
+        return applied;
+    }   //addHeading
+
+    /**
+     * This method corrects the state with a field pose observed by vision, for example from a camera localizing on
+     * field markers.
+     *
+     * @param timestamp specifies the time the image was captured in seconds.
+     * @param pose specifies the observed field pose.
+     * @param positionStdDev specifies the standard deviation of the observed x and y position.
+     * @param headingStdDev specifies the standard deviation of the observed heading in degrees.
+     * @return true if the observation is applied, false if it is older than the history or is an outlier.
+     */
+    public synchronized boolean addVisionPose(
+        double timestamp, TrcPose2D pose, double positionStdDev, double headingStdDev)
+    {
+        measValues[0] = pose.x;
+        measValues[1] = pose.y;
+        measValues[2] = pose.angle;
+        measVars[0] = measVars[1] = positionStdDev*positionStdDev;
+        measVars[2] = headingStdDev*headingStdDev;
+
+        return addVisionMeasurement(timestamp, MEAS_POSE, 0.0, 0.0);
+    }   //addVisionPose
+
+    /**
+     * This method corrects the state with the position of a vision target of known field location relative to the
+     * robot, such as FrcRemoteVisionProcessor.RelativePose reports it.
+     *
+     * @param timestamp specifies the time the image was captured in seconds.
+     * @param targetX specifies the x field position of the target.
+     * @param targetY specifies the y field position of the target.
+     * @param relativeX specifies the observed x position of the target relative to the robot, right positive.
+     * @param relativeY specifies the observed y position of the target relative to the robot, forward positive.
+     * @param stdDev specifies the standard deviation of the observed relative position.
+     * @return true if the observation is applied, false if it is older than the history or is an outlier.
+     */
+    public synchronized boolean addVisionTarget(
+        double timestamp, double targetX, double targetY, double relativeX, double relativeY, double stdDev)
+    {
+        measValues[0] = relativeX;
+        measValues[1] = relativeY;
+        measValues[2] = 0.0;
+        measVars[0] = measVars[1] = stdDev*stdDev;
+        measVars[2] = 0.0;
+
+        return addVisionMeasurement(timestamp, MEAS_TARGET, targetX, targetY);
+    }   //addVisionTarget
+
+    /**
+     * This method applies the vision measurement in measValues and measVars at the history entry of the given time
+     * and replays the later entries.
+     *
+     * @param timestamp specifies the time of the measurement in seconds.
+     * @param type specifies the measurement type.
+     * @param targetX specifies the x field position of the target for a target measurement.
+     * @param targetY specifies the y field position of the target for a target measurement.
+     * @return true if the measurement is applied, false if it is rejected.
+     */
+    private boolean addVisionMeasurement(double timestamp, int type, double targetX, double targetY)
+    {
+        final String funcName = "addVisionMeasurement";
+        int index = findEntry(timestamp);
+        boolean applied = false;
+
+        if (index >= 0)
+        {
+            restoreEntry(index);
+            applied = updateVision(type, measValues, measVars, targetX, targetY, true);
+            if (applied)
+            {
+                //
+                // An entry keeps one vision measurement for replays. If two land on the same entry, only the last
+                // one is replayed if an even later measurement rewinds past this entry.
+                //
+                histMeasTypes[index] = type;
+                System.arraycopy(measValues, 0, histMeasValues, index*N, N);
+                System.arraycopy(measVars, 0, histMeasVars, index*N, N);
+                histMeasTargets[index*2] = targetX;
+                histMeasTargets[index*2 + 1] = targetY;
+                saveEntry(index);
+                replayAfter(index);
+            }
+            else
+            {
+                // Undo the restore.
+                restoreEntry(histHead);
+            }
+        }
+
+        if (!applied)
+        {
+            rejectedCount++;
+        }
+
+        if (debugEnabled)
+        {
+            dbgTrace.traceInfo(funcName, "[%.3f] type=%d, applied=%s, pose=(%.1f, %.1f, %.1f)",
+                timestamp, type, applied, state[0], state[1], state[2]);
+        }
+
+        return applied;
+    }   //addVisionMeasurement
+
+    /**
+     * This method returns the index of the latest history entry not later than the given time.
+     *
+     * @param timestamp specifies the time in seconds.
+     * @return history index, -1 if the time is earlier than the oldest entry.
+     */
+    private int findEntry(double timestamp)
+    {
+        int index = -1;
+        int oldest = (histHead - histCount + 1 + historySize) % historySize;
+
+        if (timestamp >= histTimes[histHead])
+        {
+            index = histHead;
+        }
+        else if (timestamp >= histTimes[oldest])
+        {
+            //
+            // Binary search over the logical positions, 0 being the oldest entry.
+            //
+            int low = 0;
+            int high = histCount - 1;
+
+            while (low < high)
+            {
+                int mid = (low + high + 1) >>> 1;
+
+                if (histTimes[(oldest + mid) % historySize] <= timestamp)
+                {
+                    low = mid;
+                }
+                else
+                {
+                    high = mid - 1;
+                }
+            }
+            index = (oldest + low) % historySize;
+        }
+
+        return index;
+    }   //findEntry
+
+    /**
+     * This method replays the history entries after the given one and leaves the state at the latest entry.
+     *
+     * @param index specifies the history index the state was restored from.
+     */
+    private void replayAfter(int index)
+    {
+        if (index != histHead)
+        {
+            replayCount++;
+            do
+            {
+                index = (index + 1) % historySize;
+                predict(histOdometry[index*N], histOdometry[index*N + 1], histOdometry[index*N + 2]);
+                if (!Double.isNaN(histHeadings[index]))
+                {
+                    updateHeading(histHeadings[index], histHeadingVars[index]);
+                }
+
+                if (histMeasTypes[index] != MEAS_NONE)
+                {
+                    System.arraycopy(histMeasValues, index*N, measValues, 0, N);
+                    System.arraycopy(histMeasVars, index*N, measVars, 0, N);
+                    updateVision(
+                        histMeasTypes[index], measValues, measVars, histMeasTargets[index*2],
+                        histMeasTargets[index*2 + 1], false);
+                }
+                saveEntry(index);
+            } while (index != histHead);
+        }
+    }   //replayAfter
+
+    /**
+     * This method adds an entry to the history with the current state.
+     *
+     * @param timestamp specifies the time of the entry in seconds.
+     * @param deltaX specifies the x odometry delta of the entry.
+     * @param deltaY specifies the y odometry delta of the entry.
+     * @param deltaHeading specifies the heading odometry delta of the entry.
+     */
+    private void pushHistory(double timestamp, double deltaX, double deltaY, double deltaHeading)
+    {
+        if (histCount > 0)
+        {
+            histHead = (histHead + 1) % historySize;
+        }
+
+        if (histCount < historySize)
+        {
+            histCount++;
+        }
+
+        histTimes[histHead] = timestamp;
+        histOdometry[histHead*N] = deltaX;
+        histOdometry[histHead*N + 1] = deltaY;
+        histOdometry[histHead*N + 2] = deltaHeading;
+        histHeadings[histHead] = Double.NaN;
+        histMeasTypes[histHead] = MEAS_NONE;
+        saveEntry(histHead);
+    }   //pushHistory
+
+    /**
+     * This method saves the current state into the given history entry.
+     *
+     * @param index specifies the history index.
+     */
+    private void saveEntry(int index)
+    {
+        System.arraycopy(state, 0, histStates, index*N, N);
+        System.arraycopy(cov, 0, histCovs, index*NN, NN);
+    }   //saveEntry
+
+    /**
+     * This method restores the current state from the given history entry.
+     *
+     * @param index specifies the history index.
+     */
+    private void restoreEntry(int index)
+    {
+        System.arraycopy(histStates, index*N, state, 0, N);
+        System.arraycopy(histCovs, index*NN, cov, 0, NN);
+    }   //restoreEntry
+
+    /**
+     * This method performs the prediction step with an odometry delta relative to the robot.
+     *
+     * @param deltaX specifies the distance traveled sideways.
+     * @param deltaY specifies the distance traveled forward.
+     * @param deltaHeading specifies the heading change in degrees.
+     */
+    private void predict(double deltaX, double deltaY, double deltaHeading)
+    {
+        //
+        // Rotate the delta clockwise into the field frame by the mid-point heading of the update.
+        //
+        double midHeading = (state[2] + deltaHeading/2.0)*DEG_TO_RAD;
+        double cosHeading = Math.cos(midHeading);
+        double sinHeading = Math.sin(midHeading);
+
+        state[0] += cosHeading*deltaX + sinHeading*deltaY;
+        state[1] += -sinHeading*deltaX + cosHeading*deltaY;
+        state[2] += deltaHeading;
+        //
+        // The Jacobian F is the identity except for the dependency of x and y on the heading in the third column.
+        // P = F*P*F' + Q is expanded so that no matrix product is needed.
+        //
+        double a = (-sinHeading*deltaX + cosHeading*deltaY)*DEG_TO_RAD;
+        double b = (-cosHeading*deltaX - sinHeading*deltaY)*DEG_TO_RAD;
+
+        for (int c = 0; c < N; c++)
+        {
+            cov[c] += a*cov[6 + c];
+            cov[3 + c] += b*cov[6 + c];
+        }
+
+        for (int r = 0; r < N; r++)
+        {
+            cov[r*N] += a*cov[r*N + 2];
+            cov[r*N + 1] += b*cov[r*N + 2];
+        }
+
+        double translationStdDev = translationStdDevPerUnit*Math.sqrt(deltaX*deltaX + deltaY*deltaY);
+        double headingStdDev = headingStdDevPerDegree*Math.abs(deltaHeading);
+        cov[0] += translationStdDev*translationStdDev;
+        cov[4] += translationStdDev*translationStdDev;
+        cov[8] += headingStdDev*headingStdDev;
+    }   //predict
+
+    /**
+     * This method performs the update step with an absolute heading reading.
+     *
+     * @param heading specifies the heading reading in degrees.
+     * @param variance specifies the variance of the reading.
+     */
+    private void updateHeading(double heading, double variance)
+    {
+        for (int i = 0; i < N; i++)
+        {
+            hMat[i] = 0.0;
+        }
+        hMat[2] = 1.0;
+        rMat[0] = variance;
+        residual[0] = wrapAngle(heading - state[2]);
+        update(1, Double.POSITIVE_INFINITY);
+    }   //updateHeading
+
+    /**
+     * This method performs the update step with a vision measurement.
+     *
+     * @param type specifies the measurement type.
+     * @param values specifies the measurement values.
+     * @param variances specifies the measurement variances.
+     * @param targetX specifies the x field position of the target for a target measurement.
+     * @param targetY specifies the y field position of the target for a target measurement.
+     * @param gated specifies true to reject the measurement if it fails the vision gate.
+     * @return true if the measurement is applied, false if it is rejected by the gate.
+     */
+    private boolean updateVision(
+        int type, double[] values, double[] variances, double targetX, double targetY, boolean gated)
+    {
+        int m;
+
+        for (int i = 0; i < NN; i++)
+        {
+            hMat[i] = 0.0;
+            rMat[i] = 0.0;
+        }
+
+        if (type == MEAS_POSE)
+        {
+            m = 3;
+            hMat[0] = hMat[4] = hMat[8] = 1.0;
+            residual[0] = values[0] - state[0];
+            residual[1] = values[1] - state[1];
+            residual[2] = wrapAngle(values[2] - state[2]);
+        }
+        else
+        {
+            //
+            // The expected relative position is the field offset of the target rotated counter-clockwise by the
+            // robot heading, the same as TrcPose2D.relativeTo.
+            //
+            m = 2;
+            double heading = state[2]*DEG_TO_RAD;
+            double cosHeading = Math.cos(heading);
+            double sinHeading = Math.sin(heading);
+            double dx = targetX - state[0];
+            double dy = targetY - state[1];
+
+            residual[0] = values[0] - (cosHeading*dx - sinHeading*dy);
+            residual[1] = values[1] - (sinHeading*dx + cosHeading*dy);
+            hMat[0] = -cosHeading;
+            hMat[1] = sinHeading;
+            hMat[2] = (-sinHeading*dx - cosHeading*dy)*DEG_TO_RAD;
+            hMat[3] = -sinHeading;
+            hMat[4] = -cosHeading;
+            hMat[5] = (cosHeading*dx - sinHeading*dy)*DEG_TO_RAD;
+        }
+
+        for (int i = 0; i < m; i++)
+        {
+            rMat[i*m + i] = variances[i];
+        }
+
+        return update(m, gated? visionGate: Double.POSITIVE_INFINITY);
+    }   //updateVision
+
+    /**
+     * This method performs the Kalman update with the m x 3 Jacobian in hMat, the m x m noise covariance in rMat and
+     * the residual in residual. The covariance is updated in Joseph form to keep it symmetric positive definite.
+     *
+     * @param m specifies the measurement dimension, 1 to 3.
+     * @param gate specifies the chi-square gate of the measurement.
+     * @return true if the measurement is applied, false if it is rejected by the gate.
+     */
+    private boolean update(int m, double gate)
+    {
+        //
+        // PHt = P*H' (3 x m), S = H*P*H' + R (m x m).
+        //
+        for (int r = 0; r < N; r++)
+        {
+            for (int c = 0; c < m; c++)
+            {
+                double sum = 0.0;
+                for (int k = 0; k < N; k++)
+                {
+                    sum += cov[r*N + k]*hMat[c*N + k];
+                }
+                phtMat[r*m + c] = sum;
+            }
+        }
+
+        for (int r = 0; r < m; r++)
+        {
+            for (int c = 0; c < m; c++)
+            {
+                double sum = rMat[r*m + c];
+                for (int k = 0; k < N; k++)
+                {
+                    sum += hMat[r*N + k]*phtMat[k*m + c];
+                }
+                sMat[r*m + c] = sum;
+            }
+        }
+
+        boolean applied = invert(m);
+
+        if (applied && gate != Double.POSITIVE_INFINITY)
+        {
+            double distance = 0.0;
+            for (int r = 0; r < m; r++)
+            {
+                for (int c = 0; c < m; c++)
+                {
+                    distance += residual[r]*sInv[r*m + c]*residual[c];
+                }
+            }
+            applied = distance <= gate;
+        }
+
+        if (applied)
+        {
+            //
+            // K = PHt*S^-1 (3 x m), x = x + K*y.
+            //
+            for (int r = 0; r < N; r++)
+            {
+                double sum = 0.0;
+                for (int c = 0; c < m; c++)
+                {
+                    double k = 0.0;
+                    for (int j = 0; j < m; j++)
+                    {
+                        k += phtMat[r*m + j]*sInv[j*m + c];
+                    }
+                    kMat[r*m + c] = k;
+                    sum += k*residual[c];
+                }
+                state[r] += sum;
+            }
+            //
+            // P = (I - K*H)*P*(I - K*H)' + K*R*K'.
+            //
+            for (int r = 0; r < N; r++)
+            {
+                for (int c = 0; c < N; c++)
+                {
+                    double sum = r == c? 1.0: 0.0;
+                    for (int j = 0; j < m; j++)
+                    {
+                        sum -= kMat[r*m + j]*hMat[j*N + c];
+                    }
+                    ikhMat[r*N + c] = sum;
+                }
+            }
+            multiply(ikhMat, cov, tmpMat);
+            multiplyTransposed(tmpMat, ikhMat, tmpMat2);
+
+            for (int r = 0; r < N; r++)
+            {
+                for (int c = 0; c < N; c++)
+                {
+                    double sum = 0.0;
+                    for (int i = 0; i < m; i++)
+                    {
+                        for (int j = 0; j < m; j++)
+                        {
+                            sum += kMat[r*m + i]*rMat[i*m + j]*kMat[c*m + j];
+                        }
+                    }
+                    cov[r*N + c] = tmpMat2[r*N + c] + sum;
+                }
+            }
+        }
+
+        return applied;
+    }   //update
+
+    /**
+     * This method inverts the m x m matrix in sMat into sInv.
+     *
+     * @param m specifies the matrix dimension, 1 to 3.
+     * @return true if the matrix is inverted, false if it is singular.
+     */
+    private boolean invert(int m)
+    {
+        double det;
+
+        if (m == 1)
+        {
+            det = sMat[0];
+            sInv[0] = 1.0/det;
+        }
+        else if (m == 2)
+        {
+            det = sMat[0]*sMat[3] - sMat[1]*sMat[2];
+            sInv[0] = sMat[3]/det;
+            sInv[1] = -sMat[1]/det;
+            sInv[2] = -sMat[2]/det;
+            sInv[3] = sMat[0]/det;
+        }
+        else
+        {
+            double c00 = sMat[4]*sMat[8] - sMat[5]*sMat[7];
+            double c01 = sMat[5]*sMat[6] - sMat[3]*sMat[8];
+            double c02 = sMat[3]*sMat[7] - sMat[4]*sMat[6];
+
+            det = sMat[0]*c00 + sMat[1]*c01 + sMat[2]*c02;
+            sInv[0] = c00/det;
+            sInv[1] = (sMat[2]*sMat[7] - sMat[1]*sMat[8])/det;
+            sInv[2] = (sMat[1]*sMat[5] - sMat[2]*sMat[4])/det;
+            sInv[3] = c01/det;
+            sInv[4] = (sMat[0]*sMat[8] - sMat[2]*sMat[6])/det;
+            sInv[5] = (sMat[2]*sMat[3] - sMat[0]*sMat[5])/det;
+            sInv[6] = c02/det;
+            sInv[7] = (sMat[1]*sMat[6] - sMat[0]*sMat[7])/det;
+            sInv[8] = (sMat[0]*sMat[4] - sMat[1]*sMat[3])/det;
+        }
+
+        return det != 0.0 && !Double.isNaN(det);
+    }   //invert
+
+    /**
+     * This method multiplies two 3 x 3 matrices, result = a*b.
+     *
+     * @param a specifies the left matrix.
+     * @param b specifies the right matrix.
+     * @param result specifies the matrix to store the result in.
+     */
+    private static void multiply(double[] a, double[] b, double[] result)
+    {
+        for (int r = 0; r < N; r++)
+        {
+            for (int c = 0; c < N; c++)
+            {
+                result[r*N + c] = a[r*N]*b[c] + a[r*N + 1]*b[N + c] + a[r*N + 2]*b[2*N + c];
+            }
+        }
+    }   //multiply
+
+    /**
+     * This method multiplies a 3 x 3 matrix with the transpose of another, result = a*b'.
+     *
+     * @param a specifies the left matrix.
+     * @param b specifies the right matrix to be transposed.
+     * @param result specifies the matrix to store the result in.
+     */
+    private static void multiplyTransposed(double[] a, double[] b, double[] result)
+    {
+        for (int r = 0; r < N; r++)
+        {
+            for (int c = 0; c < N; c++)
+            {
+                result[r*N + c] = a[r*N]*b[c*N] + a[r*N + 1]*b[c*N + 1] + a[r*N + 2]*b[c*N + 2];
+            }
+        }
+    }   //multiplyTransposed
+
+    /**
+     * This method wraps an angle difference into the range of -180 to 180 degrees.
+     *
+     * @param angle specifies the angle difference in degrees.
+     * @return wrapped angle difference.
+     */
+    private static double wrapAngle(double angle)
+    {
+        return angle - 360.0*Math.floor((angle + 180.0)/360.0);
+    }   //wrapAngle
+
+}   //class TrcPoseEstimator
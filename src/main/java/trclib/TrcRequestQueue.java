@@ -22,8 +22,8 @@
 
 package trclib;
 
+import java.util.ArrayList;
 import java.util.Locale;
-import java.util.concurrent.LinkedBlockingQueue;
 
 /**
  * This class implements a generic request queue that runs on its own thread. It allows the caller to add requests
@@ -31,6 +31,13 @@ import java.util.concurrent.LinkedBlockingQueue;
  * head of the queue. When the request is completed, an optional event will be signaled as well as an optional
  * callback if provided.
  *
+ * Requests are queued in priority lanes. The request thread always processes the oldest request of the highest
+ * priority lane that is not empty, so time critical requests don't wait behind a backlog of slow ones. A request can
+ * have a timeout: if it waited in the queue longer than that when it comes up for processing, it is expired instead
+ * of processed. An expired request is handed to its handler as canceled so the requester learns about it, except for
+ * a repeat request, which just skips the stale round and is queued again. Each lane is a doubly linked list of the
+ * request entries, so a request entry serves as a handle to cancel the request in constant time.
+ *
  * @param <R> specifies the type of the request.
  */
 public class TrcRequestQueue<R>
@@ -43,6 +50,16 @@ public class TrcRequestQueue<R>
     protected static final TrcDbgTrace.MsgLevel msgLevel = TrcDbgTrace.MsgLevel.INFO;
     protected TrcDbgTrace dbgTrace = null;
 
+    /**
+     * This enum specifies the priority lanes of the queue, from highest to lowest.
+     */
+    public enum Priority
+    {
+        HIGH,
+        NORMAL,
+        LOW
+    }   //enum Priority
+
     /**
      * This class implements a request entry. Typically, an entry will be put into a FIFO request queue so that each
      * entry will be processed in the order they came in.
@@ -52,7 +69,16 @@ public class TrcRequestQueue<R>
         private R request;
         private TrcNotifier.Receiver requestHandler;
         private boolean repeat;
-        private boolean canceled;
+        private volatile boolean canceled;
+        private volatile boolean expired;
+        private Priority priority = Priority.NORMAL;
+        private long timeoutNanos = 0;
+        // The following are guarded by the queue.
+        private Lane<RequestEntry> lane = null;
+        private RequestEntry prev = null;
+        private RequestEntry next = null;
+        private long enqueueNanoTime = 0;
+        private long deadlineNanoTime = Long.MAX_VALUE;
 
         /**
          * Constructor: Create an instance of the object.
@@ -67,6 +93,7 @@ public class TrcRequestQueue<R>
             this.requestHandler = requestHandler;
             this.repeat = repeat;
             this.canceled = false;
+            this.expired = false;
         }   //RequestEntry
 
         /**
@@ -80,7 +107,17 @@ public class TrcRequestQueue<R>
         }   //getRequest
 
         /**
-         * This method checks if the request entry is canceled.
+         * This method returns the priority of the request.
+         *
+         * @return request priority.
+         */
+        public Priority getPriority()
+        {
+            return priority;
+        }   //getPriority
+
+        /**
+         * This method checks if the request entry is canceled. An expired request is also canceled.
          *
          * @return true if the request entry is canceled, false otherwise.
          */
@@ -89,6 +126,16 @@ public class TrcRequestQueue<R>
             return canceled;
         }   //isCanceled
 
+        /**
+         * This method checks if the request entry expired because it waited in the queue longer than its timeout.
+         *
+         * @return true if the request entry expired, false otherwise.
+         */
+        public boolean isExpired()
+        {
+            return expired;
+        }   //isExpired
+
         /**
          * This method returns the request info as a string.
          *
@@ -97,19 +144,38 @@ public class TrcRequestQueue<R>
         @Override
         public String toString()
         {
-            return String.format(Locale.US, "request=%s, repeat=%s, canceled=%s", request, repeat, canceled);
+            return String.format(Locale.US, "request=%s, priority=%s, repeat=%s, canceled=%s, expired=%s",
+                request, priority, repeat, canceled, expired);
         }   //toString
 
     }   //class RequestEntry
 
+    /**
+     * This class implements a priority lane, a doubly linked list of request entries.
+     *
+     * @param <E> specifies the type of the request entry.
+     */
+    private static class Lane<E>
+    {
+        E head = null;
+        E tail = null;
+        int depth = 0;
+        int maxDepth = 0;
+    }   //class Lane
+
     private final String instanceName;
-    private final LinkedBlockingQueue<RequestEntry> requestQueue;
+    private final ArrayList<Lane<RequestEntry>> lanes;
     private volatile Thread requestThread = null;
     private boolean enabled = false;
     private RequestEntry priorityRequest = null;
     private TrcDbgTrace perfTracer = null;
     private double totalNanoTime = 0.0;
     private int totalRequests = 0;
+    // Queue metrics, guarded by the queue.
+    private long totalWaitNanoTime = 0;
+    private long maxWaitNanoTime = 0;
+    private long dequeuedCount = 0;
+    private long expiredCount = 0;
 
     /**
      * Constructor: Creates an instance of the object.
@@ -126,7 +192,11 @@ public class TrcRequestQueue<R>
         }
 
         this.instanceName = instanceName;
-        requestQueue = new LinkedBlockingQueue<>();
+        lanes = new ArrayList<>(Priority.values().length);
+        for (int i = 0; i < Priority.values().length; i++)
+        {
+            lanes.add(new Lane<>());
+        }
     }   //TrcRequestQueue
 
     /**
@@ -199,28 +269,38 @@ public class TrcRequestQueue<R>
     }   //setPerformanceTracer
 
     /**
-     * This method queues a request at the end of the request queue to be processed asynchronously on a thread.
+     * This method queues a request at the end of the given priority lane to be processed asynchronously on a thread.
      *
      * @param request specifies the request to be queued.
      * @param requestHandler specifies the handler to call when the request is up for processing.
      * @param repeat specifies true to re-queue the request when completed.
-     * @return request entry added to the end of the queue. It can be used to cancel the request if it is still in
+     * @param priority specifies the priority lane.
+     * @param timeout specifies the maximum time in seconds the request may wait in the queue, 0.0 for no timeout.
+     *                For a repeat request, the timeout applies to every round.
+     * @return request entry added to the end of the lane. It can be used to cancel the request if it is still in
      *         queue.
      */
-    public RequestEntry add(R request, TrcNotifier.Receiver requestHandler, boolean repeat)
+    public RequestEntry add(
+        R request, TrcNotifier.Receiver requestHandler, boolean repeat, Priority priority, double timeout)
     {
         final String funcName = "add";
 
         if (debugEnabled)
         {
-            dbgTrace.traceEnter(funcName, TrcDbgTrace.TraceLevel.API, "request=%s,repeat=%s", request, repeat);
+            dbgTrace.traceEnter(funcName, TrcDbgTrace.TraceLevel.API, "request=%s,repeat=%s,priority=%s,timeout=%.3f",
+                request, repeat, priority, timeout);
         }
 
         RequestEntry entry = null;
-        if (isEnabled())
+        synchronized (this)
         {
-            entry = new RequestEntry(request, requestHandler, repeat);
-            requestQueue.add(entry);
+            if (enabled)
+            {
+                entry = new RequestEntry(request, requestHandler, repeat);
+                entry.priority = priority;
+                entry.timeoutNanos = (long) (timeout*1000000000.0);
+                enqueue(entry);
+            }
         }
 
         if (debugEnabled)
@@ -231,6 +311,20 @@ public class TrcRequestQueue<R>
         return entry;
     }   //add
 
+    /**
+     * This method queues a request at the end of the normal priority lane to be processed asynchronously on a thread.
+     *
+     * @param request specifies the request to be queued.
+     * @param requestHandler specifies the handler to call when the request is up for processing.
+     * @param repeat specifies true to re-queue the request when completed.
+     * @return request entry added to the end of the queue. It can be used to cancel the request if it is still in
+     *         queue.
+     */
+    public RequestEntry add(R request, TrcNotifier.Receiver requestHandler, boolean repeat)
+    {
+        return add(request, requestHandler, repeat, Priority.NORMAL, 0.0);
+    }   //add
+
     /**
      * This method adds the priority request to the head of the queue. It will be processed once the current active
      * request is done processing. If there is already an existing priority request pending, this request will not
@@ -254,7 +348,9 @@ public class TrcRequestQueue<R>
         if (priorityRequest == null)
         {
             entry = new RequestEntry(request, requestHandler, false);
+            entry.priority = Priority.HIGH;
             priorityRequest = entry;
+            notifyAll();
         }
 
         if (debugEnabled)
@@ -266,7 +362,7 @@ public class TrcRequestQueue<R>
     }   //addPriorityRequest
 
     /**
-     * This method cancels a request.
+     * This method cancels a request. It takes constant time.
      *
      * @param entry specifies the request entry from add or addPriorityRequest to be canceled.
      * @return true if the request entry is found in the queue and canceled, false otherwise.
@@ -288,8 +384,8 @@ public class TrcRequestQueue<R>
         }
         else
         {
-            foundEntry = requestQueue.contains(entry);
-            if (foundEntry) requestQueue.remove(entry);
+            foundEntry = entry.lane != null;
+            if (foundEntry) unlink(entry);
         }
 
         if (foundEntry)
@@ -305,6 +401,177 @@ public class TrcRequestQueue<R>
         return foundEntry;
     }   //cancelRequest
 
+    /**
+     * This method returns the number of requests waiting in the given priority lane.
+     *
+     * @param priority specifies the priority lane.
+     * @return number of queued requests.
+     */
+    public synchronized int getQueueDepth(Priority priority)
+    {
+        return lanes.get(priority.ordinal()).depth;
+    }   //getQueueDepth
+
+    /**
+     * This method returns the largest number of requests that waited in the given priority lane at the same time.
+     *
+     * @param priority specifies the priority lane.
+     * @return maximum number of queued requests.
+     */
+    public synchronized int getMaxQueueDepth(Priority priority)
+    {
+        return lanes.get(priority.ordinal()).maxDepth;
+    }   //getMaxQueueDepth
+
+    /**
+     * This method returns the average time requests waited in the queue before they came up for processing.
+     *
+     * @return average wait time in seconds.
+     */
+    public synchronized double getAverageWaitTime()
+    {
+        return dequeuedCount > 0? totalWaitNanoTime/1000000000.0/dequeuedCount: 0.0;
+    }   //getAverageWaitTime
+
+    /**
+     * This method returns the longest time a request waited in the queue before it came up for processing.
+     *
+     * @return maximum wait time in seconds.
+     */
+    public synchronized double getMaxWaitTime()
+    {
+        return maxWaitNanoTime/1000000000.0;
+    }   //getMaxWaitTime
+
+    /**
+     * This method returns the number of requests or repeat rounds that expired in the queue.
+     *
+     * @return number of expired requests.
+     */
+    public synchronized long getExpiredCount()
+    {
+        return expiredCount;
+    }   //getExpiredCount
+
+    /**
+     * This method resets the queue metrics.
+     */
+    public synchronized void resetMetrics()
+    {
+        for (Lane<RequestEntry> lane: lanes)
+        {
+            lane.maxDepth = lane.depth;
+        }
+        totalWaitNanoTime = 0;
+        maxWaitNanoTime = 0;
+        dequeuedCount = 0;
+        expiredCount = 0;
+    }   //resetMetrics
+
+    /**
+     * This method adds an entry at the end of its priority lane and wakes up the request thread. It must be called
+     * with the queue locked.
+     *
+     * @param entry specifies the request entry.
+     */
+    private void enqueue(RequestEntry entry)
+    {
+        Lane<RequestEntry> lane = lanes.get(entry.priority.ordinal());
+
+        entry.enqueueNanoTime = TrcUtil.getCurrentTimeNanos();
+        entry.deadlineNanoTime =
+            entry.timeoutNanos > 0? entry.enqueueNanoTime + entry.timeoutNanos: Long.MAX_VALUE;
+        entry.lane = lane;
+        entry.prev = lane.tail;
+        entry.next = null;
+        if (lane.tail != null)
+        {
+            lane.tail.next = entry;
+        }
+        else
+        {
+            lane.head = entry;
+        }
+        lane.tail = entry;
+        lane.depth++;
+        if (lane.depth > lane.maxDepth)
+        {
+            lane.maxDepth = lane.depth;
+        }
+        notifyAll();
+    }   //enqueue
+
+    /**
+     * This method removes an entry from its priority lane. It must be called with the queue locked.
+     *
+     * @param entry specifies the request entry.
+     */
+    private void unlink(RequestEntry entry)
+    {
+        Lane<RequestEntry> lane = entry.lane;
+
+        if (entry.prev != null)
+        {
+            entry.prev.next = entry.next;
+        }
+        else
+        {
+            lane.head = entry.next;
+        }
+
+        if (entry.next != null)
+        {
+            entry.next.prev = entry.prev;
+        }
+        else
+        {
+            lane.tail = entry.prev;
+        }
+        entry.lane = null;
+        entry.prev = entry.next = null;
+        lane.depth--;
+    }   //unlink
+
+    /**
+     * This method removes and returns the next entry to be processed, the priority request if there is one or else
+     * the head of the highest priority lane that is not empty. It blocks until there is an entry.
+     *
+     * @return next request entry.
+     * @throws InterruptedException if the request thread is interrupted while waiting.
+     */
+    private synchronized RequestEntry takeEntry() throws InterruptedException
+    {
+        RequestEntry entry = null;
+
+        while (entry == null)
+        {
+            if (priorityRequest != null)
+            {
+                entry = priorityRequest;
+                priorityRequest = null;
+            }
+            else
+            {
+                for (Lane<RequestEntry> lane: lanes)
+                {
+                    if (lane.head != null)
+                    {
+                        entry = lane.head;
+                        unlink(entry);
+                        break;
+                    }
+                }
+            }
+
+            if (entry == null)
+            {
+                wait();
+            }
+        }
+
+        return entry;
+    }   //takeEntry
+
     /**
      * This method is called when the request queue thread is started. It processes all entries in the request queue
      * when they arrive. If the request queue is empty, the thread is blocked until a new request arrives. Therefore,
@@ -323,24 +590,55 @@ public class TrcRequestQueue<R>
 
         while (!Thread.currentThread().isInterrupted())
         {
-            synchronized (this)
+            try
             {
-                if (priorityRequest != null)
-                {
-                    entry = priorityRequest;
-                    priorityRequest = null;
-                }
-                else
+                entry = takeEntry();
+
+                long startNanoTime = TrcUtil.getCurrentTimeNanos();
+                boolean expired = startNanoTime > entry.deadlineNanoTime;
+                synchronized (this)
                 {
-                    entry = null;
+                    long waitNanoTime = entry.enqueueNanoTime > 0? startNanoTime - entry.enqueueNanoTime: 0;
+
+                    totalWaitNanoTime += waitNanoTime;
+                    if (waitNanoTime > maxWaitNanoTime)
+                    {
+                        maxWaitNanoTime = waitNanoTime;
+                    }
+                    dequeuedCount++;
+                    if (expired)
+                    {
+                        expiredCount++;
+                    }
                 }
-            }
 
-            try
-            {
-                if (entry == null)
+                if (expired)
                 {
-                    entry = requestQueue.take();
+                    if (debugEnabled)
+                    {
+                        dbgTrace.traceInfo(funcName, "[%.3f] request %s expired", TrcUtil.getCurrentTime(), entry);
+                    }
+
+                    if (entry.repeat)
+                    {
+                        //
+                        // Skip the stale round of a repeat request and start a new one.
+                        //
+                        synchronized (this)
+                        {
+                            enqueue(entry);
+                        }
+                    }
+                    else
+                    {
+                        //
+                        // Let the requester know the request will not be processed.
+                        //
+                        entry.expired = true;
+                        entry.canceled = true;
+                        entry.requestHandler.notify(entry);
+                    }
+                    continue;
                 }
 
                 if (debugEnabled)
@@ -348,24 +646,27 @@ public class TrcRequestQueue<R>
                     dbgTrace.traceInfo(funcName, "[%.3f] processing request %s", TrcUtil.getCurrentTime(), entry);
                 }
 
-                long startNanoTime = TrcUtil.getCurrentTimeNanos();
                 entry.requestHandler.notify(entry);
                 long elapsedTime = TrcUtil.getCurrentTimeNanos() - startNanoTime;
-        
+
                 totalNanoTime += elapsedTime;
                 totalRequests++;
-        
+
                 if (perfTracer != null)
                 {
-                    perfTracer.traceInfo(funcName, "Average request process time = %.6f sec", totalNanoTime/totalRequests/1000000000.0);
+                    perfTracer.traceInfo(funcName, "Average request process time = %.6f sec",
+                        totalNanoTime/totalRequests/1000000000.0);
                 }
-        
+
                 if (entry.repeat)
                 {
                     //
-                    // This is a repeat request, add it back to the tail of the queue.
+                    // This is a repeat request, add it back to the tail of its lane.
                     //
-                    requestQueue.add(entry);
+                    synchronized (this)
+                    {
+                        enqueue(entry);
+                    }
                 }
             }
             catch (InterruptedException e)
@@ -383,13 +684,16 @@ public class TrcRequestQueue<R>
         //
         synchronized (this)
         {
-            while ((entry = requestQueue.poll()) != null)
+            for (Lane<RequestEntry> lane: lanes)
             {
-                if (debugEnabled)
+                while ((entry = lane.head) != null)
                 {
-                    dbgTrace.traceInfo(funcName, "[%.3f] Canceling request %s", TrcUtil.getCurrentTime(), entry);
+                    if (debugEnabled)
+                    {
+                        dbgTrace.traceInfo(funcName, "[%.3f] Canceling request %s", TrcUtil.getCurrentTime(), entry);
+                    }
+                    cancelRequest(entry);
                 }
-                cancelRequest(entry);
             }
 
             requestThread = null;
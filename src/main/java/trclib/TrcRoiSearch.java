@@ -0,0 +1,259 @@
+/*
+ * Copyright (c) 2019 Titan Robotics Club (http://www.titanrobotics.com)
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+
+package trclib;
+
+import java.util.IdentityHashMap;
+
+import org.opencv.core.Mat;
+import org.opencv.core.Rect;
+
+/**
+ * This class implements the region of interest search of an OpenCV detector on top of TrcRoiTracker. The detector
+ * starts the search of a frame with beginSearch when it prepares the frame, searches the image returned by
+ * getSearchImage when it detects objects and reports what it found with endSearch. A frame that is dropped in
+ * between is ended with discardSearch. The search window is kept per image buffer, so in pipelined mode the window
+ * of a frame is not clobbered by the window of the next frame being prepared while the frame is searched.
+ */
+public class TrcRoiSearch
+{
+    /**
+     * This class holds the search window of an image buffer.
+     */
+    private static class Window
+    {
+        final Rect rect = new Rect();
+        Mat searchImage = null;
+        boolean subImage = false;
+        TrcRoiTracker tracker = null;
+    }   //class Window
+
+    private final String instanceName;
+    private final IdentityHashMap<Mat, Window> windows = new IdentityHashMap<>();
+    private TrcRoiTracker roiTracker = null;
+
+    /**
+     * Constructor: Create an instance of the object.
+     *
+     * @param instanceName specifies the instance name.
+     */
+    public TrcRoiSearch(String instanceName)
+    {
+        this.instanceName = instanceName;
+    }   //TrcRoiSearch
+
+    /**
+     * This method returns the instance name.
+     *
+     * @return instance name.
+     */
+    @Override
+    public String toString()
+    {
+        return instanceName;
+    }   //toString
+
+    /**
+     * This method sets the region of interest tracker. It applies to frames whose search starts afterwards.
+     *
+     * @param roiTracker specifies the region of interest tracker, null to always search the full frame.
+     */
+    public synchronized void setRoiTracker(TrcRoiTracker roiTracker)
+    {
+        this.roiTracker = roiTracker;
+    }   //setRoiTracker
+
+    /**
+     * This method returns the region of interest tracker.
+     *
+     * @return region of interest tracker, null if none is set.
+     */
+    public synchronized TrcRoiTracker getRoiTracker()
+    {
+        return roiTracker;
+    }   //getRoiTracker
+
+    /**
+     * This method starts the search of a frame. If the tracker is tracking objects, the search image is a sub-matrix
+     * sharing the pixels of the window around their predicted position, otherwise it is the full prepared image.
+     *
+     * @param image specifies the acquired image, which identifies the frame.
+     * @param preparedImage specifies the image prepared for the search, can be the acquired image itself.
+     */
+    public void beginSearch(Mat image, Mat preparedImage)
+    {
+        Window window;
+        TrcRoiTracker tracker;
+
+        synchronized (this)
+        {
+            window = windows.computeIfAbsent(image, k -> new Window());
+            tracker = roiTracker;
+        }
+
+        if (window.searchImage != null)
+        {
+            //
+            // The last search of this buffer never ended, don't leak its window.
+            //
+            discardSearch(image);
+        }
+
+        window.tracker = tracker;
+        window.rect.x = window.rect.y = 0;
+        window.searchImage = preparedImage;
+        window.subImage = false;
+        if (tracker != null)
+        {
+            synchronized (tracker)
+            {
+                if (tracker.nextWindow(preparedImage.width(), preparedImage.height()))
+                {
+                    window.rect.x = tracker.getWindowX();
+                    window.rect.y = tracker.getWindowY();
+                    window.rect.width = tracker.getWindowWidth();
+                    window.rect.height = tracker.getWindowHeight();
+                    window.searchImage = preparedImage.submat(window.rect);
+                    window.subImage = true;
+                }
+            }
+        }
+    }   //beginSearch
+
+    /**
+     * This method returns the image to search in a frame.
+     *
+     * @param image specifies the acquired image.
+     * @return image to search, null if the search of the frame was not started.
+     */
+    public Mat getSearchImage(Mat image)
+    {
+        Window window;
+
+        synchronized (this)
+        {
+            window = windows.get(image);
+        }
+
+        return window != null? window.searchImage: null;
+    }   //getSearchImage
+
+    /**
+     * This method ends the search of a frame. It translates the rectangles of the detected objects in place from
+     * search image to full image coordinates, updates the tracker with them and frees the search window.
+     *
+     * @param image specifies the acquired image.
+     * @param objectRects specifies the rectangles of the detected objects in search image coordinates, null if none
+     *                    detected.
+     * @return true if the rectangles were moved because the window is offset in the image, false otherwise.
+     */
+    public boolean endSearch(Mat image, Rect[] objectRects)
+    {
+        Window window;
+        boolean moved = false;
+
+        synchronized (this)
+        {
+            window = windows.get(image);
+        }
+
+        if (window != null && window.searchImage != null)
+        {
+            moved = objectRects != null && objectRects.length > 0 && (window.rect.x != 0 || window.rect.y != 0);
+            if (objectRects != null)
+            {
+                for (Rect rect: objectRects)
+                {
+                    rect.x += window.rect.x;
+                    rect.y += window.rect.y;
+                }
+            }
+
+            TrcRoiTracker tracker = window.tracker;
+            if (tracker != null)
+            {
+                //
+                // Report the whole frame at once so that the next window being predicted on the preprocess thread
+                // does not start a new frame in the middle of it.
+                //
+                synchronized (tracker)
+                {
+                    if (objectRects != null)
+                    {
+                        for (Rect rect: objectRects)
+                        {
+                            tracker.addDetection(rect.x, rect.y, rect.width, rect.height);
+                        }
+                    }
+                    tracker.endFrame();
+                }
+            }
+            releaseWindow(window);
+        }
+
+        return moved;
+    }   //endSearch
+
+    /**
+     * This method ends the search of a frame that is dropped before it was searched. The frame is skipped in the
+     * tracker and the search window is freed. It does nothing if the search of the frame was not started or has
+     * already ended.
+     *
+     * @param image specifies the acquired image.
+     */
+    public void discardSearch(Mat image)
+    {
+        Window window;
+
+        synchronized (this)
+        {
+            window = windows.get(image);
+        }
+
+        if (window != null && window.searchImage != null)
+        {
+            if (window.tracker != null)
+            {
+                window.tracker.skipFrame();
+            }
+            releaseWindow(window);
+        }
+    }   //discardSearch
+
+    /**
+     * This method frees the search window of an image buffer.
+     *
+     * @param window specifies the search window.
+     */
+    private void releaseWindow(Window window)
+    {
+        if (window.subImage)
+        {
+            // Free the sub-matrix header now instead of waiting for the garbage collector, the pixels are shared.
+            window.searchImage.release();
+            window.subImage = false;
+        }
+        window.searchImage = null;
+        window.tracker = null;
+    }   //releaseWindow
+
+}   //class TrcRoiSearch
@@ -0,0 +1,375 @@
+/*
+ * Copyright (c) 2019 Titan Robotics Club (http://www.titanrobotics.com)
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+
+package trclib;
+
+/**
+ * This class implements a region of interest tracker for object detectors. Once objects are detected, the next
+ * frames are only searched in a window around the position where the objects are predicted to be, which cuts the
+ * number of pixels to process per frame. The prediction assumes the objects keep moving across the image as they did
+ * between the last two detections. If the objects are not found in the window, the window grows on every miss until
+ * the tracker gives up and searches the full frame again. The full frame is also searched periodically so that new
+ * objects outside of the window are picked up.
+ *
+ * The tracker works in pixel coordinates and is independent of the image library. For every frame, the detector
+ * calls nextWindow to get the window to search, reports the objects found with addDetection in full frame
+ * coordinates and calls endFrame.
+ */
+public class TrcRoiTracker
+{
+    private static final double DEF_MARGIN_SCALE = 0.5;
+    private static final int DEF_MIN_MARGIN = 16;
+    private static final double DEF_MISS_EXPANSION = 2.0;
+    private static final int DEF_MAX_MISSES = 3;
+    private static final int DEF_REACQUIRE_INTERVAL = 15;
+
+    private final String instanceName;
+    private double marginScale = DEF_MARGIN_SCALE;
+    private int minMargin = DEF_MIN_MARGIN;
+    private double missExpansion = DEF_MISS_EXPANSION;
+    private int maxMisses = DEF_MAX_MISSES;
+    private int reacquireInterval = DEF_REACQUIRE_INTERVAL;
+    //
+    // Track state: bounding box of the last detections and the motion of its center per frame.
+    //
+    private boolean tracking = false;
+    private double boxX, boxY, boxWidth, boxHeight;
+    private double velocityX, velocityY;
+    private int missCount = 0;
+    private int skipCount = 0;
+    private int framesSinceFullFrame = 0;
+    //
+    // Current frame state.
+    //
+    private int windowX, windowY, windowWidth, windowHeight;
+    private boolean fullFrame = true;
+    private boolean found = false;
+    private int minX, minY, maxX, maxY;
+    //
+    // Statistics.
+    //
+    private long fullFrameCount = 0;
+    private long windowFrameCount = 0;
+    private long pixelsSearched = 0;
+    private long pixelsTotal = 0;
+
+    /**
+     * Constructor: Create an instance of the object.
+     *
+     * @param instanceName specifies the instance name.
+     */
+    public TrcRoiTracker(String instanceName)
+    {
+        this.instanceName = instanceName;
+    }   //TrcRoiTracker
+
+    /**
+     * This method returns the instance name.
+     *
+     * @return instance name.
+     */
+    @Override
+    public String toString()
+    {
+        return instanceName;
+    }   //toString
+
+    /**
+     * This method sets the margin added around the predicted position of the objects.
+     *
+     * @param marginScale specifies the margin on each side as a fraction of the size of the objects.
+     * @param minMargin specifies the minimum margin on each side in pixels.
+     */
+    public synchronized void setMargin(double marginScale, int minMargin)
+    {
+        this.marginScale = marginScale;
+        this.minMargin = minMargin;
+    }   //setMargin
+
+    /**
+     * This method sets how the window grows when the objects are not found in it.
+     *
+     * @param missExpansion specifies the factor the margin is multiplied by on every consecutive miss.
+     * @param maxMisses specifies the number of consecutive misses after which the full frame is searched.
+     */
+    public synchronized void setMissPolicy(double missExpansion, int maxMisses)
+    {
+        this.missExpansion = missExpansion;
+        this.maxMisses = maxMisses;
+    }   //setMissPolicy
+
+    /**
+     * This method sets how often the full frame is searched while tracking to pick up new objects.
+     *
+     * @param reacquireInterval specifies the number of frames between full frame searches, 0 to never search the
+     *                          full frame while the objects are found in the window.
+     */
+    public synchronized void setReacquireInterval(int reacquireInterval)
+    {
+        this.reacquireInterval = reacquireInterval;
+    }   //setReacquireInterval
+
+    /**
+     * This method drops the track so that the next frame is searched in full.
+     */
+    public synchronized void reset()
+    {
+        tracking = false;
+        velocityX = velocityY = 0.0;
+        missCount = 0;
+        skipCount = 0;
+        framesSinceFullFrame = 0;
+    }   //reset
+
+    /**
+     * This method checks if objects are being tracked.
+     *
+     * @return true if tracking, false if searching the full frame for objects.
+     */
+    public synchronized boolean isTracking()
+    {
+        return tracking;
+    }   //isTracking
+
+    /**
+     * This method starts a frame and determines the window to search in it.
+     *
+     * @param imageWidth specifies the width of the image in pixels.
+     * @param imageHeight specifies the height of the image in pixels.
+     * @return true if only a window of the image is to be searched, false if the full frame is to be searched.
+     */
+    public synchronized boolean nextWindow(int imageWidth, int imageHeight)
+    {
+        framesSinceFullFrame++;
+        fullFrame = !tracking || missCount > maxMisses ||
+                    reacquireInterval > 0 && framesSinceFullFrame >= reacquireInterval;
+
+        if (!fullFrame)
+        {
+            //
+            // Center the window on the predicted position, with a margin that grows with every miss.
+            //
+            double frames = missCount + skipCount + 1;
+            double centerX = boxX + boxWidth/2.0 + velocityX*frames;
+            double centerY = boxY + boxHeight/2.0 + velocityY*frames;
+            double scale = marginScale*Math.pow(missExpansion, missCount);
+            double fixedMargin = minMargin*Math.pow(missExpansion, missCount);
+            double halfWidth = boxWidth*(0.5 + scale) + fixedMargin + Math.abs(velocityX);
+            double halfHeight = boxHeight*(0.5 + scale) + fixedMargin + Math.abs(velocityY);
+            int left = Math.max((int)Math.floor(centerX - halfWidth), 0);
+            int top = Math.max((int)Math.floor(centerY - halfHeight), 0);
+            int right = Math.min((int)Math.ceil(centerX + halfWidth), imageWidth);
+            int bottom = Math.min((int)Math.ceil(centerY + halfHeight), imageHeight);
+
+            if (right - left <= 0 || bottom - top <= 0)
+            {
+                // The prediction left the image.
+                fullFrame = true;
+            }
+            else if (right - left >= imageWidth && bottom - top >= imageHeight)
+            {
+                fullFrame = true;
+            }
+            else
+            {
+                windowX = left;
+                windowY = top;
+                windowWidth = right - left;
+                windowHeight = bottom - top;
+            }
+        }
+
+        if (fullFrame)
+        {
+            windowX = windowY = 0;
+            windowWidth = imageWidth;
+            windowHeight = imageHeight;
+            framesSinceFullFrame = 0;
+            fullFrameCount++;
+        }
+        else
+        {
+            windowFrameCount++;
+        }
+        pixelsSearched += (long)windowWidth*windowHeight;
+        pixelsTotal += (long)imageWidth*imageHeight;
+        found = false;
+
+        return !fullFrame;
+    }   //nextWindow
+
+    /**
+     * This method returns the x position of the search window of the current frame.
+     *
+     * @return left edge of the window in pixels.
+     */
+    public synchronized int getWindowX()
+    {
+        return windowX;
+    }   //getWindowX
+
+    /**
+     * This method returns the y position of the search window of the current frame.
+     *
+     * @return top edge of the window in pixels.
+     */
+    public synchronized int getWindowY()
+    {
+        return windowY;
+    }   //getWindowY
+
+    /**
+     * This method returns the width of the search window of the current frame.
+     *
+     * @return window width in pixels.
+     */
+    public synchronized int getWindowWidth()
+    {
+        return windowWidth;
+    }   //getWindowWidth
+
+    /**
+     * This method returns the height of the search window of the current frame.
+     *
+     * @return window height in pixels.
+     */
+    public synchronized int getWindowHeight()
+    {
+        return windowHeight;
+    }   //getWindowHeight
+
+    /**
+     * This method reports an object detected in the current frame.
+     *
+     * @param x specifies the left edge of the object in full frame pixel coordinates.
+     * @param y specifies the top edge of the object in full frame pixel coordinates.
+     * @param width specifies the width of the object in pixels.
+     * @param height specifies the height of the object in pixels.
+     */
+    public synchronized void addDetection(int x, int y, int width, int height)
+    {
+        if (!found)
+        {
+            minX = x;
+            minY = y;
+            maxX = x + width;
+            maxY = y + height;
+            found = true;
+        }
+        else
+        {
+            minX = Math.min(minX, x);
+            minY = Math.min(minY, y);
+            maxX = Math.max(maxX, x + width);
+            maxY = Math.max(maxY, y + height);
+        }
+    }   //addDetection
+
+    /**
+     * This method ends the current frame and updates the track with the objects detected in it.
+     */
+    public synchronized void endFrame()
+    {
+        if (found)
+        {
+            if (tracking)
+            {
+                //
+                // Spread the motion of the box center over the frames since it was last seen.
+                //
+                double frames = missCount + skipCount + 1;
+                velocityX = ((minX + maxX)/2.0 - (boxX + boxWidth/2.0))/frames;
+                velocityY = ((minY + maxY)/2.0 - (boxY + boxHeight/2.0))/frames;
+            }
+            else
+            {
+                velocityX = velocityY = 0.0;
+            }
+            boxX = minX;
+            boxY = minY;
+            boxWidth = maxX - minX;
+            boxHeight = maxY - minY;
+            tracking = true;
+            missCount = 0;
+            skipCount = 0;
+        }
+        else if (fullFrame)
+        {
+            // Nothing anywhere in the image, the objects are gone.
+            reset();
+        }
+        else
+        {
+            missCount++;
+        }
+    }   //endFrame
+
+    /**
+     * This method ends the current frame without searching it, for example because the detector dropped the frame.
+     * The objects kept moving during the frame, so the next window is predicted one frame further out, but the frame
+     * is not a miss and does not grow the window. If the skipped frame was to be searched in full, the next frame is
+     * searched in full instead.
+     */
+    public synchronized void skipFrame()
+    {
+        if (tracking)
+        {
+            skipCount++;
+        }
+
+        if (fullFrame)
+        {
+            framesSinceFullFrame = Math.max(reacquireInterval - 1, 0);
+        }
+    }   //skipFrame
+
+    /**
+     * This method returns the number of frames searched in full.
+     *
+     * @return number of full frames.
+     */
+    public synchronized long getFullFrameCount()
+    {
+        return fullFrameCount;
+    }   //getFullFrameCount
+
+    /**
+     * This method returns the number of frames searched in a window only.
+     *
+     * @return number of windowed frames.
+     */
+    public synchronized long getWindowFrameCount()
+    {
+        return windowFrameCount;
+    }   //getWindowFrameCount
+
+    /**
+     * This method returns the fraction of the image pixels that were searched over all frames.
+     *
+     * @return fraction of pixels searched, 1.0 if no frame was searched yet.
+     */
+    public synchronized double getSearchedPixelFraction()
+    {
+        return pixelsTotal == 0? 1.0: (double)pixelsSearched/pixelsTotal;
+    }   //getSearchedPixelFraction
+
+}   //class TrcRoiTracker
@@ -0,0 +1,342 @@
+/*
+ * Copyright (c) 2020 Titan Robotics Club (http://www.titanrobotics.com)
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+
+package trclib;
+
+/**
+ * This class implements a fixed capacity ring buffer of time stamped samples. Each sample has the same number of
+ * double fields which are stored in primitive arrays, one per field, so adding a sample never allocates. When the
+ * buffer is full, adding a sample evicts the oldest one.
+ *
+ * Queries operate on a window of the most recent samples. The window can be limited by the number of samples and by
+ * a minimum time stamp (freshness). Since samples are added in time order, the fresh samples are always the most
+ * recent ones and the window is found by a binary search. The mean of any window is O(1) using running sums and the
+ * median of the whole buffer is O(1) using a sorted copy of each field maintained on insert. The median of a
+ * partial window is computed in a scratch array without allocation.
+ *
+ * This class is not thread safe, the caller must provide synchronization if the buffer is shared between threads.
+ */
+public class TrcSampleRingBuffer
+{
+    private final int capacity;
+    private final int numFields;
+    private final double[] timestamps;
+    private final double[][] values;
+    private final double[][] sortedValues;
+    //
+    // cumulativeSums[field][slot] is the sum of all samples of the field added since the last clear up to and
+    // including the sample in the slot. The sum of the most recent n samples is the difference of two entries.
+    //
+    private final double[][] cumulativeSums;
+    private final double[] totalSums;
+    private final double[] scratch;
+    private int head = 0;
+    private int count = 0;
+
+    /**
+     * Constructor: Create an instance of the object.
+     *
+     * @param capacity specifies the maximum number of samples kept.
+     * @param numFields specifies the number of fields of each sample.
+     */
+    public TrcSampleRingBuffer(int capacity, int numFields)
+    {
+        if (capacity <= 0 || numFields <= 0)
+        {
+            throw new IllegalArgumentException("capacity and numFields must be positive.");
+        }
+
+        this.capacity = capacity;
+        this.numFields = numFields;
+        timestamps = new double[capacity];
+        values = new double[numFields][capacity];
+        sortedValues = new double[numFields][capacity];
+        cumulativeSums = new double[numFields][capacity];
+        totalSums = new double[numFields];
+        scratch = new double[capacity];
+    }   //TrcSampleRingBuffer
+
+    /**
+     * This method returns the maximum number of samples kept.
+     *
+     * @return buffer capacity.
+     */
+    public int getCapacity()
+    {
+        return capacity;
+    }   //getCapacity
+
+    /**
+     * This method returns the number of samples in the buffer.
+     *
+     * @return number of samples.
+     */
+    public int size()
+    {
+        return count;
+    }   //size
+
+    /**
+     * This method checks if the buffer is empty.
+     *
+     * @return true if the buffer has no sample, false otherwise.
+     */
+    public boolean isEmpty()
+    {
+        return count == 0;
+    }   //isEmpty
+
+    /**
+     * This method removes all samples from the buffer.
+     */
+    public void clear()
+    {
+        head = 0;
+        count = 0;
+        for (int i = 0; i < numFields; i++)
+        {
+            totalSums[i] = 0.0;
+        }
+    }   //clear
+
+    /**
+     * This method adds a sample to the buffer, evicting the oldest sample if the buffer is full.
+     *
+     * @param timestamp specifies the time stamp of the sample, must not be older than the previous sample.
+     * @param sample specifies the field values of the sample, must have at least numFields elements.
+     */
+    public void add(double timestamp, double[] sample)
+    {
+        int slot = (head + count) % capacity;
+
+        if (count == capacity)
+        {
+            for (int i = 0; i < numFields; i++)
+            {
+                removeSorted(sortedValues[i], count, values[i][slot]);
+            }
+            head = (head + 1) % capacity;
+            count--;
+        }
+
+        timestamps[slot] = timestamp;
+        for (int i = 0; i < numFields; i++)
+        {
+            values[i][slot] = sample[i];
+            totalSums[i] += sample[i];
+            cumulativeSums[i][slot] = totalSums[i];
+            insertSorted(sortedValues[i], count, sample[i]);
+        }
+        count++;
+    }   //add
+
+    /**
+     * This method returns the time stamp of the most recent sample.
+     *
+     * @return time stamp of the newest sample, NaN if the buffer is empty.
+     */
+    public double getLatestTimestamp()
+    {
+        return count == 0? Double.NaN: timestamps[(head + count - 1) % capacity];
+    }   //getLatestTimestamp
+
+    /**
+     * This method returns the field value of a sample.
+     *
+     * @param field specifies the field index.
+     * @param age specifies the sample age, 0 for the most recent sample.
+     * @return field value.
+     */
+    public double get(int field, int age)
+    {
+        if (age < 0 || age >= count)
+        {
+            throw new IndexOutOfBoundsException("Invalid sample age " + age);
+        }
+
+        return values[field][(head + count - 1 - age) % capacity];
+    }   //get
+
+    /**
+     * This method returns the number of the most recent samples within the given limits.
+     *
+     * @param maxSamples specifies the maximum number of samples.
+     * @param minTimestamp specifies the time stamp of the oldest sample allowed, NaN for no freshness limit.
+     * @return number of samples in the window.
+     */
+    public int getWindowSize(int maxSamples, double minTimestamp)
+    {
+        int windowSize = Math.min(Math.max(maxSamples, 0), count);
+
+        if (!Double.isNaN(minTimestamp) && windowSize > 0)
+        {
+            //
+            // Binary search the number of fresh samples, time stamps are in ascending order from the oldest sample.
+            //
+            int low = 0;
+            int high = count;
+
+            while (low < high)
+            {
+                int mid = (low + high) >>> 1;
+
+                if (timestamps[(head + mid) % capacity] >= minTimestamp)
+                {
+                    high = mid;
+                }
+                else
+                {
+                    low = mid + 1;
+                }
+            }
+            windowSize = Math.min(windowSize, count - low);
+        }
+
+        return windowSize;
+    }   //getWindowSize
+
+    /**
+     * This method returns the mean of a field over the most recent samples.
+     *
+     * @param field specifies the field index.
+     * @param windowSize specifies the number of the most recent samples, typically from getWindowSize.
+     * @return mean value, NaN if the window is empty.
+     */
+    public double getMean(int field, int windowSize)
+    {
+        double mean = Double.NaN;
+
+        windowSize = Math.min(windowSize, count);
+        if (windowSize > 0)
+        {
+            double sum = totalSums[field];
+
+            if (windowSize < count)
+            {
+                sum -= cumulativeSums[field][(head + count - 1 - windowSize) % capacity];
+            }
+            else
+            {
+                // The sum before the oldest sample is its cumulative sum minus its own value.
+                sum -= cumulativeSums[field][head] - values[field][head];
+            }
+            mean = sum/windowSize;
+        }
+
+        return mean;
+    }   //getMean
+
+    /**
+     * This method returns the median of a field over the most recent samples. If the window has an even number of
+     * samples, the median is the average of the two middle values.
+     *
+     * @param field specifies the field index.
+     * @param windowSize specifies the number of the most recent samples, typically from getWindowSize.
+     * @return median value, NaN if the window is empty.
+     */
+    public double getMedian(int field, int windowSize)
+    {
+        double median = Double.NaN;
+        double[] sorted;
+
+        windowSize = Math.min(windowSize, count);
+        if (windowSize > 0)
+        {
+            if (windowSize == count)
+            {
+                sorted = sortedValues[field];
+            }
+            else
+            {
+                sorted = scratch;
+                for (int i = 0; i < windowSize; i++)
+                {
+                    insertSorted(scratch, i, values[field][(head + count - windowSize + i) % capacity]);
+                }
+            }
+
+            median = windowSize % 2 == 1? sorted[windowSize/2]:
+                (sorted[windowSize/2 - 1] + sorted[windowSize/2])/2.0;
+        }
+
+        return median;
+    }   //getMedian
+
+    /**
+     * This method inserts a value into a sorted array.
+     *
+     * @param array specifies the sorted array.
+     * @param length specifies the number of values in the array.
+     * @param value specifies the value to insert.
+     */
+    private static void insertSorted(double[] array, int length, double value)
+    {
+        int i = length;
+
+        while (i > 0 && array[i - 1] > value)
+        {
+            array[i] = array[i - 1];
+            i--;
+        }
+        array[i] = value;
+    }   //insertSorted
+
+    /**
+     * This method removes a value from a sorted array.
+     *
+     * @param array specifies the sorted array.
+     * @param length specifies the number of values in the array.
+     * @param value specifies the value to remove, it must be in the array.
+     */
+    private static void removeSorted(double[] array, int length, double value)
+    {
+        int low = 0;
+        int high = length - 1;
+        int index = -1;
+
+        while (low <= high && index == -1)
+        {
+            int mid = (low + high) >>> 1;
+
+            if (array[mid] < value)
+            {
+                low = mid + 1;
+            }
+            else if (array[mid] > value)
+            {
+                high = mid - 1;
+            }
+            else
+            {
+                index = mid;
+            }
+        }
+
+        if (index == -1)
+        {
+            // NaN values are not ordered, fall back to a linear search.
+            for (index = 0; index < length - 1 && Double.compare(array[index], value) != 0; index++);
+        }
+        System.arraycopy(array, index + 1, array, index, length - index - 1);
+    }   //removeSorted
+
+}   //class TrcSampleRingBuffer
@@ -22,7 +22,9 @@
 
 package trclib;
 
+import java.util.ArrayList;
 import java.util.Arrays;
+import java.util.Comparator;
 import java.util.Locale;
 
 /**
@@ -31,6 +33,12 @@ import java.util.Locale;
  * to access the device. Optionally, it creates a request queue to allow both synchronous and asynchronous requests
  * to be queued for processing. The request queue is processed by a separate thread for asynchronous access. If
  * no request queue is specified, only synchronous requests are allowed.
+ *
+ * With batching enabled, requests are staged and processed by the request thread in batches: reads of adjacent or
+ * overlapping registers are merged into one bus transaction and repeated writes to the same register are coalesced
+ * so only the last one is sent. The batch is queued in the priority lane of its most urgent request, and the
+ * requests in a batch keep their own priority and timeout. With the buffer pool enabled, read buffers handed to
+ * completion handlers are recycled once the handler returns.
  */
 public abstract class TrcSerialBusDevice
 {
@@ -61,6 +69,29 @@ public abstract class TrcSerialBusDevice
      */
     public abstract int writeData(int address, byte[] buffer, int length);
 
+    /**
+     * This method is called to read data from the device synchronously into the given buffer. The default
+     * implementation reads into a new buffer and copies the data. Platform dependent devices that can read into a
+     * caller supplied buffer should override it to avoid the allocation.
+     *
+     * @param address specifies the data address if any, can be -1 if no address is required.
+     * @param buffer specifies the buffer to receive the data, must be at least length bytes long.
+     * @param length specifies the number of bytes to read.
+     * @return true if the data was read, false otherwise.
+     */
+    public boolean readData(int address, byte[] buffer, int length)
+    {
+        byte[] data = readData(address, length);
+        boolean success = data != null && data.length >= length;
+
+        if (success)
+        {
+            System.arraycopy(data, 0, buffer, 0, length);
+        }
+
+        return success;
+    }   //readData
+
     /**
      * This class implements a request. Typically, a request will be put into a FIFO request queue so that each
      * request will be processed in the order they came in.
@@ -75,6 +106,13 @@ public abstract class TrcSerialBusDevice
         public TrcEvent completionEvent;
         public TrcNotifier.Receiver completionHandler;
         public boolean canceled;
+        // The following are only used by TrcSerialBusDevice.
+        private boolean repeat;
+        private boolean pooledBuffer;
+        private TrcRequestQueue.Priority priority = TrcRequestQueue.Priority.NORMAL;
+        private double timeout = 0.0;
+        private long deadlineNanoTime = Long.MAX_VALUE;
+        private TrcRequestQueue<Request>.RequestEntry entry = null;
 
         /**
          * Constructor: Create an instance of the object.
@@ -118,8 +156,90 @@ public abstract class TrcSerialBusDevice
 
     }   //class Request
 
+    /**
+     * This class implements a pool of byte buffers with a free list per length. Devices typically read the same few
+     * lengths over and over, so a handful of buffers per length is enough. Buffers longer than MAX_POOLED_LENGTH
+     * are not pooled.
+     */
+    private static class BufferPool
+    {
+        private static final int MAX_POOLED_LENGTH = 256;
+        private static final int MAX_BUFFERS_PER_LENGTH = 8;
+        private final byte[][][] freeBuffers = new byte[MAX_POOLED_LENGTH + 1][][];
+        private final int[] freeCounts = new int[MAX_POOLED_LENGTH + 1];
+        private long allocatedCount = 0;
+        private long reusedCount = 0;
+
+        /**
+         * This method returns a buffer of the given length, from the pool if there is one.
+         *
+         * @param length specifies the buffer length.
+         * @return buffer.
+         */
+        synchronized byte[] acquire(int length)
+        {
+            byte[] buffer = null;
+
+            if (length <= MAX_POOLED_LENGTH && freeCounts[length] > 0)
+            {
+                freeCounts[length]--;
+                buffer = freeBuffers[length][freeCounts[length]];
+                freeBuffers[length][freeCounts[length]] = null;
+                reusedCount++;
+            }
+            else
+            {
+                buffer = new byte[length];
+                allocatedCount++;
+            }
+
+            return buffer;
+        }   //acquire
+
+        /**
+         * This method returns a buffer to the pool.
+         *
+         * @param buffer specifies the buffer to return.
+         */
+        synchronized void release(byte[] buffer)
+        {
+            int length = buffer.length;
+
+            if (length <= MAX_POOLED_LENGTH && freeCounts[length] < MAX_BUFFERS_PER_LENGTH)
+            {
+                if (freeBuffers[length] == null)
+                {
+                    freeBuffers[length] = new byte[MAX_BUFFERS_PER_LENGTH][];
+                }
+                freeBuffers[length][freeCounts[length]] = buffer;
+                freeCounts[length]++;
+            }
+        }   //release
+
+    }   //class BufferPool
+
+    private static final int DEF_MAX_BATCH_LENGTH = 32;
+    private static final Comparator<Request> byPriority = Comparator.comparingInt(r -> r.priority.ordinal());
+
     private final String instanceName;
     private final TrcRequestQueue<Request> requestQueue;
+    private final BufferPool bufferPool = new BufferPool();
+    private volatile boolean bufferPoolEnabled = false;
+    //
+    // Batching stage. The pending requests are drained by the request thread when it processes the batch request.
+    //
+    private final ArrayList<Request> pendingRequests = new ArrayList<>();
+    private final Request batchRequest;
+    private TrcRequestQueue<Request>.RequestEntry batchEntry = null;
+    private boolean batchingEnabled = false;
+    private int maxBatchLength = DEF_MAX_BATCH_LENGTH;
+    // The following are only accessed by the request thread.
+    private final ArrayList<Request> batch = new ArrayList<>();
+    private final ArrayList<Request> run = new ArrayList<>();
+    private final ArrayList<Request> repeatRequests = new ArrayList<>();
+    private long transactionCount = 0;
+    private long mergedReadCount = 0;
+    private long coalescedWriteCount = 0;
 
     /**
      * Constructor: Creates an instance of the object.
@@ -137,6 +257,7 @@ public abstract class TrcSerialBusDevice
 
         this.instanceName = instanceName;
         requestQueue = useRequestQueue ? new TrcRequestQueue<>(instanceName) : null;
+        batchRequest = new Request("batch", false, -1, null, 0, null, null);
     }   //TrcSerialBusDevice
 
     /**
@@ -155,11 +276,40 @@ public abstract class TrcSerialBusDevice
      *
      * @param enabled specifies true to enable device thread, false to disable.
      */
-    public synchronized void setEnabled(boolean enabled)
+    public void setEnabled(boolean enabled)
     {
-        if (requestQueue != null)
+        Request[] canceledRequests = null;
+
+        synchronized (this)
+        {
+            if (requestQueue != null)
+            {
+                requestQueue.setEnabled(enabled);
+                if (!enabled)
+                {
+                    //
+                    // The request queue cancels its pending entries, cancel the staged requests along with them.
+                    //
+                    synchronized (pendingRequests)
+                    {
+                        canceledRequests = pendingRequests.toArray(new Request[0]);
+                        pendingRequests.clear();
+                        batchEntry = null;
+                    }
+                }
+            }
+        }
+        //
+        // Complete the canceled requests without holding the lock, their handlers may call back into the device.
+        //
+        if (canceledRequests != null)
         {
-            requestQueue.setEnabled(enabled);
+            for (Request request: canceledRequests)
+            {
+                request.canceled = true;
+                request.repeat = false;
+                completeRequest(request);
+            }
         }
     }   //setEnabled
 
@@ -173,6 +323,100 @@ public abstract class TrcSerialBusDevice
         return requestQueue == null || requestQueue.isEnabled();
     }   //isEnabled
 
+    /**
+     * This method enables/disables batching of queued requests. Reads of adjacent or overlapping registers are
+     * merged into one read and repeated writes to the same register are coalesced, so it must only be enabled for
+     * devices that auto-increment the register address on multi-byte access and have no registers with read or
+     * write side effects. Requests without an address are never merged or coalesced.
+     *
+     * @param enabled specifies true to enable batching, false to disable.
+     */
+    public void setBatchingEnabled(boolean enabled)
+    {
+        if (requestQueue == null)
+        {
+            throw new UnsupportedOperationException("Batching is not supported without a request queue.");
+        }
+
+        synchronized (pendingRequests)
+        {
+            batchingEnabled = enabled;
+        }
+    }   //setBatchingEnabled
+
+    /**
+     * This method sets the maximum number of bytes read in one merged transaction.
+     *
+     * @param maxLength specifies the maximum merged read length.
+     */
+    public void setMaxBatchLength(int maxLength)
+    {
+        if (maxLength <= 0)
+        {
+            throw new IllegalArgumentException("maxLength must be positive.");
+        }
+
+        synchronized (pendingRequests)
+        {
+            maxBatchLength = maxLength;
+        }
+    }   //setMaxBatchLength
+
+    /**
+     * This method enables/disables recycling of read buffers. When enabled, the buffer of an asynchronous read
+     * request that has a completion handler but no completion event is returned to a pool once the handler returns,
+     * so the handler must not keep a reference to the buffer.
+     *
+     * @param enabled specifies true to enable the buffer pool, false to disable.
+     */
+    public void setBufferPoolEnabled(boolean enabled)
+    {
+        bufferPoolEnabled = enabled;
+    }   //setBufferPoolEnabled
+
+    /**
+     * This method returns the number of bus transactions performed by the request thread.
+     *
+     * @return number of bus transactions.
+     */
+    public synchronized long getTransactionCount()
+    {
+        return transactionCount;
+    }   //getTransactionCount
+
+    /**
+     * This method returns the number of read requests that were merged into the transaction of another request.
+     *
+     * @return number of merged reads.
+     */
+    public synchronized long getMergedReadCount()
+    {
+        return mergedReadCount;
+    }   //getMergedReadCount
+
+    /**
+     * This method returns the number of write requests that were superseded by a later write to the same register.
+     *
+     * @return number of coalesced writes.
+     */
+    public synchronized long getCoalescedWriteCount()
+    {
+        return coalescedWriteCount;
+    }   //getCoalescedWriteCount
+
+    /**
+     * This method returns the number of read buffers reused from the buffer pool.
+     *
+     * @return number of reused buffers.
+     */
+    public long getReusedBufferCount()
+    {
+        synchronized (bufferPool)
+        {
+            return bufferPool.reusedCount;
+        }
+    }   //getReusedBufferCount
+
     /**
      * This method is doing a synchronous read from the device with the specified length to read.
      *
@@ -199,17 +443,19 @@ public abstract class TrcSerialBusDevice
         {
             TrcEvent completionEvent = new TrcEvent(instanceName + "." + funcName);
             Request request = new Request(null, true, address, null, length, completionEvent, null);
-            TrcRequestQueue<Request>.RequestEntry entry = requestQueue.add(request, this::requestHandler, false);
 
-            while (!completionEvent.isSignaled())
+            if (queueRequest(request, false, TrcRequestQueue.Priority.NORMAL, 0.0))
             {
-                Thread.yield();
-            }
+                while (!completionEvent.isSignaled())
+                {
+                    Thread.yield();
+                }
 
-            if (!entry.isCanceled())
-            {
-                data = request.buffer;
-                request.buffer = null;
+                if (!request.canceled)
+                {
+                    data = request.buffer;
+                    request.buffer = null;
+                }
             }
         }
         else
@@ -265,16 +511,18 @@ public abstract class TrcSerialBusDevice
         {
             TrcEvent completionEvent = new TrcEvent(instanceName + "." + funcName);
             Request request = new Request(null, false, address, data, length, completionEvent, null);
-            TrcRequestQueue<Request>.RequestEntry  entry = requestQueue.add(request, this::requestHandler, false);
 
-            while (!completionEvent.isSignaled())
+            if (queueRequest(request, false, TrcRequestQueue.Priority.NORMAL, 0.0))
             {
-                Thread.yield();
-            }
+                while (!completionEvent.isSignaled())
+                {
+                    Thread.yield();
+                }
 
-            if (!entry.isCanceled())
-            {
-                bytesWritten = request.length;
+                if (!request.canceled)
+                {
+                    bytesWritten = request.length;
+                }
             }
         }
         else
@@ -303,34 +551,45 @@ public abstract class TrcSerialBusDevice
     }   //syncWrite
 
     /**
-     * This method is doing an asynchronous read from the device with the specified length to read.
+     * This method is doing an asynchronous read from the device with the specified length to read. The request is
+     * queued in the given priority lane. If it waits in the queue longer than the timeout, it is completed as
+     * canceled without accessing the device. With batching enabled, requests are processed together in one batch
+     * in priority order.
      *
      * @param requestId specifies the request ID and is not interpreted by the TrcSerialBusDevice class.
      *                    it is just passed back to the requester's notification handler.
      * @param address specifies the data address if any, can be -1 if no address is required.
      * @param length specifies the number of bytes to read.
      * @param repeat specifies true to re-queue the request when completed.
+     * @param priority specifies the priority lane of the request.
+     * @param timeout specifies the maximum time in seconds the request may wait in the queue, 0.0 for no timeout.
      * @param completionEvent specifies the event to signal when the request is completed,
      *                        can be null if none specified.
      * @param completionHandler specifies the notification handler to call when the request is completed,
      *                          can be null if none specified.
+     * @return request that can be passed to cancelRequest, null if the request queue is not enabled.
      */
-    public void asyncRead(
-        Object requestId, int address, int length, boolean repeat, TrcEvent completionEvent,
-        TrcNotifier.Receiver completionHandler)
+    public Request asyncRead(
+        Object requestId, int address, int length, boolean repeat, TrcRequestQueue.Priority priority, double timeout,
+        TrcEvent completionEvent, TrcNotifier.Receiver completionHandler)
     {
         final String funcName = "asyncRead";
+        Request request = null;
 
         if (debugEnabled)
         {
-            dbgTrace.traceEnter(funcName, TrcDbgTrace.TraceLevel.API, "Id=%s,addr=%d,len=%d,repeat=%s,event=%s",
-                requestId == null? "null": requestId, address, length, repeat, completionEvent);
+            dbgTrace.traceEnter(funcName, TrcDbgTrace.TraceLevel.API,
+                "Id=%s,addr=%d,len=%d,repeat=%s,priority=%s,timeout=%.3f,event=%s",
+                requestId == null? "null": requestId, address, length, repeat, priority, timeout, completionEvent);
         }
 
         if (requestQueue != null)
         {
-            Request request = new Request(requestId, true, address, null, length, completionEvent, completionHandler);
-            requestQueue.add(request, this::requestHandler, repeat);
+            request = new Request(requestId, true, address, null, length, completionEvent, completionHandler);
+            if (!queueRequest(request, repeat, priority, timeout))
+            {
+                request = null;
+            }
         }
         else
         {
@@ -339,8 +598,33 @@ public abstract class TrcSerialBusDevice
 
         if (debugEnabled)
         {
-            dbgTrace.traceExit(funcName, TrcDbgTrace.TraceLevel.API);
+            dbgTrace.traceExit(funcName, TrcDbgTrace.TraceLevel.API, "=%s", request);
         }
+
+        return request;
+    }   //asyncRead
+
+    /**
+     * This method is doing an asynchronous read from the device with the specified length to read.
+     *
+     * @param requestId specifies the request ID and is not interpreted by the TrcSerialBusDevice class.
+     *                    it is just passed back to the requester's notification handler.
+     * @param address specifies the data address if any, can be -1 if no address is required.
+     * @param length specifies the number of bytes to read.
+     * @param repeat specifies true to re-queue the request when completed.
+     * @param completionEvent specifies the event to signal when the request is completed,
+     *                        can be null if none specified.
+     * @param completionHandler specifies the notification handler to call when the request is completed,
+     *                          can be null if none specified.
+     * @return request that can be passed to cancelRequest, null if the request queue is not enabled.
+     */
+    public Request asyncRead(
+        Object requestId, int address, int length, boolean repeat, TrcEvent completionEvent,
+        TrcNotifier.Receiver completionHandler)
+    {
+        return asyncRead(
+            requestId, address, length, repeat, TrcRequestQueue.Priority.NORMAL, 0.0, completionEvent,
+            completionHandler);
     }   //asyncRead
 
     /**
@@ -391,34 +675,46 @@ public abstract class TrcSerialBusDevice
     }   //asyncRead
 
     /**
-     * This method is doing an asynchronous write to the device with the specified data and length
+     * This method is doing an asynchronous write to the device with the specified data and length. The request is
+     * queued in the given priority lane. If it waits in the queue longer than the timeout, it is completed as
+     * canceled without accessing the device. With batching enabled, requests are processed together in one batch
+     * in priority order.
      *
      * @param requestId specifies the request ID and is not interpreted by the TrcSerialBusDevice class.
      *                    it is just passed back to the requester's notification handler.
      * @param address specifies the data address if any, can be -1 if no address is required.
      * @param data specifies the buffer containing the data to write to the device.
      * @param length specifies the number of bytes to write.
+     * @param priority specifies the priority lane of the request.
+     * @param timeout specifies the maximum time in seconds the request may wait in the queue, 0.0 for no timeout.
      * @param completionEvent specifies the event to signal when the request is completed,
      *                        can be null if none specified.
      * @param completionHandler specifies the notification handler to call when the request is completed,
      *                          can be null if none specified.
+     * @return request that can be passed to cancelRequest, null if the request queue is not enabled.
      */
-    public void asyncWrite(
-        Object requestId, int address, byte[] data, int length, TrcEvent completionEvent,
-        TrcNotifier.Receiver completionHandler)
+    public Request asyncWrite(
+        Object requestId, int address, byte[] data, int length, TrcRequestQueue.Priority priority, double timeout,
+        TrcEvent completionEvent, TrcNotifier.Receiver completionHandler)
     {
         final String funcName = "asyncWrite";
+        Request request = null;
 
         if (debugEnabled)
         {
-            dbgTrace.traceEnter(funcName, TrcDbgTrace.TraceLevel.API, "ctxt=%s,addr=%d,data=%s,length=%d,event=%s",
-                requestId == null? "null": requestId, address, Arrays.toString(data), length, completionEvent);
+            dbgTrace.traceEnter(funcName, TrcDbgTrace.TraceLevel.API,
+                "ctxt=%s,addr=%d,data=%s,length=%d,priority=%s,timeout=%.3f,event=%s",
+                requestId == null? "null": requestId, address, Arrays.toString(data), length, priority, timeout,
+                completionEvent);
         }
 
         if (requestQueue != null)
         {
-            Request request = new Request(requestId, false, address, data, length, completionEvent, completionHandler);
-            requestQueue.add(request, this::requestHandler, false);
+            request = new Request(requestId, false, address, data, length, completionEvent, completionHandler);
+            if (!queueRequest(request, false, priority, timeout))
+            {
+                request = null;
+            }
         }
         else
         {
@@ -427,8 +723,33 @@ public abstract class TrcSerialBusDevice
 
         if (debugEnabled)
         {
-            dbgTrace.traceExit(funcName, TrcDbgTrace.TraceLevel.API);
+            dbgTrace.traceExit(funcName, TrcDbgTrace.TraceLevel.API, "=%s", request);
         }
+
+        return request;
+    }   //asyncWrite
+
+    /**
+     * This method is doing an asynchronous write to the device with the specified data and length
+     *
+     * @param requestId specifies the request ID and is not interpreted by the TrcSerialBusDevice class.
+     *                    it is just passed back to the requester's notification handler.
+     * @param address specifies the data address if any, can be -1 if no address is required.
+     * @param data specifies the buffer containing the data to write to the device.
+     * @param length specifies the number of bytes to write.
+     * @param completionEvent specifies the event to signal when the request is completed,
+     *                        can be null if none specified.
+     * @param completionHandler specifies the notification handler to call when the request is completed,
+     *                          can be null if none specified.
+     * @return request that can be passed to cancelRequest, null if the request queue is not enabled.
+     */
+    public Request asyncWrite(
+        Object requestId, int address, byte[] data, int length, TrcEvent completionEvent,
+        TrcNotifier.Receiver completionHandler)
+    {
+        return asyncWrite(
+            requestId, address, data, length, TrcRequestQueue.Priority.NORMAL, 0.0, completionEvent,
+            completionHandler);
     }   //asyncWrite
 
     /**
@@ -447,6 +768,36 @@ public abstract class TrcSerialBusDevice
         asyncWrite(requestCtxt, -1, data, length, event, handler);
     }   //asyncWrite
 
+    /**
+     * This method cancels a request from asyncRead or asyncWrite if it is still waiting to be processed, whether it
+     * is in the request queue or staged for a batch. Like TrcRequestQueue.cancelRequest, a canceled request is not
+     * completed. With batching enabled, a repeat request that is being processed is not queued again either.
+     *
+     * @param request specifies the request to be canceled.
+     * @return true if the request was waiting and is canceled, false otherwise.
+     */
+    public boolean cancelRequest(Request request)
+    {
+        boolean canceled;
+
+        synchronized (pendingRequests)
+        {
+            request.repeat = false;
+            canceled = pendingRequests.remove(request);
+            if (!canceled && request.entry != null)
+            {
+                canceled = requestQueue.cancelRequest(request.entry);
+            }
+
+            if (canceled)
+            {
+                request.canceled = true;
+            }
+        }
+
+        return canceled;
+    }   //cancelRequest
+
     /**
      * This method writes the data to the device preemptively bypassing the queue.
      *
@@ -542,6 +893,59 @@ public abstract class TrcSerialBusDevice
         }
     }   //sendWordCommand
 
+    /**
+     * This method queues a request, either directly on the request queue or in the batching stage. A staged request
+     * makes sure the batch is queued in a lane at least as urgent as its own.
+     *
+     * @param request specifies the request.
+     * @param repeat specifies true to re-queue the request when completed.
+     * @param priority specifies the priority lane of the request.
+     * @param timeout specifies the maximum time in seconds the request may wait in the queue, 0.0 for no timeout.
+     * @return true if the request is queued, false if the request queue is not enabled.
+     */
+    private boolean queueRequest(Request request, boolean repeat, TrcRequestQueue.Priority priority, double timeout)
+    {
+        boolean queued;
+
+        synchronized (pendingRequests)
+        {
+            request.repeat = repeat;
+            request.priority = priority;
+            request.timeout = timeout;
+            if (batchingEnabled)
+            {
+                request.deadlineNanoTime =
+                    timeout > 0.0? TrcUtil.getCurrentTimeNanos() + (long) (timeout*1000000000.0): Long.MAX_VALUE;
+                pendingRequests.add(request);
+                if (batchEntry == null || priority.ordinal() < batchEntry.getPriority().ordinal())
+                {
+                    //
+                    // Move the batch up to the lane of the new request. If the request thread has already taken the
+                    // old entry, the new one processes whatever is staged by then.
+                    //
+                    if (batchEntry != null)
+                    {
+                        requestQueue.cancelRequest(batchEntry);
+                    }
+                    batchEntry = requestQueue.add(batchRequest, this::batchHandler, false, priority, 0.0);
+                }
+
+                queued = batchEntry != null;
+                if (!queued)
+                {
+                    pendingRequests.remove(pendingRequests.size() - 1);
+                }
+            }
+            else
+            {
+                request.entry = requestQueue.add(request, this::requestHandler, repeat, priority, timeout);
+                queued = request.entry != null;
+            }
+        }
+
+        return queued;
+    }   //queueRequest
+
     /**
      * This method processes a request.
      *
@@ -562,25 +966,317 @@ public abstract class TrcSerialBusDevice
         request.canceled = entry.isCanceled();
         if (!request.canceled)
         {
-            if (request.readRequest)
+            performRequest(request);
+        }
+        completeRequest(request);
+
+        if (debugEnabled)
+        {
+            dbgTrace.traceExit(funcName, TrcDbgTrace.TraceLevel.TASK);
+        }
+    }   //requestHandler
+
+    /**
+     * This method processes the batch request. It drains the batching stage and processes the requests in priority
+     * order, merging runs of register reads and coalescing runs of register writes. Requests that waited longer than
+     * their timeout are completed as canceled, or skip this round if they repeat.
+     *
+     * @param context specifies the request entry of the batch request.
+     */
+    private void batchHandler(Object context)
+    {
+        final String funcName = "batchHandler";
+        int maxLength;
+
+        synchronized (pendingRequests)
+        {
+            batch.addAll(pendingRequests);
+            pendingRequests.clear();
+            if (context == batchEntry)
             {
-                request.buffer = readData(request.address, request.length);
-                if (debugEnabled)
+                batchEntry = null;
+            }
+            maxLength = maxBatchLength;
+        }
+
+        if (debugEnabled)
+        {
+            dbgTrace.traceEnter(funcName, TrcDbgTrace.TraceLevel.TASK, "batchSize=%d", batch.size());
+        }
+
+        long currNanoTime = TrcUtil.getCurrentTimeNanos();
+        int numValid = 0;
+        for (int i = 0; i < batch.size(); i++)
+        {
+            Request request = batch.get(i);
+
+            if (currNanoTime > request.deadlineNanoTime)
+            {
+                if (request.repeat)
+                {
+                    repeatRequests.add(request);
+                }
+                else
+                {
+                    request.canceled = true;
+                    completeRequest(request);
+                }
+            }
+            else
+            {
+                batch.set(numValid, request);
+                numValid++;
+            }
+        }
+
+        while (batch.size() > numValid)
+        {
+            batch.remove(batch.size() - 1);
+        }
+        // The sort is stable, requests of the same priority stay in the order they were made.
+        batch.sort(byPriority);
+
+        int i = 0;
+        while (i < batch.size())
+        {
+            Request request = batch.get(i);
+            int runEnd = i + 1;
+
+            if (request.address != -1)
+            {
+                while (runEnd < batch.size() && batch.get(runEnd).address != -1 &&
+                       batch.get(runEnd).readRequest == request.readRequest &&
+                       batch.get(runEnd).priority == request.priority)
+                {
+                    runEnd++;
+                }
+            }
+
+            if (runEnd - i == 1)
+            {
+                request.canceled = false;
+                performRequest(request);
+                completeRequest(request);
+            }
+            else if (request.readRequest)
+            {
+                performReadRun(i, runEnd, maxLength);
+            }
+            else
+            {
+                performWriteRun(i, runEnd);
+            }
+            i = runEnd;
+        }
+
+        for (Request request: batch)
+        {
+            if (request.repeat)
+            {
+                repeatRequests.add(request);
+            }
+        }
+        batch.clear();
+
+        synchronized (pendingRequests)
+        {
+            for (Request request: repeatRequests)
+            {
+                //
+                // A repeat request may have been canceled while it was processed.
+                //
+                if (request.repeat)
+                {
+                    queueRequest(request, true, request.priority, request.timeout);
+                }
+            }
+        }
+        repeatRequests.clear();
+
+        if (debugEnabled)
+        {
+            dbgTrace.traceExit(funcName, TrcDbgTrace.TraceLevel.TASK);
+        }
+    }   //batchHandler
+
+    /**
+     * This method performs a run of register reads from the batch. The reads are sorted by address and reads of
+     * adjacent or overlapping registers are merged into one transaction of at most maxLength bytes.
+     *
+     * @param start specifies the index of the first read of the run in the batch.
+     * @param end specifies the index after the last read of the run in the batch.
+     * @param maxLength specifies the maximum length of a merged read.
+     */
+    private void performReadRun(int start, int end, int maxLength)
+    {
+        for (int i = start; i < end; i++)
+        {
+            run.add(batch.get(i));
+        }
+        run.sort(Comparator.comparingInt(r -> r.address));
+
+        int i = 0;
+        while (i < run.size())
+        {
+            Request first = run.get(i);
+            int spanStart = first.address;
+            int spanEnd = spanStart + first.length;
+            int spanLast = i + 1;
+
+            while (spanLast < run.size())
+            {
+                Request next = run.get(spanLast);
+                int newEnd = Math.max(spanEnd, next.address + next.length);
+
+                if (next.address > spanEnd || newEnd - spanStart > maxLength)
                 {
-                    if (request.buffer != null)
+                    break;
+                }
+                spanEnd = newEnd;
+                spanLast++;
+            }
+
+            if (spanLast - i == 1)
+            {
+                first.canceled = false;
+                performRequest(first);
+            }
+            else
+            {
+                int spanLength = spanEnd - spanStart;
+                byte[] spanBuffer = bufferPool.acquire(spanLength);
+                boolean success = readData(spanStart, spanBuffer, spanLength);
+
+                for (int j = i; j < spanLast; j++)
+                {
+                    Request request = run.get(j);
+
+                    request.canceled = false;
+                    request.buffer = null;
+                    if (success)
                     {
-                        dbgTrace.traceInfo(funcName, "readData(addr=0x%x,len=%d)=%s",
-                        request.address, request.length, Arrays.toString(request.buffer));
-    
+                        request.buffer = acquireReadBuffer(request);
+                        if (request.buffer == null)
+                        {
+                            request.buffer = new byte[request.length];
+                        }
+                        System.arraycopy(spanBuffer, request.address - spanStart, request.buffer, 0, request.length);
                     }
                 }
+                bufferPool.release(spanBuffer);
+
+                synchronized (this)
+                {
+                    transactionCount++;
+                    mergedReadCount += spanLast - i - 1;
+                }
+            }
+            i = spanLast;
+        }
+        run.clear();
+        //
+        // Complete the reads in the order they were requested.
+        //
+        for (int j = start; j < end; j++)
+        {
+            completeRequest(batch.get(j));
+        }
+    }   //performReadRun
+
+    /**
+     * This method performs a run of register writes from the batch in order. A write is dropped if a later write in
+     * the run writes at least as many bytes to the same register, it is completed as if it was written.
+     *
+     * @param start specifies the index of the first write of the run in the batch.
+     * @param end specifies the index after the last write of the run in the batch.
+     */
+    private void performWriteRun(int start, int end)
+    {
+        for (int i = start; i < end; i++)
+        {
+            Request request = batch.get(i);
+            boolean superseded = false;
+
+            for (int j = i + 1; j < end; j++)
+            {
+                Request later = batch.get(j);
+
+                if (later.address == request.address && later.length >= request.length)
+                {
+                    superseded = true;
+                    break;
+                }
+            }
+
+            request.canceled = false;
+            if (superseded)
+            {
+                synchronized (this)
+                {
+                    coalescedWriteCount++;
+                }
             }
             else
             {
-                request.length = writeData(request.address, request.buffer, request.length);
+                performRequest(request);
+            }
+            completeRequest(request);
+        }
+    }   //performWriteRun
+
+    /**
+     * This method performs the bus transaction of a single request.
+     *
+     * @param request specifies the request.
+     */
+    private void performRequest(Request request)
+    {
+        final String funcName = "performRequest";
+
+        if (request.readRequest)
+        {
+            request.buffer = acquireReadBuffer(request);
+            if (!request.pooledBuffer)
+            {
+                //
+                // The requester owns the buffer, let the device allocate it. Stream devices may return fewer bytes
+                // than requested.
+                //
+                request.buffer = readData(request.address, request.length);
+            }
+            else if (!readData(request.address, request.buffer, request.length))
+            {
+                releaseReadBuffer(request);
+                request.buffer = null;
+            }
+
+            if (debugEnabled)
+            {
+                if (request.buffer != null)
+                {
+                    dbgTrace.traceInfo(funcName, "readData(addr=0x%x,len=%d)=%s",
+                        request.address, request.length, Arrays.toString(request.buffer));
+                }
             }
         }
+        else
+        {
+            request.length = writeData(request.address, request.buffer, request.length);
+        }
 
+        synchronized (this)
+        {
+            transactionCount++;
+        }
+    }   //performRequest
+
+    /**
+     * This method signals the completion of a request and recycles its read buffer if the buffer came from the pool.
+     *
+     * @param request specifies the completed request.
+     */
+    private void completeRequest(Request request)
+    {
         if (request.completionEvent != null)
         {
             request.completionEvent.set(true);
@@ -591,10 +1287,40 @@ public abstract class TrcSerialBusDevice
             request.completionHandler.notify(request);
         }
 
-        if (debugEnabled)
+        if (request.readRequest && request.buffer != null && request.pooledBuffer)
         {
-            dbgTrace.traceExit(funcName, TrcDbgTrace.TraceLevel.TASK);
+            releaseReadBuffer(request);
+            request.buffer = null;
         }
-    }   //requestHandler
+    }   //completeRequest
+
+    /**
+     * This method returns a buffer for a read request from the pool if the pool is enabled and the request only
+     * reports its completion to a handler.
+     *
+     * @param request specifies the read request.
+     * @return read buffer from the pool, null if the requester must own the buffer.
+     */
+    private byte[] acquireReadBuffer(Request request)
+    {
+        request.pooledBuffer =
+            bufferPoolEnabled && request.completionEvent == null && request.completionHandler != null;
+
+        return request.pooledBuffer? bufferPool.acquire(request.length): null;
+    }   //acquireReadBuffer
+
+    /**
+     * This method returns the buffer of a read request to the pool if it came from the pool.
+     *
+     * @param request specifies the read request.
+     */
+    private void releaseReadBuffer(Request request)
+    {
+        if (request.pooledBuffer)
+        {
+            bufferPool.release(request.buffer);
+            request.pooledBuffer = false;
+        }
+    }   //releaseReadBuffer
 
 }   //class TrcSerialBusDevice
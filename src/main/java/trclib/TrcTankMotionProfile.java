@@ -77,6 +77,19 @@ public class TrcTankMotionProfile
         return loadProfileFromCsv(leftPath, rightPath, false);
     }   //loadFromCsv
 
+    /**
+     * This method loads the left and right path waypoints from binary path files on external file system.
+     *
+     * @param leftPath specifies the left path file on the external file system.
+     * @param rightPath specifies the right path file on the external file system.
+     * @return created motion profile.
+     */
+    public static TrcTankMotionProfile loadProfileFromBinary(String leftPath, String rightPath)
+    {
+        return new TrcTankMotionProfile(
+                TrcWaypoint.loadPointsFromBinary(leftPath), TrcWaypoint.loadPointsFromBinary(rightPath));
+    }   //loadProfileFromBinary
+
     /**
      * This method returns the an array of waypoints for the left wheel path.
      *
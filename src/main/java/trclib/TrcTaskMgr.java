@@ -22,6 +22,8 @@
 
 package trclib;
 
+import java.util.Arrays;
+import java.util.Comparator;
 import java.util.HashSet;
 import java.util.List;
 import java.util.concurrent.CopyOnWriteArrayList;
@@ -44,6 +46,7 @@ public class TrcTaskMgr
     public static final long INPUT_THREAD_INTERVAL = 20;        // in msec
     public static final long OUTPUT_THREAD_INTERVAL = 20;       // in msec
     private static final long defTaskTimeThreshold = 50000000;  // 50 msec
+    public static final int DEF_SCHEDULE_PRIORITY = 0;
 
     /**
      * These are the task type TrcTaskMgr supports:
@@ -176,11 +179,19 @@ public class TrcTaskMgr
      */
     public static class TaskObject
     {
+        private static int nextTaskId = 0;
+        private final int taskId;
         private final String taskName;
         private final Task task;
         private HashSet<TaskType> taskTypes;
-        private long[] taskTotalNanoTimes = new long[TaskType.values().length];
-        private int[] taskTimeSlotCounts = new int[TaskType.values().length];
+        //
+        // Latency histograms are only created for the task types this task has registered for. They are created
+        // before the task can be scheduled for that type and are never removed, so the recording threads can read
+        // them without locking.
+        //
+        private final TrcLatencyHistogram[] taskLatencies = new TrcLatencyHistogram[TaskType.values().length];
+        private int[] taskOverrunCounts = new int[TaskType.values().length];
+        private volatile int schedulePriority = DEF_SCHEDULE_PRIORITY;
         private TrcPeriodicThread<Object> taskThread = null;
 
         /**
@@ -192,13 +203,16 @@ public class TrcTaskMgr
          */
         private TaskObject(final String taskName, Task task)
         {
+            synchronized (TaskObject.class)
+            {
+                this.taskId = nextTaskId++;
+            }
             this.taskName = taskName;
             this.task = task;
             taskTypes = new HashSet<>();
             for (int i = 0; i < TaskType.values().length; i++)
             {
-                taskTotalNanoTimes[i] = 0;
-                taskTimeSlotCounts[i] = 0;
+                taskOverrunCounts[i] = 0;
             }
         }   //TaskObject
 
@@ -233,9 +247,16 @@ public class TrcTaskMgr
 
             if (added)
             {
+                if (taskLatencies[type.value] == null)
+                {
+                    taskLatencies[type.value] = new TrcLatencyHistogram(taskName + "." + type);
+                }
+
                 if (type == TaskType.STANDALONE_TASK)
                 {
-                    taskThread = new TrcPeriodicThread<>(taskName, this::standaloneTask, null, taskPriority);
+                    taskThread = new TrcPeriodicThread<>(
+                        taskName, this::standaloneTask, null, taskPriority,
+                        TrcTaskMgr.getInstance().getStandaloneExecutionMode());
                     taskThread.setProcessingInterval(taskInterval);
                     taskThread.setTaskEnabled(true);
                 }
@@ -258,6 +279,10 @@ public class TrcTaskMgr
                         //
                         TrcTaskMgr.getInstance().startOutputThread();
                     }
+                    //
+                    // STANDALONE_TASK runs on its own thread, all other types are scheduled from the task bins.
+                    //
+                    TrcTaskMgr.getInstance().addToTaskBin(type, this);
                 }
             }
 
@@ -302,7 +327,13 @@ public class TrcTaskMgr
             }
             taskThread = null;
 
-            return taskTypes.remove(type);
+            boolean removed = taskTypes.remove(type);
+            if (removed && type != TaskType.STANDALONE_TASK)
+            {
+                TrcTaskMgr.getInstance().removeFromTaskBin(type, this);
+            }
+
+            return removed;
         }   //unregisterTask
 
         /**
@@ -367,6 +398,30 @@ public class TrcTaskMgr
             return taskTypes.contains(type);
         }   //hasType
 
+        /**
+         * This method sets the schedule priority of the task. When the scheduler runs a task type, registered tasks
+         * are run in descending priority order so that time critical tasks (e.g. odometry, PID control) get to run
+         * before less critical tasks can starve them. Tasks of equal priority run in the order they were created.
+         * This has no effect on STANDALONE_TASK which runs on its own thread.
+         *
+         * @param priority specifies the schedule priority, higher value runs first.
+         */
+        public void setSchedulePriority(int priority)
+        {
+            schedulePriority = priority;
+            TrcTaskMgr.getInstance().sortTaskBins();
+        }   //setSchedulePriority
+
+        /**
+         * This method returns the schedule priority of the task.
+         *
+         * @return schedule priority of the task.
+         */
+        public int getSchedulePriority()
+        {
+            return schedulePriority;
+        }   //getSchedulePriority
+
         /**
          * This method returns the class object that was associated with this task object.
          *
@@ -429,6 +484,7 @@ public class TrcTaskMgr
 
             long elapsedTime = TrcUtil.getCurrentTimeNanos() - startNanoTime;
             recordElapsedTime(TaskType.STANDALONE_TASK, elapsedTime);
+            TrcTaskMgr.getInstance().taskTypeLatencies[TaskType.STANDALONE_TASK.value].recordValue(elapsedTime);
 
             if (debugEnabled)
             {
@@ -438,17 +494,21 @@ public class TrcTaskMgr
         }   //standaloneTask
 
         /**
-         * This method records the task elapsed time in the task performance arrays.
+         * This method records the task elapsed time in the latency histogram of the task type. It is lock-free so
+         * the input, output and main robot threads never contend with each other or with metrics reporting.
          *
-         * @param taskType specifies the task type to index into the task performance arrays.
+         * @param taskType specifies the task type to index into the task latency histograms.
          * @param elapsedTime specifies the task elapsed time in nano seconds.
          */
-        private synchronized void recordElapsedTime(TaskType taskType, long elapsedTime)
+        private void recordElapsedTime(TaskType taskType, long elapsedTime)
         {
             final String funcName = "recordElapsedTime";
+            TrcLatencyHistogram latencies = taskLatencies[taskType.value];
 
-            taskTotalNanoTimes[taskType.value] += elapsedTime;
-            taskTimeSlotCounts[taskType.value]++;
+            if (latencies != null)
+            {
+                latencies.recordValue(elapsedTime);
+            }
 
             if (debugEnabled)
             {
@@ -460,27 +520,84 @@ public class TrcTaskMgr
                             taskName, taskType, elapsedTime/1000000000.0);
                 }
             }
-        }   //recordElapsedTimeNanos
+        }   //recordElapsedTime
 
         /**
          * This method returns the average task elapsed time in seconds.
          *
-         * @param taskType specifies the task type to index into the task performance arrays.
+         * @param taskType specifies the task type to index into the task latency histograms.
          * @return average task elapsed time in seconds.
          */
-        private synchronized double getAverageTaskElapsedTime(TaskType taskType)
+        private double getAverageTaskElapsedTime(TaskType taskType)
         {
-            int slotCount = taskTimeSlotCounts[taskType.value];
+            TrcLatencyHistogram latencies = taskLatencies[taskType.value];
 
-            return slotCount == 0 ? 0.0 : (double)taskTotalNanoTimes[taskType.value]/slotCount/1000000000.0;
+            return latencies == null? 0.0: latencies.getMean()/1000000000.0;
         } //getAverageTaskElapsedTime
 
+        /**
+         * This method returns a snapshot of the task elapsed time histogram of the given task type.
+         *
+         * @param taskType specifies the task type.
+         * @return task elapsed time histogram snapshot, null if the task has never registered for the type.
+         */
+        public TrcLatencyHistogram.Snapshot getLatencySnapshot(TaskType taskType)
+        {
+            TrcLatencyHistogram latencies = taskLatencies[taskType.value];
+
+            return latencies == null? null: latencies.getSnapshot();
+        }   //getLatencySnapshot
+
+        /**
+         * This method is called by the scheduler when this task was the biggest contributor to a task type pass
+         * that exceeded its deadline.
+         *
+         * @param taskType specifies the task type that overran its deadline.
+         */
+        private synchronized void recordDeadlineOverrun(TaskType taskType)
+        {
+            taskOverrunCounts[taskType.value]++;
+        }   //recordDeadlineOverrun
+
+        /**
+         * This method returns the number of times this task was blamed for a deadline overrun of the given task type.
+         *
+         * @param taskType specifies the task type.
+         * @return number of deadline overruns blamed on this task.
+         */
+        public synchronized int getDeadlineOverrunCount(TaskType taskType)
+        {
+            return taskOverrunCounts[taskType.value];
+        }   //getDeadlineOverrunCount
+
     }   //class TaskObject
 
+    //
+    // Scheduling order within a task bin: higher schedule priority first, then creation order.
+    //
+    private static final Comparator<TaskObject> scheduleOrder =
+        Comparator.comparingInt((TaskObject t) -> -t.schedulePriority).thenComparingInt(t -> t.taskId);
+    private static final TaskObject[] emptyTaskBin = new TaskObject[0];
+
     private static TrcTaskMgr instance = null;
     private List<TaskObject> taskList = new CopyOnWriteArrayList<>();
     private TrcPeriodicThread<Object> inputThread = null;
     private TrcPeriodicThread<Object> outputThread = null;
+    //
+    // Each task type has its own array of task objects sorted in schedule order. The arrays are never modified in
+    // place. Registration replaces them with new copies so the scheduler threads can walk a snapshot without locking
+    // or checking the task types of every task object on every loop. The same applies to the deadline array.
+    //
+    private volatile TaskObject[][] taskBins = new TaskObject[TaskType.values().length][];
+    private volatile long[] taskTypeDeadlines = new long[TaskType.values().length];  // in nsec, 0 means no deadline
+    private final int[] taskTypeOverrunCounts = new int[TaskType.values().length];
+    //
+    // For STANDALONE_TASK, each task run is recorded. For all other types, each pass through the task bin is recorded.
+    //
+    private final TrcLatencyHistogram[] taskTypeLatencies = new TrcLatencyHistogram[TaskType.values().length];
+    private volatile TrcDbgTrace overrunTracer = null;
+    private volatile TrcPeriodicThread.ExecutionMode standaloneExecutionMode =
+        TrcPeriodicThread.ExecutionMode.DEDICATED_THREAD;
 
     /**
      * Constructor: Creates the global instance of task manager. There can only be one global instance of
@@ -493,6 +610,17 @@ public class TrcTaskMgr
         {
             dbgTrace = useGlobalTracer? globalTracer: new TrcDbgTrace(moduleName, tracingEnabled, traceLevel, msgLevel);
         }
+
+        Arrays.fill(taskBins, emptyTaskBin);
+        for (TaskType taskType: TaskType.values())
+        {
+            taskTypeLatencies[taskType.value] = new TrcLatencyHistogram(moduleName + "." + taskType);
+        }
+        //
+        // The input and output threads must finish all their tasks within their thread intervals.
+        //
+        taskTypeDeadlines[TaskType.INPUT_TASK.value] = INPUT_THREAD_INTERVAL*1000000;
+        taskTypeDeadlines[TaskType.OUTPUT_TASK.value] = OUTPUT_THREAD_INTERVAL*1000000;
     }   //TrcTaskMgr
 
     /**
@@ -510,6 +638,210 @@ public class TrcTaskMgr
         return instance;
     }   //getInstance
 
+    /**
+     * This method sets how STANDALONE_TASKs registered afterwards are executed. By default, each STANDALONE_TASK runs
+     * on its own thread. In SHARED_SCHEDULER mode, they run at a fixed rate on a few carrier threads shared by all
+     * of them, which saves threads and context switches when there are many standalone tasks that only run briefly
+     * in each interval. The input and output threads always run on their own threads.
+     *
+     * @param mode specifies the execution mode of STANDALONE_TASKs.
+     */
+    public void setStandaloneExecutionMode(TrcPeriodicThread.ExecutionMode mode)
+    {
+        standaloneExecutionMode = mode;
+    }   //setStandaloneExecutionMode
+
+    /**
+     * This method returns how STANDALONE_TASKs are executed.
+     *
+     * @return execution mode of STANDALONE_TASKs.
+     */
+    public TrcPeriodicThread.ExecutionMode getStandaloneExecutionMode()
+    {
+        return standaloneExecutionMode;
+    }   //getStandaloneExecutionMode
+
+    /**
+     * This method is called by registerTask to add the task object to the task bin of the given type.
+     *
+     * @param type specifies the task type.
+     * @param taskObj specifies the task object to be added.
+     */
+    private synchronized void addToTaskBin(TaskType type, TaskObject taskObj)
+    {
+        TaskObject[][] newBins = taskBins.clone();
+        TaskObject[] oldBin = newBins[type.value];
+        TaskObject[] newBin = Arrays.copyOf(oldBin, oldBin.length + 1);
+
+        newBin[oldBin.length] = taskObj;
+        Arrays.sort(newBin, scheduleOrder);
+        newBins[type.value] = newBin;
+        taskBins = newBins;
+    }   //addToTaskBin
+
+    /**
+     * This method is called by unregisterTask to remove the task object from the task bin of the given type.
+     *
+     * @param type specifies the task type.
+     * @param taskObj specifies the task object to be removed.
+     */
+    private synchronized void removeFromTaskBin(TaskType type, TaskObject taskObj)
+    {
+        TaskObject[] oldBin = taskBins[type.value];
+
+        for (int i = 0; i < oldBin.length; i++)
+        {
+            if (oldBin[i] == taskObj)
+            {
+                TaskObject[][] newBins = taskBins.clone();
+                TaskObject[] newBin = new TaskObject[oldBin.length - 1];
+                System.arraycopy(oldBin, 0, newBin, 0, i);
+                System.arraycopy(oldBin, i + 1, newBin, i, oldBin.length - i - 1);
+                newBins[type.value] = newBin;
+                taskBins = newBins;
+                break;
+            }
+        }
+    }   //removeFromTaskBin
+
+    /**
+     * This method re-sorts all task bins. It is called when the schedule priority of a task has changed.
+     */
+    private synchronized void sortTaskBins()
+    {
+        TaskObject[][] newBins = new TaskObject[taskBins.length][];
+
+        for (int i = 0; i < newBins.length; i++)
+        {
+            newBins[i] = taskBins[i].clone();
+            Arrays.sort(newBins[i], scheduleOrder);
+        }
+        taskBins = newBins;
+    }   //sortTaskBins
+
+    /**
+     * This method returns the task bin snapshot of the given task type.
+     *
+     * @param type specifies the task type.
+     * @return array of task objects in schedule order.
+     */
+    private TaskObject[] getTaskBin(TaskType type)
+    {
+        return taskBins[type.value];
+    }   //getTaskBin
+
+    /**
+     * This method sets the deadline of a task type. If running all the tasks of the given type in one pass takes
+     * longer than the deadline, the overrun is counted against the task type and blamed on the task that took the
+     * longest in that pass. By default, INPUT_TASK and OUTPUT_TASK have deadlines equal to their thread intervals
+     * and all other task types have no deadline.
+     *
+     * @param type specifies the task type.
+     * @param deadline specifies the deadline in msec, zero to disable deadline checking.
+     */
+    public synchronized void setTaskTypeDeadline(TaskType type, long deadline)
+    {
+        if (deadline < 0)
+        {
+            throw new IllegalArgumentException("deadline must be greater than or equal to 0.");
+        }
+
+        long[] newDeadlines = taskTypeDeadlines.clone();
+        newDeadlines[type.value] = deadline*1000000;
+        taskTypeDeadlines = newDeadlines;
+    }   //setTaskTypeDeadline
+
+    /**
+     * This method returns the deadline of a task type.
+     *
+     * @param type specifies the task type.
+     * @return deadline in msec, zero if there is no deadline.
+     */
+    public long getTaskTypeDeadline(TaskType type)
+    {
+        return taskTypeDeadlines[type.value]/1000000;
+    }   //getTaskTypeDeadline
+
+    /**
+     * This method returns the number of passes of the given task type that exceeded the deadline.
+     *
+     * @param type specifies the task type.
+     * @return number of deadline overruns.
+     */
+    public synchronized int getDeadlineOverrunCount(TaskType type)
+    {
+        return taskTypeOverrunCounts[type.value];
+    }   //getDeadlineOverrunCount
+
+    /**
+     * This method sets the tracer for reporting deadline overruns as they happen. Overruns are always counted,
+     * this only controls whether each of them is also traced.
+     *
+     * @param tracer specifies the tracer for reporting overruns, null to disable reporting.
+     */
+    public void setDeadlineOverrunTracer(TrcDbgTrace tracer)
+    {
+        overrunTracer = tracer;
+    }   //setDeadlineOverrunTracer
+
+    /**
+     * This method returns the utilization of the deadline of the given task type. It is the sum of the average
+     * elapsed time of all tasks registered with the given type divided by the deadline. A value approaching or
+     * exceeding 1.0 means the registered tasks cannot be expected to finish within the deadline.
+     *
+     * @param type specifies the task type.
+     * @return deadline utilization, zero if there is no deadline.
+     */
+    public double getTaskTypeUtilization(TaskType type)
+    {
+        long deadline = taskTypeDeadlines[type.value];
+        double totalTime = 0.0;
+
+        if (deadline > 0)
+        {
+            for (TaskObject taskObj: getTaskBin(type))
+            {
+                totalTime += taskObj.getAverageTaskElapsedTime(type);
+            }
+        }
+
+        return deadline > 0? totalTime*1000000000.0/deadline: 0.0;
+    }   //getTaskTypeUtilization
+
+    /**
+     * This method records a deadline overrun of a task type and reports it if there is an overrun tracer.
+     *
+     * @param type specifies the task type that overran its deadline.
+     * @param passElapsedTime specifies the elapsed time of the whole pass in nano seconds.
+     * @param deadline specifies the deadline in nano seconds.
+     * @param slowestTask specifies the task that took the longest in the pass.
+     * @param slowestElapsedTime specifies the elapsed time of the slowest task in nano seconds.
+     */
+    private void recordDeadlineOverrun(
+        TaskType type, long passElapsedTime, long deadline, TaskObject slowestTask, long slowestElapsedTime)
+    {
+        final String funcName = "recordDeadlineOverrun";
+        TrcDbgTrace tracer = overrunTracer;
+
+        synchronized (this)
+        {
+            taskTypeOverrunCounts[type.value]++;
+        }
+
+        if (slowestTask != null)
+        {
+            slowestTask.recordDeadlineOverrun(type);
+        }
+
+        if (tracer != null)
+        {
+            tracer.traceWarn(
+                funcName, "%s overran deadline (elapsed=%.6f, deadline=%.6f, slowest=%s:%.6f)",
+                type, passElapsedTime/1000000000.0, deadline/1000000000.0, slowestTask,
+                slowestElapsedTime/1000000000.0);
+        }
+    }   //recordDeadlineOverrun
+
     /**
      * This method is called by registerTask for INPUT_TASK to create the input thread if not already.
      */
@@ -537,7 +869,8 @@ public class TrcTaskMgr
     }   //startOutputThread
 
     /**
-     * This method starts a periodic thread for processing tasks.
+     * This method starts a periodic thread for processing tasks. The thread runs at a fixed rate and skips the
+     * missed runs after an overrun so it stays in phase with the control loops it feeds.
      *
      * @param instanceName specifies the instance name of the thread.
      * @param task specifies the task run by the thread.
@@ -548,8 +881,10 @@ public class TrcTaskMgr
     private TrcPeriodicThread<Object> startThread(
             String instanceName, TrcPeriodicThread.PeriodicTask task, long interval, int taskPriority)
     {
-        TrcPeriodicThread<Object> thread = new TrcPeriodicThread<>(instanceName, task, null, taskPriority);
+        TrcPeriodicThread<Object> thread = new TrcPeriodicThread<>(
+            instanceName, task, null, taskPriority, TrcPeriodicThread.ExecutionMode.DEDICATED_THREAD);
         thread.setProcessingInterval(interval);
+        thread.setFixedRate(true, TrcPeriodicThread.OverrunPolicy.SKIP);
         thread.setTaskEnabled(true);
 
         return thread;
@@ -626,11 +961,18 @@ public class TrcTaskMgr
         terminateAllThreads();
         TrcNotifier.shutdown();
         taskList.clear();
+
+        synchronized (this)
+        {
+            TaskObject[][] newBins = new TaskObject[TaskType.values().length][];
+            Arrays.fill(newBins, emptyTaskBin);
+            taskBins = newBins;
+        }
     }   //shutdown
 
     /**
-     * This method is called by the main robot thread to enumerate the task list and calls all the tasks that matches
-     * the given task type.
+     * This method is called by the main robot thread to run all the tasks registered with the given task type in
+     * schedule order. If the task type has a deadline and the pass takes longer than that, the overrun is recorded.
      *
      * @param type specifies the task type to be executed.
      * @param mode specifies the robot run mode.
@@ -639,67 +981,132 @@ public class TrcTaskMgr
     {
         final String funcName = "executeTaskType";
         //
-        // Traverse the list backward because we are removing task objects from the list on STOP_TASK.
-        // This way the list order won't be messed up.
+        // Walk a snapshot of the task bin. Tasks may register or unregister themselves (e.g. on STOP_TASK) while
+        // we are running them, which replaces the bin without disturbing this pass.
         //
-        for (int i = 0; i < taskList.size(); i++)
+        TaskObject[] taskBin = getTaskBin(type);
+        long deadline = taskTypeDeadlines[type.value];
+        long passStartNanoTime = TrcUtil.getCurrentTimeNanos();
+        TaskObject slowestTask = null;
+        long slowestElapsedTime = 0;
+
+        for (TaskObject taskObj: taskBin)
         {
-            TaskObject taskObj = taskList.get(i);
-            if (taskObj.hasType(type))
-            {
-                Task task = taskObj.getTask();
-                long startNanoTime = TrcUtil.getCurrentTimeNanos();
+            Task task = taskObj.getTask();
+            long startNanoTime = TrcUtil.getCurrentTimeNanos();
 
-                switch (type)
-                {
-                    case START_TASK:
-                        task.runTask(TaskType.START_TASK, mode);
-                        break;
+            switch (type)
+            {
+                case START_TASK:
+                    task.runTask(TaskType.START_TASK, mode);
+                    break;
 
-                    case STOP_TASK:
-                        task.runTask(TaskType.STOP_TASK, mode);
-                        break;
+                case STOP_TASK:
+                    task.runTask(TaskType.STOP_TASK, mode);
+                    break;
 
-                    case PREPERIODIC_TASK:
-                        task.runTask(TaskType.PREPERIODIC_TASK, mode);
-                        break;
+                case PREPERIODIC_TASK:
+                    task.runTask(TaskType.PREPERIODIC_TASK, mode);
+                    break;
 
-                    case POSTPERIODIC_TASK:
-                        task.runTask(TaskType.POSTPERIODIC_TASK, mode);
-                        break;
+                case POSTPERIODIC_TASK:
+                    task.runTask(TaskType.POSTPERIODIC_TASK, mode);
+                    break;
 
-                    case PRECONTINUOUS_TASK:
-                        task.runTask(TaskType.PRECONTINUOUS_TASK, mode);
-                        break;
+                case PRECONTINUOUS_TASK:
+                    task.runTask(TaskType.PRECONTINUOUS_TASK, mode);
+                    break;
 
-                    case POSTCONTINUOUS_TASK:
-                        task.runTask(TaskType.POSTCONTINUOUS_TASK, mode);
-                        break;
+                case POSTCONTINUOUS_TASK:
+                    task.runTask(TaskType.POSTCONTINUOUS_TASK, mode);
+                    break;
 
-                    case INPUT_TASK:
-                        task.runTask(TaskType.INPUT_TASK, mode);
-                        break;
+                case INPUT_TASK:
+                    task.runTask(TaskType.INPUT_TASK, mode);
+                    break;
 
-                    case OUTPUT_TASK:
-                        task.runTask(TaskType.OUTPUT_TASK, mode);
-                        break;
+                case OUTPUT_TASK:
+                    task.runTask(TaskType.OUTPUT_TASK, mode);
+                    break;
 
-                    default:
-                        break;
-                }
+                default:
+                    break;
+            }
 
-                long elapsedTime = TrcUtil.getCurrentTimeNanos() - startNanoTime;
-                taskObj.recordElapsedTime(type, elapsedTime);
+            long elapsedTime = TrcUtil.getCurrentTimeNanos() - startNanoTime;
+            taskObj.recordElapsedTime(type, elapsedTime);
+            if (elapsedTime > slowestElapsedTime)
+            {
+                slowestTask = taskObj;
+                slowestElapsedTime = elapsedTime;
+            }
 
-                if (debugEnabled)
-                {
-                    dbgTrace.traceVerbose(funcName, "Task %s: start=%.6f, elapsed=%.6f",
-                            taskObj.taskName, startNanoTime/1000000000.0, elapsedTime/1000000000.0);
-                }
+            if (debugEnabled)
+            {
+                dbgTrace.traceVerbose(funcName, "Task %s: start=%.6f, elapsed=%.6f",
+                        taskObj.taskName, startNanoTime/1000000000.0, elapsedTime/1000000000.0);
             }
         }
+
+        long passElapsedTime = TrcUtil.getCurrentTimeNanos() - passStartNanoTime;
+        taskTypeLatencies[type.value].recordValue(passElapsedTime);
+        if (deadline > 0 && passElapsedTime > deadline)
+        {
+            recordDeadlineOverrun(type, passElapsedTime, deadline, slowestTask, slowestElapsedTime);
+        }
     }   //executeTaskType
 
+    /**
+     * This method returns a snapshot of the elapsed time histogram of the given task type. For STANDALONE_TASK, it
+     * contains the elapsed time of each task run of all standalone tasks. For all other types, it contains the
+     * elapsed time of each pass running all tasks of that type.
+     *
+     * @param type specifies the task type.
+     * @return elapsed time histogram snapshot.
+     */
+    public TrcLatencyHistogram.Snapshot getTaskTypeLatencySnapshot(TaskType type)
+    {
+        return taskTypeLatencies[type.value].getSnapshot();
+    }   //getTaskTypeLatencySnapshot
+
+    /**
+     * This method returns the periodic thread that runs the tasks of the given type.
+     *
+     * @param type specifies the task type.
+     * @return periodic thread, null if the type has no thread of its own or the thread is not started.
+     */
+    private synchronized TrcPeriodicThread<Object> getTaskTypeThread(TaskType type)
+    {
+        return type == TaskType.INPUT_TASK? inputThread: type == TaskType.OUTPUT_TASK? outputThread: null;
+    }   //getTaskTypeThread
+
+    /**
+     * This method returns a snapshot of the start jitter histogram of the thread that runs the tasks of the given
+     * type, i.e. how late each pass started compared to its fixed rate schedule.
+     *
+     * @param type specifies the task type, INPUT_TASK or OUTPUT_TASK.
+     * @return start jitter histogram snapshot in nanoseconds, null if the type has no thread or it is not started.
+     */
+    public TrcLatencyHistogram.Snapshot getTaskTypeStartJitterSnapshot(TaskType type)
+    {
+        TrcPeriodicThread<Object> thread = getTaskTypeThread(type);
+
+        return thread == null? null: thread.getStartJitterSnapshot();
+    }   //getTaskTypeStartJitterSnapshot
+
+    /**
+     * This method returns a snapshot of the period histogram of the thread that runs the tasks of the given type.
+     *
+     * @param type specifies the task type, INPUT_TASK or OUTPUT_TASK.
+     * @return period histogram snapshot in nanoseconds, null if the type has no thread or it is not started.
+     */
+    public TrcLatencyHistogram.Snapshot getTaskTypePeriodSnapshot(TaskType type)
+    {
+        TrcPeriodicThread<Object> thread = getTaskTypeThread(type);
+
+        return thread == null? null: thread.getPeriodSnapshot();
+    }   //getTaskTypePeriodSnapshot
+
     /**
      * This method runs the periodic input task.
      *
@@ -743,6 +1150,65 @@ public class TrcTaskMgr
                     taskObj.getAverageTaskElapsedTime(TaskType.STANDALONE_TASK),
                     taskObj.getAverageTaskElapsedTime(TaskType.INPUT_TASK),
                     taskObj.getAverageTaskElapsedTime(TaskType.OUTPUT_TASK));
+            //
+            // Averages hide the occasional long run that makes us miss a control cycle, so print the tail latencies
+            // of each task type the task has run.
+            //
+            for (TaskType taskType: TaskType.values())
+            {
+                TrcLatencyHistogram.Snapshot snapshot = taskObj.getLatencySnapshot(taskType);
+                if (snapshot != null && snapshot.getCount() > 0)
+                {
+                    tracer.traceInfo("TaskLatency", "%16s.%s: %s", taskObj.taskName, taskType, snapshot);
+                }
+            }
+        }
+
+        for (TaskType taskType: TaskType.values())
+        {
+            TrcLatencyHistogram.Snapshot snapshot = getTaskTypeLatencySnapshot(taskType);
+            if (snapshot.getCount() > 0)
+            {
+                tracer.traceInfo("TaskTypeLatency", "%16s: %s", taskType, snapshot);
+            }
+        }
+
+        for (TaskType taskType: TaskType.values())
+        {
+            long deadline = getTaskTypeDeadline(taskType);
+
+            if (deadline > 0)
+            {
+                StringBuilder culprits = new StringBuilder();
+
+                for (TaskObject taskObj: getTaskBin(taskType))
+                {
+                    int overrunCount = taskObj.getDeadlineOverrunCount(taskType);
+                    if (overrunCount > 0)
+                    {
+                        culprits.append(String.format(" %s=%d", taskObj.taskName, overrunCount));
+                    }
+                }
+
+                tracer.traceInfo(
+                        "TaskDeadline",
+                        "%16s: Deadline=%dms, Utilization=%.3f, Overruns=%d%s",
+                        taskType, deadline, getTaskTypeUtilization(taskType), getDeadlineOverrunCount(taskType),
+                        culprits.toString());
+            }
+        }
+
+        for (TaskType taskType: TaskType.values())
+        {
+            TrcPeriodicThread<Object> thread = getTaskTypeThread(taskType);
+
+            if (thread != null)
+            {
+                tracer.traceInfo(
+                        "TaskThreadTiming", "%16s: Overruns=%d, Skipped=%d, Jitter=%s, Period=%s",
+                        taskType, thread.getOverrunCount(), thread.getSkippedPeriodCount(),
+                        thread.getStartJitterSnapshot(), thread.getPeriodSnapshot());
+            }
         }
     }   //printTaskPerformanceMetrics
 
@@ -43,7 +43,7 @@ public class TrcTimer
     private boolean canceled = false;
     private TrcEvent notifyEvent = null;
     private TrcNotifier.Receiver notifyReceiver = null;
-    private double securityKey = -1.0;
+    private TrcTimerMgr.TimerHandle timerHandle = null;
 
     /**
      * Constructor: Creates an instance of the timer with the given name.
@@ -110,14 +110,12 @@ public class TrcTimer
             event.clear();
         }
         //
-        // Security key implements a simple mutual authentication mechanism. It is a double value where the decimal
-        // part is a random ID generated by the client of TrcTimerMgr (i.e. you, an instance of TrcTimer) and the
-        // integer part is a unique ID returned by TrcTimerMgr.add(). Together they formed a mutual authentication
-        // ID only known between you (an instance of TrcTimer) and the TrcTimerMgr. If TrcTimerMgr is calling you to
-        // alter the state of your timer (e.g. setExpired), you can check the securityKey parameter to make sure the
-        // caller is indeed TrcTimerMgr.
+        // The timer handle implements a simple mutual authentication mechanism. Only TrcTimerMgr can create it and
+        // only you (an instance of TrcTimer) get it back from TrcTimerMgr.add(). If TrcTimerMgr is calling you to
+        // alter the state of your timer (e.g. setExpired), you can check the handle to make sure the caller is indeed
+        // TrcTimerMgr and the call is for the current arming of the timer.
         //
-        securityKey = timerMgr.add(this, Math.random());
+        timerHandle = timerMgr.add(this, expiredTimeInMsec);
 
         if (debugEnabled)
         {
@@ -198,15 +196,17 @@ public class TrcTimer
 
     /**
      * This method is called by TrcTimerMgr when the timer has expired. DO NOT call this if you are not TrcTimerMgr.
+     * A handle that does not belong to the current arming of the timer (e.g. the timer was canceled and set again
+     * while TrcTimerMgr was signaling the old one) is ignored.
      *
-     * @param securityKey specifies the security key returned to you by TrcTimerMgr when you added your timer. This is
-     *                    a simple authentication measure to make sure the caller is indeed TrcTimeMgr.
+     * @param handle specifies the timer handle returned to you by TrcTimerMgr when you added your timer. This is
+     *               a simple authentication measure to make sure the caller is indeed TrcTimeMgr.
      */
-    public synchronized void setExpired(double securityKey)
+    public synchronized void setExpired(TrcTimerMgr.TimerHandle handle)
     {
         final String funcName = "setExpired";
 
-        if (securityKey == this.securityKey)
+        if (handle != null && handle == timerHandle)
         {
             if (debugEnabled)
             {
@@ -216,7 +216,7 @@ public class TrcTimer
 
             this.expiredTimeInMsec = 0;
             this.expired = true;
-            this.securityKey = -1.0;
+            this.timerHandle = null;
 
             if (notifyEvent != null)
             {
@@ -226,13 +226,17 @@ public class TrcTimer
 
             if (notifyReceiver != null)
             {
-                notifyReceiver.notify(this);
+                //
+                // Clear the receiver before calling it, the callback may arm the timer again with a new one.
+                //
+                TrcNotifier.Receiver receiver = notifyReceiver;
                 notifyReceiver = null;
+                receiver.notify(this);
             }
         }
-        else
+        else if (debugEnabled)
         {
-            throw new SecurityException("Only TrcTimerMgr is allowed to call this method.");
+            dbgTrace.traceInfo(funcName, "Ignoring stale timer handle %s.", handle);
         }
     }   //setExpired
 
@@ -267,13 +271,13 @@ public class TrcTimer
         }
 
         // Only do this if the timer is actually armed and not expired.
-        if (securityKey != -1.0)
+        if (timerHandle != null)
         {
-            timerMgr.remove(this, securityKey);
+            timerMgr.remove(timerHandle);
             expiredTimeInMsec = 0;
             expired = false;
             canceled = true;
-            securityKey = -1.0;
+            timerHandle = null;
 
             if (notifyEvent != null)
             {
@@ -283,8 +287,12 @@ public class TrcTimer
 
             if (notifyReceiver != null)
             {
-                notifyReceiver.notify(this);
+                //
+                // Clear the receiver before calling it, the callback may arm the timer again with a new one.
+                //
+                TrcNotifier.Receiver receiver = notifyReceiver;
                 notifyReceiver = null;
+                receiver.notify(this);
             }
         }
 
@@ -19,14 +19,17 @@
  * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
  * SOFTWARE.
  */
-
 package trclib;
 
 import java.util.ArrayList;
-import java.util.HashMap;
 
 /**
- * This class implements the TrcTimer manager that uses a single thread to monitor all TrcTimers.
+ * This class implements the TrcTimer manager that uses a single thread to monitor all TrcTimers. It supports two
+ * timer engines. The default engine keeps the armed timers in a list sorted by expiration time and sleeps until the
+ * earliest one expires, interrupting its own sleep when an earlier timer is added. The timing wheel engine hashes
+ * timers into the slots of a wheel by expiration tick. Adding and canceling timers are O(1) and the timer thread
+ * simply advances the wheel one tick at a time, so it never needs to be interrupted. The timing wheel trades the
+ * timer resolution (one tick) for lower cost when timers are frequently armed and canceled.
  */
 public class TrcTimerMgr
 {
@@ -38,15 +41,71 @@ public class TrcTimerMgr
     private static final TrcDbgTrace.MsgLevel msgLevel = TrcDbgTrace.MsgLevel.INFO;
     private TrcDbgTrace dbgTrace = null;
 
+    public static final long DEF_WHEEL_TICK_INTERVAL = 5;  // in msec
+    private static final int WHEEL_SIZE = 256;              // must be a power of 2
+
+    /**
+     * This class implements the handle of an armed timer. It is returned by add and is the only way to remove the
+     * timer or to signal its expiration. Since only TrcTimerMgr can create a handle and each arming of a timer gets
+     * a new one, the handle also serves as the authentication token between TrcTimer and TrcTimerMgr.
+     */
+    public static final class TimerHandle
+    {
+        private final TrcTimer timer;
+        private final long expiredTimeInMsec;
+        private boolean canceled = false;
+        //
+        // The following are used by the timing wheel only.
+        //
+        private long expiredTick = 0;
+        private int slot = -1;
+        private TimerHandle prev = null;
+        private TimerHandle next = null;
+
+        /**
+         * Constructor: Create an instance of the object.
+         *
+         * @param timer specifies the timer.
+         * @param expiredTimeInMsec specifies the expiration time of the timer in msec.
+         */
+        private TimerHandle(TrcTimer timer, long expiredTimeInMsec)
+        {
+            this.timer = timer;
+            this.expiredTimeInMsec = expiredTimeInMsec;
+        }   //TimerHandle
+
+        /**
+         * This method returns the handle info in string form.
+         *
+         * @return handle info in string form.
+         */
+        @Override
+        public String toString()
+        {
+            return timer.toString();
+        }   //toString
+
+    }   //class TimerHandle
+
     private static TrcTimerMgr instance = null;
-    private final ArrayList<TrcTimer> timerList;
-    private final HashMap<TrcTimer, Double> securityKeyMap;
+    private static boolean timingWheelEnabled = false;
+    private static long wheelTickInterval = DEF_WHEEL_TICK_INTERVAL;
+    private final ArrayList<TimerHandle> timerList;
     private Thread timerThread = null;
     //
     // The following class variables need to be thread-safe protected.
     //
     private long nextExpireTimeInMsec = 0;
-    private TrcTimer preemptingTimer = null;
+    private TimerHandle preemptingTimer = null;
+    //
+    // Timing wheel engine. Each slot is the head of a doubly linked list of the handles hashed into that slot.
+    // A slot may contain handles expiring on later revolutions of the wheel, they are skipped until their tick.
+    //
+    private final boolean useTimingWheel;
+    private final long tickInterval;
+    private final TimerHandle[] wheel;
+    private long currTick = 0;
+    private int wheelTimerCount = 0;
 
     /**
      * Constructor: Creates an instance of the timer manager.
@@ -61,15 +120,53 @@ public class TrcTimerMgr
         }
 
         timerList = new ArrayList<>();
-        securityKeyMap = new HashMap<>();
+        useTimingWheel = timingWheelEnabled;
+        tickInterval = wheelTickInterval;
+        wheel = useTimingWheel? new TimerHandle[WHEEL_SIZE]: null;
     }   //TrcTimerMgr
 
+    /**
+     * This method selects the timer engine. It must be called before any timer is created because the engine is
+     * chosen when TrcTimerMgr is created.
+     *
+     * @param enabled specifies true to use the timing wheel engine, false to use the sorted list engine.
+     * @param tickInterval specifies the tick interval of the timing wheel in msec, ignored if not enabled.
+     * @throws IllegalStateException if TrcTimerMgr has already been created.
+     */
+    public static synchronized void setTimingWheelEnabled(boolean enabled, long tickInterval)
+    {
+        if (instance != null)
+        {
+            throw new IllegalStateException("Timer engine must be selected before any timer is created.");
+        }
+
+        if (enabled && tickInterval <= 0)
+        {
+            throw new IllegalArgumentException("tickInterval must be greater than 0.");
+        }
+
+        timingWheelEnabled = enabled;
+        wheelTickInterval = tickInterval;
+    }   //setTimingWheelEnabled
+
+    /**
+     * This method selects the timer engine. It must be called before any timer is created because the engine is
+     * chosen when TrcTimerMgr is created.
+     *
+     * @param enabled specifies true to use the timing wheel engine, false to use the sorted list engine.
+     * @throws IllegalStateException if TrcTimerMgr has already been created.
+     */
+    public static void setTimingWheelEnabled(boolean enabled)
+    {
+        setTimingWheelEnabled(enabled, DEF_WHEEL_TICK_INTERVAL);
+    }   //setTimingWheelEnabled
+
     /**
      * This method returns the instance of TrcTimerMgr. If this is the first time it's called, TrcTimerMgr is created.
      *
      * @return instance of TrcTimerMgr.
      */
-    public static TrcTimerMgr getInstance()
+    public static synchronized TrcTimerMgr getInstance()
     {
         if (instance == null)
         {
@@ -78,7 +175,8 @@ public class TrcTimerMgr
 
         if (instance.timerThread == null)
         {
-            instance.timerThread = new Thread(instance::timerTask, moduleName);
+            instance.timerThread = new Thread(
+                instance.useTimingWheel? instance::timingWheelTask: instance::timerTask, moduleName);
             instance.timerThread.start();
         }
 
@@ -97,142 +195,149 @@ public class TrcTimerMgr
     }   //shutdown
 
     /**
-     * This method adds the timer to the timer list in the order of expiration.
+     * This method adds the timer to be monitored.
      *
-     * @param timer specifies the timer to be added to the list.
-     * @param callerID specifies the security token for identifying the caller.
-     * @return securityKey that combines the caller's ID and a unique identifier assigned by TrcTimerMgr to the timer.
+     * @param timer specifies the timer to be added.
+     * @param expiredTimeInMsec specifies the expiration time of the timer in msec.
+     * @return handle identifying this arming of the timer.
      */
-    public double add(TrcTimer timer, double callerID)
+    public TimerHandle add(TrcTimer timer, long expiredTimeInMsec)
     {
         final String funcName = "add";
-        double securityKey;
-        long expiredTimeInMsec = timer.getExpiredTimeInMsec();
+        TimerHandle handle = new TimerHandle(timer, expiredTimeInMsec);
 
         if (debugEnabled)
         {
             dbgTrace.traceEnter(funcName, TrcDbgTrace.TraceLevel.API,
-                    "timer=%s,callerID=%f", timer, callerID);
+                    "timer=%s,expiredTime=%.3f", timer, expiredTimeInMsec/1000.0);
         }
 
         synchronized (timerList)
         {
-            int position = -1;
-
-            if (expiredTimeInMsec < nextExpireTimeInMsec)
+            if (useTimingWheel)
             {
-                if (debugEnabled)
-                {
-                    dbgTrace.traceInfo(funcName, "Adding preempting timer %s: currTime=%.3f, expiredTime=%.3f",
-                            timer, TrcUtil.getCurrentTime(), expiredTimeInMsec/1000.0);
-                }
-                //
-                // The added new timer expires sooner than the one we are sleeping on. Let's interrupt its sleep and
-                // process this one first.
-                //
-                preemptingTimer = timer;
-                timerThread.interrupt();
-                //
-                // The final security key is the sum of the list position and the caller's identification key.
-                // Since this timer is not added to the list, the position will be -1.
-                //
-                securityKey = position + callerID;
-                securityKeyMap.put(timer, securityKey);
+                addToWheel(handle);
             }
             else
             {
-                for (int i = 0; i < timerList.size(); i++)
-                {
-                    if (expiredTimeInMsec < timerList.get(i).getExpiredTimeInMsec())
-                    {
-                        position = i;
-                        break;
-                    }
-                }
-
-                if (position == -1)
-                {
-                    //
-                    // This must be the last in the list or the only one in the list, add it to the end.
-                    //
-                    position = timerList.size();
-                }
-
-                if (debugEnabled)
-                {
-                    dbgTrace.traceInfo(
-                            funcName, "Adding timer %s to queue position %d: currTime=%.3f, expiredTime=%.3f",
-                            timer, position, TrcUtil.getCurrentTime(), expiredTimeInMsec/1000.0);
-                }
-                timerList.add(position, timer);
-                //
-                // The final security key is the sum of the list position and the caller's identification key.
-                //
-                securityKey = position + callerID;
-                securityKeyMap.put(timer, position + callerID);
-                //
-                // In case this is the first and only timer in the list, kick start the timer thread.
-                //
-                timerList.notify();
+                addToList(handle);
             }
         }
 
         if (debugEnabled)
         {
-            dbgTrace.traceExit(funcName, TrcDbgTrace.TraceLevel.API, "=%f", securityKey);
-            dbgTrace.traceInfo("add", "Adding timer %s: securityKey=%.3f",
-                    timer, securityKey);
+            dbgTrace.traceExit(funcName, TrcDbgTrace.TraceLevel.API);
         }
 
-        return securityKey;
+        return handle;
     }   //add
 
     /**
-     * This method removes a timer from the list.
+     * This method removes a timer.
      *
-     * @param timer specifies the timer to be removed.
-     * @param securityKey specifies the security key identifying the owner of the timer to be removed.
-     * @return true if the timer is removed, false otherwise.
+     * @param handle specifies the handle returned by add when the timer was armed.
+     * @return true if the timer is removed, false if it has already expired or been removed.
      */
-    public boolean remove(TrcTimer timer, double securityKey)
+    public boolean remove(TimerHandle handle)
     {
         final String funcName = "remove";
         boolean success = false;
 
         if (debugEnabled)
         {
-            dbgTrace.traceEnter(funcName, TrcDbgTrace.TraceLevel.API,
-                    "timer=%s,securityKey=%f", timer, securityKey);
-            dbgTrace.traceInfo(funcName, "Removing timer %s.", timer);
+            dbgTrace.traceEnter(funcName, TrcDbgTrace.TraceLevel.API, "timer=%s", handle);
         }
 
         synchronized (timerList)
         {
-            Double key = securityKeyMap.get(timer);
-
-            if (key != null)
+            if (!handle.canceled)
             {
-                if (securityKey == key)
-                {
-                    success = timerList.remove(timer);
-                }
-                else
-                {
-                    throw new SecurityException("Only the owner of the timer is allowed to remove it from the list.");
-                }
+                //
+                // The timer thread may already be holding the handle (e.g. sleeping on it in the list engine).
+                // Marking it canceled prevents it from being signaled.
+                //
+                handle.canceled = true;
+                success = useTimingWheel? unlinkFromWheel(handle): timerList.remove(handle);
             }
         }
 
         if (debugEnabled)
         {
             dbgTrace.traceExit(funcName, TrcDbgTrace.TraceLevel.API, "=%s", success);
-            dbgTrace.traceInfo(funcName, "timer=%s,securityKey=%f,timerSecurity=%f",
-                    timer, securityKey, securityKeyMap.get(timer));
         }
 
         return success;
     }   //remove
 
+    /**
+     * This method adds the timer handle to the timer list in the order of expiration. It must be called with the
+     * timerList lock held.
+     *
+     * @param handle specifies the timer handle to be added.
+     */
+    private void addToList(TimerHandle handle)
+    {
+        final String funcName = "addToList";
+
+        if (handle.expiredTimeInMsec < nextExpireTimeInMsec)
+        {
+            if (debugEnabled)
+            {
+                dbgTrace.traceInfo(funcName, "Adding preempting timer %s: currTime=%.3f, expiredTime=%.3f",
+                        handle, TrcUtil.getCurrentTime(), handle.expiredTimeInMsec/1000.0);
+            }
+            //
+            // The added new timer expires sooner than the one we are sleeping on. Let's interrupt its sleep and
+            // process this one first. If there is already a preempting timer, the earlier of the two preempts and
+            // the other one goes back to the list.
+            //
+            if (preemptingTimer != null)
+            {
+                insertToList(preemptingTimer);
+            }
+            preemptingTimer = handle;
+            nextExpireTimeInMsec = handle.expiredTimeInMsec;
+            timerThread.interrupt();
+        }
+        else
+        {
+            insertToList(handle);
+            //
+            // In case this is the first and only timer in the list, kick start the timer thread.
+            //
+            timerList.notify();
+        }
+    }   //addToList
+
+    /**
+     * This method inserts the timer handle into the timer list in the order of expiration. It must be called with
+     * the timerList lock held.
+     *
+     * @param handle specifies the timer handle to be inserted.
+     */
+    private void insertToList(TimerHandle handle)
+    {
+        final String funcName = "insertToList";
+        int position = timerList.size();
+
+        for (int i = 0; i < timerList.size(); i++)
+        {
+            if (handle.expiredTimeInMsec < timerList.get(i).expiredTimeInMsec)
+            {
+                position = i;
+                break;
+            }
+        }
+
+        if (debugEnabled)
+        {
+            dbgTrace.traceInfo(
+                    funcName, "Adding timer %s to queue position %d: currTime=%.3f, expiredTime=%.3f",
+                    handle, position, TrcUtil.getCurrentTime(), handle.expiredTimeInMsec/1000.0);
+        }
+        timerList.add(position, handle);
+    }   //insertToList
+
     /**
      * This method runs by the timer thread to wait for the next timer in the list and signal the timer object when
      * it expires.
@@ -248,7 +353,7 @@ public class TrcTimerMgr
 
         while (!Thread.currentThread().isInterrupted())
         {
-            TrcTimer nextTimerToExpire = null;
+            TimerHandle nextTimerToExpire = null;
 
             try
             {
@@ -288,7 +393,7 @@ public class TrcTimerMgr
                     {
                         nextTimerToExpire = timerList.remove(0);
                     }
-                    nextExpireTimeInMsec = nextTimerToExpire.getExpiredTimeInMsec();
+                    nextExpireTimeInMsec = nextTimerToExpire.expiredTimeInMsec;
                     sleepTimeInMsec = nextExpireTimeInMsec - TrcUtil.getCurrentTimeMillis();
                     if (debugEnabled)
                     {
@@ -307,6 +412,8 @@ public class TrcTimerMgr
                     dbgTrace.traceInfo(funcName, "[%.3f]: timer=%s expired.",
                             TrcUtil.getCurrentTime(), nextTimerToExpire);
                 }
+
+                boolean canceled;
                 synchronized (timerList)
                 {
                     //
@@ -314,11 +421,25 @@ public class TrcTimerMgr
                     // Next time around the loop we will get the earliest timer.
                     //
                     nextExpireTimeInMsec = 0;
+                    canceled = nextTimerToExpire.canceled;
+                    nextTimerToExpire.canceled = true;
+                    if (preemptingTimer != null)
+                    {
+                        //
+                        // A preempting timer was added after we woke up, its interrupt is no longer needed. Clear
+                        // it so it isn't mistaken for a termination request, the preempting timer will be processed
+                        // next time around the loop.
+                        //
+                        Thread.interrupted();
+                    }
                 }
                 //
-                // Timer has expired, signal it.
+                // Timer has expired, signal it unless it was canceled while we were sleeping on it.
                 //
-                nextTimerToExpire.setExpired(securityKeyMap.get(nextTimerToExpire));
+                if (!canceled)
+                {
+                    nextTimerToExpire.timer.setExpired(nextTimerToExpire);
+                }
             }
             catch (InterruptedException e)
             {
@@ -327,16 +448,20 @@ public class TrcTimerMgr
                     if (preemptingTimer != null)
                     {
                         //
-                        // Somebody just added a timer that will expire sooner than the one we are sleeping on. Push
-                        // this timer back to the front of the list and continue the next loop so the preempting timer
-                        // will be processed first.
+                        // Somebody just added a timer that will expire sooner than the one we are sleeping on. Put
+                        // this timer back in the list and continue the next loop so the preempting timer will be
+                        // processed first.
                         //
                         if (debugEnabled)
                         {
                             dbgTrace.traceInfo(funcName, "Timer %s is preempting %s.",
                                     preemptingTimer, nextTimerToExpire);
                         }
-                        timerList.add(0, nextTimerToExpire);
+
+                        if (nextTimerToExpire != null && !nextTimerToExpire.canceled)
+                        {
+                            insertToList(nextTimerToExpire);
+                        }
                         nextExpireTimeInMsec = 0;
                     }
                     else
@@ -356,33 +481,246 @@ public class TrcTimerMgr
         //
         // The thread is terminating, cancel all pending timers before exiting.
         //
+        ArrayList<TimerHandle> pendingTimers;
         synchronized (timerList)
         {
-            if (debugEnabled)
+            pendingTimers = new ArrayList<>(timerList);
+            timerList.clear();
+        }
+        cancelTimers(pendingTimers);
+        //
+        // The thread is now terminated. Destroy this instance so we will recreate the thread the next time around.
+        //
+        timerThread = null;
+    }   //timerTask
+
+    /**
+     * This method hashes the timer handle into the wheel slot of its expiration tick. It must be called with the
+     * timerList lock held.
+     *
+     * @param handle specifies the timer handle to be added.
+     */
+    private void addToWheel(TimerHandle handle)
+    {
+        if (wheelTimerCount == 0)
+        {
+            //
+            // The wheel is idle and has not been advancing, bring it up to date before hashing the timer.
+            //
+            currTick = TrcUtil.getCurrentTimeMillis()/tickInterval;
+        }
+        //
+        // Round up to the tick boundary so the timer never expires early. A timer that is already due expires on
+        // the next tick.
+        //
+        handle.expiredTick = Math.max((handle.expiredTimeInMsec + tickInterval - 1)/tickInterval, currTick + 1);
+        handle.slot = (int)(handle.expiredTick & (WHEEL_SIZE - 1));
+        handle.prev = null;
+        handle.next = wheel[handle.slot];
+        if (handle.next != null)
+        {
+            handle.next.prev = handle;
+        }
+        wheel[handle.slot] = handle;
+
+        if (wheelTimerCount++ == 0)
+        {
+            //
+            // The timer thread is waiting for the first timer, kick start it.
+            //
+            timerList.notify();
+        }
+    }   //addToWheel
+
+    /**
+     * This method unlinks the timer handle from its wheel slot. It must be called with the timerList lock held.
+     *
+     * @param handle specifies the timer handle to be removed.
+     * @return true if the handle was in the wheel, false otherwise.
+     */
+    private boolean unlinkFromWheel(TimerHandle handle)
+    {
+        boolean success = false;
+
+        if (handle.slot != -1)
+        {
+            if (handle.prev != null)
             {
-                dbgTrace.traceInfo(funcName, "Terminating: canceling %d timers", timerList.size());
+                handle.prev.next = handle.next;
+            }
+            else
+            {
+                wheel[handle.slot] = handle.next;
             }
 
-            for (TrcTimer timer: timerList)
+            if (handle.next != null)
             {
-                if (debugEnabled)
-                {
-                    dbgTrace.traceInfo(funcName, "Canceling %s", timer);
-                }
-                timer.cancel();
+                handle.next.prev = handle.prev;
             }
 
-            timerList.clear();
+            handle.prev = handle.next = null;
+            handle.slot = -1;
+            wheelTimerCount--;
+            success = true;
+        }
+
+        return success;
+    }   //unlinkFromWheel
+
+    /**
+     * This method collects the expired timers of the given wheel slot. It must be called with the timerList lock
+     * held.
+     *
+     * @param slot specifies the wheel slot.
+     * @param tick specifies the current tick, timers expiring after this tick are left in the slot.
+     * @param expiredTimers specifies the list to add the expired timers to.
+     */
+    private void collectExpiredTimers(int slot, long tick, ArrayList<TimerHandle> expiredTimers)
+    {
+        TimerHandle handle = wheel[slot];
+
+        while (handle != null)
+        {
+            TimerHandle next = handle.next;
+
+            if (handle.expiredTick <= tick)
+            {
+                unlinkFromWheel(handle);
+                handle.canceled = true;
+                expiredTimers.add(handle);
+            }
+            handle = next;
         }
+    }   //collectExpiredTimers
+
+    /**
+     * This method runs by the timer thread for the timing wheel engine. It advances the wheel one tick at a time and
+     * signals the timers expiring on each tick. When there is no timer, it waits until one is added.
+     */
+    private void timingWheelTask()
+    {
+        final String funcName = "timingWheelTask";
+        ArrayList<TimerHandle> expiredTimers = new ArrayList<>();
 
         if (debugEnabled)
         {
-            dbgTrace.traceInfo(funcName, "%s is terminated", moduleName);
+            dbgTrace.traceInfo("%s is starting...", moduleName);
+        }
+
+        try
+        {
+            while (!Thread.currentThread().isInterrupted())
+            {
+                long sleepTimeInMsec;
+
+                synchronized (timerList)
+                {
+                    while (wheelTimerCount == 0)
+                    {
+                        timerList.wait();
+                    }
+
+                    long currTimeInMsec = TrcUtil.getCurrentTimeMillis();
+                    long nowTick = currTimeInMsec/tickInterval;
+
+                    if (nowTick - currTick >= WHEEL_SIZE)
+                    {
+                        //
+                        // We fell behind by a whole revolution, sweep every slot once.
+                        //
+                        for (int slot = 0; slot < WHEEL_SIZE; slot++)
+                        {
+                            collectExpiredTimers(slot, nowTick, expiredTimers);
+                        }
+                        currTick = nowTick;
+                    }
+                    else
+                    {
+                        while (currTick < nowTick)
+                        {
+                            currTick++;
+                            collectExpiredTimers((int)(currTick & (WHEEL_SIZE - 1)), currTick, expiredTimers);
+                        }
+                    }
+                    sleepTimeInMsec = (currTick + 1)*tickInterval - currTimeInMsec;
+                }
+                //
+                // Signal the expired timers outside of the lock so their callbacks can arm new timers.
+                //
+                for (int i = 0; i < expiredTimers.size(); i++)
+                {
+                    TimerHandle handle = expiredTimers.get(i);
+
+                    if (debugEnabled)
+                    {
+                        dbgTrace.traceInfo(funcName, "[%.3f]: timer=%s expired.", TrcUtil.getCurrentTime(), handle);
+                    }
+                    handle.timer.setExpired(handle);
+                }
+                expiredTimers.clear();
+
+                if (sleepTimeInMsec > 0)
+                {
+                    Thread.sleep(sleepTimeInMsec);
+                }
+            }
+        }
+        catch (InterruptedException e)
+        {
+            //
+            // Somebody is trying to terminate the timer thread. Let's quit.
+            //
+            if (debugEnabled)
+            {
+                dbgTrace.traceInfo(funcName, "Terminating %s", moduleName);
+            }
         }
         //
+        // The thread is terminating, cancel all pending timers before exiting.
+        //
+        ArrayList<TimerHandle> pendingTimers = new ArrayList<>();
+        synchronized (timerList)
+        {
+            for (int slot = 0; slot < WHEEL_SIZE; slot++)
+            {
+                collectExpiredTimers(slot, Long.MAX_VALUE, pendingTimers);
+            }
+        }
+        cancelTimers(pendingTimers);
+        //
         // The thread is now terminated. Destroy this instance so we will recreate the thread the next time around.
         //
         timerThread = null;
-    }   //timerTask
+    }   //timingWheelTask
+
+    /**
+     * This method cancels the pending timers when the timer thread is terminating. It must be called without holding
+     * the timerList lock because canceling a timer calls back into remove.
+     *
+     * @param pendingTimers specifies the timers to be canceled.
+     */
+    private void cancelTimers(ArrayList<TimerHandle> pendingTimers)
+    {
+        final String funcName = "cancelTimers";
+
+        if (debugEnabled)
+        {
+            dbgTrace.traceInfo(funcName, "Terminating: canceling %d timers", pendingTimers.size());
+        }
+
+        for (TimerHandle handle: pendingTimers)
+        {
+            if (debugEnabled)
+            {
+                dbgTrace.traceInfo(funcName, "Canceling %s", handle);
+            }
+            handle.timer.cancel();
+        }
+
+        if (debugEnabled)
+        {
+            dbgTrace.traceInfo(funcName, "%s is terminated", moduleName);
+        }
+    }   //cancelTimers
 
 }   //class TrcTimerMgr
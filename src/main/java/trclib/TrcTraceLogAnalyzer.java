@@ -0,0 +1,724 @@
+/*
+ * Copyright (c) 2020 Titan Robotics Club (http://www.titanrobotics.com)
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+
+package trclib;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.function.Supplier;
+import java.util.stream.Collectors;
+import java.util.stream.Stream;
+
+/**
+ * This class implements an offline analyzer of text trace logs. Log files are grouped by match (a match usually has
+ * an autonomous log and a teleop log) and the matches are analyzed in parallel. Each match gets a fresh set of
+ * metrics and each metric sees the lines of all log files of the match in time order. The analyzer comes with
+ * metrics for the trace messages of the library (path following error, loop timing, PID on target times) and
+ * generic event cycle times (e.g. time between shots) configured by the key and the text of the trace message.
+ *
+ * Usage: TrcTraceLogAnalyzer [-t numThreads] [-f fileFilter] [-p pidTolerance] [-c name=keySuffix:pattern]...
+ *        logDirOrFile...
+ */
+public class TrcTraceLogAnalyzer
+{
+    public static final double DEF_PID_TOLERANCE = 1.0;
+    private static final double MAX_LOOP_PERIOD = 0.5;
+
+    /**
+     * This interface is implemented by a metric. A metric instance only analyzes one match and is only called from
+     * one thread.
+     */
+    public interface Metric
+    {
+        /**
+         * This method is called for each line of the match logs.
+         *
+         * @param line specifies the parsed line, only valid during the call.
+         * @param time specifies the time stamp of the line, or of the most recent line that had one if the line
+         *             has none. It goes backwards when the robot changes mode.
+         */
+        void processLine(TrcTraceLogParser.Line line, double time);
+
+        /**
+         * This method returns the summary of the metric for the match.
+         *
+         * @return metric summary string.
+         */
+        String getSummary();
+
+    }   //interface Metric
+
+    /**
+     * This class contains the analysis result of one match.
+     */
+    public static class MatchSummary
+    {
+        public final String matchName;
+        public final int fileCount;
+        public final long lineCount;
+        public final List<String> metricSummaries;
+
+        /**
+         * Constructor: Create an instance of the object.
+         *
+         * @param matchName specifies the match name.
+         * @param fileCount specifies the number of log files of the match.
+         * @param lineCount specifies the total number of lines parsed.
+         * @param metricSummaries specifies the summaries of all metrics.
+         */
+        public MatchSummary(String matchName, int fileCount, long lineCount, List<String> metricSummaries)
+        {
+            this.matchName = matchName;
+            this.fileCount = fileCount;
+            this.lineCount = lineCount;
+            this.metricSummaries = metricSummaries;
+        }   //MatchSummary
+
+        /**
+         * This method returns the match summary in string form.
+         *
+         * @return match summary in string form.
+         */
+        @Override
+        public String toString()
+        {
+            StringBuilder sb = new StringBuilder();
+
+            sb.append(String.format(Locale.US, "%s: files=%d, lines=%d", matchName, fileCount, lineCount));
+            for (String summary: metricSummaries)
+            {
+                sb.append("\n    ").append(summary);
+            }
+
+            return sb.toString();
+        }   //toString
+
+    }   //class MatchSummary
+
+    /**
+     * This class accumulates values and computes simple statistics of them.
+     */
+    public static class Statistics
+    {
+        private double[] values = new double[64];
+        private int count = 0;
+        private double sum = 0.0;
+        private boolean sorted = true;
+
+        /**
+         * This method adds a value.
+         *
+         * @param value specifies the value.
+         */
+        public void add(double value)
+        {
+            if (count == values.length)
+            {
+                values = Arrays.copyOf(values, count*2);
+            }
+            values[count++] = value;
+            sum += value;
+            sorted = false;
+        }   //add
+
+        /**
+         * This method returns the number of values.
+         *
+         * @return number of values.
+         */
+        public int getCount()
+        {
+            return count;
+        }   //getCount
+
+        /**
+         * This method returns the mean of the values.
+         *
+         * @return mean value, zero if there is no value.
+         */
+        public double getMean()
+        {
+            return count == 0? 0.0: sum/count;
+        }   //getMean
+
+        /**
+         * This method returns the value at the given percentile using the nearest rank method.
+         *
+         * @param percentile specifies the percentile between 0.0 and 100.0.
+         * @return value at the percentile, zero if there is no value.
+         */
+        public double getPercentile(double percentile)
+        {
+            double value = 0.0;
+
+            if (count > 0)
+            {
+                if (!sorted)
+                {
+                    Arrays.sort(values, 0, count);
+                    sorted = true;
+                }
+                int rank = (int)Math.ceil(TrcUtil.clipRange(percentile, 0.0, 100.0)/100.0*count);
+                value = values[Math.max(rank - 1, 0)];
+            }
+
+            return value;
+        }   //getPercentile
+
+        /**
+         * This method returns the minimum value.
+         *
+         * @return minimum value, zero if there is no value.
+         */
+        public double getMin()
+        {
+            return getPercentile(0.0);
+        }   //getMin
+
+        /**
+         * This method returns the maximum value.
+         *
+         * @return maximum value, zero if there is no value.
+         */
+        public double getMax()
+        {
+            return getPercentile(100.0);
+        }   //getMax
+
+        /**
+         * This method returns the statistics in string form.
+         *
+         * @return statistics in string form.
+         */
+        @Override
+        public String toString()
+        {
+            return String.format(
+                Locale.US, "(avg=%.3f,min=%.3f,p50=%.3f,p90=%.3f,max=%.3f)",
+                getMean(), getMin(), getPercentile(50.0), getPercentile(90.0), getMax());
+        }   //toString
+
+    }   //class Statistics
+
+    /**
+     * This class implements the path following metric from the TrcHolonomicPurePursuitDrive.driveTask trace
+     * messages. The position error is the distance between the robot and the following point, the velocity and
+     * heading errors are the differences between the target and the robot values.
+     */
+    public static class PathFollowingMetric implements Metric
+    {
+        private static final byte[] KEY = TrcTraceLogParser.pattern("TrcHolonomicPurePursuitDrive.driveTask_Info");
+        private static final byte[] ROBOT = TrcTraceLogParser.pattern("Robot: ");
+        private static final byte[] ROBOT_VEL = TrcTraceLogParser.pattern("RobotVel: ");
+        private static final byte[] ROBOT_HEADING = TrcTraceLogParser.pattern("RobotHeading: ");
+        private static final byte[] TARGET = TrcTraceLogParser.pattern("Target: ");
+        private static final byte[] TARGET_VEL = TrcTraceLogParser.pattern("TargetVel: ");
+        private static final byte[] TARGET_HEADING = TrcTraceLogParser.pattern("TargetHeading: ");
+
+        private final Statistics posError = new Statistics();
+        private final Statistics velError = new Statistics();
+        private final Statistics headingError = new Statistics();
+
+        @Override
+        public void processLine(TrcTraceLogParser.Line line, double time)
+        {
+            if (line.keyEndsWith(KEY))
+            {
+                double robotX = line.getNumber(ROBOT, 0);
+                double robotY = line.getNumber(ROBOT, 1);
+                double targetX = line.getNumber(TARGET, 0);
+                double targetY = line.getNumber(TARGET, 1);
+
+                if (!Double.isNaN(robotX + robotY + targetX + targetY))
+                {
+                    posError.add(TrcUtil.magnitude(targetX - robotX, targetY - robotY));
+                    velError.add(Math.abs(line.getNumber(TARGET_VEL) - line.getNumber(ROBOT_VEL)));
+                    double robotHeading = line.getNumber(ROBOT_HEADING);
+                    headingError.add(Math.abs(
+                        TrcWarpSpace.getOptimizedTarget(line.getNumber(TARGET_HEADING), robotHeading, 360.0) -
+                        robotHeading));
+                }
+            }
+        }   //processLine
+
+        @Override
+        public String getSummary()
+        {
+            return posError.getCount() == 0? "PathFollowing: no samples":
+                String.format(Locale.US, "PathFollowing: samples=%d, posErr%s, velErr%s, headingErr%s",
+                    posError.getCount(), posError, velError, headingError);
+        }   //getSummary
+
+    }   //class PathFollowingMetric
+
+    /**
+     * This class implements the loop timing metric. It reports the "took too long" warnings of the robot loop by
+     * phase and the period between consecutive time stamps of a periodic trace message.
+     */
+    public static class LoopTimingMetric implements Metric
+    {
+        private static final byte[] WARN_KEY = TrcTraceLogParser.pattern("startCompetition_Warn");
+        private static final byte[] TOO_LONG = TrcTraceLogParser.pattern(" took too long (");
+
+        private final byte[] periodicKey;
+        private final Statistics period = new Statistics();
+        private final Statistics overrun = new Statistics();
+        private final Map<String, Integer> overrunsByPhase = new TreeMap<>();
+        private double prevTime = Double.NaN;
+
+        /**
+         * Constructor: Create an instance of the object.
+         *
+         * @param periodicKey specifies the key suffix of a trace message that is logged every loop.
+         */
+        public LoopTimingMetric(String periodicKey)
+        {
+            this.periodicKey = TrcTraceLogParser.pattern(periodicKey);
+        }   //LoopTimingMetric
+
+        /**
+         * Constructor: Create an instance of the object.
+         */
+        public LoopTimingMetric()
+        {
+            this("TrcHolonomicPurePursuitDrive.driveTask_Info");
+        }   //LoopTimingMetric
+
+        @Override
+        public void processLine(TrcTraceLogParser.Line line, double time)
+        {
+            if (line.keyEndsWith(WARN_KEY))
+            {
+                int index = line.find(TOO_LONG);
+
+                if (index != -1)
+                {
+                    String message = line.getMessage();
+                    String phase = message.substring(0, message.indexOf(" took too long ("));
+
+                    overrunsByPhase.merge(phase, 1, Integer::sum);
+                    overrun.add(line.getNumber(TOO_LONG));
+                }
+            }
+            else if (line.keyEndsWith(periodicKey) && !Double.isNaN(line.getTimestamp()))
+            {
+                double delta = line.getTimestamp() - prevTime;
+                //
+                // Only consecutive loops count, time goes backwards on mode change and there are gaps when the
+                // periodic task is not running.
+                //
+                if (delta > 0.0 && delta < MAX_LOOP_PERIOD)
+                {
+                    period.add(delta);
+                }
+                prevTime = line.getTimestamp();
+            }
+        }   //processLine
+
+        @Override
+        public String getSummary()
+        {
+            return String.format(Locale.US, "LoopTiming: period%s, overruns=%d%s %s",
+                period, overrun.getCount(), overrun, overrunsByPhase);
+        }   //getSummary
+
+    }   //class LoopTimingMetric
+
+    /**
+     * This class implements the PID on target metric from the TrcPidController.printPidInfo trace messages. For
+     * each PID controller, it measures the time from a target change until the error is within tolerance.
+     */
+    public static class PidOnTargetMetric implements Metric
+    {
+        private static final byte[] KEY = TrcTraceLogParser.pattern("printPidInfo_Info");
+        private static final byte[] TARGET = TrcTraceLogParser.pattern(": Target=");
+        private static final byte[] ERROR = TrcTraceLogParser.pattern("Error=");
+
+        /**
+         * This class keeps track of one PID controller.
+         */
+        private static class PidState
+        {
+            double target = Double.NaN;
+            double targetTime = Double.NaN;
+            boolean onTarget = false;
+            int targetCount = 0;
+            final Statistics onTargetTime = new Statistics();
+        }   //class PidState
+
+        private final double tolerance;
+        private final Map<String, PidState> pidStates = new TreeMap<>();
+
+        /**
+         * Constructor: Create an instance of the object.
+         *
+         * @param tolerance specifies the error tolerance of on target.
+         */
+        public PidOnTargetMetric(double tolerance)
+        {
+            this.tolerance = tolerance;
+        }   //PidOnTargetMetric
+
+        @Override
+        public void processLine(TrcTraceLogParser.Line line, double time)
+        {
+            if (line.keyEndsWith(KEY) && line.contains(TARGET))
+            {
+                String message = line.getMessage();
+                PidState state = pidStates.computeIfAbsent(
+                    message.substring(0, message.indexOf(": Target=")), k -> new PidState());
+                double target = line.getNumber(TARGET);
+                double error = line.getNumber(ERROR);
+
+                if (target != state.target || time < state.targetTime)
+                {
+                    state.target = target;
+                    state.targetTime = time;
+                    state.onTarget = false;
+                    state.targetCount++;
+                }
+
+                if (!state.onTarget && Math.abs(error) <= tolerance)
+                {
+                    state.onTarget = true;
+                    state.onTargetTime.add(time - state.targetTime);
+                }
+            }
+        }   //processLine
+
+        @Override
+        public String getSummary()
+        {
+            StringBuilder sb = new StringBuilder("PidOnTarget:");
+
+            if (pidStates.isEmpty())
+            {
+                sb.append(" no samples");
+            }
+
+            for (Map.Entry<String, PidState> entry: pidStates.entrySet())
+            {
+                PidState state = entry.getValue();
+                sb.append(String.format(Locale.US, " %s(targets=%d, onTarget=%d, time%s)",
+                    entry.getKey(), state.targetCount, state.onTargetTime.getCount(), state.onTargetTime));
+            }
+
+            return sb.toString();
+        }   //getSummary
+
+    }   //class PidOnTargetMetric
+
+    /**
+     * This class implements a generic event cycle metric. It measures the time between consecutive occurrences of
+     * a trace message within the same robot mode, e.g. the time between shots.
+     */
+    public static class EventCycleMetric implements Metric
+    {
+        private final String name;
+        private final byte[] keySuffix;
+        private final byte[] pattern;
+        private final Statistics cycleTime = new Statistics();
+        private int eventCount = 0;
+        private double prevTime = Double.NaN;
+
+        /**
+         * Constructor: Create an instance of the object.
+         *
+         * @param name specifies the name of the metric.
+         * @param keySuffix specifies the key suffix of the trace message.
+         * @param pattern specifies the text the message must contain, can be null.
+         */
+        public EventCycleMetric(String name, String keySuffix, String pattern)
+        {
+            this.name = name;
+            this.keySuffix = TrcTraceLogParser.pattern(keySuffix);
+            this.pattern = pattern != null? TrcTraceLogParser.pattern(pattern): null;
+        }   //EventCycleMetric
+
+        @Override
+        public void processLine(TrcTraceLogParser.Line line, double time)
+        {
+            if (line.keyEndsWith(keySuffix) && (pattern == null || line.contains(pattern)))
+            {
+                eventCount++;
+                if (time > prevTime)
+                {
+                    cycleTime.add(time - prevTime);
+                }
+                prevTime = time;
+            }
+        }   //processLine
+
+        @Override
+        public String getSummary()
+        {
+            return String.format(Locale.US, "%s: events=%d, cycleTime%s", name, eventCount, cycleTime);
+        }   //getSummary
+
+    }   //class EventCycleMetric
+
+    private final int numThreads;
+    private final List<Supplier<Metric>> metricFactories = new ArrayList<>();
+
+    /**
+     * Constructor: Create an instance of the object.
+     *
+     * @param numThreads specifies the number of threads analyzing matches in parallel.
+     */
+    public TrcTraceLogAnalyzer(int numThreads)
+    {
+        this.numThreads = Math.max(numThreads, 1);
+    }   //TrcTraceLogAnalyzer
+
+    /**
+     * This method adds a metric to be computed for every match.
+     *
+     * @param factory specifies the factory creating a new metric instance for each match.
+     */
+    public void addMetric(Supplier<Metric> factory)
+    {
+        metricFactories.add(factory);
+    }   //addMetric
+
+    /**
+     * This method analyzes the given log files. The files are grouped by match and the matches are analyzed in
+     * parallel.
+     *
+     * @param logFiles specifies the log files.
+     * @return list of match summaries sorted by match name.
+     * @throws IOException if a log file cannot be read.
+     * @throws InterruptedException if the analysis was interrupted.
+     */
+    public List<MatchSummary> analyze(List<Path> logFiles) throws IOException, InterruptedException
+    {
+        Map<String, List<Path>> matches = logFiles.stream().sorted().collect(
+            Collectors.groupingBy(TrcTraceLogAnalyzer::getMatchName, TreeMap::new, Collectors.toList()));
+        List<Callable<MatchSummary>> jobs = new ArrayList<>();
+        List<MatchSummary> summaries = new ArrayList<>();
+        ExecutorService executor = Executors.newFixedThreadPool(numThreads);
+
+        for (Map.Entry<String, List<Path>> match: matches.entrySet())
+        {
+            jobs.add(() -> analyzeMatch(match.getKey(), match.getValue()));
+        }
+
+        try
+        {
+            for (Future<MatchSummary> future: executor.invokeAll(jobs))
+            {
+                summaries.add(future.get());
+            }
+        }
+        catch (ExecutionException e)
+        {
+            if (e.getCause() instanceof IOException)
+            {
+                throw (IOException)e.getCause();
+            }
+            throw new RuntimeException(e.getCause());
+        }
+        finally
+        {
+            executor.shutdownNow();
+        }
+
+        return summaries;
+    }   //analyze
+
+    /**
+     * This method analyzes the log files of one match.
+     *
+     * @param matchName specifies the match name.
+     * @param logFiles specifies the log files of the match in time order.
+     * @return match summary.
+     * @throws IOException if a log file cannot be read.
+     */
+    public MatchSummary analyzeMatch(String matchName, List<Path> logFiles) throws IOException
+    {
+        List<Metric> metrics = new ArrayList<>();
+        long lineCount = 0;
+
+        for (Supplier<Metric> factory: metricFactories)
+        {
+            metrics.add(factory.get());
+        }
+
+        for (Path logFile: logFiles)
+        {
+            double[] time = new double[] {0.0};
+
+            lineCount += TrcTraceLogParser.parse(logFile, line ->
+            {
+                if (!Double.isNaN(line.getTimestamp()))
+                {
+                    time[0] = line.getTimestamp();
+                }
+
+                for (Metric metric: metrics)
+                {
+                    metric.processLine(line, time[0]);
+                }
+            });
+        }
+
+        return new MatchSummary(
+            matchName, logFiles.size(), lineCount,
+            metrics.stream().map(Metric::getSummary).collect(Collectors.toList()));
+    }   //analyzeMatch
+
+    /**
+     * This method returns the match name of a log file. Log files are named "<date>@<time>!<matchName>.log" (e.g.
+     * "20200301@103831!WASNO_Qualification068.log"). Files not following this convention are their own match.
+     *
+     * @param logFile specifies the log file.
+     * @return match name.
+     */
+    public static String getMatchName(Path logFile)
+    {
+        String name = logFile.getFileName().toString();
+        int start = name.indexOf('!') + 1;
+        int end = name.endsWith(".log")? name.length() - 4: name.length();
+
+        return name.substring(start, end);
+    }   //getMatchName
+
+    /**
+     * This method finds all log files in the given directories or files.
+     *
+     * @param paths specifies the directories to be searched recursively or individual log files.
+     * @param filter specifies the text the file name must contain, null for all files.
+     * @return list of log files.
+     * @throws IOException if a directory cannot be read.
+     */
+    public static List<Path> findLogFiles(List<Path> paths, String filter) throws IOException
+    {
+        List<Path> logFiles = new ArrayList<>();
+
+        for (Path path: paths)
+        {
+            try (Stream<Path> stream = Files.walk(path))
+            {
+                stream.filter(p -> Files.isRegularFile(p) && p.toString().endsWith(".log") &&
+                                   (filter == null || p.getFileName().toString().contains(filter)))
+                      .forEach(logFiles::add);
+            }
+        }
+        Collections.sort(logFiles);
+
+        return logFiles;
+    }   //findLogFiles
+
+    /**
+     * This is the entry point of the analyzer.
+     *
+     * @param args specifies the command line arguments, see the class description.
+     * @throws IOException if a log file cannot be read.
+     * @throws InterruptedException if the analysis was interrupted.
+     */
+    public static void main(String[] args) throws IOException, InterruptedException
+    {
+        int numThreads = Runtime.getRuntime().availableProcessors();
+        String filter = null;
+        double pidTolerance = DEF_PID_TOLERANCE;
+        List<String[]> cycles = new ArrayList<>();
+        List<Path> paths = new ArrayList<>();
+
+        for (int i = 0; i < args.length; i++)
+        {
+            boolean hasValue = i + 1 < args.length;
+
+            if (args[i].equals("-t") && hasValue)
+            {
+                numThreads = Integer.parseInt(args[++i]);
+            }
+            else if (args[i].equals("-f") && hasValue)
+            {
+                filter = args[++i];
+            }
+            else if (args[i].equals("-p") && hasValue)
+            {
+                pidTolerance = Double.parseDouble(args[++i]);
+            }
+            else if (args[i].equals("-c") && hasValue && args[i + 1].matches("[^=]+=[^:]+(:.*)?"))
+            {
+                String[] nameValue = args[++i].split("=", 2);
+                String[] keyPattern = nameValue[1].split(":", 2);
+                cycles.add(new String[] {nameValue[0], keyPattern[0], keyPattern.length > 1? keyPattern[1]: null});
+            }
+            else if (!args[i].startsWith("-"))
+            {
+                paths.add(Paths.get(args[i]));
+            }
+            else
+            {
+                paths.clear();
+                break;
+            }
+        }
+
+        if (paths.isEmpty())
+        {
+            System.err.println(
+                "Usage: TrcTraceLogAnalyzer [-t numThreads] [-f fileFilter] [-p pidTolerance] " +
+                "[-c name=keySuffix[:pattern]]... logDirOrFile...");
+            System.exit(1);
+        }
+
+        final double tolerance = pidTolerance;
+        TrcTraceLogAnalyzer analyzer = new TrcTraceLogAnalyzer(numThreads);
+        analyzer.addMetric(PathFollowingMetric::new);
+        analyzer.addMetric(LoopTimingMetric::new);
+        analyzer.addMetric(() -> new PidOnTargetMetric(tolerance));
+        for (String[] cycle: cycles)
+        {
+            analyzer.addMetric(() -> new EventCycleMetric(cycle[0], cycle[1], cycle[2]));
+        }
+
+        long startNanoTime = TrcUtil.getCurrentTimeNanos();
+        List<Path> logFiles = findLogFiles(paths, filter);
+        List<MatchSummary> summaries = analyzer.analyze(logFiles);
+        long lineCount = 0;
+
+        for (MatchSummary summary: summaries)
+        {
+            System.out.println(summary);
+            lineCount += summary.lineCount;
+        }
+        System.out.printf(Locale.US, "Analyzed %d matches, %d files, %d lines in %.3fs.%n",
+            summaries.size(), logFiles.size(), lineCount, (TrcUtil.getCurrentTimeNanos() - startNanoTime)/1e9);
+    }   //main
+
+}   //class TrcTraceLogAnalyzer
@@ -0,0 +1,445 @@
+/*
+ * Copyright (c) 2020 Titan Robotics Club (http://www.titanrobotics.com)
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+
+package trclib;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+
+/**
+ * This class implements a streaming parser of text trace logs written by TrcDbgTrace. The log file is memory mapped
+ * and scanned one line at a time. Each line is presented to the caller as a Line object that is reused for the whole
+ * file and only refers to the mapped bytes, so scanning a log does not create any garbage unless the caller asks for
+ * a String. A trace log line has the form "<tracer>.<func>_<Level>: [<time>] <message>" where the time stamp is
+ * optional.
+ */
+public class TrcTraceLogParser
+{
+    /**
+     * This interface is implemented by the caller to receive the parsed lines.
+     */
+    public interface LineHandler
+    {
+        /**
+         * This method is called for each line of the log. The line object is only valid during the call.
+         *
+         * @param line specifies the parsed line.
+         */
+        void handleLine(Line line);
+
+    }   //interface LineHandler
+
+    /**
+     * This class describes one line of the log. The key of the line is the text before the first ": " (e.g.
+     * "GlobalTracer.TrcHolonomicPurePursuitDrive.driveTask_Info"). Lines without a key (e.g. exception stack
+     * traces) have an empty key and the whole line as the message.
+     */
+    public static class Line
+    {
+        private ByteBuffer buffer;
+        private int lineStart;
+        private int lineEnd;
+        private int keyEnd;
+        private int msgStart;
+        private double timestamp;
+        private int parseEnd;
+
+        /**
+         * This method returns the line in string form.
+         *
+         * @return line in string form.
+         */
+        @Override
+        public String toString()
+        {
+            return getString(lineStart, lineEnd);
+        }   //toString
+
+        /**
+         * This method returns the key of the line.
+         *
+         * @return key string of the line.
+         */
+        public String getKey()
+        {
+            return getString(lineStart, keyEnd);
+        }   //getKey
+
+        /**
+         * This method returns the message part of the line after the key and the time stamp.
+         *
+         * @return message string of the line.
+         */
+        public String getMessage()
+        {
+            return getString(msgStart, lineEnd);
+        }   //getMessage
+
+        /**
+         * This method checks if the key of the line ends with the given suffix. Since the key starts with the tracer
+         * name which may vary between robots, metrics usually match the "<func>_<Level>" part with this method.
+         *
+         * @param suffix specifies the key suffix in ASCII bytes.
+         * @return true if the key ends with the suffix, false otherwise.
+         */
+        public boolean keyEndsWith(byte[] suffix)
+        {
+            boolean match = keyEnd - lineStart >= suffix.length;
+
+            for (int i = 0; match && i < suffix.length; i++)
+            {
+                match = buffer.get(keyEnd - suffix.length + i) == suffix[i];
+            }
+
+            return match;
+        }   //keyEndsWith
+
+        /**
+         * This method returns the time stamp of the line.
+         *
+         * @return time stamp in seconds, NaN if the line has no time stamp.
+         */
+        public double getTimestamp()
+        {
+            return timestamp;
+        }   //getTimestamp
+
+        /**
+         * This method searches the message for the given pattern.
+         *
+         * @param pattern specifies the pattern in ASCII bytes.
+         * @return buffer index right after the pattern, -1 if not found.
+         */
+        public int find(byte[] pattern)
+        {
+            int index = -1;
+
+            for (int i = msgStart; index == -1 && i <= lineEnd - pattern.length; i++)
+            {
+                int j = 0;
+
+                while (j < pattern.length && buffer.get(i + j) == pattern[j])
+                {
+                    j++;
+                }
+
+                if (j == pattern.length)
+                {
+                    index = i + j;
+                }
+            }
+
+            return index;
+        }   //find
+
+        /**
+         * This method checks if the message contains the given pattern.
+         *
+         * @param pattern specifies the pattern in ASCII bytes.
+         * @return true if the message contains the pattern, false otherwise.
+         */
+        public boolean contains(byte[] pattern)
+        {
+            return find(pattern) != -1;
+        }   //contains
+
+        /**
+         * This method returns the number following the given label. For example, with the message
+         * "Robot: (-315.48,224.95), RobotVel: 11.31", the label "Robot: " with index 1 returns 224.95 and the
+         * label "RobotVel: " with index 0 returns 11.31.
+         *
+         * @param label specifies the label in ASCII bytes.
+         * @param index specifies the zero based index of the number after the label.
+         * @return number value, NaN if the label or the number is not found.
+         */
+        public double getNumber(byte[] label, int index)
+        {
+            double value = Double.NaN;
+            int pos = find(label);
+
+            if (pos != -1)
+            {
+                for (int i = 0; i <= index; i++)
+                {
+                    pos = skipToNumber(pos, lineEnd);
+                    if (pos == -1)
+                    {
+                        break;
+                    }
+                    value = parseNumber(pos, lineEnd);
+                    pos = parseEnd;
+                }
+
+                if (pos == -1)
+                {
+                    value = Double.NaN;
+                }
+            }
+
+            return value;
+        }   //getNumber
+
+        /**
+         * This method returns the number following the given label.
+         *
+         * @param label specifies the label in ASCII bytes.
+         * @return number value, NaN if the label or the number is not found.
+         */
+        public double getNumber(byte[] label)
+        {
+            return getNumber(label, 0);
+        }   //getNumber
+
+        /**
+         * This method sets the line boundaries and parses the key and the time stamp.
+         *
+         * @param buffer specifies the mapped log buffer.
+         * @param start specifies the buffer index of the first character of the line.
+         * @param end specifies the buffer index after the last character of the line.
+         */
+        private void set(ByteBuffer buffer, int start, int end)
+        {
+            this.buffer = buffer;
+            lineStart = start;
+            lineEnd = end;
+            keyEnd = start;
+            msgStart = start;
+            timestamp = Double.NaN;
+
+            for (int i = start; i < end - 1; i++)
+            {
+                byte b = buffer.get(i);
+
+                if (b == ':' && buffer.get(i + 1) == ' ')
+                {
+                    keyEnd = i;
+                    msgStart = i + 2;
+                    break;
+                }
+                else if (b <= ' ' || b == '<')
+                {
+                    // Keys never contain spaces, this line has no key.
+                    break;
+                }
+            }
+
+            if (msgStart < end && buffer.get(msgStart) == '[')
+            {
+                double value = parseNumber(msgStart + 1, end);
+
+                if (!Double.isNaN(value) && parseEnd < end && buffer.get(parseEnd) == ']')
+                {
+                    timestamp = value;
+                    msgStart = Math.min(parseEnd + 2, end);
+                }
+            }
+        }   //set
+
+        /**
+         * This method skips to the start of the next number.
+         *
+         * @param pos specifies the buffer index to start searching.
+         * @param end specifies the buffer index to stop searching.
+         * @return buffer index of the number, -1 if there is none.
+         */
+        private int skipToNumber(int pos, int end)
+        {
+            int index = -1;
+
+            for (int i = pos; i < end; i++)
+            {
+                byte b = buffer.get(i);
+
+                if (b >= '0' && b <= '9' || (b == '-' || b == '.') && i + 1 < end && isDigitOrDot(buffer.get(i + 1)))
+                {
+                    index = i;
+                    break;
+                }
+            }
+
+            return index;
+        }   //skipToNumber
+
+        /**
+         * This method parses a decimal number without creating a String. It stops at the first character that is
+         * not part of the number and saves its index in parseEnd.
+         *
+         * @param pos specifies the buffer index of the number.
+         * @param end specifies the buffer index to stop parsing.
+         * @return number value, NaN if there is no digit at the position.
+         */
+        private double parseNumber(int pos, int end)
+        {
+            boolean negative = false;
+            boolean hasDigits = false;
+            double value = 0.0;
+            double scale = 0.0;
+
+            if (pos < end && buffer.get(pos) == '-')
+            {
+                negative = true;
+                pos++;
+            }
+
+            for (; pos < end; pos++)
+            {
+                byte b = buffer.get(pos);
+
+                if (b >= '0' && b <= '9')
+                {
+                    hasDigits = true;
+                    if (scale == 0.0)
+                    {
+                        value = value*10.0 + (b - '0');
+                    }
+                    else
+                    {
+                        value += (b - '0')*scale;
+                        scale /= 10.0;
+                    }
+                }
+                else if (b == '.' && scale == 0.0)
+                {
+                    scale = 0.1;
+                }
+                else
+                {
+                    break;
+                }
+            }
+            parseEnd = pos;
+
+            return hasDigits? (negative? -value: value): Double.NaN;
+        }   //parseNumber
+
+        /**
+         * This method checks if the given character is a digit or a decimal point.
+         *
+         * @param b specifies the character.
+         * @return true if it is a digit or a decimal point.
+         */
+        private static boolean isDigitOrDot(byte b)
+        {
+            return b >= '0' && b <= '9' || b == '.';
+        }   //isDigitOrDot
+
+        /**
+         * This method returns the text between the given buffer indices as a String.
+         *
+         * @param start specifies the start index.
+         * @param end specifies the end index.
+         * @return text string.
+         */
+        private String getString(int start, int end)
+        {
+            byte[] bytes = new byte[end - start];
+
+            for (int i = 0; i < bytes.length; i++)
+            {
+                bytes[i] = buffer.get(start + i);
+            }
+
+            return new String(bytes, StandardCharsets.UTF_8);
+        }   //getString
+
+    }   //class Line
+
+    /**
+     * This method converts a pattern string into ASCII bytes for the Line matching methods.
+     *
+     * @param pattern specifies the pattern string.
+     * @return pattern bytes.
+     */
+    public static byte[] pattern(String pattern)
+    {
+        return pattern.getBytes(StandardCharsets.US_ASCII);
+    }   //pattern
+
+    /**
+     * This method parses the given log file and calls the handler for each line.
+     *
+     * @param file specifies the trace log file.
+     * @param handler specifies the handler to call for each line.
+     * @return number of lines parsed.
+     * @throws IOException if the file cannot be read.
+     */
+    public static long parse(Path file, LineHandler handler) throws IOException
+    {
+        try (FileChannel channel = FileChannel.open(file, StandardOpenOption.READ))
+        {
+            long size = channel.size();
+
+            if (size > Integer.MAX_VALUE)
+            {
+                throw new IOException("Trace log " + file + " is too big.");
+            }
+
+            return parse(channel.map(FileChannel.MapMode.READ_ONLY, 0, size), handler);
+        }
+    }   //parse
+
+    /**
+     * This method parses the log text in the given buffer and calls the handler for each line.
+     *
+     * @param buffer specifies the buffer containing the log text.
+     * @param handler specifies the handler to call for each line.
+     * @return number of lines parsed.
+     */
+    public static long parse(ByteBuffer buffer, LineHandler handler)
+    {
+        Line line = new Line();
+        int limit = buffer.limit();
+        int start = buffer.position();
+        long lineCount = 0;
+
+        while (start < limit)
+        {
+            int end = start;
+
+            while (end < limit && buffer.get(end) != '\n')
+            {
+                end++;
+            }
+
+            int next = end + 1;
+            if (end > start && buffer.get(end - 1) == '\r')
+            {
+                end--;
+            }
+
+            if (end > start)
+            {
+                line.set(buffer, start, end);
+                handler.handleLine(line);
+                lineCount++;
+            }
+            start = next;
+        }
+
+        return lineCount;
+    }   //parse
+
+}   //class TrcTraceLogParser
@@ -38,8 +38,14 @@ public class TrcTraceLogger
     private static final TrcDbgTrace.MsgLevel msgLevel = TrcDbgTrace.MsgLevel.INFO;
     private TrcDbgTrace dbgTrace = null;
 
+    //
+    // Bound the message queue so a logger that falls behind doesn't grow memory without limit.
+    //
+    private static final int MAX_QUEUE_SIZE = 10000;
+
     private final String traceLogName;
     private final LinkedBlockingQueue<String> msgQueue;
+    private volatile long droppedCount = 0;
 
     private PrintWriter traceLog = null;
     private volatile Thread loggerThread = null;
@@ -63,7 +69,7 @@ public class TrcTraceLogger
         }
 
         this.traceLogName = traceLogName;
-        msgQueue = new LinkedBlockingQueue<>();
+        msgQueue = new LinkedBlockingQueue<>(MAX_QUEUE_SIZE);
     }   //TrcTraceLogger
 
     /**
@@ -142,10 +148,21 @@ public class TrcTraceLogger
         perfTracer = tracer;
     }   //setPerformanceTracer
 
+    /**
+     * This method returns the number of messages dropped because the message queue was full.
+     *
+     * @return number of dropped messages.
+     */
+    public long getDroppedCount()
+    {
+        return droppedCount;
+    }   //getDroppedCount
+
     /**
      * This method is called to log a message to the log file.
      *
      * @param msg specifies the message to be logged.
+     * @return true if the message is queued, false if the logger is disabled or the message queue is full.
      */
     public synchronized boolean logMessage(String msg)
     {
@@ -153,7 +170,11 @@ public class TrcTraceLogger
 
         if (isEnabled())
         {
-            success = msgQueue.add(msg);
+            success = msgQueue.offer(msg);
+            if (!success)
+            {
+                droppedCount++;
+            }
         }
 
         return success;
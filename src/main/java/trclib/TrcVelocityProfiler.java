@@ -0,0 +1,361 @@
+/*
+ * Copyright (c) 2019 Titan Robotics Club (http://www.titanrobotics.com)
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+
+package trclib;
+
+import java.util.ArrayList;
+
+/**
+ * This class implements a time optimal velocity profiler for path data. The fastest velocity at every waypoint is
+ * limited by the maximum velocity, the velocity limits set on ranges of the path, the centripetal acceleration in
+ * curves and the speed of the swerve modules while the robot turns. A forward pass then limits every velocity to what
+ * can be reached by accelerating from the previous waypoint and a backward pass limits it to what can still be
+ * stopped (or slowed to the end velocity) by decelerating to the next waypoint. The result is the fastest profile
+ * that honors all the limits, computed in time linear in the number of waypoints.
+ *
+ * The curvature of the path is estimated from each waypoint and its neighbors, so the path should be resampled with a
+ * spacing similar to the distance over which the path follower smooths the corners (see TrcPathData.resample).
+ * Sharp corners of a coarse path would otherwise have zero curvature at every waypoint.
+ */
+public class TrcVelocityProfiler
+{
+    /**
+     * This class specifies a velocity limit on a range of the path.
+     */
+    private static class VelocityLimit
+    {
+        final double startDistance;
+        final double endDistance;
+        final double maxVelocity;
+
+        VelocityLimit(double startDistance, double endDistance, double maxVelocity)
+        {
+            this.startDistance = startDistance;
+            this.endDistance = endDistance;
+            this.maxVelocity = maxVelocity;
+        }   //VelocityLimit
+
+    }   //class VelocityLimit
+
+    private final String instanceName;
+    private final double maxVelocity;
+    private final double maxAcceleration;
+    private final ArrayList<VelocityLimit> velocityLimits = new ArrayList<>();
+    private double maxDeceleration;
+    private double maxCentripetalAcceleration = Double.POSITIVE_INFINITY;
+    private double maxModuleVelocity = Double.POSITIVE_INFINITY;
+    private double maxModuleAcceleration = Double.POSITIVE_INFINITY;
+    private double moduleRadius = 0.0;
+    private double startVelocity = 0.0;
+    private double endVelocity = 0.0;
+
+    /**
+     * Constructor: Create an instance of the object.
+     *
+     * @param instanceName specifies the instance name.
+     * @param maxVelocity specifies the maximum velocity of the robot.
+     * @param maxAcceleration specifies the maximum acceleration of the robot, also used as the maximum deceleration
+     *                        unless setMaxDeceleration is called.
+     */
+    public TrcVelocityProfiler(String instanceName, double maxVelocity, double maxAcceleration)
+    {
+        if (maxVelocity <= 0.0 || maxAcceleration <= 0.0)
+        {
+            throw new IllegalArgumentException("maxVelocity and maxAcceleration must be positive.");
+        }
+
+        this.instanceName = instanceName;
+        this.maxVelocity = maxVelocity;
+        this.maxAcceleration = maxAcceleration;
+        this.maxDeceleration = maxAcceleration;
+    }   //TrcVelocityProfiler
+
+    /**
+     * This method returns the instance name.
+     *
+     * @return instance name.
+     */
+    @Override
+    public String toString()
+    {
+        return instanceName;
+    }   //toString
+
+    /**
+     * This method sets the maximum deceleration of the robot.
+     *
+     * @param maxDeceleration specifies the maximum deceleration as a positive value.
+     */
+    public void setMaxDeceleration(double maxDeceleration)
+    {
+        if (maxDeceleration <= 0.0)
+        {
+            throw new IllegalArgumentException("maxDeceleration must be positive.");
+        }
+
+        this.maxDeceleration = maxDeceleration;
+    }   //setMaxDeceleration
+
+    /**
+     * This method sets the maximum centripetal acceleration. The velocity in a curve of curvature k is limited to
+     * sqrt(maxCentripetalAcceleration/k).
+     *
+     * @param maxCentripetalAcceleration specifies the maximum centripetal acceleration, POSITIVE_INFINITY for no
+     *        limit.
+     */
+    public void setMaxCentripetalAcceleration(double maxCentripetalAcceleration)
+    {
+        if (maxCentripetalAcceleration <= 0.0)
+        {
+            throw new IllegalArgumentException("maxCentripetalAcceleration must be positive.");
+        }
+
+        this.maxCentripetalAcceleration = maxCentripetalAcceleration;
+    }   //setMaxCentripetalAcceleration
+
+    /**
+     * This method sets the limits of the swerve modules. When the robot turns while it drives, the outer modules move
+     * faster than the robot by up to the turn rate times the module radius. The turn rate is the heading change per
+     * distance of the path times the robot velocity, so the robot velocity and acceleration are scaled down by
+     * 1 + |heading change per distance| * moduleRadius.
+     *
+     * @param maxModuleVelocity specifies the maximum velocity of a module.
+     * @param maxModuleAcceleration specifies the maximum acceleration of a module.
+     * @param moduleRadius specifies the distance from the robot center to the farthest module.
+     */
+    public void setSwerveModuleLimits(double maxModuleVelocity, double maxModuleAcceleration, double moduleRadius)
+    {
+        if (maxModuleVelocity <= 0.0 || maxModuleAcceleration <= 0.0 || moduleRadius < 0.0)
+        {
+            throw new IllegalArgumentException("Module limits must be positive.");
+        }
+
+        this.maxModuleVelocity = maxModuleVelocity;
+        this.maxModuleAcceleration = maxModuleAcceleration;
+        this.moduleRadius = moduleRadius;
+    }   //setSwerveModuleLimits
+
+    /**
+     * This method sets the velocities at the start and at the end of the path. They are still subject to all other
+     * limits.
+     *
+     * @param startVelocity specifies the velocity at the first waypoint.
+     * @param endVelocity specifies the velocity at the last waypoint.
+     */
+    public void setEndpointVelocities(double startVelocity, double endVelocity)
+    {
+        if (startVelocity < 0.0 || endVelocity < 0.0)
+        {
+            throw new IllegalArgumentException("Endpoint velocities must not be negative.");
+        }
+
+        this.startVelocity = startVelocity;
+        this.endVelocity = endVelocity;
+    }   //setEndpointVelocities
+
+    /**
+     * This method limits the velocity on a range of the path. Limits can overlap, the lowest one applies.
+     *
+     * @param startDistance specifies the arc length where the limit starts.
+     * @param endDistance specifies the arc length where the limit ends, inclusive.
+     * @param maxVelocity specifies the maximum velocity in the range.
+     */
+    public void addVelocityLimit(double startDistance, double endDistance, double maxVelocity)
+    {
+        if (maxVelocity <= 0.0)
+        {
+            throw new IllegalArgumentException("maxVelocity must be positive.");
+        }
+
+        velocityLimits.add(new VelocityLimit(startDistance, endDistance, maxVelocity));
+    }   //addVelocityLimit
+
+    /**
+     * This method removes all velocity limits on ranges of the path.
+     */
+    public void clearVelocityLimits()
+    {
+        velocityLimits.clear();
+    }   //clearVelocityLimits
+
+    /**
+     * This method sets the velocities, accelerations and time steps of the path data to the time optimal profile.
+     * The path data is modified in place.
+     *
+     * @param pathData specifies the path data to profile.
+     * @return profiled path data.
+     */
+    public TrcPathData profile(TrcPathData pathData)
+    {
+        int last = pathData.getSize() - 1;
+        //
+        // Find the fastest velocity allowed at each waypoint on its own.
+        //
+        for (int i = 0; i <= last; i++)
+        {
+            double velocity = Math.min(maxVelocity, getRangeLimit(pathData.getArcLength(i)));
+            double curvature = getCurvature(pathData, i);
+
+            if (curvature > 0.0)
+            {
+                velocity = Math.min(velocity, Math.sqrt(maxCentripetalAcceleration/curvature));
+            }
+
+            double turnRate = Math.max(
+                i > 0? getTurnRate(pathData, i - 1): 0.0, i < last? getTurnRate(pathData, i): 0.0);
+            velocity = Math.min(velocity, maxModuleVelocity/(1.0 + turnRate*moduleRadius));
+            pathData.setVelocity(i, velocity);
+        }
+        pathData.setVelocity(0, Math.min(pathData.getVelocity(0), startVelocity));
+        pathData.setVelocity(last, Math.min(pathData.getVelocity(last), endVelocity));
+        //
+        // Forward pass: limit each velocity to what can be reached from the previous waypoint.
+        //
+        for (int i = 0; i < last; i++)
+        {
+            double distance = pathData.getArcLength(i + 1) - pathData.getArcLength(i);
+            double acceleration = getSegmentAcceleration(pathData, i, maxAcceleration);
+            double velocity = pathData.getVelocity(i);
+
+            pathData.setVelocity(i + 1, Math.min(
+                pathData.getVelocity(i + 1), Math.sqrt(velocity*velocity + 2.0*acceleration*distance)));
+        }
+        //
+        // Backward pass: limit each velocity to what can be slowed down to the next waypoint.
+        //
+        for (int i = last - 1; i >= 0; i--)
+        {
+            double distance = pathData.getArcLength(i + 1) - pathData.getArcLength(i);
+            double deceleration = getSegmentAcceleration(pathData, i, maxDeceleration);
+            double velocity = pathData.getVelocity(i + 1);
+
+            pathData.setVelocity(i, Math.min(
+                pathData.getVelocity(i), Math.sqrt(velocity*velocity + 2.0*deceleration*distance)));
+        }
+        //
+        // The acceleration is constant on each segment.
+        //
+        for (int i = 0; i < last; i++)
+        {
+            double distance = pathData.getArcLength(i + 1) - pathData.getArcLength(i);
+            double v1 = pathData.getVelocity(i);
+            double v2 = pathData.getVelocity(i + 1);
+
+            pathData.setAcceleration(i, distance > 0.0? (v2*v2 - v1*v1)/(2.0*distance): 0.0);
+        }
+        pathData.setAcceleration(last, 0.0);
+        pathData.inferTimeSteps();
+
+        return pathData;
+    }   //profile
+
+    /**
+     * This method returns the lowest velocity limit of the ranges containing the given arc length.
+     *
+     * @param distance specifies the arc length.
+     * @return velocity limit, POSITIVE_INFINITY if no range contains the arc length.
+     */
+    private double getRangeLimit(double distance)
+    {
+        double limit = Double.POSITIVE_INFINITY;
+
+        for (VelocityLimit velocityLimit: velocityLimits)
+        {
+            if (distance >= velocityLimit.startDistance && distance <= velocityLimit.endDistance)
+            {
+                limit = Math.min(limit, velocityLimit.maxVelocity);
+            }
+        }
+
+        return limit;
+    }   //getRangeLimit
+
+    /**
+     * This method returns the curvature of the path at a waypoint, from the circle through the waypoint and its
+     * neighbors.
+     *
+     * @param pathData specifies the path data.
+     * @param index specifies the waypoint index.
+     * @return curvature, 0.0 at the ends of the path and on straight lines.
+     */
+    private static double getCurvature(TrcPathData pathData, int index)
+    {
+        double curvature = 0.0;
+
+        if (index > 0 && index < pathData.getSize() - 1)
+        {
+            double ax = pathData.getX(index) - pathData.getX(index - 1);
+            double ay = pathData.getY(index) - pathData.getY(index - 1);
+            double bx = pathData.getX(index + 1) - pathData.getX(index);
+            double by = pathData.getY(index + 1) - pathData.getY(index);
+            double cx = ax + bx;
+            double cy = ay + by;
+            double product = Math.sqrt((ax*ax + ay*ay)*(bx*bx + by*by)*(cx*cx + cy*cy));
+
+            if (product > 0.0)
+            {
+                curvature = 2.0*Math.abs(ax*by - ay*bx)/product;
+            }
+        }
+
+        return curvature;
+    }   //getCurvature
+
+    /**
+     * This method returns the heading change per distance on a segment.
+     *
+     * @param pathData specifies the path data.
+     * @param index specifies the index of the first waypoint of the segment.
+     * @return heading change in radians per distance.
+     */
+    private static double getTurnRate(TrcPathData pathData, int index)
+    {
+        double distance = pathData.getArcLength(index + 1) - pathData.getArcLength(index);
+        double turnRate = 0.0;
+
+        if (distance > 0.0)
+        {
+            double heading = pathData.getHeading(index);
+            double range = pathData.isInDegrees()? 360.0: 2.0*Math.PI;
+            double change = TrcWarpSpace.getOptimizedTarget(pathData.getHeading(index + 1), heading, range) - heading;
+
+            turnRate = Math.abs(pathData.isInDegrees()? Math.toRadians(change): change)/distance;
+        }
+
+        return turnRate;
+    }   //getTurnRate
+
+    /**
+     * This method returns the acceleration limit of a segment, the robot limit or the module limit scaled down by the
+     * turn rate, whichever is lower.
+     *
+     * @param pathData specifies the path data.
+     * @param index specifies the index of the first waypoint of the segment.
+     * @param robotLimit specifies the acceleration or deceleration limit of the robot.
+     * @return acceleration limit of the segment.
+     */
+    private double getSegmentAcceleration(TrcPathData pathData, int index, double robotLimit)
+    {
+        return Math.min(robotLimit, maxModuleAcceleration/(1.0 + getTurnRate(pathData, index)*moduleRadius));
+    }   //getSegmentAcceleration
+
+}   //class TrcVelocityProfiler
@@ -22,12 +22,20 @@
 
 package trclib;
 
+import java.util.concurrent.atomic.AtomicLong;
+
 /**
  * This class implements a platform independent vision task. When enabled, it grabs a frame from the video source,
  * calls the provided object detector to process the frame and overlays rectangles on the detected objects in the
  * image. This class is to be extended by a platform dependent vision processor who will provide the video input
  * and output. 
  *
+ * By default, the task runs all processing stages one after the other on one frame at a time. In pipelined mode,
+ * the grab, preprocess, detect and publish stages each run on their own thread so that they work on different
+ * frames at the same time. The stages pass the image buffers to each other through bounded queues. When a stage
+ * falls behind, the oldest frame waiting for it is dropped and its buffer is reused, so the slowest stage always
+ * works on the most recent frame.
+ *
  * @param <I> specifies the type of the input image.
  * @param <O> specifies the type of the detected objects.
  */
@@ -67,8 +75,157 @@ public class TrcVisionTask<I, O>
          */
         O detectObjects(I image, O detectedObjects);
 
+        /**
+         * This method is called to prepare the acquired image frame for object detection, for example to convert
+         * its color space or scale it down. It runs on its own thread in pipelined mode.
+         *
+         * @param image specifies the image to be prepared.
+         * @return true if the frame should be passed on to detection, false to drop it.
+         */
+        default boolean preprocessFrame(I image)
+        {
+            return true;
+        }   //preprocessFrame
+
+        /**
+         * This method is called to publish the objects detected in an image frame, for example to render the frame
+         * with the detected objects to the video output. It runs on its own thread in pipelined mode.
+         *
+         * @param image specifies the processed image.
+         * @param detectedObjects specifies the detected objects, null if none detected.
+         */
+        default void publishObjects(I image, O detectedObjects)
+        {
+        }   //publishObjects
+
+        /**
+         * This method is called in pipelined mode for a frame that is dropped before it is published, because a
+         * later stage fell behind or the pipeline is stopped. A processor that keeps per-frame state from
+         * preprocessFrame to detectObjects must release it here. The frame may have been dropped before it was
+         * preprocessed or after it was detected, so the processor must ignore frames it has no state for.
+         *
+         * @param image specifies the dropped image.
+         */
+        default void discardFrame(I image)
+        {
+        }   //discardFrame
+
     }   //interface VisionProcessor
 
+    /**
+     * This specifies the processing stages of a frame.
+     */
+    public enum Stage
+    {
+        GRAB,
+        PREPROCESS,
+        DETECT,
+        PUBLISH
+    }   //enum Stage
+
+    /**
+     * This class implements a bounded queue of image buffer indices passed from one stage to the next. Each queue has
+     * one producer and one consumer. A producer never blocks: if the queue is full, the oldest index is taken out and
+     * returned to the producer so it can recycle the buffer.
+     */
+    private static class FrameQueue
+    {
+        private final int[] slots;
+        private int head = 0;
+        private int count = 0;
+
+        FrameQueue(int capacity)
+        {
+            slots = new int[capacity];
+        }   //FrameQueue
+
+        /**
+         * This method adds a buffer index to the tail of the queue.
+         *
+         * @param slot specifies the buffer index.
+         * @return the index dropped from the head of the queue to make room, -1 if none was dropped.
+         */
+        synchronized int put(int slot)
+        {
+            int dropped = -1;
+
+            if (count == slots.length)
+            {
+                dropped = slots[head];
+                head = (head + 1) % slots.length;
+                count--;
+            }
+            slots[(head + count) % slots.length] = slot;
+            count++;
+            notifyAll();
+
+            return dropped;
+        }   //put
+
+        /**
+         * This method removes the buffer index at the head of the queue, waiting for one if the queue is empty.
+         *
+         * @param timeout specifies the maximum time to wait in msec.
+         * @return buffer index, -1 if the wait timed out.
+         * @throws InterruptedException if the waiting thread is interrupted.
+         */
+        synchronized int take(long timeout) throws InterruptedException
+        {
+            int slot = -1;
+
+            if (count == 0)
+            {
+                wait(timeout);
+            }
+
+            if (count > 0)
+            {
+                slot = slots[head];
+                head = (head + 1) % slots.length;
+                count--;
+            }
+
+            return slot;
+        }   //take
+
+        /**
+         * This method removes the buffer index at the head of the queue without waiting.
+         *
+         * @return buffer index, -1 if the queue is empty.
+         */
+        synchronized int poll()
+        {
+            int slot = -1;
+
+            if (count > 0)
+            {
+                slot = slots[head];
+                head = (head + 1) % slots.length;
+                count--;
+            }
+
+            return slot;
+        }   //poll
+
+        /**
+         * This method empties the queue.
+         */
+        synchronized void clear()
+        {
+            head = count = 0;
+        }   //clear
+
+    }   //class FrameQueue
+
+    private static final int STAGE_QUEUE_DEPTH = 1;
+    private static final long STAGE_WAIT_TIMEOUT = 100;
+    //
+    // In pipelined mode, every stage may be working on a frame while every stage queue is full, so there must be a
+    // buffer for each stage plus one for each queue slot.
+    //
+    public static final int MIN_PIPELINED_IMAGE_BUFFERS =
+        Stage.values().length + (Stage.values().length - 1)*STAGE_QUEUE_DEPTH;
+
     private final String instanceName;
     private final VisionProcessor<I, O> visionProcessor;
     private final I[] imageBuffers;
@@ -80,8 +237,21 @@ public class TrcVisionTask<I, O>
 
     private TrcDbgTrace tracer = null;
     private long totalTime = 0;
-    private long totalFrames = 0;
-    private double taskStartTime = 0.0;
+    //
+    // In pipelined mode, the frame count is updated by the publish thread while the task is enabled and disabled
+    // by other threads.
+    //
+    private final AtomicLong totalFrames = new AtomicLong();
+    private volatile double taskStartTime = 0.0;
+
+    private final TrcLatencyHistogram[] stageTimes = new TrcLatencyHistogram[Stage.values().length];
+    private boolean pipelined = false;
+    private volatile boolean pipelineRunning = false;
+    private Thread[] stageThreads = null;
+    private FrameQueue freeQueue = null;
+    private FrameQueue[] stageQueues = null;
+    private final AtomicLong droppedFrames = new AtomicLong();
+    private final Object[] detectedResults;
 
     /**
      * Constructor: Create an instance of the object.
@@ -103,7 +273,12 @@ public class TrcVisionTask<I, O>
         this.visionProcessor = visionProcessor;
         this.imageBuffers = imageBuffers;
         this.detectedObjectBuffers = detectedObjectBuffers;
+        this.detectedResults = new Object[imageBuffers.length];
         visionTaskObj = TrcTaskMgr.getInstance().createTask(instanceName, this::visionTask);
+        for (Stage stage: Stage.values())
+        {
+            stageTimes[stage.ordinal()] = new TrcLatencyHistogram(instanceName + "." + stage);
+        }
     }   //TrcVisionTask
 
     /**
@@ -145,13 +320,28 @@ public class TrcVisionTask<I, O>
         if (enabled && !taskEnabled)
         {
             totalTime = 0;
-            totalFrames = 0;
+            totalFrames.set(0);
+            droppedFrames.set(0);
             taskStartTime = TrcUtil.getCurrentTime();
-            visionTaskObj.registerTask(TrcTaskMgr.TaskType.PRECONTINUOUS_TASK);//STANDALONE_TASK, 50);
+            if (pipelined)
+            {
+                startPipeline();
+            }
+            else
+            {
+                visionTaskObj.registerTask(TrcTaskMgr.TaskType.PRECONTINUOUS_TASK);//STANDALONE_TASK, 50);
+            }
         }
         else if (!enabled && taskEnabled)
         {
-            visionTaskObj.unregisterTask(TrcTaskMgr.TaskType.PRECONTINUOUS_TASK);//STANDALONE_TASK);
+            if (pipelined)
+            {
+                stopPipeline();
+            }
+            else
+            {
+                visionTaskObj.unregisterTask(TrcTaskMgr.TaskType.PRECONTINUOUS_TASK);//STANDALONE_TASK);
+            }
         }
         taskEnabled = enabled;
 
@@ -216,6 +406,288 @@ public class TrcVisionTask<I, O>
         return interval;
     }   //getProcessingInterval
 
+    /**
+     * This method selects between serial and pipelined processing. It can only be changed while the task is
+     * disabled. In pipelined mode, the detected object buffer of a frame is the one with the same index as its image
+     * buffer so that it travels with the frame through the stages, so there must be at least as many detected object
+     * buffers as image buffers. There must also be at least MIN_PIPELINED_IMAGE_BUFFERS image buffers so that every
+     * stage and every queue slot can hold a frame.
+     *
+     * @param pipelined specifies true to run the processing stages on separate threads, false to run them serially.
+     * @throws IllegalStateException if the task is enabled.
+     * @throws IllegalArgumentException if there are too few image buffers or fewer detected object buffers than
+     *         image buffers.
+     */
+    public synchronized void setPipelined(boolean pipelined)
+    {
+        final String funcName = "setPipelined";
+
+        if (debugEnabled)
+        {
+            dbgTrace.traceEnter(funcName, TrcDbgTrace.TraceLevel.API, "pipelined=%s", Boolean.toString(pipelined));
+            dbgTrace.traceExit(funcName, TrcDbgTrace.TraceLevel.API);
+        }
+
+        if (taskEnabled)
+        {
+            throw new IllegalStateException("Cannot change processing mode while the vision task is enabled.");
+        }
+
+        if (pipelined && imageBuffers.length < MIN_PIPELINED_IMAGE_BUFFERS)
+        {
+            throw new IllegalArgumentException(
+                "Pipelined mode requires at least " + MIN_PIPELINED_IMAGE_BUFFERS + " image buffers.");
+        }
+
+        if (pipelined && detectedObjectBuffers != null && detectedObjectBuffers.length < imageBuffers.length)
+        {
+            throw new IllegalArgumentException(
+                "Pipelined mode requires at least as many detected object buffers as image buffers.");
+        }
+
+        this.pipelined = pipelined;
+    }   //setPipelined
+
+    /**
+     * This method checks if the vision task runs its processing stages pipelined.
+     *
+     * @return true if pipelined, false if serial.
+     */
+    public synchronized boolean isPipelined()
+    {
+        return pipelined;
+    }   //isPipelined
+
+    /**
+     * This method returns the processing time statistics of a stage.
+     *
+     * @param stage specifies the processing stage.
+     * @return snapshot of the stage processing times in nanoseconds.
+     */
+    public TrcLatencyHistogram.Snapshot getStageTimeSnapshot(Stage stage)
+    {
+        return stageTimes[stage.ordinal()].getSnapshot();
+    }   //getStageTimeSnapshot
+
+    /**
+     * This method returns the number of frames dropped in pipelined mode because a stage fell behind.
+     *
+     * @return number of dropped frames.
+     */
+    public long getDroppedFrameCount()
+    {
+        return droppedFrames.get();
+    }   //getDroppedFrameCount
+
+    /**
+     * This method clears the stage processing time statistics.
+     */
+    public void resetStageTimes()
+    {
+        for (TrcLatencyHistogram histogram: stageTimes)
+        {
+            histogram.reset();
+        }
+    }   //resetStageTimes
+
+    /**
+     * This method creates the stage queues and starts the stage threads. All image buffers start out free.
+     */
+    private void startPipeline()
+    {
+        int numStages = Stage.values().length;
+
+        if (stageThreads == null)
+        {
+            freeQueue = new FrameQueue(imageBuffers.length);
+            stageQueues = new FrameQueue[numStages - 1];
+            for (int i = 0; i < stageQueues.length; i++)
+            {
+                stageQueues[i] = new FrameQueue(STAGE_QUEUE_DEPTH);
+            }
+            stageThreads = new Thread[numStages];
+        }
+
+        freeQueue.clear();
+        for (FrameQueue queue: stageQueues)
+        {
+            queue.clear();
+        }
+
+        for (int i = 0; i < imageBuffers.length; i++)
+        {
+            freeQueue.put(i);
+        }
+
+        pipelineRunning = true;
+        for (Stage stage: Stage.values())
+        {
+            Thread thread = new Thread(() -> stageLoop(stage), instanceName + "." + stage);
+            thread.setDaemon(true);
+            stageThreads[stage.ordinal()] = thread;
+            thread.start();
+        }
+    }   //startPipeline
+
+    /**
+     * This method stops the stage threads and waits for them to finish the frames they are working on. The frames
+     * left in the stage queues are never published, so they are discarded.
+     */
+    private void stopPipeline()
+    {
+        pipelineRunning = false;
+        for (Thread thread: stageThreads)
+        {
+            thread.interrupt();
+        }
+
+        for (Thread thread: stageThreads)
+        {
+            try
+            {
+                thread.join();
+            }
+            catch (InterruptedException e)
+            {
+                //
+                // Some stage threads may still be running, leave their frames alone.
+                //
+                Thread.currentThread().interrupt();
+                return;
+            }
+        }
+
+        for (FrameQueue queue: stageQueues)
+        {
+            for (int slot = queue.poll(); slot >= 0; slot = queue.poll())
+            {
+                visionProcessor.discardFrame(imageBuffers[slot]);
+                detectedResults[slot] = null;
+            }
+        }
+    }   //stopPipeline
+
+    /**
+     * This method runs on the thread of a pipeline stage. It takes frames from the input queue of the stage,
+     * processes them and passes them on to the next stage. The grab stage takes free buffers and is paced by the
+     * processing interval, the publish stage returns the buffers to the free queue.
+     *
+     * @param stage specifies the processing stage.
+     */
+    private void stageLoop(Stage stage)
+    {
+        final String funcName = "stageLoop";
+        int stageIndex = stage.ordinal();
+        FrameQueue input = stageIndex == 0? freeQueue: stageQueues[stageIndex - 1];
+        FrameQueue output = stageIndex < stageQueues.length? stageQueues[stageIndex]: null;
+        long nextGrabTime = System.nanoTime();
+
+        while (pipelineRunning)
+        {
+            int slot;
+
+            try
+            {
+                if (stage == Stage.GRAB)
+                {
+                    long interval = visionTaskObj.getTaskInterval();
+                    long sleepTime = nextGrabTime - System.nanoTime();
+
+                    if (interval > 0 && sleepTime > 0)
+                    {
+                        Thread.sleep(sleepTime/1000000, (int)(sleepTime%1000000));
+                    }
+                    nextGrabTime = Math.max(nextGrabTime + interval*1000000, System.nanoTime());
+                }
+                slot = input.take(STAGE_WAIT_TIMEOUT);
+            }
+            catch (InterruptedException e)
+            {
+                break;
+            }
+
+            if (slot >= 0)
+            {
+                long startTime = System.nanoTime();
+                boolean passOn = runStage(stage, slot);
+                long elapsedTime = System.nanoTime() - startTime;
+
+                stageTimes[stageIndex].recordValue(elapsedTime);
+                if (passOn && output != null)
+                {
+                    int dropped = output.put(slot);
+
+                    if (dropped >= 0)
+                    {
+                        droppedFrames.incrementAndGet();
+                        visionProcessor.discardFrame(imageBuffers[dropped]);
+                        freeQueue.put(dropped);
+                    }
+                }
+                else
+                {
+                    freeQueue.put(slot);
+                }
+
+                if (stage == Stage.PUBLISH)
+                {
+                    long frames = totalFrames.incrementAndGet();
+
+                    if (tracer != null)
+                    {
+                        tracer.traceInfo(funcName, "Average detection time = %.3f msec, Frame rate = %.1f, "
+                            + "Dropped frames = %d", stageTimes[Stage.DETECT.ordinal()].getMean()/1000000.0,
+                            frames/(TrcUtil.getCurrentTime() - taskStartTime), droppedFrames.get());
+                    }
+                }
+            }
+        }
+    }   //stageLoop
+
+    /**
+     * This method runs one processing stage on a frame.
+     *
+     * @param stage specifies the processing stage.
+     * @param slot specifies the index of the image buffer of the frame.
+     * @return true if the frame should be passed on to the next stage, false to drop it.
+     */
+    @SuppressWarnings("unchecked")
+    private boolean runStage(Stage stage, int slot)
+    {
+        I image = imageBuffers[slot];
+        O detectedObjects = detectedObjectBuffers != null? detectedObjectBuffers[slot]: null;
+        boolean passOn = true;
+
+        switch (stage)
+        {
+            case GRAB:
+                passOn = visionProcessor.grabFrame(image);
+                break;
+
+            case PREPROCESS:
+                passOn = visionProcessor.preprocessFrame(image);
+                break;
+
+            case DETECT:
+                detectedResults[slot] = visionProcessor.detectObjects(image, detectedObjects);
+                break;
+
+            case PUBLISH:
+                visionProcessor.publishObjects(image, (O) detectedResults[slot]);
+                detectedResults[slot] = null;
+                //
+                // Hand the detected object buffer of the frame to the task the same as the serial mode does.
+                //
+                if (detectedObjects != null)
+                {
+                    visionTaskObj.setTaskData(detectedObjects);
+                }
+                break;
+        }
+
+        return passOn;
+    }   //runStage
+
     /**
      * This method runs periodically to do vision processing.
      *
@@ -231,32 +703,44 @@ public class TrcVisionTask<I, O>
             dbgTrace.traceEnter(funcName, TrcDbgTrace.TraceLevel.TASK, "taskType=%s,runMode=%s", taskType, runMode);
         }
 
+        long grabStartTime = System.nanoTime();
         if (visionProcessor.grabFrame(imageBuffers[imageIndex]))
         {
+            long startNanoTime = System.nanoTime();
+            stageTimes[Stage.GRAB.ordinal()].recordValue(startNanoTime - grabStartTime);
             double startTime = TrcUtil.getCurrentTimeMillis();
             //
             // Capture an image and subject it for object detection. The object detector produces an array of
             // rectangles representing objects detected.
             //
-            visionProcessor.detectObjects(
-                    imageBuffers[imageIndex],
-                    detectedObjectBuffers != null ? detectedObjectBuffers[bufferIndex] : null);
-            double elapsedTime = TrcUtil.getCurrentTimeMillis() - startTime;
-            totalTime += elapsedTime;
-            totalFrames++;
-            if (tracer != null)
-            {
-                tracer.traceInfo(funcName, "Average processing time = %.3f msec, Frame rate = %.1f",
-                        (double) totalTime / totalFrames, totalFrames / (TrcUtil.getCurrentTime() - taskStartTime));
-            }
-            //
-            // Switch to the next buffer so that we won't clobber the info while the client is accessing it.
-            //
-            imageIndex = (imageIndex + 1) % imageBuffers.length;
-            if (detectedObjectBuffers != null)
+            if (visionProcessor.preprocessFrame(imageBuffers[imageIndex]))
             {
-                visionTaskObj.setTaskData(detectedObjectBuffers[bufferIndex]);
-                bufferIndex = (bufferIndex + 1) % detectedObjectBuffers.length;
+                long detectStartTime = System.nanoTime();
+                stageTimes[Stage.PREPROCESS.ordinal()].recordValue(detectStartTime - startNanoTime);
+                O detectedObjects = visionProcessor.detectObjects(
+                        imageBuffers[imageIndex],
+                        detectedObjectBuffers != null ? detectedObjectBuffers[bufferIndex] : null);
+                long publishStartTime = System.nanoTime();
+                stageTimes[Stage.DETECT.ordinal()].recordValue(publishStartTime - detectStartTime);
+                visionProcessor.publishObjects(imageBuffers[imageIndex], detectedObjects);
+                stageTimes[Stage.PUBLISH.ordinal()].recordValue(System.nanoTime() - publishStartTime);
+                double elapsedTime = TrcUtil.getCurrentTimeMillis() - startTime;
+                totalTime += elapsedTime;
+                long frames = totalFrames.incrementAndGet();
+                if (tracer != null)
+                {
+                    tracer.traceInfo(funcName, "Average processing time = %.3f msec, Frame rate = %.1f",
+                            (double) totalTime / frames, frames / (TrcUtil.getCurrentTime() - taskStartTime));
+                }
+                //
+                // Switch to the next buffer so that we won't clobber the info while the client is accessing it.
+                //
+                imageIndex = (imageIndex + 1) % imageBuffers.length;
+                if (detectedObjectBuffers != null)
+                {
+                    visionTaskObj.setTaskData(detectedObjectBuffers[bufferIndex]);
+                    bufferIndex = (bufferIndex + 1) % detectedObjectBuffers.length;
+                }
             }
         }
 
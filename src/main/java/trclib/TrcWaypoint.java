@@ -26,6 +26,7 @@ import java.io.BufferedReader;
 import java.io.FileReader;
 import java.io.IOException;
 import java.io.InputStreamReader;
+import java.nio.file.Paths;
 import java.util.ArrayList;
 import java.util.List;
 
@@ -165,6 +166,25 @@ public class TrcWaypoint
         return waypoints;
     }   //loadPointsFromCsv
 
+    /**
+     * This method loads waypoint data from a binary path file on the external file system. The file is memory
+     * mapped, see TrcPathFile.
+     *
+     * @param path specifies the file system path.
+     * @return an array of waypoints.
+     */
+    public static TrcWaypoint[] loadPointsFromBinary(String path)
+    {
+        try
+        {
+            return TrcPathFile.load(Paths.get(path)).getWaypoints();
+        }
+        catch (IOException e)
+        {
+            throw new RuntimeException(e);
+        }
+    }   //loadPointsFromBinary
+
     public TrcPose2D getPositionPose()
     {
         return new TrcPose2D(x, y, heading);
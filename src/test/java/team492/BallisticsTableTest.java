@@ -0,0 +1,144 @@
+package team492;
+
+import org.apache.commons.math3.linear.RealVector;
+import org.junit.Test;
+import trclib.TrcUtil;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.Path;
+
+import static org.junit.Assert.*;
+
+public class BallisticsTableTest
+{
+    // A small grid inside the range the solver converges in, see TrajectoryCalculatorTest.
+    private static final double MIN_Y = 60.0;
+    private static final double Y_STEP = 8.0;
+    private static final int NUM_Y = 4;
+    private static final double MIN_Z = 50.0;
+    private static final double Z_STEP = 8.0;
+    private static final int NUM_Z = 3;
+
+    private static double[] solve(double y, double z)
+    {
+        RealVector traj = TrajectoryCalculator.calculateWithArmWithDrag(TrcUtil.createVector(y, z));
+        assertNotNull(String.format("Solver failed for y=%.1f, z=%.1f", y, z), traj);
+        return new double[] { traj.getEntry(0), traj.getEntry(1) };
+    }
+
+    private static Path createTempPath() throws IOException
+    {
+        File file = File.createTempFile("BallisticsTableTest", ".bin");
+        file.deleteOnExit();
+        return file.toPath();
+    }
+
+    @Test
+    public void testGridPoints()
+    {
+        BallisticsTable table = new BallisticsTable(MIN_Y, Y_STEP, NUM_Y, MIN_Z, Z_STEP, NUM_Z);
+        double[] out = new double[2];
+
+        // Every grid point, including the last row and column, is the solver result at that point.
+        for (int iz = 0; iz < NUM_Z; iz++)
+        {
+            for (int iy = 0; iy < NUM_Y; iy++)
+            {
+                double y = MIN_Y + iy*Y_STEP;
+                double z = MIN_Z + iz*Z_STEP;
+                double[] expected = solve(y, z);
+
+                assertTrue(table.lookup(y, z, out));
+                assertEquals(expected[0], out[0], 1e-9);
+                assertEquals(expected[1], out[1], 1e-9);
+            }
+        }
+    }
+
+    @Test
+    public void testInterpolation()
+    {
+        BallisticsTable table = new BallisticsTable(MIN_Y, Y_STEP, NUM_Y, MIN_Z, Z_STEP, NUM_Z);
+        double[] out = new double[2];
+        double y0 = MIN_Y + Y_STEP, y1 = y0 + Y_STEP;
+        double z0 = MIN_Z, z1 = z0 + Z_STEP;
+        double[] p00 = solve(y0, z0);
+        double[] p10 = solve(y1, z0);
+        double[] p01 = solve(y0, z1);
+        double[] p11 = solve(y1, z1);
+
+        // A quarter of the way along y on the bottom row of the cell.
+        assertTrue(table.lookup(y0 + Y_STEP/4, z0, out));
+        for (int i = 0; i < 2; i++)
+        {
+            assertEquals(0.75*p00[i] + 0.25*p10[i], out[i], 1e-9);
+        }
+
+        // Halfway along z on the left column of the cell.
+        assertTrue(table.lookup(y0, z0 + Z_STEP/2, out));
+        for (int i = 0; i < 2; i++)
+        {
+            assertEquals(0.5*p00[i] + 0.5*p01[i], out[i], 1e-9);
+        }
+
+        // Inside the cell, both weights apply.
+        assertTrue(table.lookup(y0 + Y_STEP/4, z0 + Z_STEP/2, out));
+        for (int i = 0; i < 2; i++)
+        {
+            double low = 0.75*p00[i] + 0.25*p10[i];
+            double high = 0.75*p01[i] + 0.25*p11[i];
+            assertEquals(0.5*low + 0.5*high, out[i], 1e-9);
+        }
+    }
+
+    @Test
+    public void testOutOfRange()
+    {
+        BallisticsTable table = new BallisticsTable(MIN_Y, Y_STEP, NUM_Y, MIN_Z, Z_STEP, NUM_Z);
+        double maxY = MIN_Y + (NUM_Y - 1)*Y_STEP;
+        double maxZ = MIN_Z + (NUM_Z - 1)*Z_STEP;
+        double[] out = new double[2];
+
+        assertTrue(table.lookup(maxY, maxZ, out));
+        assertFalse(table.lookup(MIN_Y - 0.1, MIN_Z, out));
+        assertFalse(table.lookup(maxY + 0.1, MIN_Z, out));
+        assertFalse(table.lookup(MIN_Y, MIN_Z - 0.1, out));
+        assertFalse(table.lookup(MIN_Y, maxZ + 0.1, out));
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void testGridTooSmall()
+    {
+        new BallisticsTable(MIN_Y, Y_STEP, 1, MIN_Z, Z_STEP, NUM_Z);
+    }
+
+    @Test
+    public void testSaveLoad() throws IOException
+    {
+        Path file = createTempPath();
+        BallisticsTable table = BallisticsTable.getInstance();
+        table.save(file);
+        BallisticsTable loaded = BallisticsTable.load(file);
+        double[] expected = new double[2];
+        double[] out = new double[2];
+
+        // The memory mapped table gives the same results, both on and between grid points.
+        double[][] points = { { 100.0, 60.0 }, { 103.0, 61.5 }, { 250.5, 77.0 }, { 412.0, 95.25 } };
+        for (double[] point: points)
+        {
+            assertTrue(table.lookup(point[0], point[1], expected));
+            assertTrue(loaded.lookup(point[0], point[1], out));
+            assertArrayEquals(expected, out, 0.0);
+        }
+    }
+
+    @Test(expected = IOException.class)
+    public void testLoadGridMismatch() throws IOException
+    {
+        // Only files of the compiled in grid can be loaded.
+        Path file = createTempPath();
+        new BallisticsTable(MIN_Y, Y_STEP, NUM_Y, MIN_Z, Z_STEP, NUM_Z).save(file);
+        BallisticsTable.load(file);
+    }
+}
@@ -6,6 +6,7 @@ import trclib.PathFollowingTestBase;
 import trclib.TrcEvent;
 import trclib.TrcHolonomicPurePursuitDrive;
 import trclib.TrcPath;
+import trclib.TrcPathData;
 import trclib.TrcPidController;
 import trclib.TrcPose2D;
 import trclib.TrcWaypoint;
@@ -63,8 +64,8 @@ public class CmdShooterAutoTest extends PathFollowingTestBase
         boolean started = false;
         if (shootPath)
         {
-            TrcPath path = auto.createToShootPath(start);
-            TrcPath displayPath = new TrcPath(Arrays.stream(path.getAllWaypoints()).map(w -> {
+            TrcPathData path = auto.createToShootPath(start);
+            TrcPath displayPath = new TrcPath(Arrays.stream(path.toPath().getAllWaypoints()).map(w -> {
                 TrcWaypoint wp = new TrcWaypoint(w);
                 TrcPose2D origin = new TrcPose2D().relativeTo(start);
                 TrcPose2D pose = new TrcPose2D(w.x, w.y, w.heading).relativeTo(origin);
@@ -87,8 +88,8 @@ public class CmdShooterAutoTest extends PathFollowingTestBase
         {
             TrcPose2D newStart = driveBase.getFieldPosition().relativeTo(new TrcPose2D(-RobotInfo.FIELD_WIDTH / 2,
                 -RobotInfo.INITIATION_LINE_TO_ALLIANCE_WALL + RobotInfo.FIELD_LENGTH / 2));
-            TrcPath path = auto.createPickupPath(newStart);
-            TrcPath displayPath = new TrcPath(Arrays.stream(path.getAllWaypoints()).map(w -> {
+            TrcPathData path = auto.createPickupPath(newStart);
+            TrcPath displayPath = new TrcPath(Arrays.stream(path.toPath().getAllWaypoints()).map(w -> {
                 TrcWaypoint wp = new TrcWaypoint(w);
                 TrcPose2D origin = new TrcPose2D().relativeTo(newStart);
                 TrcPose2D pose = new TrcPose2D(w.x, w.y, w.heading).relativeTo(origin);
@@ -0,0 +1,135 @@
+package trclib;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+import org.junit.Test;
+
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.PrintWriter;
+import java.io.StringWriter;
+
+public class TrcBinaryTraceLoggerTest
+{
+    @Test
+    public void formatMessageTest()
+    {
+        double[] args = new double[] { 1.23456, 42, 1, 3 };
+        assertEquals("x=1.23, n=42, b=true, s=3",
+            TrcBinaryTraceLogger.formatMessage("x=%.2f, n=%d, b=%b, s=%s", args, 4));
+        assertEquals("100% of 42", TrcBinaryTraceLogger.formatMessage("100%% of %d", new double[] { 42 }, 1));
+    }
+
+    @Test
+    public void roundTripTest() throws IOException, InterruptedException
+    {
+        File logFile = File.createTempFile("TrcBinaryTraceLoggerTest", ".bin");
+        logFile.delete();
+        logFile.deleteOnExit();
+
+        int poseId = TrcBinaryTraceLogger.registerFormat(
+            TrcDbgTrace.MsgLevel.INFO, "Test.driveTask_Info: pose=(x=%.1f,y=%.1f,angle=%.1f), index=%d");
+        int tickId = TrcBinaryTraceLogger.registerFormat(TrcDbgTrace.MsgLevel.INFO, "Test.tick_Info: tick");
+
+        TrcBinaryTraceLogger logger = new TrcBinaryTraceLogger(logFile.getPath());
+        logger.setEnabled(true);
+        logger.logMessage(poseId, 4, 305.34, -18.5, 90.0, 7, 0, 0);
+        logger.logMessage(tickId, 0, 0, 0, 0, 0, 0, 0);
+        logger.setEnabled(false);
+
+        String expected = "Test.driveTask_Info: pose=(x=305.3,y=-18.5,angle=90.0), index=7\r\nTest.tick_Info: tick\r\n";
+        // The logger thread drains the ring buffer asynchronously after it is disabled.
+        assertEquals(expected, waitForLog(logFile, expected));
+    }
+
+    @Test
+    public void overflowTest() throws IOException, InterruptedException
+    {
+        int formatId = TrcBinaryTraceLogger.registerFormat(TrcDbgTrace.MsgLevel.INFO, "Test.overflow_Info: %d");
+        File logFile = File.createTempFile("TrcBinaryTraceLoggerTest", ".bin");
+        logFile.deleteOnExit();
+        // A single argument message takes 12 bytes, so the 64 byte ring buffer holds five of them.
+        TrcBinaryTraceLogger logger = new TrcBinaryTraceLogger(logFile.getPath(), 64, 1000000);
+        StringBuilder expected = new StringBuilder();
+
+        // Holding the logger lock keeps the logger thread from draining the ring buffer until all ten are logged.
+        synchronized (logger)
+        {
+            logger.setEnabled(true);
+            for (int i = 0; i < 10; i++)
+            {
+                assertEquals("message " + i, i < 5, logger.logMessage(formatId, 1, i, 0, 0, 0, 0, 0));
+            }
+        }
+        assertEquals(5, logger.getDroppedCount());
+
+        // The first drain writes the five messages that fit. The drop is only recorded before the next message.
+        for (int i = 0; i < 5; i++)
+        {
+            expected.append("Test.overflow_Info: ").append(i).append("\r\n");
+        }
+        assertEquals(expected.toString(), waitForLog(logFile, expected.toString()));
+
+        assertTrue(logger.logMessage(formatId, 1, 10, 0, 0, 0, 0, 0));
+        logger.setEnabled(false);
+        expected.append("TrcBinaryTraceLogger_Warn: 5 messages dropped.\r\nTest.overflow_Info: 10\r\n");
+        assertEquals(expected.toString(), waitForLog(logFile, expected.toString()));
+        assertEquals(5, logger.getDroppedCount());
+    }
+
+    @Test
+    public void invalidArgumentsTest()
+    {
+        int formatId = TrcBinaryTraceLogger.registerFormat(TrcDbgTrace.MsgLevel.INFO, "Test.invalid_Info: %d");
+        TrcBinaryTraceLogger logger = new TrcBinaryTraceLogger("unused.bin");
+        int[][] invalidArgs = { { formatId, -1 }, { formatId, TrcBinaryTraceLogger.MAX_ARGS + 1 }, { -1, 1 },
+                                { formatId + 1, 1 } };
+
+        // Arguments are checked even with the logger disabled.
+        for (int[] args: invalidArgs)
+        {
+            try
+            {
+                logger.logMessage(args[0], args[1], 0, 0, 0, 0, 0, 0);
+                fail("formatId=" + args[0] + ", argCount=" + args[1] + " was accepted.");
+            }
+            catch (IllegalArgumentException e)
+            {
+                // Expected.
+            }
+        }
+        assertFalse(logger.logMessage(formatId, TrcBinaryTraceLogger.MAX_ARGS, 0, 0, 0, 0, 0, 0));
+    }
+
+    /**
+     * This method waits for the logger thread to write the expected text to the log file and returns the decoded
+     * log, which is the expected text unless it timed out.
+     */
+    private String waitForLog(File logFile, String expected) throws IOException, InterruptedException
+    {
+        String decoded = decode(logFile);
+
+        for (int i = 0; i < 100 && !decoded.equals(expected); i++)
+        {
+            Thread.sleep(20);
+            decoded = decode(logFile);
+        }
+
+        return decoded;
+    }
+
+    private String decode(File logFile) throws IOException
+    {
+        StringWriter text = new StringWriter();
+        try (InputStream input = new FileInputStream(logFile))
+        {
+            TrcBinaryTraceLogger.decode(input, new PrintWriter(text));
+        }
+        return text.toString();
+    }
+}
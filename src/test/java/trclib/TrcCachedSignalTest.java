@@ -0,0 +1,97 @@
+package trclib;
+
+import static org.junit.Assert.assertEquals;
+
+import org.junit.Test;
+
+public class TrcCachedSignalTest
+{
+    private long cycle = 0;
+    private int reads = 0;
+
+    private double read()
+    {
+        return ++reads;
+    }
+
+    @Test
+    public void oncePerCycleTest()
+    {
+        TrcCachedSignal signal = new TrcCachedSignal("test", () -> cycle, this::read);
+        long totalSaved = TrcCachedSignal.getTotalSavedCount();
+
+        for (cycle = 1; cycle <= 3; cycle++)
+        {
+            for (int i = 0; i < 4; i++)
+            {
+                assertEquals(cycle, signal.get(), 0.0);
+            }
+        }
+
+        assertEquals(3, reads);
+        assertEquals(3, signal.getReadCount());
+        assertEquals(9, signal.getSavedCount());
+        assertEquals(totalSaved + 9, TrcCachedSignal.getTotalSavedCount());
+
+        // Invalidating forces a read in the same cycle.
+        signal.invalidate();
+        assertEquals(4.0, signal.get(), 0.0);
+        assertEquals(4.0, signal.get(), 0.0);
+    }
+
+    @Test
+    public void statusPeriodTest()
+    {
+        TrcCachedSignal signal = new TrcCachedSignal("test", () -> cycle, this::read);
+
+        signal.setPeriod(0.05);
+        assertEquals(1.0, signal.get(), 0.0);
+        // A new cycle within the status frame period still uses the cached value.
+        cycle++;
+        assertEquals(1.0, signal.get(), 0.0);
+        TrcUtil.sleep(60);
+        assertEquals(1.0, signal.get(), 0.0);
+        cycle++;
+        assertEquals(2.0, signal.get(), 0.0);
+    }
+
+    @Test
+    public void threadPassTest() throws InterruptedException
+    {
+        TrcCachedSignal signal = new TrcCachedSignal("test", this::read);
+
+        // A thread that never started a pass always reads the hardware.
+        assertEquals(1.0, signal.get(), 0.0);
+        assertEquals(2.0, signal.get(), 0.0);
+
+        TrcCachedSignal.startPass();
+        assertEquals(3.0, signal.get(), 0.0);
+        assertEquals(3.0, signal.get(), 0.0);
+
+        // Another thread in its own pass does not get the value cached by this thread.
+        double[] otherValues = new double[2];
+        Thread other = new Thread(
+            () ->
+            {
+                TrcCachedSignal.startPass();
+                otherValues[0] = signal.get();
+                otherValues[1] = signal.get();
+            });
+        other.start();
+        other.join();
+        assertEquals(4.0, otherValues[0], 0.0);
+        assertEquals(4.0, otherValues[1], 0.0);
+
+        // This thread is still in the same pass, but the cache now holds the other thread's reading.
+        assertEquals(5.0, signal.get(), 0.0);
+        TrcCachedSignal.startPass();
+        assertEquals(6.0, signal.get(), 0.0);
+        assertEquals(6.0, signal.get(), 0.0);
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void negativePeriodTest()
+    {
+        new TrcCachedSignal("test", () -> cycle, this::read).setPeriod(-1.0);
+    }
+}
@@ -0,0 +1,74 @@
+package trclib;
+
+import static org.junit.Assert.assertEquals;
+
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Random;
+
+import org.junit.Test;
+
+public class TrcElapsedTimerTest
+{
+    @Test
+    public void windowStatisticsTest()
+    {
+        // A 1 msec window of elapsed times between 1 and 50 usec holds about 40 values.
+        TrcElapsedTimer timer = new TrcElapsedTimer("Test", 0.001);
+        ArrayDeque<Long> window = new ArrayDeque<>();
+        Random random = new Random(492);
+        long windowSum = 0;
+        long min = Long.MAX_VALUE;
+        long max = 0;
+
+        for (int i = 0; i < 5000; i++)
+        {
+            long elapsedTime = 1000 + random.nextInt(49000);
+            timer.recordElapsedTime(elapsedTime);
+            window.addLast(elapsedTime);
+            windowSum += elapsedTime;
+            while (windowSum > 1000000)
+            {
+                windowSum -= window.removeFirst();
+            }
+            min = Math.min(min, elapsedTime);
+            max = Math.max(max, elapsedTime);
+
+            assertEquals(window.size(), timer.getWindowSize());
+            assertEquals(elapsedTime / 1e9, timer.getLastElapsedTime(), 0.0);
+            assertEquals(windowSum / window.size() / 1e9, timer.getAverageElapsedTime(), 1e-15);
+            assertEquals(Collections.min(window) / 1e9, timer.getWindowMinElapsedTime(), 0.0);
+            assertEquals(Collections.max(window) / 1e9, timer.getWindowMaxElapsedTime(), 0.0);
+        }
+        assertEquals(min / 1e9, timer.getMinElapsedTime(), 0.0);
+        assertEquals(max / 1e9, timer.getMaxElapsedTime(), 0.0);
+
+        ArrayList<Long> sorted = new ArrayList<>(window);
+        Collections.sort(sorted);
+        assertEquals(sorted.get(0) / 1e9, timer.getPercentileElapsedTime(0.0), 0.0);
+        assertEquals(sorted.get((sorted.size() + 1) / 2 - 1) / 1e9, timer.getPercentileElapsedTime(50.0), 0.0);
+        assertEquals(sorted.get(sorted.size() - 1) / 1e9, timer.getPercentileElapsedTime(100.0), 0.0);
+
+        timer.reset();
+        assertEquals(0, timer.getWindowSize());
+        assertEquals(0.0, timer.getWindowMaxElapsedTime(), 0.0);
+        assertEquals(0.0, timer.getPercentileElapsedTime(50.0), 0.0);
+    }
+
+    @Test
+    public void growthTest()
+    {
+        // A window of one second of 1 usec elapsed times is capped at MAX_WINDOW_SIZE values.
+        TrcElapsedTimer timer = new TrcElapsedTimer("Test", 1.0);
+
+        for (int i = 0; i < TrcElapsedTimer.MAX_WINDOW_SIZE + 100; i++)
+        {
+            timer.recordElapsedTime(i == 50? 5000: 1000);
+        }
+        assertEquals(TrcElapsedTimer.MAX_WINDOW_SIZE, timer.getWindowSize());
+        assertEquals(1000 / 1e9, timer.getWindowMaxElapsedTime(), 0.0);
+        assertEquals(5000 / 1e9, timer.getMaxElapsedTime(), 0.0);
+        assertEquals(1000 / 1e9, timer.getAverageElapsedTime(), 0.0);
+    }
+}
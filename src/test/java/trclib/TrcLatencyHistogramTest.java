@@ -0,0 +1,73 @@
+package trclib;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import org.junit.Test;
+
+public class TrcLatencyHistogramTest
+{
+    @Test
+    public void bucketBoundaryTest()
+    {
+        TrcLatencyHistogram histogram = new TrcLatencyHistogram("Test");
+        TrcLatencyHistogram.Snapshot snapshot = histogram.getSnapshot();
+        // Every bucket must start right after the previous one ends.
+        for (int i = 1; i < snapshot.getNumBuckets(); i++)
+        {
+            assertTrue(snapshot.getBucketLowValue(i) > snapshot.getBucketLowValue(i - 1));
+        }
+        assertEquals(0, snapshot.getPercentile(99.0));
+    }
+
+    @Test
+    public void percentileTest()
+    {
+        TrcLatencyHistogram histogram = new TrcLatencyHistogram("Test");
+        for (int i = 1; i <= 1000; i++)
+        {
+            histogram.recordValue(i * 1000L);
+        }
+        TrcLatencyHistogram.Snapshot snapshot = histogram.getSnapshot();
+        assertEquals(1000, snapshot.getCount());
+        assertEquals(1000, snapshot.getMin());
+        assertEquals(1000000, snapshot.getMax());
+        assertEquals(500500.0, snapshot.getMean(), 1e-6);
+        // 16 sub-buckets per power of two bounds the relative error to 1/16.
+        assertEquals(500000, snapshot.getPercentile(50.0), 500000 / 16.0);
+        assertEquals(990000, snapshot.getPercentile(99.0), 990000 / 16.0);
+        assertEquals(1000000, snapshot.getPercentile(100.0));
+    }
+
+    @Test
+    public void spikeTest()
+    {
+        TrcLatencyHistogram histogram = new TrcLatencyHistogram("Test");
+        for (int i = 0; i < 990; i++)
+        {
+            histogram.recordValue(2000000);
+        }
+        for (int i = 0; i < 10; i++)
+        {
+            histogram.recordValue(40000000);
+        }
+        TrcLatencyHistogram.Snapshot snapshot = histogram.getSnapshot();
+        // The average barely moves but the tail shows the spikes.
+        assertTrue(snapshot.getMean() < 3000000);
+        assertEquals(2000000, snapshot.getPercentile(99.0), 2000000 / 16.0);
+        assertEquals(40000000, snapshot.getPercentile(99.9), 40000000 / 16.0);
+        assertEquals(40000000, snapshot.getMax());
+    }
+
+    @Test
+    public void resetTest()
+    {
+        TrcLatencyHistogram histogram = new TrcLatencyHistogram("Test");
+        histogram.recordValue(12345);
+        histogram.reset();
+        TrcLatencyHistogram.Snapshot snapshot = histogram.getSnapshot();
+        assertEquals(0, snapshot.getCount());
+        assertEquals(0, snapshot.getMax());
+        assertEquals(0.0, snapshot.getMean(), 1e-10);
+    }
+}
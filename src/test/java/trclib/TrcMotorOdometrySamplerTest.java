@@ -0,0 +1,195 @@
+package trclib;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.junit.Test;
+
+public class TrcMotorOdometrySamplerTest
+{
+    private static final AtomicInteger activeReaders = new AtomicInteger();
+    private static final AtomicInteger peakReaders = new AtomicInteger();
+
+    private static class FakeMotor extends TrcMotor
+    {
+        private final String busName;
+        private final boolean declaresVelocity;
+        private final long readDelayMillis;
+        volatile double position = 0.0;
+        volatile Thread readThread = null;
+        int velocityCalls = 0;
+
+        FakeMotor(String name, String busName, boolean declaresVelocity, long readDelayMillis)
+        {
+            super(name);
+            this.busName = busName;
+            this.declaresVelocity = declaresVelocity;
+            this.readDelayMillis = readDelayMillis;
+        }
+
+        @Override
+        public double getMotorPosition()
+        {
+            readThread = Thread.currentThread();
+            peakReaders.accumulateAndGet(activeReaders.incrementAndGet(), Math::max);
+            TrcUtil.sleep(readDelayMillis);
+            activeReaders.decrementAndGet();
+            return position;
+        }
+
+        @Override
+        public double getMotorVelocity()
+        {
+            velocityCalls++;
+            if (busName == null)
+            {
+                throw new UnsupportedOperationException("No velocity.");
+            }
+            return 42.0;
+        }
+
+        @Override
+        public boolean isMotorVelocitySupported()
+        {
+            return declaresVelocity;
+        }
+
+        @Override
+        public String getOdometryBusName()
+        {
+            return busName;
+        }
+
+        @Override
+        public void setMotorPower(double value) {}
+
+        @Override
+        public boolean getInverted() { return false; }
+
+        @Override
+        public double getPower() { return 0.0; }
+
+        @Override
+        public boolean isLowerLimitSwitchActive() { return false; }
+
+        @Override
+        public boolean isUpperLimitSwitchActive() { return false; }
+
+        @Override
+        public void resetPosition(boolean hardware) {}
+
+        @Override
+        public void setBrakeModeEnabled(boolean enabled) {}
+
+        @Override
+        public void setInverted(boolean inverted) {}
+
+        @Override
+        public void setPositionSensorInverted(boolean inverted) {}
+
+        @Override
+        public void setSoftLimitEnabled(boolean lowerLimitEnabled, boolean upperLimitEnabled) {}
+
+        @Override
+        public void setSoftLowerLimit(double position) {}
+
+        @Override
+        public void setSoftUpperLimit(double position) {}
+    }
+
+    @Test
+    public void concurrentBusTest()
+    {
+        TrcMotorOdometrySampler sampler = new TrcMotorOdometrySampler();
+        FakeMotor[] motors = {
+            new FakeMotor("can0a", "can0", true, 20), new FakeMotor("can0b", "can0", true, 20),
+            new FakeMotor("can1a", "can1", true, 20), new FakeMotor("can1b", "can1", true, 20),
+            new FakeMotor("local", null, false, 0) };
+
+        for (FakeMotor motor: motors)
+        {
+            assertTrue(sampler.add(motor));
+        }
+        assertEquals(motors.length, sampler.size());
+        assertNull(sampler.getSnapshot());
+
+        peakReaders.set(0);
+        sampler.sample();
+        // The two buses are read at the same time, but the motors on the same bus are read one at a time.
+        assertEquals(2, peakReaders.get());
+
+        Thread thisThread = Thread.currentThread();
+        assertEquals(thisThread, motors[0].readThread);
+        assertEquals(motors[2].readThread, motors[3].readThread);
+        assertTrue(motors[2].readThread != thisThread);
+        assertEquals(thisThread, motors[4].readThread);
+
+        TrcMotorOdometrySampler.Snapshot snapshot = sampler.getSnapshot();
+        assertEquals(1, snapshot.getSequence());
+        assertEquals(motors.length, snapshot.size());
+        assertEquals(4, snapshot.indexOf(motors[4]));
+        assertEquals(42.0, snapshot.getVelocity(0), 0.0);
+    }
+
+    @Test
+    public void velocityCapabilityTest()
+    {
+        TrcMotorOdometrySampler sampler = new TrcMotorOdometrySampler();
+        FakeMotor declared = new FakeMotor("declared", null, false, 0);
+        FakeMotor undeclared = new FakeMotor("undeclared", null, true, 0);
+
+        sampler.add(declared);
+        sampler.add(undeclared);
+        for (int i = 1; i <= 5; i++)
+        {
+            declared.position = undeclared.position = 10.0*i;
+            TrcUtil.sleep(10);
+            sampler.sample();
+        }
+
+        // A motor that declares no velocity support is never asked, one that doesn't declare it is asked once.
+        assertEquals(0, declared.velocityCalls);
+        assertEquals(1, undeclared.velocityCalls);
+
+        TrcMotorOdometrySampler.Snapshot snapshot = sampler.getSnapshot();
+        assertEquals(5, snapshot.getSequence());
+        for (int i = 0; i < snapshot.size(); i++)
+        {
+            assertEquals(50.0, snapshot.getPosition(i), 0.0);
+            // The velocity is derived from the position samples: 10 units over at least the 10 msec sleep is at most
+            // 1000 units per second, 1010 leaves room for timer rounding. Scheduling delays only make it smaller.
+            assertTrue(snapshot.getVelocity(i) > 100.0 && snapshot.getVelocity(i) < 1010.0);
+        }
+
+        assertTrue(sampler.remove(declared));
+        assertEquals(1, sampler.size());
+        sampler.sample();
+        assertEquals(-1, sampler.getSnapshot().indexOf(declared));
+    }
+
+    @Test
+    public void interruptedSampleTest()
+    {
+        TrcMotorOdometrySampler sampler = new TrcMotorOdometrySampler();
+        // The first bus is read on this thread, without sleeping so the interrupt is not consumed there.
+        FakeMotor[] motors = {new FakeMotor("can0", "can0", true, 0), new FakeMotor("can1", "can1", true, 20)};
+
+        for (FakeMotor motor: motors)
+        {
+            sampler.add(motor);
+        }
+
+        Thread.currentThread().interrupt();
+        sampler.sample();
+        // The interrupted pass waits for the other bus but is not published, and the interrupt is preserved.
+        assertTrue(Thread.interrupted());
+        assertEquals(0, activeReaders.get());
+        assertNull(sampler.getSnapshot());
+
+        sampler.sample();
+        assertEquals(1, sampler.getSnapshot().getSequence());
+    }
+}
@@ -0,0 +1,125 @@
+package trclib;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+import java.util.ArrayList;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.junit.Test;
+
+public class TrcNotifierTest
+{
+    private static class OrderedReceiver implements TrcNotifier.Receiver
+    {
+        final ArrayList<Integer> received = new ArrayList<>();
+        volatile boolean busy = false;
+        volatile boolean overlapped = false;
+        volatile Thread thread = null;
+
+        @Override
+        public void notify(Object context)
+        {
+            if (busy)
+            {
+                overlapped = true;
+            }
+            busy = true;
+            thread = Thread.currentThread();
+            synchronized (received)
+            {
+                received.add((Integer) context);
+            }
+            busy = false;
+        }
+    }
+
+    @Test
+    public void orderingTest()
+    {
+        TrcNotifier notifier = TrcNotifier.getInstance();
+        OrderedReceiver[] receivers = {new OrderedReceiver(), new OrderedReceiver(), new OrderedReceiver()};
+        // More notifications than ring slots, so the rings have to grow.
+        final int count = 2000;
+
+        for (int i = 0; i < count; i++)
+        {
+            for (OrderedReceiver receiver: receivers)
+            {
+                notifier.sendNotification(receiver, i);
+            }
+        }
+        TrcNotifier.shutdownAndAwaitTermination();
+
+        for (OrderedReceiver receiver: receivers)
+        {
+            assertFalse(receiver.overlapped);
+            assertEquals(count, receiver.received.size());
+            for (int i = 0; i < count; i++)
+            {
+                assertEquals(i, (int) receiver.received.get(i));
+            }
+            assertTrue(receiver.thread != Thread.currentThread());
+        }
+    }
+
+    @Test
+    public void inlineTest()
+    {
+        OrderedReceiver receiver = new OrderedReceiver();
+
+        TrcNotifier.getInstance().sendNotification(receiver, 7, true);
+        assertEquals(Thread.currentThread(), receiver.thread);
+        assertEquals(7, (int) receiver.received.get(0));
+        TrcNotifier.shutdown();
+    }
+
+    @Test
+    public void repostWhenFullTest() throws InterruptedException
+    {
+        final int reposts = 300;
+        TrcNotifier notifier = TrcNotifier.getInstance();
+        CountDownLatch gate = new CountDownLatch(1);
+        CountDownLatch done = new CountDownLatch(TrcNotifier.DEF_RING_SIZE + reposts);
+        AtomicInteger reposted = new AtomicInteger();
+        TrcNotifier.Receiver receiver = new TrcNotifier.Receiver()
+        {
+            @Override
+            public void notify(Object context)
+            {
+                if ((Integer) context == 0)
+                {
+                    // Hold the first batch until the ring is full, then post to our own dispatcher.
+                    try
+                    {
+                        gate.await();
+                    }
+                    catch (InterruptedException e)
+                    {
+                        Thread.currentThread().interrupt();
+                    }
+
+                    for (int i = 0; i < reposts; i++)
+                    {
+                        notifier.sendNotification(this, -1);
+                        reposted.incrementAndGet();
+                    }
+                }
+                done.countDown();
+            }
+        };
+
+        for (int i = 0; i < TrcNotifier.DEF_RING_SIZE; i++)
+        {
+            notifier.sendNotification(receiver, i);
+        }
+        gate.countDown();
+
+        assertTrue(done.await(5, TimeUnit.SECONDS));
+        assertEquals(reposts, reposted.get());
+        TrcNotifier.shutdownAndAwaitTermination();
+    }
+}
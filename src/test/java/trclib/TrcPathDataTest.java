@@ -0,0 +1,110 @@
+package trclib;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import org.junit.Test;
+
+public class TrcPathDataTest
+{
+    private static TrcWaypoint createWaypoint(double x, double y, double velocity, double heading)
+    {
+        return new TrcWaypoint(0.0, x, y, 0.0, velocity, 0.0, 0.0, heading);
+    }
+
+    private static TrcPath createPath()
+    {
+        TrcPath path = new TrcPath(true,
+            createWaypoint(0.0, 0.0, 0.0, 350.0), createWaypoint(0.0, 10.0, 10.0, 10.0),
+            createWaypoint(10.0, 10.0, 10.0, 90.0), createWaypoint(10.0, 30.0, 0.0, 90.0));
+        path.inferTimeSteps();
+        return path;
+    }
+
+    @Test
+    public void cumulativeTest()
+    {
+        TrcPath path = createPath();
+        TrcPathData pathData = path.toPathData();
+
+        assertEquals(4, pathData.getSize());
+        assertEquals(path.getArcLength(), pathData.getArcLength(), 1e-9);
+        assertEquals(20.0, pathData.getArcLength(2), 1e-9);
+        // Each segment takes its length over its average velocity.
+        assertEquals(2.0, pathData.getTime(1), 1e-9);
+        assertEquals(3.0, pathData.getTime(2), 1e-9);
+        assertEquals(7.0, pathData.getDuration(), 1e-9);
+
+        TrcWaypoint waypoint = pathData.getWaypoint(2, new TrcWaypoint(0.0, 0.0, 0.0, 0.0, 0.0, 0.0, 0.0, 0.0));
+        assertEquals(10.0, waypoint.x, 0.0);
+        assertEquals(path.getWaypoint(2).timeStep, waypoint.timeStep, 0.0);
+
+        TrcPath copy = pathData.toPath();
+        assertEquals(path.getPathDuration(), copy.getPathDuration(), 1e-9);
+    }
+
+    @Test
+    public void sampleTest()
+    {
+        TrcPathData pathData = createPath().toPathData();
+        TrcWaypoint sample = new TrcWaypoint(0.0, 0.0, 0.0, 0.0, 0.0, 0.0, 0.0, 0.0);
+
+        assertEquals(0, pathData.findSegmentByDistance(-1.0));
+        assertEquals(0, pathData.findSegmentByDistance(5.0));
+        assertEquals(1, pathData.findSegmentByDistance(10.0));
+        assertEquals(2, pathData.findSegmentByDistance(100.0));
+        assertEquals(1, pathData.findSegmentByTime(2.5));
+
+        pathData.sampleByDistance(15.0, sample);
+        assertEquals(5.0, sample.x, 1e-9);
+        assertEquals(10.0, sample.y, 1e-9);
+        assertEquals(50.0, sample.heading, 1e-9);
+
+        // The heading goes the short way around from 350 to 10 degrees.
+        pathData.sampleByDistance(5.0, sample);
+        assertEquals(360.0, sample.heading, 1e-9);
+
+        pathData.sampleByTime(5.0, sample);
+        assertEquals(10.0, sample.x, 1e-9);
+        assertEquals(20.0, sample.y, 1e-9);
+        assertEquals(5.0, sample.velocity, 1e-9);
+
+        pathData.sampleByTime(100.0, sample);
+        assertEquals(30.0, sample.y, 1e-9);
+        assertEquals(0.0, sample.velocity, 1e-9);
+    }
+
+    @Test
+    public void inferTimeStepsTest()
+    {
+        TrcPathData pathData = createPath().toPathData();
+
+        pathData.setVelocity(3, 10.0);
+        pathData.inferTimeSteps();
+        assertEquals(5.0, pathData.getDuration(), 1e-9);
+        assertEquals(pathData.getTimeStep(2), pathData.getTimeStep(3), 0.0);
+    }
+
+    @Test
+    public void resampleTest()
+    {
+        TrcPathData pathData = createPath().toPathData();
+        TrcPathData resampled = pathData.resample(3.0);
+
+        // 40 units of path at a spacing of 3 leaves a last segment of 1.
+        assertEquals(15, resampled.getSize());
+        assertEquals(pathData.getDuration(), resampled.getDuration(), 1e-9);
+        assertEquals(30.0, resampled.getY(14), 1e-9);
+        TrcWaypoint sample = new TrcWaypoint(0.0, 0.0, 0.0, 0.0, 0.0, 0.0, 0.0, 0.0);
+        for (int i = 0; i < 14; i++)
+        {
+            pathData.sampleByDistance(3.0*i, sample);
+            assertEquals(sample.x, resampled.getX(i), 1e-9);
+            assertEquals(sample.y, resampled.getY(i), 1e-9);
+        }
+        // The corners are cut, so the resampled path is shorter.
+        assertTrue(resampled.getArcLength() < pathData.getArcLength());
+        // The first segment of 10 units takes 2 seconds.
+        assertEquals(0.6, resampled.getTime(1), 1e-9);
+    }
+}
@@ -0,0 +1,99 @@
+package trclib;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+import java.io.IOException;
+import java.io.PrintWriter;
+import java.nio.file.Files;
+import java.nio.file.Path;
+
+import org.junit.Test;
+
+public class TrcPathFileTest
+{
+    private static Path writeCsv(Path file, int numPoints) throws IOException
+    {
+        try (PrintWriter out = new PrintWriter(Files.newBufferedWriter(file)))
+        {
+            out.println("dt,x,y,position,velocity,acceleration,jerk,heading");
+            for (int i = 0; i < numPoints; i++)
+            {
+                out.printf("0.02,%f,%f,%f,%f,%f,%f,%f\n", 0.5*i, 0.25*i, 0.6*i, 3.0, 0.1*i, -0.5, 1.5*i);
+            }
+        }
+
+        return file;
+    }
+
+    @Test
+    public void convertAndLoadTest() throws IOException
+    {
+        Path dir = Files.createTempDirectory("trcpath");
+        Path csvFile = writeCsv(dir.resolve("pickup.csv"), 50);
+        Path binFile = dir.resolve("pickup" + TrcPathFile.FILE_EXTENSION);
+
+        TrcPathFile.main(csvFile.toString());
+        assertTrue(Files.exists(binFile));
+        // A 16 byte header and 8 doubles per waypoint.
+        assertEquals(16 + 50*8*8, Files.size(binFile));
+
+        TrcWaypoint[] csvPoints = TrcWaypoint.loadPointsFromCsv(csvFile.toString(), false);
+        TrcPathFile pathFile = TrcPathFile.load(binFile);
+        assertEquals("pickup", pathFile.getName());
+        assertEquals(csvPoints.length, pathFile.getNumPoints());
+        assertEquals(6.0, pathFile.get(10, TrcPathFile.ENCODER_POSITION), 0.0);
+
+        TrcWaypoint point = new TrcWaypoint(0, 0, 0, 0, 0, 0, 0, 0);
+        for (int i = 0; i < csvPoints.length; i++)
+        {
+            pathFile.getWaypoint(i, point);
+            assertEquals(csvPoints[i].toString(), point.toString());
+            assertEquals(csvPoints[i].heading, point.heading, 0.0);
+        }
+
+        TrcPath path = TrcPath.loadPathFromBinary(true, binFile.toString());
+        assertEquals(50, path.getSize());
+    }
+
+    @Test(expected = IOException.class)
+    public void invalidFileTest() throws IOException
+    {
+        Path dir = Files.createTempDirectory("trcpath");
+        Path csvFile = writeCsv(dir.resolve("notbinary.csv"), 5);
+
+        TrcPathFile.load(csvFile);
+    }
+
+    @Test
+    public void cacheTest() throws IOException
+    {
+        Path dir = Files.createTempDirectory("trcpath");
+        Path subDir = Files.createDirectory(dir.resolve("paths"));
+
+        writeCsv(dir.resolve("shoot.csv"), 20);
+        TrcPathFile.convertCsv(writeCsv(subDir.resolve("left.csv"), 30), subDir.resolve("left.trcpath"));
+        TrcPathFile.fromWaypoints("right", TrcWaypoint.loadPointsFromCsv(
+            writeCsv(subDir.resolve("right.csv"), 30).toString(), false)).save(subDir.resolve("right.trcpath"));
+        Files.write(dir.resolve("broken.csv"), "header\n1,2,3\n".getBytes());
+        Files.write(dir.resolve("notes.txt"), "not a path".getBytes());
+
+        TrcPathCache.clear();
+        // The converted CSV files are loaded from their binary files, the broken CSV file is skipped.
+        assertEquals(3, TrcPathCache.loadDirectory(dir));
+        assertEquals(3, TrcPathCache.size());
+        assertNull(TrcPathCache.get("broken"));
+        assertEquals(20, TrcPathCache.get("shoot").getNumPoints());
+
+        TrcPath path = TrcPathCache.getPath("shoot", true);
+        assertEquals(20, path.getSize());
+        // Paths are created from the cache, modifying one does not change the cached waypoints.
+        path.getWaypoint(3).x = 100.0;
+        assertEquals(1.5, TrcPathCache.get("shoot").get(3, TrcPathFile.X), 0.0);
+
+        TrcTankMotionProfile profile = TrcPathCache.getTankProfile("left", "right");
+        assertEquals(30, profile.getNumPoints());
+        TrcPathCache.clear();
+    }
+}
@@ -0,0 +1,114 @@
+package trclib;
+
+import org.apache.commons.math3.linear.ArrayRealVector;
+import org.apache.commons.math3.linear.RealVector;
+import trclib.simulator.SimulatedHolonomicDrivebase;
+
+import java.util.Locale;
+
+/**
+ * Compares the lookahead search of TrcHolonomicPurePursuitDrive with the segment index against a linear scan from
+ * the current segment to the end of the path with vector math, which is how the drive used to find the following
+ * point. The segment the drive follows must be the same as the one the linear scan finds.
+ *
+ * Usage: TrcPathSegmentIndexBenchmark [numWaypoints]
+ */
+public class TrcPathSegmentIndexBenchmark
+{
+    private static final double FOLLOWING_DISTANCE = 12.0;
+
+    public static void main(String[] args)
+    {
+        int numWaypoints = args.length > 0 ? Integer.parseInt(args[0]) : 20000;
+        TrcWaypoint[] waypoints = new TrcWaypoint[numWaypoints];
+        for (int i = 0; i < numWaypoints; i++)
+        {
+            // A long winding path with waypoints about 1 inch apart.
+            waypoints[i] = new TrcWaypoint(0, 40 * Math.sin(i / 50.0), i, 0, 0, 0, 0, 0);
+        }
+        TrcPath path = new TrcPath(waypoints);
+        TrcHolonomicPurePursuitDrive drive = new TrcHolonomicPurePursuitDrive("benchmark",
+            new SimulatedHolonomicDrivebase(100, 200, 6, 10), FOLLOWING_DISTANCE, 2.0, 3.0,
+            new TrcPidController.PidCoefficients(8), new TrcPidController.PidCoefficients(0.01, 0, 0.01),
+            new TrcPidController.PidCoefficients(0.01, 0, 0, 1 / 100.0));
+
+        // On the path the scan finds an intersection right away. Off the path by more than the following distance,
+        // there is none and the scan goes to the end of the path.
+        for (int pass = 0; pass < 4; pass++)
+        {
+            double offset = pass < 2 ? 3.0 : 20.0;
+            long driveNanos = 0, scanNanos = 0;
+            int scanSegment = 1, mismatches = 0, queries = 0;
+
+            // Start the path to reset the following segment, the drive task is not needed to query it.
+            drive.start(path, null, 0.0);
+            drive.cancel();
+
+            // Robot follows the path off to the side, one query every 10 waypoints.
+            for (int i = 0; i < numWaypoints - 20; i += 10)
+            {
+                double robotX = waypoints[i].x + offset, robotY = waypoints[i].y;
+
+                long t0 = System.nanoTime();
+                drive.getFollowingPoint(robotX, robotY);
+                long t1 = System.nanoTime();
+                scanSegment = linearScan(path, scanSegment, robotX, robotY);
+                long t2 = System.nanoTime();
+
+                driveNanos += t1 - t0;
+                scanNanos += t2 - t1;
+                mismatches += drive.getPathIndex() != scanSegment ? 1 : 0;
+                queries++;
+            }
+
+            // The first pass of each case warms up the JIT.
+            if (pass % 2 == 1)
+            {
+                System.out.printf(Locale.US, "%d waypoints, offset=%.0f, %d queries, %d mismatches%n", numWaypoints,
+                    offset, queries, mismatches);
+                System.out.printf(Locale.US, "Pure pursuit drive: %.0f ns/query%n", (double) driveNanos / queries);
+                System.out.printf(Locale.US, "Linear scan:        %.0f ns/query%n", (double) scanNanos / queries);
+            }
+        }
+
+        // Starting the drive starts the task threads, stop them so the benchmark can exit.
+        TrcTaskMgr.getInstance().shutdown();
+    }
+
+    private static int linearScan(TrcPath path, int pathIndex, double robotX, double robotY)
+    {
+        for (int i = Math.max(pathIndex, 1); i < path.getSize(); i++)
+        {
+            TrcWaypoint prev = path.getWaypoint(i - 1), point = path.getWaypoint(i);
+            RealVector start = new ArrayRealVector(new double[] { prev.x, prev.y });
+            RealVector end = new ArrayRealVector(new double[] { point.x, point.y });
+            RealVector robot = new ArrayRealVector(new double[] { robotX, robotY });
+            RealVector startToEnd = end.subtract(start);
+            RealVector robotToStart = start.subtract(robot);
+            double a = startToEnd.dotProduct(startToEnd);
+            double b = 2 * robotToStart.dotProduct(startToEnd);
+            double c = robotToStart.dotProduct(robotToStart) - FOLLOWING_DISTANCE * FOLLOWING_DISTANCE;
+            double discriminant = b * b - 4 * a * c;
+            if (discriminant >= 0)
+            {
+                double t = (-b + Math.sqrt(discriminant)) / (2 * a);
+                if (TrcUtil.inRange(t, 0.0, 1.0))
+                {
+                    return i;
+                }
+            }
+        }
+        TrcWaypoint closestPoint = path.getWaypoint(pathIndex);
+        for (int i = pathIndex; i < path.getSize(); i++)
+        {
+            TrcWaypoint point = path.getWaypoint(i);
+            if (Math.abs(TrcUtil.magnitude(robotX - closestPoint.x, robotY - closestPoint.y) - FOLLOWING_DISTANCE)
+                >= Math.abs(TrcUtil.magnitude(robotX - point.x, robotY - point.y) - FOLLOWING_DISTANCE))
+            {
+                closestPoint = point;
+                pathIndex = i;
+            }
+        }
+        return pathIndex;
+    }
+}
@@ -0,0 +1,45 @@
+package trclib;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import org.junit.Test;
+
+public class TrcPathSegmentIndexTest
+{
+    private static TrcPath createPath(double... xy)
+    {
+        TrcWaypoint[] waypoints = new TrcWaypoint[xy.length / 2];
+        for (int i = 0; i < waypoints.length; i++)
+        {
+            waypoints[i] = new TrcWaypoint(0, xy[2 * i], xy[2 * i + 1], 0, 0, 0, 0, 0);
+        }
+        return new TrcPath(waypoints);
+    }
+
+    @Test
+    public void arcLengthTest()
+    {
+        TrcPathSegmentIndex index = new TrcPathSegmentIndex(createPath(0, 0, 0, 10, 10, 10, 10, 0, 10, 0));
+        assertEquals(0.0, index.getArcLength(0), 1e-9);
+        assertEquals(30.0, index.getArcLength(4), 1e-9);
+        assertEquals(2, index.findWindowEnd(0, 25.0));
+        assertEquals(4, index.findWindowEnd(1, 20.0));
+        assertEquals(1, index.findWindowEnd(1, 0.0));
+    }
+
+    @Test
+    public void intersectTest()
+    {
+        TrcPathSegmentIndex index = new TrcPathSegmentIndex(createPath(0, 0, 0, 10, 0, 10));
+        // Circle centered at the origin crosses the first segment at y=5.
+        assertEquals(0.5, index.intersect(1, 0, 0, 5), 1e-9);
+        // The farthest intersection of a circle centered on the segment.
+        assertEquals(0.8, index.intersect(1, 0, 5, 3), 1e-9);
+        // No intersection, circle too small or beyond the segment.
+        assertTrue(Double.isNaN(index.intersect(1, 5, 5, 1)));
+        assertTrue(Double.isNaN(index.intersect(1, 0, 0, 20)));
+        // Zero length segment.
+        assertTrue(Double.isNaN(index.intersect(2, 0, 10, 1)));
+    }
+}
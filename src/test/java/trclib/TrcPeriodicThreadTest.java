@@ -0,0 +1,239 @@
+package trclib;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicReference;
+
+import org.junit.Test;
+
+public class TrcPeriodicThreadTest
+{
+    @Test
+    public void sharedSchedulerTest()
+    {
+        final int numTasks = 20;
+        AtomicInteger[] runCounts = new AtomicInteger[numTasks];
+        @SuppressWarnings({"unchecked", "rawtypes"})
+        TrcPeriodicThread<Integer>[] threads = new TrcPeriodicThread[numTasks];
+        int baseSharedTasks = TrcPeriodicThread.getNumSharedTasks();
+
+        for (int i = 0; i < numTasks; i++)
+        {
+            final AtomicInteger runCount = runCounts[i] = new AtomicInteger();
+            threads[i] = new TrcPeriodicThread<>(
+                "shared" + i, context -> runCount.incrementAndGet(), null, Thread.NORM_PRIORITY,
+                TrcPeriodicThread.ExecutionMode.SHARED_SCHEDULER);
+            threads[i].setProcessingInterval(10);
+        }
+        assertEquals(baseSharedTasks + numTasks, TrcPeriodicThread.getNumSharedTasks());
+
+        // Nothing runs before the tasks are enabled.
+        TrcUtil.sleep(30);
+        assertEquals(0, runCounts[0].get());
+
+        for (TrcPeriodicThread<Integer> thread: threads)
+        {
+            thread.setTaskEnabled(true);
+        }
+        TrcUtil.sleep(200);
+        for (TrcPeriodicThread<Integer> thread: threads)
+        {
+            thread.setTaskEnabled(false);
+        }
+        TrcUtil.sleep(30);
+
+        for (AtomicInteger runCount: runCounts)
+        {
+            // About 20 runs at a fixed rate of 10 msec in 200 msec, give or take scheduling delays.
+            assertTrue("runs " + runCount.get(), runCount.get() >= 12 && runCount.get() <= 22);
+        }
+
+        int pausedCount = runCounts[0].get();
+        TrcUtil.sleep(50);
+        assertEquals(pausedCount, runCounts[0].get());
+
+        threads[0].setData(42);
+        assertEquals(42, (int) threads[0].getData());
+        assertNull(threads[0].getData());
+
+        for (TrcPeriodicThread<Integer> thread: threads)
+        {
+            thread.terminateTask();
+            thread.terminateTask();
+            assertTrue(thread.isTaskTerminated());
+            assertFalse(thread.isTaskEnabled());
+        }
+        assertEquals(baseSharedTasks, TrcPeriodicThread.getNumSharedTasks());
+    }
+
+    @Test
+    public void fixedRateTest()
+    {
+        AtomicInteger runCount = new AtomicInteger();
+        TrcPeriodicThread<Object> thread = new TrcPeriodicThread<>(
+            "fixedRate",
+            context ->
+            {
+                runCount.incrementAndGet();
+                TrcUtil.sleep(6);
+            },
+            null, Thread.NORM_PRIORITY, TrcPeriodicThread.ExecutionMode.SHARED_SCHEDULER);
+
+        thread.setProcessingInterval(10);
+        thread.setTaskEnabled(true);
+        TrcUtil.sleep(300);
+        thread.terminateTask();
+        TrcUtil.sleep(20);
+
+        // The processing time is not added to the interval, so it runs about 30 times and not about 19 times.
+        assertTrue("runs " + runCount.get(), runCount.get() >= 24 && runCount.get() <= 32);
+        assertTrue(thread.isTaskTerminated());
+    }
+
+    @Test
+    public void dedicatedFixedRateTest()
+    {
+        AtomicInteger runCount = new AtomicInteger();
+        TrcPeriodicThread<Object> thread = new TrcPeriodicThread<>(
+            "dedicatedFixedRate",
+            context ->
+            {
+                runCount.incrementAndGet();
+                TrcUtil.sleep(6);
+            },
+            null, Thread.NORM_PRIORITY, TrcPeriodicThread.ExecutionMode.DEDICATED_THREAD);
+
+        assertFalse(thread.isFixedRate());
+        thread.setFixedRate(true, TrcPeriodicThread.OverrunPolicy.SKIP);
+        thread.setProcessingInterval(10);
+        thread.setTaskEnabled(true);
+        TrcUtil.sleep(300);
+        thread.terminateTask();
+        TrcUtil.sleep(20);
+
+        // Every 10 msec period of the 300 msec either had a run or was skipped after an overrun, there is no drift.
+        long periodCount = runCount.get() + thread.getSkippedPeriodCount();
+        assertTrue("periods " + periodCount, periodCount >= 28 && periodCount <= 32);
+        assertTrue(thread.getSkippedPeriodCount() >= thread.getOverrunCount());
+        assertEquals(runCount.get() - 1, thread.getPeriodSnapshot().getCount());
+        assertEquals(runCount.get(), thread.getStartJitterSnapshot().getCount());
+    }
+
+    @Test
+    public void overrunPolicyTest()
+    {
+        long[] overruns = new long[2];
+        long[] skipped = new long[2];
+        int[] runs = new int[2];
+        TrcPeriodicThread.OverrunPolicy[] policies =
+            {TrcPeriodicThread.OverrunPolicy.SKIP, TrcPeriodicThread.OverrunPolicy.CATCH_UP};
+
+        for (int i = 0; i < policies.length; i++)
+        {
+            AtomicInteger runCount = new AtomicInteger();
+            TrcPeriodicThread<Object> thread = new TrcPeriodicThread<>(
+                "overrun" + policies[i],
+                context ->
+                {
+                    // The third run overruns by about three periods.
+                    if (runCount.incrementAndGet() == 3)
+                    {
+                        TrcUtil.sleep(35);
+                    }
+                },
+                null, Thread.NORM_PRIORITY, TrcPeriodicThread.ExecutionMode.DEDICATED_THREAD);
+
+            thread.setFixedRate(true, policies[i]);
+            thread.setProcessingInterval(10);
+            thread.setTaskEnabled(true);
+            TrcUtil.sleep(200);
+            thread.terminateTask();
+            TrcUtil.sleep(20);
+            overruns[i] = thread.getOverrunCount();
+            skipped[i] = thread.getSkippedPeriodCount();
+            runs[i] = runCount.get();
+        }
+
+        assertTrue("overruns " + overruns[0], overruns[0] >= 1);
+        assertTrue("skipped " + skipped[0], skipped[0] >= 3);
+        assertTrue("overruns " + overruns[1], overruns[1] >= 1);
+        assertEquals(0, skipped[1]);
+        // Catching up makes up for the missed runs, skipping doesn't.
+        assertTrue("runs " + runs[0] + " " + runs[1], runs[1] >= runs[0] + 2);
+    }
+
+    @Test
+    public void terminateDuringRunTest() throws InterruptedException
+    {
+        CountDownLatch runStarted = new CountDownLatch(1);
+        CountDownLatch release = new CountDownLatch(1);
+        TrcPeriodicThread<Object> thread = new TrcPeriodicThread<>(
+            "terminateDuringRun",
+            context ->
+            {
+                runStarted.countDown();
+                try
+                {
+                    release.await();
+                }
+                catch (InterruptedException e)
+                {
+                    Thread.currentThread().interrupt();
+                }
+            },
+            null, Thread.NORM_PRIORITY, TrcPeriodicThread.ExecutionMode.SHARED_SCHEDULER);
+
+        thread.setProcessingInterval(10);
+        thread.setTaskEnabled(true);
+        assertTrue(runStarted.await(1, TimeUnit.SECONDS));
+
+        // The run in progress keeps going after the task is terminated, so it is not reported terminated yet.
+        thread.terminateTask();
+        assertFalse(thread.isTaskEnabled());
+        assertFalse(thread.isTaskTerminated());
+
+        release.countDown();
+        TrcUtil.sleep(20);
+        assertTrue(thread.isTaskTerminated());
+    }
+
+    @Test
+    public void scheduledExceptionTest()
+    {
+        AtomicReference<Throwable> uncaught = new AtomicReference<>();
+        Thread.UncaughtExceptionHandler prevHandler = Thread.getDefaultUncaughtExceptionHandler();
+        Thread.setDefaultUncaughtExceptionHandler((t, e) -> uncaught.set(e));
+        try
+        {
+            AtomicInteger runCount = new AtomicInteger();
+            TrcPeriodicThread<Object> thread = new TrcPeriodicThread<>(
+                "scheduledException",
+                context ->
+                {
+                    runCount.incrementAndGet();
+                    throw new IllegalStateException("task failed");
+                },
+                null, Thread.NORM_PRIORITY, TrcPeriodicThread.ExecutionMode.SHARED_SCHEDULER);
+
+            thread.setProcessingInterval(10);
+            thread.setTaskEnabled(true);
+            TrcUtil.sleep(50);
+
+            // The exception is reported instead of swallowed by the scheduler and the task terminates.
+            assertTrue(uncaught.get() instanceof IllegalStateException);
+            assertEquals("task failed", uncaught.get().getMessage());
+            assertEquals(1, runCount.get());
+            assertTrue(thread.isTaskTerminated());
+        }
+        finally
+        {
+            Thread.setDefaultUncaughtExceptionHandler(prevHandler);
+        }
+    }
+}
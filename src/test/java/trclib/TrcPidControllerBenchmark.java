@@ -0,0 +1,218 @@
+package trclib;
+
+import java.util.Locale;
+import java.util.Stack;
+
+/**
+ * Measures the cost of evaluating the seven PID loops of a swerve drive per cycle: one getOutput call per
+ * controller, one getOutputs batch call, and the lock-free core batch. A copy of the previous controller, with the
+ * boxed ramp rate and the Stack of output limits, is included as the baseline.
+ *
+ * Usage: TrcPidControllerBenchmark [numCycles]
+ */
+public class TrcPidControllerBenchmark
+{
+    private static final int NUM_CONTROLLERS = 7;
+
+    public static void main(String[] args)
+    {
+        int numCycles = args.length > 0 ? Integer.parseInt(args[0]) : 2000000;
+        TrcPidController.PidCoefficients coeffs = new TrcPidController.PidCoefficients(0.02, 0.001, 0.002, 0.0);
+        double[] inputs = new double[NUM_CONTROLLERS];
+        double[] outputs = new double[NUM_CONTROLLERS];
+        LegacyPidController[] legacy = new LegacyPidController[NUM_CONTROLLERS];
+        TrcPidController[] controllers = new TrcPidController[NUM_CONTROLLERS];
+        TrcPidCore[] cores = new TrcPidCore[NUM_CONTROLLERS];
+
+        for (int i = 0; i < NUM_CONTROLLERS; i++)
+        {
+            final int index = i;
+            legacy[i] = new LegacyPidController(coeffs, () -> inputs[index]);
+            legacy[i].rampRate = 2.0;
+            legacy[i].setTarget(100.0);
+            controllers[i] = new TrcPidController("pid" + i, coeffs, 1.0, () -> inputs[index]);
+            controllers[i].setAbsoluteSetPoint(true);
+            controllers[i].setRampRate(2.0);
+            controllers[i].setTarget(100.0);
+            cores[i] = new TrcPidCore(coeffs);
+            cores[i].setRampRate(2.0);
+            cores[i].setTarget(100.0, 100.0, TrcUtil.getCurrentTime());
+        }
+
+        // The first pass warms up the JIT.
+        for (int pass = 0; pass < 2; pass++)
+        {
+            double sink = 0.0;
+
+            long t0 = System.nanoTime();
+            for (int n = 0; n < numCycles; n++)
+            {
+                updateInputs(inputs, n);
+                for (int i = 0; i < NUM_CONTROLLERS; i++)
+                {
+                    sink += legacy[i].getOutput();
+                }
+                legacy[n % NUM_CONTROLLERS].saveAndSetOutputLimit(0.5);
+                legacy[n % NUM_CONTROLLERS].restoreOutputLimit();
+            }
+
+            long t1 = System.nanoTime();
+            for (int n = 0; n < numCycles; n++)
+            {
+                updateInputs(inputs, n);
+                for (int i = 0; i < NUM_CONTROLLERS; i++)
+                {
+                    sink += controllers[i].getOutput();
+                }
+                controllers[n % NUM_CONTROLLERS].saveAndSetOutputLimit(0.5);
+                controllers[n % NUM_CONTROLLERS].restoreOutputLimit();
+            }
+
+            long t2 = System.nanoTime();
+            for (int n = 0; n < numCycles; n++)
+            {
+                updateInputs(inputs, n);
+                TrcPidController.getOutputs(controllers, outputs);
+                sink += outputs[0];
+                controllers[n % NUM_CONTROLLERS].saveAndSetOutputLimit(0.5);
+                controllers[n % NUM_CONTROLLERS].restoreOutputLimit();
+            }
+
+            long t3 = System.nanoTime();
+            for (int n = 0; n < numCycles; n++)
+            {
+                updateInputs(inputs, n);
+                TrcPidCore.calculate(cores, inputs, TrcUtil.getCurrentTime(), outputs);
+                sink += outputs[0];
+                cores[n % NUM_CONTROLLERS].saveAndSetOutputLimit(0.5);
+                cores[n % NUM_CONTROLLERS].restoreOutputLimit();
+            }
+            long t4 = System.nanoTime();
+
+            if (pass == 1)
+            {
+                System.out.printf(Locale.US, "%d cycles of %d PID loops (checksum %.3f)%n", numCycles,
+                    NUM_CONTROLLERS, sink);
+                printCycleTime("Previous controller", t1 - t0, numCycles);
+                printCycleTime("TrcPidController.getOutput", t2 - t1, numCycles);
+                printCycleTime("TrcPidController.getOutputs", t3 - t2, numCycles);
+                printCycleTime("TrcPidCore.calculate", t4 - t3, numCycles);
+            }
+        }
+    }
+
+    private static void printCycleTime(String name, long nanos, int numCycles)
+    {
+        System.out.printf(Locale.US, "%-28s %.0f ns/cycle%n", name + ":", (double) nanos / numCycles);
+    }
+
+    private static void updateInputs(double[] inputs, int cycle)
+    {
+        for (int i = 0; i < inputs.length; i++)
+        {
+            inputs[i] = (cycle % 1000) / 10.0 + i;
+        }
+    }
+
+    /**
+     * The output calculation and output limit stack of the controller before the primitive core.
+     */
+    private static class LegacyPidController
+    {
+        private final TrcPidController.PidCoefficients pidCoefficients;
+        private final TrcPidController.PidInput pidInput;
+        private double minOutput = -1.0;
+        private double maxOutput = 1.0;
+        private double outputLimit = 1.0;
+        private Double rampRate = null;
+        private final Stack<Double> outputLimitStack = new Stack<>();
+        private double prevTime, currError, totalError, setPoint, currInput, output, prevOutputTime;
+        private double pTerm, iTerm, dTerm, fTerm;
+
+        LegacyPidController(TrcPidController.PidCoefficients pidCoefficients, TrcPidController.PidInput pidInput)
+        {
+            this.pidCoefficients = pidCoefficients;
+            this.pidInput = pidInput;
+        }
+
+        synchronized void setTarget(double target)
+        {
+            setPoint = target;
+            currError = setPoint - pidInput.get();
+            totalError = 0.0;
+            prevTime = prevOutputTime = TrcUtil.getCurrentTime();
+        }
+
+        synchronized void setOutputRange(double minOutput, double maxOutput)
+        {
+            if (Math.abs(minOutput) == Math.abs(maxOutput))
+            {
+                outputLimit = maxOutput;
+            }
+            this.minOutput = minOutput;
+            this.maxOutput = maxOutput;
+        }
+
+        synchronized double saveAndSetOutputLimit(double limit)
+        {
+            double prevLimit = outputLimit;
+            outputLimitStack.push(outputLimit);
+            setOutputRange(-limit, limit);
+            return prevLimit;
+        }
+
+        synchronized double restoreOutputLimit()
+        {
+            double limit = outputLimitStack.pop();
+            setOutputRange(-limit, limit);
+            return limit;
+        }
+
+        double getOutput()
+        {
+            final double currentInputValue = pidInput.get();
+
+            synchronized (this)
+            {
+                double prevError = currError;
+                double currTime = TrcUtil.getCurrentTime();
+                double deltaTime = currTime - prevTime;
+
+                prevTime = currTime;
+                currInput = currentInputValue;
+                currError = setPoint - currInput;
+                if (pidCoefficients.kI != 0.0)
+                {
+                    double potentialGain = (totalError + currError * deltaTime) * pidCoefficients.kI;
+                    if (potentialGain >= maxOutput)
+                    {
+                        totalError = maxOutput / pidCoefficients.kI;
+                    }
+                    else if (potentialGain > minOutput)
+                    {
+                        totalError += currError * deltaTime;
+                    }
+                    else
+                    {
+                        totalError = minOutput / pidCoefficients.kI;
+                    }
+                }
+
+                pTerm = pidCoefficients.kP * currError;
+                iTerm = pidCoefficients.kI * totalError;
+                dTerm = deltaTime > 0.0 ? pidCoefficients.kD * (currError - prevError) / deltaTime : 0.0;
+                fTerm = pidCoefficients.kF * setPoint;
+                double lastOutput = output;
+                output = TrcUtil.clipRange(pTerm + iTerm + dTerm + fTerm, minOutput, maxOutput);
+                if (rampRate != null)
+                {
+                    double maxChange = rampRate * (currTime - prevOutputTime);
+                    output = lastOutput + TrcUtil.clipRange(output - lastOutput, -maxChange, maxChange);
+                    prevOutputTime = currTime;
+                }
+
+                return output;
+            }
+        }
+    }
+}
@@ -0,0 +1,106 @@
+package trclib;
+
+import static org.junit.Assert.assertEquals;
+
+import org.junit.Test;
+
+public class TrcPidCoreTest
+{
+    @Test
+    public void proportionalTest()
+    {
+        TrcPidCore core = new TrcPidCore(new TrcPidController.PidCoefficients(0.1));
+
+        core.setTarget(10.0, 10.0, 1.0);
+        assertEquals(0.5, core.calculate(5.0, 1.1), 1e-9);
+        assertEquals(5.0, core.getError(), 1e-9);
+        // Output is clipped to the output range.
+        assertEquals(1.0, core.calculate(-20.0, 1.2), 1e-9);
+        core.setInverted(true);
+        assertEquals(-0.5, core.calculate(5.0, 1.3), 1e-9);
+    }
+
+    @Test
+    public void integralWindupTest()
+    {
+        TrcPidCore core = new TrcPidCore(new TrcPidController.PidCoefficients(0.0, 1.0, 0.0));
+
+        core.setTarget(10.0, 10.0, 0.0);
+        assertEquals(0.5, core.calculate(5.0, 0.1), 1e-9);
+        // The total error is capped so the integral term does not exceed the output range.
+        assertEquals(1.0, core.calculate(5.0, 10.0), 1e-9);
+        assertEquals(1.0, core.getITerm(), 1e-9);
+        assertEquals(0.5, core.calculate(15.0, 10.1), 1e-9);
+    }
+
+    @Test
+    public void rampRateTest()
+    {
+        TrcPidCore core = new TrcPidCore(new TrcPidController.PidCoefficients(1.0));
+
+        core.setRampRate(0.5);
+        core.setTarget(10.0, 10.0, 1.0);
+        assertEquals(0.05, core.calculate(0.0, 1.1), 1e-9);
+        assertEquals(0.1, core.calculate(0.0, 1.2), 1e-9);
+        core.setRampRate(Double.NaN);
+        assertEquals(1.0, core.calculate(0.0, 1.3), 1e-9);
+    }
+
+    @Test
+    public void outputLimitStackTest()
+    {
+        TrcPidCore core = new TrcPidCore(new TrcPidController.PidCoefficients(1.0));
+
+        assertEquals(1.0, core.restoreOutputLimit(), 0.0);
+        // Nest deeper than the initial stack size.
+        for (int i = 1; i <= 10; i++)
+        {
+            assertEquals(i == 1 ? 1.0 : (i - 1)/10.0, core.saveAndSetOutputLimit(-i/10.0), 0.0);
+            assertEquals(-i/10.0, core.getMinOutput(), 0.0);
+            assertEquals(i/10.0, core.getMaxOutput(), 0.0);
+        }
+
+        for (int i = 9; i >= 1; i--)
+        {
+            assertEquals(i/10.0, core.restoreOutputLimit(), 0.0);
+            assertEquals(i/10.0, core.getOutputLimit(), 0.0);
+        }
+        assertEquals(1.0, core.restoreOutputLimit(), 0.0);
+        assertEquals(1.0, core.restoreOutputLimit(), 0.0);
+        assertEquals(-1.0, core.getMinOutput(), 0.0);
+    }
+
+    @Test
+    public void batchTest()
+    {
+        TrcPidController.PidCoefficients coeffs = new TrcPidController.PidCoefficients(0.02, 0.01, 0.001, 0.005);
+        TrcPidCore[] batch = new TrcPidCore[7];
+        TrcPidCore[] single = new TrcPidCore[batch.length];
+        double[] inputs = new double[batch.length];
+        double[] outputs = new double[batch.length];
+
+        for (int i = 0; i < batch.length; i++)
+        {
+            batch[i] = new TrcPidCore(coeffs);
+            single[i] = new TrcPidCore(coeffs);
+            batch[i].setTarget(10.0*i, 10.0*i, 1.0);
+            single[i].setTarget(10.0*i, 10.0*i, 1.0);
+        }
+
+        for (int step = 1; step <= 50; step++)
+        {
+            double time = 1.0 + step*0.02;
+
+            for (int i = 0; i < batch.length; i++)
+            {
+                inputs[i] = 10.0*i*(1.0 - Math.exp(-step/10.0));
+            }
+            TrcPidCore.calculate(batch, inputs, time, outputs);
+
+            for (int i = 0; i < batch.length; i++)
+            {
+                assertEquals(single[i].calculate(inputs[i], time), outputs[i], 0.0);
+            }
+        }
+    }
+}
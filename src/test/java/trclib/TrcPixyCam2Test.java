@@ -0,0 +1,193 @@
+package trclib;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+import org.junit.Test;
+
+public class TrcPixyCam2Test
+{
+    private static class FakePixyCam extends TrcPixyCam2
+    {
+        byte[] response = null;
+        byte lastRequestType = 0;
+        byte[] lastRequest = null;
+
+        FakePixyCam()
+        {
+            super("FakePixyCam");
+        }
+
+        @Override
+        public void syncWriteRequest(byte[] data)
+        {
+            lastRequestType = data[2];
+            lastRequest = data;
+        }
+
+        @Override
+        public byte[] syncReadResponse()
+        {
+            return response;
+        }
+    }
+
+    private static byte[] packet(int type, int... payload)
+    {
+        byte[] data = new byte[TrcPixyCam2.PIXY2_HEADER_LENGTH + payload.length];
+        int checksum = 0;
+
+        data[0] = (byte) 0xaf;
+        data[1] = (byte) 0xc1;
+        data[2] = (byte) type;
+        data[3] = (byte) payload.length;
+        for (int i = 0; i < payload.length; i++)
+        {
+            data[TrcPixyCam2.PIXY2_HEADER_LENGTH + i] = (byte) payload[i];
+            checksum += payload[i] & 0xff;
+        }
+        data[4] = (byte) checksum;
+        data[5] = (byte) (checksum >> 8);
+
+        return data;
+    }
+
+    @Test
+    public void blockCursorTest()
+    {
+        FakePixyCam pixy = new FakePixyCam();
+        // Two blocks: signature, center x/y, width, height, angle, tracking index, age.
+        pixy.response = packet(33,
+            1, 0, 0x2c, 0x01, 100, 0, 20, 0, 10, 0, 0, 0, 7, 3,
+            0x0b, 0, 5, 0, 6, 0, 7, 0, 8, 0, 0xa6, 0xff, 200, 255);
+
+        TrcPixyCam2.BlockCursor cursor = pixy.readBlocks(TrcPixyCam2.PIXY2_BLOCKS_ALL_SIG, (byte) 2);
+        assertEquals(32, pixy.lastRequestType);
+        assertArrayEquals(new byte[] { (byte) 0xae, (byte) 0xc1, 32, 2, (byte) 255, 2 }, pixy.lastRequest);
+        assertEquals(2, cursor.getNumBlocks());
+        assertTrue(cursor.next());
+        assertEquals(1, cursor.getSignature());
+        assertEquals(300, cursor.getCenterX());
+        assertEquals(100, cursor.getCenterY());
+        assertEquals(20, cursor.getWidth());
+        assertEquals(10, cursor.getHeight());
+        assertEquals(7, cursor.getTrackingIndex());
+        assertEquals(3, cursor.getAge());
+        assertTrue(cursor.next());
+        assertEquals(11, cursor.getSignature());
+        assertEquals(-90, cursor.getAngle());
+        assertEquals(200, cursor.getTrackingIndex());
+        assertEquals(255, cursor.getAge());
+        assertFalse(cursor.next());
+
+        TrcPixyCam2.Block[] blocks = pixy.getBlocks(TrcPixyCam2.PIXY2_BLOCKS_ALL_SIG, (byte) 2);
+        assertEquals(2, blocks.length);
+        assertEquals(300, blocks[0].centerX);
+        assertEquals(7, blocks[0].trackingIndex);
+        assertEquals(-90, blocks[1].angle);
+
+        // A corrupted checksum or an unexpected response type fails the request.
+        pixy.response[6]++;
+        assertNull(pixy.readBlocks(TrcPixyCam2.PIXY2_BLOCKS_ALL_SIG, (byte) 2));
+        pixy.response = packet(49);
+        assertNull(pixy.getBlocks(TrcPixyCam2.PIXY2_BLOCKS_ALL_SIG, (byte) 2));
+    }
+
+    @Test
+    public void featureCursorTest()
+    {
+        FakePixyCam pixy = new FakePixyCam();
+        int[] payload = new int[2 + 12 + 2 + 28 + 2 + 4];
+        int i = 0;
+        // Two vectors.
+        payload[i++] = 1;
+        payload[i++] = 12;
+        for (int v: new int[] {1, 2, 3, 4, 5, 0, 10, 20, 30, 40, 6, 0x04})
+        {
+            payload[i++] = v;
+        }
+        // One intersection with two lines, the intersection has room for six lines.
+        payload[i++] = 2;
+        payload[i++] = 28;
+        payload[i] = 40;
+        payload[i + 1] = 30;
+        payload[i + 2] = 2;
+        payload[i + 4] = 1;
+        payload[i + 6] = 90;
+        payload[i + 8] = 2;
+        payload[i + 10] = 0x4c;
+        payload[i + 11] = 0xff;
+        i += 28;
+        // One barcode.
+        payload[i++] = 4;
+        payload[i++] = 4;
+        payload[i++] = 50;
+        payload[i++] = 60;
+        payload[i++] = 0;
+        payload[i++] = 9;
+        pixy.response = packet(49, payload);
+
+        TrcPixyCam2.FeatureCursor cursor = pixy.readFeatures(
+            TrcPixyCam2.PIXY2_FEATURE_TYPE_MAIN, TrcPixyCam2.PIXY2_FEATURES_ALL);
+        assertArrayEquals(new byte[] { (byte) 0xae, (byte) 0xc1, 48, 2, 0, 7 }, pixy.lastRequest);
+        assertTrue(cursor.next());
+        assertEquals(TrcPixyCam2.PIXY2_FEATURES_VECTOR, cursor.getType());
+        assertEquals(2, cursor.getNumVectors());
+        assertEquals(0, cursor.getNumBarcodes());
+        assertEquals(40, cursor.getVectorY1(1));
+        assertEquals(4, cursor.getVectorFlags(1));
+        assertTrue(cursor.next());
+        assertEquals(1, cursor.getNumIntersections());
+        assertEquals(40, cursor.getIntersectionX(0));
+        assertEquals(2, cursor.getNumIntersectionLines(0));
+        assertEquals(2, cursor.getIntersectionLineIndex(0, 1));
+        assertEquals(90, cursor.getIntersectionLineAngle(0, 0));
+        assertEquals(-180, cursor.getIntersectionLineAngle(0, 1));
+        assertTrue(cursor.next());
+        assertEquals(1, cursor.getNumBarcodes());
+        assertEquals(9, cursor.getBarcodeCode(0));
+        assertFalse(cursor.next());
+
+        TrcPixyCam2.Feature[] features = pixy.getMainFeatures(TrcPixyCam2.PIXY2_FEATURES_ALL);
+        assertEquals(3, features.length);
+        assertEquals(2, ((TrcPixyCam2.FeatureVectors) features[0]).vectors.length);
+        TrcPixyCam2.Intersection intersection = ((TrcPixyCam2.FeatureIntersections) features[1]).intersections[0];
+        assertEquals(2, intersection.intersectionLines.length);
+        assertEquals(-180, intersection.intersectionLines[1].angle);
+        assertEquals(9, ((TrcPixyCam2.FeatureBarcodes) features[2]).barcodes[0].code);
+    }
+
+    @Test
+    public void streamingTest()
+    {
+        TrcPixyCam2.PacketReceiver receiver = new TrcPixyCam2.PacketReceiver();
+        byte[] good = packet(1, 5, 0, 0, 0);
+        byte[] bad = packet(1, 5, 0, 0, 0);
+        bad[4]++;
+        // Noise, a packet with a bad checksum, a stray sync byte, then a good packet.
+        byte[] stream = new byte[3 + bad.length + 1 + good.length];
+        stream[0] = 0x12;
+        stream[1] = (byte) 0xaf;
+        stream[2] = 0x34;
+        System.arraycopy(bad, 0, stream, 3, bad.length);
+        stream[3 + bad.length] = (byte) 0xaf;
+        System.arraycopy(good, 0, stream, 4 + bad.length, good.length);
+
+        // Feed the stream in chunks of 3 bytes as they would arrive on a serial port.
+        int offset = 0;
+        while (offset < stream.length && !receiver.isComplete())
+        {
+            offset += receiver.feed(stream, offset, Math.min(3, stream.length - offset));
+        }
+
+        assertTrue(receiver.isComplete());
+        assertEquals(stream.length, offset);
+        assertEquals(1, receiver.getPacketType());
+        assertEquals(5, receiver.getPacket().getInt(TrcPixyCam2.PIXY2_HEADER_LENGTH));
+        assertEquals(1, receiver.getChecksumErrorCount());
+        assertEquals(4, receiver.getDroppedByteCount());
+    }
+}
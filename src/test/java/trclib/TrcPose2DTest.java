@@ -1,6 +1,7 @@
 package trclib;
 
 import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertSame;
 
 import org.junit.Before;
 import org.junit.Test;
@@ -45,4 +46,89 @@ public class TrcPose2DTest
         assertEquals(0, test.y, 0.1);
         assertEquals(0, test.angle, 0);
     }
-}
\ No newline at end of file
+
+    /**
+     * This method checks the pose against the expected values.
+     */
+    private static void assertPose(double x, double y, double angle, TrcPose2D pose)
+    {
+        assertEquals(x, pose.x, 1e-9);
+        assertEquals(y, pose.y, 1e-9);
+        assertEquals(angle, pose.angle, 1e-9);
+    }
+
+    @Test
+    public void testRelativeToInPlace()
+    {
+        TrcPose2D pose = new TrcPose2D(12.5, -3.0, 30.0);
+        TrcPose2D ref = new TrcPose2D(-4.0, 7.0, -90.0);
+        TrcPose2D result = new TrcPose2D();
+
+        // The offset (16.5, -10.0) rotated by -90 degrees is (-10.0, -16.5), the angle becomes 30 - (-90).
+        assertSame(result, pose.relativeTo(ref, true, result));
+        assertPose(-10.0, -16.5, 120.0, result);
+        // The result may be the pose itself.
+        assertSame(pose, pose.relativeTo(ref, true, pose));
+        assertPose(-10.0, -16.5, 120.0, pose);
+
+        // The offset (2.0, 0.0) rotated by 60 degrees is (1.0, sqrt(3)).
+        pose = new TrcPose2D(3.0, 0.0, 10.0);
+        pose.relativeTo(new TrcPose2D(1.0, 0.0, 60.0), true, result);
+        assertPose(1.0, Math.sqrt(3.0), -50.0, result);
+
+        // The result may also be the reference pose. The offset (3.0, 3.0) rotated by 180 degrees is (-3.0, -3.0)
+        // and the angle is left alone.
+        pose = new TrcPose2D(5.0, 4.0, 45.0);
+        ref = new TrcPose2D(2.0, 1.0, 180.0);
+        assertSame(ref, pose.relativeTo(ref, false, ref));
+        assertPose(-3.0, -3.0, 45.0, ref);
+    }
+
+    @Test
+    public void testTranslatePoseInPlace()
+    {
+        TrcPose2D pose = new TrcPose2D(1.0, 2.0, 90.0);
+        TrcPose2D result = new TrcPose2D();
+
+        // Facing 90 degrees, the x offset moves along -y and the y offset along +x.
+        assertSame(result, pose.translatePose(3.0, 4.0, result));
+        assertPose(5.0, -1.0, 90.0, result);
+        // The result may be the pose itself.
+        assertSame(pose, pose.translatePose(3.0, 4.0, pose));
+        assertPose(5.0, -1.0, 90.0, pose);
+
+        pose = new TrcPose2D(0.0, 0.0, 30.0);
+        pose.translatePose(2.0, 0.0, pose);
+        assertPose(Math.sqrt(3.0), -1.0, 30.0, pose);
+    }
+
+    @Test
+    public void testDistanceTo()
+    {
+        TrcPose2D pose = new TrcPose2D(1.0, 2.0, 45.0);
+
+        assertEquals(5.0, pose.distanceTo(new TrcPose2D(4.0, 6.0, -45.0)), 1e-9);
+        assertEquals(5.0, pose.distanceTo(-2.0, -2.0), 1e-9);
+    }
+
+    @Test
+    public void testScratchPool()
+    {
+        TrcPose2D.ScratchPool pool = TrcPose2D.getScratchPool();
+        int mark = pool.mark();
+        TrcPose2D[] poses = new TrcPose2D[20];
+
+        for (int i = 0; i < poses.length; i++)
+        {
+            poses[i] = pool.acquire();
+        }
+        pool.release(mark);
+        // The same poses are handed out again after release.
+        for (int i = 0; i < poses.length; i++)
+        {
+            assertSame(poses[i], pool.acquire());
+        }
+        pool.release(mark);
+        assertEquals(mark, pool.mark());
+    }
+}
@@ -0,0 +1,134 @@
+package trclib;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+import org.junit.Test;
+
+public class TrcPoseEstimatorTest
+{
+    private static final double DT = 0.02;
+
+    @Test
+    public void lateMeasurementReplayTest()
+    {
+        TrcPoseEstimator onTime = new TrcPoseEstimator("onTime");
+        TrcPoseEstimator late = new TrcPoseEstimator("late");
+        TrcPose2D observed = new TrcPose2D(1.5, 12.0, 2.0);
+
+        onTime.reset(0.0, new TrcPose2D());
+        late.reset(0.0, new TrcPose2D());
+        for (int i = 1; i <= 60; i++)
+        {
+            double timestamp = i*DT;
+
+            onTime.addOdometry(timestamp, 0.1, 0.5, 0.2);
+            late.addOdometry(timestamp, 0.1, 0.5, 0.2);
+            if (i == 30)
+            {
+                assertTrue(onTime.addVisionPose(timestamp + 0.001, observed, 0.5, 1.0));
+            }
+            else if (i == 40)
+            {
+                // The same image arrives 10 updates late.
+                assertTrue(late.addVisionPose(30*DT + 0.001, observed, 0.5, 1.0));
+            }
+        }
+
+        // Replaying the history puts the late estimator exactly where the on time one is.
+        TrcPose2D onTimePose = onTime.getPose();
+        TrcPose2D latePose = late.getPose();
+        assertEquals(onTimePose.x, latePose.x, 1e-9);
+        assertEquals(onTimePose.y, latePose.y, 1e-9);
+        assertEquals(onTimePose.angle, latePose.angle, 1e-9);
+        assertEquals(0, onTime.getReplayCount());
+        assertEquals(1, late.getReplayCount());
+
+        double[] onTimeCov = onTime.getCovariance(new double[9]);
+        double[] lateCov = late.getCovariance(new double[9]);
+        for (int i = 0; i < onTimeCov.length; i++)
+        {
+            assertEquals(onTimeCov[i], lateCov[i], 1e-9);
+        }
+    }
+
+    @Test
+    public void visionTargetFusionTest()
+    {
+        TrcPoseEstimator estimator = new TrcPoseEstimator("fusion");
+        double[][] targets = {{-20.0, 100.0}, {30.0, 120.0}};
+        double trueX = 0.0, trueY = 0.0, trueHeading = 0.0;
+        double odometryX = 0.0, odometryY = 0.0;
+
+        estimator.setOdometryNoise(0.2, 0.02);
+        estimator.reset(0.0, new TrcPose2D(), 1.0, 1.0);
+        for (int i = 1; i <= 250; i++)
+        {
+            double timestamp = i*DT;
+            double deltaHeading = 0.1;
+            double midHeading = Math.toRadians(trueHeading + deltaHeading/2.0);
+
+            trueX += 0.3*Math.sin(midHeading);
+            trueY += 0.3*Math.cos(midHeading);
+            trueHeading += deltaHeading;
+            // The wheels over-report the travel by 5%.
+            estimator.addOdometry(timestamp, 0.0, 0.315, deltaHeading);
+            odometryY += 0.315;
+
+            if (i % 5 == 0)
+            {
+                // The camera sees the target as it was 60 msec ago.
+                double imageTime = timestamp - 0.06 + 0.001;
+                double imageX = trueX - 0.9*Math.sin(Math.toRadians(trueHeading));
+                double imageY = trueY - 0.9*Math.cos(Math.toRadians(trueHeading));
+                double imageHeading = Math.toRadians(trueHeading - 0.3);
+                double[] target = targets[(i/5) % 2];
+                double dx = target[0] - imageX;
+                double dy = target[1] - imageY;
+
+                assertTrue(estimator.addVisionTarget(
+                    imageTime, target[0], target[1], Math.cos(imageHeading)*dx - Math.sin(imageHeading)*dy,
+                    Math.sin(imageHeading)*dx + Math.cos(imageHeading)*dy, 0.5));
+            }
+        }
+
+        TrcPose2D pose = estimator.getPose();
+        double odometryError = Math.abs(odometryY - trueY) + Math.abs(odometryX - trueX);
+        double fusedError = TrcUtil.magnitude(pose.x - trueX, pose.y - trueY);
+        assertTrue("odometry error " + odometryError, odometryError > 3.0);
+        assertTrue("fused error " + fusedError, fusedError < 0.5);
+        assertEquals(trueHeading, pose.angle, 0.5);
+    }
+
+    @Test
+    public void rejectionTest()
+    {
+        TrcPoseEstimator estimator = new TrcPoseEstimator("rejection", 10);
+
+        estimator.reset(0.0, new TrcPose2D());
+        for (int i = 1; i <= 20; i++)
+        {
+            estimator.addOdometry(i*DT, 0.0, 1.0, 0.0);
+        }
+
+        // Older than the 10 entries of history.
+        assertFalse(estimator.addVisionPose(5*DT, new TrcPose2D(0.0, 5.0, 0.0), 0.5, 1.0));
+        assertFalse(estimator.addHeading(5*DT, 0.0, 1.0));
+        assertEquals(2, estimator.getRejectedCount());
+
+        // An outlier far outside the uncertainty fails the gate and leaves the pose alone.
+        TrcPose2D before = estimator.getPose();
+        estimator.setVisionGate(9.0);
+        assertFalse(estimator.addVisionPose(15*DT, new TrcPose2D(40.0, 15.0, 0.0), 0.5, 1.0));
+        assertEquals(3, estimator.getRejectedCount());
+        TrcPose2D after = estimator.getPose();
+        assertEquals(before.x, after.x, 0.0);
+        assertEquals(before.y, after.y, 0.0);
+
+        // A heading reading wraps around instead of turning the robot a full circle.
+        assertTrue(estimator.addHeading(20*DT, 359.0, 0.01));
+        assertEquals(-1.0, estimator.getPose().angle, 0.01);
+        assertEquals(20*DT, estimator.getTimestamp(), 0.0);
+    }
+}
@@ -0,0 +1,114 @@
+package trclib;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+import java.util.ArrayList;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+
+import org.junit.Test;
+
+public class TrcRequestQueueTest
+{
+    private final ArrayList<String> processed = new ArrayList<>();
+    private final CountDownLatch gateReached = new CountDownLatch(1);
+    private final CountDownLatch gate = new CountDownLatch(1);
+
+    private void blockingHandler(Object context)
+    {
+        gateReached.countDown();
+        try
+        {
+            gate.await();
+        }
+        catch (InterruptedException e)
+        {
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    private void handler(Object context)
+    {
+        @SuppressWarnings("unchecked")
+        TrcRequestQueue<String>.RequestEntry entry = (TrcRequestQueue<String>.RequestEntry) context;
+
+        synchronized (processed)
+        {
+            processed.add(entry.isExpired()? entry.getRequest() + "!": entry.getRequest());
+            processed.notifyAll();
+        }
+    }
+
+    private void waitForProcessed(int count) throws InterruptedException
+    {
+        synchronized (processed)
+        {
+            long deadline = System.currentTimeMillis() + 1000;
+            while (processed.size() < count && System.currentTimeMillis() < deadline)
+            {
+                processed.wait(10);
+            }
+        }
+    }
+
+    @Test
+    public void priorityLaneTest() throws InterruptedException
+    {
+        TrcRequestQueue<String> queue = new TrcRequestQueue<>("test");
+
+        queue.setEnabled(true);
+        queue.add("gate", this::blockingHandler, false);
+        assertTrue(gateReached.await(1, TimeUnit.SECONDS));
+
+        queue.add("low1", this::handler, false, TrcRequestQueue.Priority.LOW, 0.0);
+        queue.add("normal1", this::handler, false);
+        TrcRequestQueue<String>.RequestEntry canceled = queue.add("normal2", this::handler, false);
+        queue.add("high1", this::handler, false, TrcRequestQueue.Priority.HIGH, 0.0);
+        queue.add("low2", this::handler, false, TrcRequestQueue.Priority.LOW, 0.0);
+        assertEquals(2, queue.getQueueDepth(TrcRequestQueue.Priority.NORMAL));
+        assertTrue(queue.cancelRequest(canceled));
+        assertFalse(queue.cancelRequest(canceled));
+        assertTrue(canceled.isCanceled());
+        assertEquals(1, queue.getQueueDepth(TrcRequestQueue.Priority.NORMAL));
+        assertEquals(2, queue.getMaxQueueDepth(TrcRequestQueue.Priority.LOW));
+
+        gate.countDown();
+        waitForProcessed(4);
+        queue.setEnabled(false);
+
+        assertEquals("[high1, normal1, low1, low2]", processed.toString());
+        assertEquals(0, queue.getQueueDepth(TrcRequestQueue.Priority.LOW));
+        assertTrue(queue.getMaxWaitTime() > 0.0);
+    }
+
+    @Test
+    public void expiryTest() throws InterruptedException
+    {
+        TrcRequestQueue<String> queue = new TrcRequestQueue<>("test");
+
+        queue.setEnabled(true);
+        queue.add("gate", this::blockingHandler, false);
+        assertTrue(gateReached.await(1, TimeUnit.SECONDS));
+
+        TrcRequestQueue<String>.RequestEntry stale =
+            queue.add("stale", this::handler, false, TrcRequestQueue.Priority.NORMAL, 0.01);
+        queue.add("fresh", this::handler, false, TrcRequestQueue.Priority.NORMAL, 10.0);
+        queue.add("poll", this::handler, true, TrcRequestQueue.Priority.LOW, 0.01);
+        TrcUtil.sleep(50);
+
+        gate.countDown();
+        // The stale round of the repeat request is skipped, the next round is processed.
+        waitForProcessed(3);
+        queue.setEnabled(false);
+
+        synchronized (processed)
+        {
+            assertEquals("[stale!, fresh, poll]", processed.subList(0, 3).toString());
+        }
+        assertTrue(stale.isCanceled());
+        assertTrue(stale.isExpired());
+        assertTrue(queue.getExpiredCount() >= 2);
+    }
+}
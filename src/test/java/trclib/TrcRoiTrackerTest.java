@@ -0,0 +1,142 @@
+package trclib;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+import org.junit.Test;
+
+public class TrcRoiTrackerTest
+{
+    private static final int WIDTH = 320;
+    private static final int HEIGHT = 240;
+
+    private static boolean contains(TrcRoiTracker tracker, int x, int y, int width, int height)
+    {
+        return x >= tracker.getWindowX() && y >= tracker.getWindowY() &&
+               x + width <= tracker.getWindowX() + tracker.getWindowWidth() &&
+               y + height <= tracker.getWindowY() + tracker.getWindowHeight();
+    }
+
+    @Test
+    public void trackingTest()
+    {
+        TrcRoiTracker tracker = new TrcRoiTracker("tracking");
+
+        tracker.setReacquireInterval(0);
+        // Nothing is tracked yet, the full frame is searched.
+        assertFalse(tracker.nextWindow(WIDTH, HEIGHT));
+        assertEquals(WIDTH, tracker.getWindowWidth());
+        tracker.addDetection(40, 100, 20, 20);
+        tracker.endFrame();
+        assertTrue(tracker.isTracking());
+
+        // The object moves 12 pixels right per frame and always stays within the predicted window.
+        for (int i = 1; i <= 15; i++)
+        {
+            int x = 40 + 12*i;
+
+            assertTrue(tracker.nextWindow(WIDTH, HEIGHT));
+            assertTrue("frame " + i, contains(tracker, x, 100, 20, 20));
+            tracker.addDetection(x, 100, 20, 20);
+            tracker.endFrame();
+        }
+
+        // The window follows the prediction, a 20 pixel object with margins is far smaller than the frame.
+        assertTrue(tracker.getWindowWidth() < WIDTH/3);
+        assertEquals(1, tracker.getFullFrameCount());
+        assertEquals(15, tracker.getWindowFrameCount());
+        assertTrue(tracker.getSearchedPixelFraction() < 0.2);
+    }
+
+    @Test
+    public void missAndReacquireTest()
+    {
+        TrcRoiTracker tracker = new TrcRoiTracker("miss");
+
+        tracker.setMissPolicy(2.0, 2);
+        tracker.setReacquireInterval(5);
+        tracker.nextWindow(WIDTH, HEIGHT);
+        tracker.addDetection(150, 110, 20, 20);
+        tracker.endFrame();
+
+        // Every miss grows the window until the tracker falls back to the full frame.
+        assertTrue(tracker.nextWindow(WIDTH, HEIGHT));
+        int firstWidth = tracker.getWindowWidth();
+        tracker.endFrame();
+        assertTrue(tracker.nextWindow(WIDTH, HEIGHT));
+        int secondWidth = tracker.getWindowWidth();
+        tracker.endFrame();
+        assertTrue(secondWidth > firstWidth);
+        assertTrue(tracker.nextWindow(WIDTH, HEIGHT));
+        tracker.endFrame();
+        assertFalse(tracker.nextWindow(WIDTH, HEIGHT));
+        // A miss on the full frame drops the track.
+        tracker.endFrame();
+        assertFalse(tracker.isTracking());
+
+        // While tracking, every fifth frame searches the full frame for new objects.
+        tracker.nextWindow(WIDTH, HEIGHT);
+        tracker.addDetection(150, 110, 20, 20);
+        tracker.endFrame();
+        int fullFrames = 0;
+        for (int i = 0; i < 10; i++)
+        {
+            if (!tracker.nextWindow(WIDTH, HEIGHT))
+            {
+                fullFrames++;
+            }
+            tracker.addDetection(150, 110, 20, 20);
+            tracker.endFrame();
+        }
+        assertEquals(2, fullFrames);
+    }
+
+    @Test
+    public void skipFrameTest()
+    {
+        TrcRoiTracker tracker = new TrcRoiTracker("skip");
+
+        tracker.setReacquireInterval(0);
+        tracker.nextWindow(WIDTH, HEIGHT);
+        tracker.addDetection(40, 100, 20, 20);
+        tracker.endFrame();
+        assertTrue(tracker.nextWindow(WIDTH, HEIGHT));
+        tracker.addDetection(52, 100, 20, 20);
+        tracker.endFrame();
+
+        // The object keeps moving 12 pixels per frame while a frame is dropped.
+        assertTrue(tracker.nextWindow(WIDTH, HEIGHT));
+        int windowWidth = tracker.getWindowWidth();
+        tracker.skipFrame();
+        assertTrue(tracker.isTracking());
+        assertTrue(tracker.nextWindow(WIDTH, HEIGHT));
+        // The window moved with the object but did not grow like after a miss.
+        assertEquals(windowWidth, tracker.getWindowWidth());
+        assertTrue(contains(tracker, 76, 100, 20, 20));
+        tracker.addDetection(76, 100, 20, 20);
+        tracker.endFrame();
+        // The motion over the two frames is still 12 pixels per frame.
+        assertTrue(tracker.nextWindow(WIDTH, HEIGHT));
+        assertEquals(windowWidth, tracker.getWindowWidth());
+        assertTrue(contains(tracker, 88, 100, 20, 20));
+        tracker.addDetection(88, 100, 20, 20);
+        tracker.endFrame();
+
+        // A dropped full frame is searched on the next frame instead.
+        tracker.setReacquireInterval(3);
+        for (int i = 0; i < 3; i++)
+        {
+            // Full frame first since the last full frame is long ago, then two windows.
+            assertEquals(i > 0, tracker.nextWindow(WIDTH, HEIGHT));
+            tracker.addDetection(100 + 12*i, 100, 20, 20);
+            tracker.endFrame();
+        }
+        assertFalse(tracker.nextWindow(WIDTH, HEIGHT));
+        tracker.skipFrame();
+        assertFalse(tracker.nextWindow(WIDTH, HEIGHT));
+        tracker.addDetection(148, 100, 20, 20);
+        tracker.endFrame();
+        assertTrue(tracker.isTracking());
+    }
+}
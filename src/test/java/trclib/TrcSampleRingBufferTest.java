@@ -0,0 +1,66 @@
+package trclib;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import org.junit.Test;
+
+import java.util.Random;
+
+public class TrcSampleRingBufferTest
+{
+    @Test
+    public void slidingWindowTest()
+    {
+        final int capacity = 7;
+        TrcSampleRingBuffer buffer = new TrcSampleRingBuffer(capacity, 2);
+        double[] history = new double[100];
+        double[] sample = new double[2];
+        Random random = new Random(492);
+
+        for (int n = 0; n < history.length; n++)
+        {
+            history[n] = Math.floor(random.nextDouble()*100.0);
+            sample[0] = history[n];
+            sample[1] = -history[n];
+            buffer.add(n, sample);
+
+            int size = Math.min(n + 1, capacity);
+            assertEquals(size, buffer.size());
+            assertEquals(history[n], buffer.get(0, 0), 0.0);
+            // Check every window against a brute force computation.
+            for (int windowSize = 1; windowSize <= size; windowSize++)
+            {
+                double[] window = new double[windowSize];
+                System.arraycopy(history, n + 1 - windowSize, window, 0, windowSize);
+                assertEquals(TrcUtil.average(window), buffer.getMean(0, windowSize), 1e-9);
+                assertEquals(TrcUtil.median(window), buffer.getMedian(0, windowSize), 1e-9);
+                assertEquals(-TrcUtil.median(window), buffer.getMedian(1, windowSize), 1e-9);
+            }
+        }
+    }
+
+    @Test
+    public void freshnessTest()
+    {
+        TrcSampleRingBuffer buffer = new TrcSampleRingBuffer(10, 1);
+
+        assertEquals(0, buffer.getWindowSize(10, Double.NaN));
+        assertTrue(Double.isNaN(buffer.getMedian(0, 0)));
+        for (int i = 0; i < 5; i++)
+        {
+            buffer.add(i*0.1, new double[] {i});
+        }
+
+        assertEquals(5, buffer.getWindowSize(10, Double.NaN));
+        assertEquals(3, buffer.getWindowSize(3, Double.NaN));
+        assertEquals(2, buffer.getWindowSize(10, 0.25));
+        assertEquals(0, buffer.getWindowSize(10, 1.0));
+        assertEquals(3.5, buffer.getMean(0, buffer.getWindowSize(10, 0.25)), 1e-9);
+
+        buffer.clear();
+        assertTrue(buffer.isEmpty());
+        buffer.add(2.0, new double[] {42.0});
+        assertEquals(42.0, buffer.getMean(0, 10), 1e-9);
+    }
+}
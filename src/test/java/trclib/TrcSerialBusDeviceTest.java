@@ -0,0 +1,271 @@
+package trclib;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+import java.util.ArrayList;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+
+import org.junit.Test;
+
+public class TrcSerialBusDeviceTest
+{
+    /**
+     * A device whose registers contain their own address. Bus transactions are recorded and a write without an
+     * address blocks until the gate is opened so that requests can be staged behind it.
+     */
+    private static class FakeDevice extends TrcSerialBusDevice
+    {
+        final ArrayList<String> transactions = new ArrayList<>();
+        final CountDownLatch gateReached = new CountDownLatch(1);
+        final CountDownLatch gate = new CountDownLatch(1);
+
+        FakeDevice()
+        {
+            super("fake", true);
+        }
+
+        @Override
+        public byte[] readData(int address, int length)
+        {
+            byte[] data = new byte[length];
+
+            synchronized (transactions)
+            {
+                transactions.add("R" + address + ":" + length);
+            }
+            for (int i = 0; i < length; i++)
+            {
+                data[i] = (byte) (address + i);
+            }
+            return data;
+        }
+
+        @Override
+        public int writeData(int address, byte[] buffer, int length)
+        {
+            if (address == -1)
+            {
+                gateReached.countDown();
+                try
+                {
+                    gate.await();
+                }
+                catch (InterruptedException e)
+                {
+                    Thread.currentThread().interrupt();
+                }
+            }
+
+            synchronized (transactions)
+            {
+                transactions.add("W" + address + ":" + buffer[0]);
+            }
+            return length;
+        }
+    }
+
+    @Test
+    public void batchingTest() throws InterruptedException
+    {
+        FakeDevice device = new FakeDevice();
+        byte[][] results = new byte[4][];
+        CountDownLatch done = new CountDownLatch(7);
+
+        device.setEnabled(true);
+        device.setBatchingEnabled(true);
+        device.asyncWrite(null, -1, new byte[] {0}, 1, null, null);
+        assertTrue(device.gateReached.await(1, TimeUnit.SECONDS));
+
+        // Staged behind the blocked write so they are processed in one batch.
+        int[][] reads = {{0x12, 2}, {0x10, 2}, {0x14, 1}, {0x30, 1}};
+        for (int i = 0; i < reads.length; i++)
+        {
+            final int index = i;
+            device.asyncRead(null, reads[i][0], reads[i][1], null,
+                context ->
+                {
+                    results[index] = ((TrcSerialBusDevice.Request) context).buffer;
+                    done.countDown();
+                });
+        }
+        for (int i = 1; i <= 3; i++)
+        {
+            device.asyncWrite(null, 0x40, new byte[] {(byte) i}, 1, null, context -> done.countDown());
+        }
+        device.gate.countDown();
+        assertTrue(done.await(1, TimeUnit.SECONDS));
+        device.setEnabled(false);
+
+        synchronized (device.transactions)
+        {
+            assertEquals("[W-1:0, R16:5, R48:1, W64:3]", device.transactions.toString());
+        }
+        assertArrayEquals(new byte[] {0x12, 0x13}, results[0]);
+        assertArrayEquals(new byte[] {0x10, 0x11}, results[1]);
+        assertArrayEquals(new byte[] {0x14}, results[2]);
+        assertArrayEquals(new byte[] {0x30}, results[3]);
+        assertEquals(2, device.getMergedReadCount());
+        assertEquals(2, device.getCoalescedWriteCount());
+        assertEquals(4, device.getTransactionCount());
+    }
+
+    @Test
+    public void priorityTest() throws InterruptedException
+    {
+        FakeDevice device = new FakeDevice();
+        ArrayList<String> completions = new ArrayList<>();
+        CountDownLatch done = new CountDownLatch(3);
+        TrcNotifier.Receiver handler =
+            context ->
+            {
+                TrcSerialBusDevice.Request request = (TrcSerialBusDevice.Request) context;
+                synchronized (completions)
+                {
+                    completions.add(request.address + (request.canceled? "x": ""));
+                }
+                done.countDown();
+            };
+
+        device.setEnabled(true);
+        device.asyncWrite(null, -1, new byte[] {0}, 1, null, null);
+        assertTrue(device.gateReached.await(1, TimeUnit.SECONDS));
+
+        // Queued behind the blocked write: the high priority read jumps ahead and the stale read expires.
+        device.asyncRead(null, 0x10, 1, false, TrcRequestQueue.Priority.LOW, 0.0, null, handler);
+        device.asyncRead(null, 0x20, 1, false, TrcRequestQueue.Priority.NORMAL, 0.01, null, handler);
+        device.asyncRead(null, 0x30, 1, false, TrcRequestQueue.Priority.HIGH, 0.0, null, handler);
+        TrcUtil.sleep(50);
+        device.gate.countDown();
+        assertTrue(done.await(1, TimeUnit.SECONDS));
+        device.setEnabled(false);
+
+        synchronized (completions)
+        {
+            assertEquals("[48, 32x, 16]", completions.toString());
+        }
+        synchronized (device.transactions)
+        {
+            assertEquals("[W-1:0, R48:1, R16:1]", device.transactions.toString());
+        }
+    }
+
+    @Test
+    public void batchPriorityTest() throws InterruptedException
+    {
+        FakeDevice device = new FakeDevice();
+        ArrayList<String> completions = new ArrayList<>();
+        CountDownLatch done = new CountDownLatch(3);
+        TrcNotifier.Receiver handler =
+            context ->
+            {
+                TrcSerialBusDevice.Request request = (TrcSerialBusDevice.Request) context;
+                synchronized (completions)
+                {
+                    completions.add(request.address + (request.canceled? "x": ""));
+                }
+                done.countDown();
+            };
+
+        device.setEnabled(true);
+        device.setBatchingEnabled(true);
+        device.asyncWrite(null, -1, new byte[] {0}, 1, null, null);
+        assertTrue(device.gateReached.await(1, TimeUnit.SECONDS));
+
+        // Staged behind the blocked write: the stale read expires, the canceled read is dropped and the high priority
+        // read is processed first.
+        device.asyncRead(null, 0x10, 1, false, TrcRequestQueue.Priority.LOW, 0.0, null, handler);
+        device.asyncRead(null, 0x20, 1, false, TrcRequestQueue.Priority.NORMAL, 0.01, null, handler);
+        TrcSerialBusDevice.Request canceled =
+            device.asyncRead(null, 0x28, 1, false, TrcRequestQueue.Priority.NORMAL, 0.0, null, handler);
+        device.asyncRead(null, 0x30, 1, false, TrcRequestQueue.Priority.HIGH, 0.0, null, handler);
+        assertTrue(device.cancelRequest(canceled));
+        TrcUtil.sleep(50);
+        device.gate.countDown();
+        assertTrue(done.await(1, TimeUnit.SECONDS));
+        assertFalse(device.cancelRequest(canceled));
+        device.setEnabled(false);
+
+        synchronized (completions)
+        {
+            assertEquals("[32x, 48, 16]", completions.toString());
+        }
+        synchronized (device.transactions)
+        {
+            assertEquals("[W-1:0, R48:1, R16:1]", device.transactions.toString());
+        }
+    }
+
+    @Test
+    public void disableTest() throws InterruptedException
+    {
+        FakeDevice device = new FakeDevice();
+        boolean[] unblocked = new boolean[1];
+
+        device.setEnabled(true);
+        device.setBatchingEnabled(true);
+        device.asyncWrite(null, -1, new byte[] {0}, 1, null, null);
+        assertTrue(device.gateReached.await(1, TimeUnit.SECONDS));
+
+        // The staged request is completed as canceled by setEnabled, its handler must be able to wait for another
+        // thread that uses the device.
+        device.asyncRead(null, 0x10, 1, null,
+            context ->
+            {
+                Thread thread = new Thread(device::isEnabled);
+                thread.start();
+                try
+                {
+                    thread.join(1000);
+                }
+                catch (InterruptedException e)
+                {
+                    Thread.currentThread().interrupt();
+                }
+                unblocked[0] = ((TrcSerialBusDevice.Request) context).canceled && !thread.isAlive();
+            });
+        device.setEnabled(false);
+        device.gate.countDown();
+
+        assertTrue(unblocked[0]);
+    }
+
+    @Test
+    public void bufferPoolTest() throws InterruptedException
+    {
+        FakeDevice device = new FakeDevice();
+        byte[][] buffers = new byte[2][];
+        CountDownLatch done = new CountDownLatch(2);
+
+        device.setEnabled(true);
+        device.setBufferPoolEnabled(true);
+        for (int i = 0; i < buffers.length; i++)
+        {
+            final int index = i;
+            device.asyncRead(null, 0x20, 2, null,
+                context ->
+                {
+                    buffers[index] = ((TrcSerialBusDevice.Request) context).buffer;
+                    assertEquals(0x21, buffers[index][1]);
+                    done.countDown();
+                });
+            // Wait for each read and for its buffer to be recycled so the second one can reuse it.
+            while (done.getCount() > buffers.length - 1 - i)
+            {
+                Thread.yield();
+            }
+            TrcUtil.sleep(20);
+        }
+        assertTrue(done.await(1, TimeUnit.SECONDS));
+
+        assertTrue(buffers[0] == buffers[1]);
+        assertEquals(1, device.getReusedBufferCount());
+        // A synchronous read gets a buffer of its own.
+        byte[] data = device.syncRead(0x20, 2);
+        assertTrue(data != buffers[0]);
+        device.setEnabled(false);
+    }
+}
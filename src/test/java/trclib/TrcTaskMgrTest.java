@@ -0,0 +1,95 @@
+package trclib;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import org.junit.Test;
+
+public class TrcTaskMgrTest
+{
+    // The task manager is a singleton, so each test uses its own task type and checks counts relative to the start.
+
+    @Test
+    public void taskTypeDeadlineTest()
+    {
+        TrcTaskMgr taskMgr = TrcTaskMgr.getInstance();
+
+        // The input and output threads must keep up with their intervals, other task types have no deadline.
+        assertTrue(taskMgr.getTaskTypeDeadline(TrcTaskMgr.TaskType.INPUT_TASK) > 0);
+        assertTrue(taskMgr.getTaskTypeDeadline(TrcTaskMgr.TaskType.OUTPUT_TASK) > 0);
+        assertEquals(0, taskMgr.getTaskTypeDeadline(TrcTaskMgr.TaskType.STOP_TASK));
+        assertEquals(0.0, taskMgr.getTaskTypeUtilization(TrcTaskMgr.TaskType.STOP_TASK), 0.0);
+
+        taskMgr.setTaskTypeDeadline(TrcTaskMgr.TaskType.STOP_TASK, 25);
+        assertEquals(25, taskMgr.getTaskTypeDeadline(TrcTaskMgr.TaskType.STOP_TASK));
+        taskMgr.setTaskTypeDeadline(TrcTaskMgr.TaskType.STOP_TASK, 0);
+        assertEquals(0, taskMgr.getTaskTypeDeadline(TrcTaskMgr.TaskType.STOP_TASK));
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void negativeDeadlineTest()
+    {
+        TrcTaskMgr.getInstance().setTaskTypeDeadline(TrcTaskMgr.TaskType.STOP_TASK, -1);
+    }
+
+    @Test
+    public void deadlineOverrunTest()
+    {
+        final TrcTaskMgr.TaskType type = TrcTaskMgr.TaskType.POSTCONTINUOUS_TASK;
+        TrcTaskMgr taskMgr = TrcTaskMgr.getInstance();
+        long[] sleepTimes = {2, 2};
+        TrcTaskMgr.TaskObject[] taskObjs = new TrcTaskMgr.TaskObject[sleepTimes.length];
+
+        for (int i = 0; i < taskObjs.length; i++)
+        {
+            final int index = i;
+            taskObjs[i] = taskMgr.createTask("overrun" + i, (taskType, runMode) -> TrcUtil.sleep(sleepTimes[index]));
+            taskObjs[i].registerTask(type);
+        }
+        int baseOverruns = taskMgr.getDeadlineOverrunCount(type);
+
+        try
+        {
+            // Without a deadline nothing is an overrun.
+            taskMgr.executeTaskType(type, TrcRobot.RunMode.TELEOP_MODE);
+            assertEquals(baseOverruns, taskMgr.getDeadlineOverrunCount(type));
+
+            // Passes of about 4 msec are within a 20 msec deadline.
+            taskMgr.setTaskTypeDeadline(type, 20);
+            for (int i = 0; i < 3; i++)
+            {
+                taskMgr.executeTaskType(type, TrcRobot.RunMode.TELEOP_MODE);
+            }
+            assertEquals(baseOverruns, taskMgr.getDeadlineOverrunCount(type));
+            double utilization = taskMgr.getTaskTypeUtilization(type);
+            assertTrue("utilization " + utilization, utilization > 0.1 && utilization < 1.0);
+
+            // Every pass that takes longer than the deadline is counted once, no matter by how much.
+            sleepTimes[1] = 30;
+            taskMgr.executeTaskType(type, TrcRobot.RunMode.TELEOP_MODE);
+            taskMgr.executeTaskType(type, TrcRobot.RunMode.TELEOP_MODE);
+            assertEquals(baseOverruns + 2, taskMgr.getDeadlineOverrunCount(type));
+
+            // Each overrun is blamed on the slowest task of its pass, even if it is not the last one to run.
+            assertEquals(0, taskObjs[0].getDeadlineOverrunCount(type));
+            assertEquals(2, taskObjs[1].getDeadlineOverrunCount(type));
+
+            sleepTimes[0] = 30;
+            sleepTimes[1] = 2;
+            taskMgr.executeTaskType(type, TrcRobot.RunMode.TELEOP_MODE);
+            assertEquals(baseOverruns + 3, taskMgr.getDeadlineOverrunCount(type));
+            assertEquals(1, taskObjs[0].getDeadlineOverrunCount(type));
+            assertEquals(2, taskObjs[1].getDeadlineOverrunCount(type));
+            // The overruns are only counted against the task type that overran.
+            assertEquals(0, taskObjs[0].getDeadlineOverrunCount(TrcTaskMgr.TaskType.STOP_TASK));
+        }
+        finally
+        {
+            taskMgr.setTaskTypeDeadline(type, 0);
+            for (TrcTaskMgr.TaskObject taskObj: taskObjs)
+            {
+                taskObj.unregisterTask(type);
+            }
+        }
+    }
+}
@@ -0,0 +1,156 @@
+package trclib;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.junit.AfterClass;
+import org.junit.BeforeClass;
+import org.junit.Test;
+
+public class TrcTimerMgrTest
+{
+    // With a 2 msec tick, one revolution of the 256 slot wheel is 512 msec.
+    private static final long TICK_INTERVAL = 2;
+    private static final double REVOLUTION = 0.512;
+
+    @BeforeClass
+    public static void selectTimingWheel() throws InterruptedException
+    {
+        TrcTimerMgr.setTimingWheelEnabled(true, TICK_INTERVAL);
+        // Start the timer thread and warm it up so the first timer of a test is not delayed by class loading.
+        CountDownLatch warmedUp = new CountDownLatch(1);
+        new TrcTimer("warmUp").set(0.01, context -> warmedUp.countDown());
+        assertTrue(warmedUp.await(1, TimeUnit.SECONDS));
+    }
+
+    @AfterClass
+    public static void shutdownTimerMgr()
+    {
+        TrcTimerMgr.shutdown();
+    }
+
+    /**
+     * This method arms a timer and records the time it expired at, in seconds since it was armed. The receiver is
+     * created before taking the arming time so that the time does not include creating the lambda.
+     */
+    private static void armTimer(TrcTimer timer, double time, double[] expiredTimes, int index, CountDownLatch done)
+    {
+        long[] armNanoTime = new long[1];
+        TrcNotifier.Receiver receiver = context ->
+        {
+            if (!((TrcTimer) context).isCanceled())
+            {
+                expiredTimes[index] = (System.nanoTime() - armNanoTime[0])/1e9;
+            }
+            done.countDown();
+        };
+
+        armNanoTime[0] = System.nanoTime();
+        timer.set(time, receiver);
+    }
+
+    @Test
+    public void multiRevolutionTest() throws InterruptedException
+    {
+        // The second timer hashes into the slot of the first one but expires a revolution later, the third one
+        // wraps around the wheel twice.
+        double[] times = {0.02, 0.02 + REVOLUTION, 0.05 + 2*REVOLUTION};
+        double[] expiredTimes = new double[times.length];
+        CountDownLatch done = new CountDownLatch(times.length);
+
+        for (int i = 0; i < times.length; i++)
+        {
+            armTimer(new TrcTimer("revolution" + i), times[i], expiredTimes, i, done);
+        }
+
+        TrcUtil.sleep(100);
+        assertEquals(2, done.getCount());
+        assertTrue(done.await(2, TimeUnit.SECONDS));
+
+        for (int i = 0; i < times.length; i++)
+        {
+            // Never early beyond the msec truncation of the expiration time, and late by no more than a few ticks plus
+            // scheduling delays.
+            assertTrue("timer " + i + " expired at " + expiredTimes[i],
+                expiredTimes[i] >= times[i] - 0.001 && expiredTimes[i] < times[i] + 0.05);
+        }
+    }
+
+    @Test
+    public void cancelTest() throws InterruptedException
+    {
+        TrcTimer[] timers = new TrcTimer[3];
+        double[] expiredTimes = new double[timers.length];
+        CountDownLatch done = new CountDownLatch(timers.length);
+        TrcEvent event = new TrcEvent("canceledEvent");
+
+        // All three timers share a slot, canceling the middle one must not unlink its neighbors.
+        for (int i = 0; i < timers.length; i++)
+        {
+            timers[i] = new TrcTimer("cancel" + i);
+            armTimer(timers[i], 0.05, expiredTimes, i, done);
+        }
+        TrcTimer eventTimer = new TrcTimer("cancelEvent");
+        eventTimer.set(0.05, event);
+
+        TrcUtil.sleep(10);
+        timers[1].cancel();
+        eventTimer.cancel();
+        assertTrue(timers[1].isCanceled());
+        assertFalse(timers[1].isActive());
+        assertTrue(event.isCanceled());
+
+        assertTrue(done.await(1, TimeUnit.SECONDS));
+        TrcUtil.sleep(20);
+        assertTrue(timers[0].isExpired());
+        assertFalse(timers[1].isExpired());
+        assertTrue(timers[2].isExpired());
+        assertEquals(0.0, expiredTimes[1], 0.0);
+        assertTrue(expiredTimes[0] >= 0.049 && expiredTimes[2] >= 0.049);
+        assertFalse(eventTimer.isExpired());
+        assertFalse(event.isSignaled());
+
+        // Canceling an expired timer does nothing.
+        timers[0].cancel();
+        assertFalse(timers[0].isCanceled());
+    }
+
+    @Test
+    public void rearmFromCallbackTest() throws InterruptedException
+    {
+        final int numRuns = 5;
+        TrcTimer timer = new TrcTimer("rearm");
+        AtomicInteger expiredCount = new AtomicInteger();
+        CountDownLatch done = new CountDownLatch(1);
+        long startNanoTime = System.nanoTime();
+
+        timer.set(0.01, new TrcNotifier.Receiver()
+        {
+            @Override
+            public void notify(Object context)
+            {
+                // Each expiration arms the timer again from the timer thread, with this same receiver.
+                if (expiredCount.incrementAndGet() < numRuns)
+                {
+                    timer.set(0.01, this);
+                }
+                else
+                {
+                    done.countDown();
+                }
+            }
+        });
+
+        assertTrue(done.await(1, TimeUnit.SECONDS));
+        double elapsedTime = (System.nanoTime() - startNanoTime)/1e9;
+        assertEquals(numRuns, expiredCount.get());
+        assertTrue("elapsed " + elapsedTime, elapsedTime >= numRuns*0.01 - 0.001);
+        assertTrue(timer.isExpired());
+        assertFalse(timer.isActive());
+    }
+}
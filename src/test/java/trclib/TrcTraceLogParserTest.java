@@ -0,0 +1,69 @@
+package trclib;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import org.junit.Test;
+
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.List;
+
+public class TrcTraceLogParserTest
+{
+    private static final String LOG =
+        "GlobalTracer.TrcHolonomicPurePursuitDrive.driveTask_Info: [0.040] Robot: (-315.48,224.95), " +
+        "RobotVel: 11.31, RobotHeading: 4.32, Target: (-48.00,145.39), pathIndex=3, r,theta=(0.80,106.6)\r\n" +
+        "GlobalTracer.Conveyor.shootTriggerEvent_Info: Triggered! value=true\r\n" +
+        "\r\n" +
+        "\tat trclib.TrcTaskMgr.executeTaskType(TrcTaskMgr.java:42): oops\n" +
+        "GlobalTracer.printPidInfo_Info: [1.500] TurnPid: Target=  90.0, Input=  89.5, Error=  -0.5, Output= 0.1";
+
+    @Test
+    public void parseTest()
+    {
+        List<String> keys = new ArrayList<>();
+        List<Double> values = new ArrayList<>();
+        byte[] driveKey = TrcTraceLogParser.pattern("TrcHolonomicPurePursuitDrive.driveTask_Info");
+
+        long lineCount = TrcTraceLogParser.parse(ByteBuffer.wrap(LOG.getBytes(StandardCharsets.US_ASCII)), line ->
+        {
+            keys.add(line.getKey());
+            values.add(line.getTimestamp());
+            if (line.keyEndsWith(driveKey))
+            {
+                assertEquals(224.95, line.getNumber(TrcTraceLogParser.pattern("Robot: "), 1), 1e-9);
+                assertEquals(11.31, line.getNumber(TrcTraceLogParser.pattern("RobotVel: ")), 1e-9);
+                assertEquals(-48.0, line.getNumber(TrcTraceLogParser.pattern("Target: ")), 1e-9);
+                assertEquals(106.6, line.getNumber(TrcTraceLogParser.pattern("r,theta="), 1), 1e-9);
+                assertTrue(Double.isNaN(line.getNumber(TrcTraceLogParser.pattern("Missing: "))));
+                assertTrue(line.getMessage().startsWith("Robot: "));
+            }
+        });
+
+        assertEquals(4, lineCount);
+        assertEquals("GlobalTracer.TrcHolonomicPurePursuitDrive.driveTask_Info", keys.get(0));
+        assertEquals("GlobalTracer.Conveyor.shootTriggerEvent_Info", keys.get(1));
+        assertEquals("", keys.get(2));
+        assertEquals(0.04, values.get(0), 1e-9);
+        assertTrue(Double.isNaN(values.get(1)));
+        assertEquals(1.5, values.get(3), 1e-9);
+    }
+
+    @Test
+    public void pidOnTargetTest()
+    {
+        TrcTraceLogAnalyzer.Metric metric = new TrcTraceLogAnalyzer.PidOnTargetMetric(1.0);
+        String log =
+            "T.printPidInfo_Info: [1.000] TurnPid: Target=  90.0, Input=   0.0, Error=  90.0, Output= 1.0\n" +
+            "T.printPidInfo_Info: [1.250] TurnPid: Target=  90.0, Input=  89.5, Error=   0.5, Output= 0.1\n" +
+            "T.printPidInfo_Info: [1.500] TurnPid: Target=  90.0, Input=  90.0, Error=   0.0, Output= 0.0\n";
+
+        TrcTraceLogParser.parse(
+            ByteBuffer.wrap(log.getBytes(StandardCharsets.US_ASCII)),
+            line -> metric.processLine(line, line.getTimestamp()));
+        assertTrue(metric.getSummary(), metric.getSummary().startsWith("PidOnTarget: TurnPid(targets=1, onTarget=1, "));
+        assertTrue(metric.getSummary(), metric.getSummary().contains("max=0.250"));
+    }
+}
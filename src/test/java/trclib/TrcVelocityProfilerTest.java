@@ -0,0 +1,110 @@
+package trclib;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import org.junit.Test;
+
+public class TrcVelocityProfilerTest
+{
+    private static TrcPathData createPath(double... xy)
+    {
+        TrcWaypoint[] waypoints = new TrcWaypoint[xy.length / 2];
+        for (int i = 0; i < waypoints.length; i++)
+        {
+            waypoints[i] = new TrcWaypoint(0, xy[2 * i], xy[2 * i + 1], 0, 0, 0, 0, 0);
+        }
+        return new TrcPathData(true, waypoints);
+    }
+
+    private static void assertLimits(TrcPathData pathData, double maxVel, double maxAccel)
+    {
+        for (int i = 0; i < pathData.getSize() - 1; i++)
+        {
+            assertTrue(pathData.getVelocity(i) <= maxVel + 1e-9);
+            assertTrue(Math.abs(pathData.getAcceleration(i)) <= maxAccel + 1e-9);
+        }
+    }
+
+    @Test
+    public void straightLineTest()
+    {
+        TrcVelocityProfiler profiler = new TrcVelocityProfiler("profiler", 100.0, 200.0);
+        TrcPathData pathData = profiler.profile(createPath(0, 0, 0, 100).resample(1.0));
+
+        assertEquals(101, pathData.getSize());
+        assertEquals(0.0, pathData.getVelocity(0), 0.0);
+        assertEquals(0.0, pathData.getVelocity(100), 0.0);
+        // Accelerating to 100 at 200 takes 25 units, so the middle is at full speed.
+        assertEquals(100.0, pathData.getVelocity(50), 1e-9);
+        assertEquals(Math.sqrt(2.0*200.0*10.0), pathData.getVelocity(10), 1e-9);
+        assertLimits(pathData, 100.0, 200.0);
+        // 0.5 sec ramping up, 0.5 sec at full speed and 0.5 sec ramping down.
+        assertEquals(1.5, pathData.getDuration(), 1e-9);
+        assertEquals(pathData.getDuration(), pathData.toPath().getPathDuration() - pathData.getTimeStep(100), 1e-9);
+    }
+
+    @Test
+    public void shortPathTest()
+    {
+        TrcVelocityProfiler profiler = new TrcVelocityProfiler("profiler", 100.0, 200.0);
+        profiler.setMaxDeceleration(100.0);
+        TrcPathData pathData = profiler.profile(createPath(0, 0, 0, 30).resample(1.0));
+
+        // Too short to reach full speed, the peak is where acceleration and deceleration meet.
+        double peak = Math.sqrt(2.0*200.0*10.0);
+        assertEquals(peak, pathData.getVelocity(10), 1e-9);
+        assertEquals(Math.sqrt(2.0*100.0*20.0), pathData.getVelocity(10), 1e-9);
+        assertEquals(-100.0, pathData.getAcceleration(20), 1e-9);
+        assertLimits(pathData, peak, 200.0);
+    }
+
+    @Test
+    public void curvatureTest()
+    {
+        TrcVelocityProfiler profiler = new TrcVelocityProfiler("profiler", 100.0, 200.0);
+        profiler.setMaxCentripetalAcceleration(50.0);
+        TrcPathData pathData = profiler.profile(createPath(0, 0, 0, 50, 50, 50).resample(5.0));
+        int corner = 10;
+
+        assertEquals(50.0, pathData.getArcLength(corner), 1e-9);
+        // The circle through the corner and its neighbors has a radius of 5 / sqrt(2).
+        assertEquals(Math.sqrt(50.0*5.0/Math.sqrt(2.0)), pathData.getVelocity(corner), 1e-9);
+        assertTrue(pathData.getVelocity(corner - 2) > pathData.getVelocity(corner));
+        assertTrue(pathData.getVelocity(corner + 2) > pathData.getVelocity(corner));
+        assertLimits(pathData, 100.0, 200.0);
+    }
+
+    @Test
+    public void velocityLimitTest()
+    {
+        TrcVelocityProfiler profiler = new TrcVelocityProfiler("profiler", 100.0, 200.0);
+        profiler.addVelocityLimit(40.0, 60.0, 20.0);
+        profiler.setEndpointVelocities(10.0, 50.0);
+        TrcPathData pathData = profiler.profile(createPath(0, 0, 0, 100).resample(1.0));
+
+        assertEquals(10.0, pathData.getVelocity(0), 0.0);
+        assertEquals(50.0, pathData.getVelocity(100), 0.0);
+        for (int i = 40; i <= 60; i++)
+        {
+            assertEquals(20.0, pathData.getVelocity(i), 1e-9);
+        }
+        assertEquals(Math.sqrt(20.0*20.0 + 2.0*200.0*10.0), pathData.getVelocity(30), 1e-9);
+        assertLimits(pathData, 100.0, 200.0);
+    }
+
+    @Test
+    public void swerveModuleTest()
+    {
+        TrcWaypoint[] waypoints = {
+            new TrcWaypoint(0, 0, 0, 0, 0, 0, 0, 0), new TrcWaypoint(0, 0, 100, 0, 0, 0, 0, 0),
+            new TrcWaypoint(0, 0, 200, 0, 0, 0, 0, 180) };
+        TrcVelocityProfiler profiler = new TrcVelocityProfiler("profiler", 100.0, 1000.0);
+        profiler.setSwerveModuleLimits(100.0, 1000.0, 10.0);
+        TrcPathData pathData = profiler.profile(new TrcPathData(true, waypoints).resample(1.0));
+
+        // Turning pi radians over 100 units makes the modules move 1 + 0.1 * pi times faster than the robot.
+        assertEquals(100.0, pathData.getVelocity(50), 1e-9);
+        assertEquals(100.0/(1.0 + 0.1*Math.PI), pathData.getVelocity(150), 1e-9);
+    }
+}
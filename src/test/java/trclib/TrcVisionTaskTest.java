@@ -0,0 +1,178 @@
+package trclib;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.junit.Test;
+
+public class TrcVisionTaskTest
+{
+    private static class Frame
+    {
+        int id;
+        boolean preprocessed;
+        boolean detected;
+    }
+
+    private static class Result
+    {
+        int frameId;
+    }
+
+    private static class FakeProcessor implements TrcVisionTask.VisionProcessor<Frame, Result>
+    {
+        volatile int nextId = 0;
+        volatile int publishedCount = 0;
+        volatile int lastPublishedId = -1;
+        volatile boolean inOrder = true;
+        volatile boolean consistent = true;
+        // Frames preprocessed but neither detected nor discarded yet, and all discarded frames.
+        final AtomicInteger pendingCount = new AtomicInteger();
+        final AtomicInteger discardedCount = new AtomicInteger();
+
+        @Override
+        public boolean grabFrame(Frame image)
+        {
+            TrcUtil.sleep(5);
+            image.id = nextId++;
+            image.preprocessed = false;
+            image.detected = false;
+            return true;
+        }
+
+        @Override
+        public boolean preprocessFrame(Frame image)
+        {
+            TrcUtil.sleep(5);
+            image.preprocessed = true;
+            pendingCount.incrementAndGet();
+            return true;
+        }
+
+        @Override
+        public Result detectObjects(Frame image, Result detectedObjects)
+        {
+            TrcUtil.sleep(15);
+            if (!image.preprocessed)
+            {
+                consistent = false;
+            }
+            image.detected = true;
+            pendingCount.decrementAndGet();
+            detectedObjects.frameId = image.id;
+            return detectedObjects;
+        }
+
+        @Override
+        public void publishObjects(Frame image, Result detectedObjects)
+        {
+            TrcUtil.sleep(3);
+            // The result must still belong to the frame, no later stage may have clobbered either buffer.
+            if (detectedObjects.frameId != image.id)
+            {
+                consistent = false;
+            }
+
+            if (image.id <= lastPublishedId)
+            {
+                inOrder = false;
+            }
+            lastPublishedId = image.id;
+            publishedCount++;
+        }
+
+        @Override
+        public void discardFrame(Frame image)
+        {
+            if (image.preprocessed && !image.detected)
+            {
+                pendingCount.decrementAndGet();
+            }
+            discardedCount.incrementAndGet();
+        }
+    }
+
+    @Test
+    public void pipelinedTest()
+    {
+        final int numBuffers = TrcVisionTask.MIN_PIPELINED_IMAGE_BUFFERS;
+        Frame[] frames = new Frame[numBuffers];
+        Result[] results = new Result[numBuffers];
+
+        for (int i = 0; i < numBuffers; i++)
+        {
+            frames[i] = new Frame();
+            results[i] = new Result();
+        }
+
+        FakeProcessor processor = new FakeProcessor();
+        TrcVisionTask<Frame, Result> visionTask = new TrcVisionTask<>("pipelined", processor, frames, results);
+
+        visionTask.setPipelined(true);
+        assertTrue(visionTask.isPipelined());
+        visionTask.setEnabled(true);
+        TrcUtil.sleep(600);
+        visionTask.setEnabled(false);
+
+        int publishedCount = processor.publishedCount;
+        // Serially, a frame takes 28 msec, about 21 frames in 600 msec. Pipelined, detection alone paces it at 15.
+        assertTrue("published " + publishedCount, publishedCount >= 28);
+        assertTrue(processor.inOrder);
+        assertTrue(processor.consistent);
+        // Grabbing is faster than detecting, so some frames are dropped.
+        assertTrue(visionTask.getDroppedFrameCount() > 0);
+        assertEquals(processor.nextId, publishedCount + visionTask.getDroppedFrameCount(), numBuffers);
+        // Every grabbed frame is either published or discarded, dropped or left in a queue when stopped, so no
+        // frame is left with the state of a search that never ended.
+        assertEquals(processor.nextId, publishedCount + processor.discardedCount.get());
+        assertTrue(processor.discardedCount.get() >= visionTask.getDroppedFrameCount());
+        assertEquals(0, processor.pendingCount.get());
+
+        TrcLatencyHistogram.Snapshot detectTimes = visionTask.getStageTimeSnapshot(TrcVisionTask.Stage.DETECT);
+        assertTrue(detectTimes.getCount() >= publishedCount);
+        assertTrue(detectTimes.getMean() >= 15e6);
+
+        // The stage threads are stopped.
+        TrcUtil.sleep(50);
+        assertEquals(publishedCount, processor.publishedCount);
+
+        // Restarting reuses the buffers.
+        visionTask.setEnabled(true);
+        TrcUtil.sleep(100);
+        visionTask.setEnabled(false);
+        assertTrue(processor.publishedCount > publishedCount);
+        assertTrue(processor.consistent);
+        assertEquals(processor.nextId, processor.publishedCount + processor.discardedCount.get());
+        assertEquals(0, processor.pendingCount.get());
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void pipelinedBufferCountTest()
+    {
+        TrcVisionTask<Frame, Result> visionTask = new TrcVisionTask<>(
+            "bufferCount", new FakeProcessor(), new Frame[] {new Frame(), new Frame()}, new Result[] {new Result()});
+
+        assertFalse(visionTask.isPipelined());
+        visionTask.setPipelined(true);
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void pipelinedImageBufferCountTest()
+    {
+        final int numBuffers = TrcVisionTask.MIN_PIPELINED_IMAGE_BUFFERS - 1;
+        Frame[] frames = new Frame[numBuffers];
+        Result[] results = new Result[numBuffers];
+
+        for (int i = 0; i < numBuffers; i++)
+        {
+            frames[i] = new Frame();
+            results[i] = new Result();
+        }
+
+        // One buffer short of a frame for every stage and queue slot.
+        new TrcVisionTask<>("imageBufferCount", new FakeProcessor(), frames, results).setPipelined(true);
+    }
+}